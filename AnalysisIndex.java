@@ -0,0 +1,355 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent index of class analyses, keyed by a hash of the analyzed class
+ * file, so that a class is only ever analyzed once no matter how often it is
+ * uploaded.
+ *
+ * The index is a single append only file. A header records how much of the
+ * file is committed, followed by records of a 32 byte SHA-256 hash, the length
+ * of the analysis, and the analysis as UTF-8. The committed part of the file
+ * is memory mapped, so a lookup never reads from the file itself.
+ *
+ * Any number of processes may read the index while one of them writes to it.
+ * New analyses are held back and written in batches. A writer takes an
+ * exclusive lock on the file, writes the batch past the committed end, and
+ * only then moves the committed length in the header, so a reader never sees
+ * half of a record. Within a process, a single instance should be shared for
+ * each file, and closed so that its last batch is written.
+ *
+ * The analysis of a class also reports whether the types it refers to are
+ * interfaces, which its own bytes do not capture. Turning a class into an
+ * interface, or back, is rare enough that such entries are not invalidated.
+ */
+public class AnalysisIndex implements Closeable {
+
+    private static final int MAGIC = 0x53474149;
+    private static final int VERSION = 1;
+
+    //Magic, version and committed length
+    private static final int HEADER_SIZE = 16;
+    private static final int COMMITTED_OFFSET = 8;
+
+    private static final int KEY_SIZE = 32;
+
+    //How many analyses are held back before they are written
+    private static final int BATCH_SIZE = 512;
+
+    private final FileChannel channel;
+
+    //Offsets of the length of every committed analysis, by hex encoded key
+    private final Map<String, Integer> offsets = new ConcurrentHashMap<>();
+
+    //The committed part of the file, remapped whenever it grows
+    private volatile MappedByteBuffer mapped;
+
+    //How much of the file has been read into offsets
+    private long scanned = HEADER_SIZE;
+
+    //Analyses that have not been written yet, by hex encoded key
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong appends = new AtomicLong();
+
+    /**
+     * Opens an index, creating it if it does not exist yet.
+     * @param file The index file.
+     * @throws IOException If the file can not be opened, or is not an index.
+     */
+    public AnalysisIndex( File file ) throws IOException {
+        this.channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+        try {
+            initialize();
+            refresh();
+        }
+        catch( IOException | RuntimeException e ) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the header of a new index, or checks the header of an existing
+     * one.
+     */
+    private void initialize() throws IOException {
+        FileLock lock = this.channel.lock();
+
+        try {
+            if( this.channel.size() == 0 ) {
+                ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+                header.putInt( MAGIC ).putInt( VERSION ).putLong( HEADER_SIZE ).flip();
+                write( header, 0 );
+                this.channel.force( false );
+            }
+
+            ByteBuffer header = read( 0, HEADER_SIZE );
+
+            if( header.getInt() != MAGIC || header.getInt() != VERSION ) {
+                throw new IOException( "Not an analysis index" );
+            }
+        }
+        finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Computes the key of a class file.
+     * @param classFile The contents of the class file.
+     * @return A hex encoded SHA-256 hash of the class file.
+     */
+    public static String key( byte[] classFile ) {
+        return key( classFile, "" );
+    }
+
+    /**
+     * Computes the key of a class file, for one of several ways of analyzing
+     * it.
+     * @param classFile The contents of the class file.
+     * @param variant What sets the analysis apart, such as its options.
+     * @return A hex encoded SHA-256 hash of the class file and the variant.
+     */
+    public static String key( byte[] classFile, String variant ) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( classFile );
+            digest.update( variant.getBytes( StandardCharsets.UTF_8 ) );
+            return hex( digest.digest() );
+        }
+        catch( NoSuchAlgorithmException nsae ) {
+            throw new IllegalStateException( nsae );
+        }
+    }
+
+    /**
+     * Looks up the analysis of a class file.
+     * @param key The key of the class file.
+     * @return The analysis, or null if the class has not been analyzed yet.
+     */
+    public String get( String key ) throws IOException {
+        Integer offset = this.offsets.get( key );
+
+        //Another process may have added it since
+        if( offset == null ) {
+            refresh();
+            offset = this.offsets.get( key );
+        }
+
+        if( offset == null ) {
+            String analysis = this.pending.get( key );
+
+            if( analysis == null ) {
+                this.misses.incrementAndGet();
+            }
+            else {
+                this.hits.incrementAndGet();
+            }
+
+            return analysis;
+        }
+
+        ByteBuffer buffer = this.mapped.duplicate();
+        buffer.position( offset );
+        byte[] bytes = new byte[ buffer.getInt() ];
+        buffer.get( bytes );
+
+        this.hits.incrementAndGet();
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Adds the analysis of a class file, unless it is already in the index.
+     * It is written along with the next batch.
+     * @param key The key of the class file.
+     * @param analysis The analysis.
+     */
+    public void put( String key, String analysis ) throws IOException {
+        if( this.offsets.containsKey( key ) ) {
+            return;
+        }
+
+        this.pending.put( key, analysis );
+
+        if( this.pending.size() >= BATCH_SIZE ) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes every analysis that is held back, and commits them together.
+     */
+    public synchronized void flush() throws IOException {
+        if( this.pending.isEmpty() ) {
+            return;
+        }
+
+        FileLock lock = this.channel.lock();
+
+        try {
+            refresh();
+
+            long position = committed();
+            List<String> written = new ArrayList<>();
+            int appended = 0;
+
+            for ( Map.Entry<String, String> entry : this.pending.entrySet() ) {
+                //Another process may have added it since
+                if( this.offsets.containsKey( entry.getKey() ) ) {
+                    written.add( entry.getKey() );
+                    continue;
+                }
+
+                byte[] bytes = entry.getValue().getBytes( StandardCharsets.UTF_8 );
+                ByteBuffer record = ByteBuffer.allocate( KEY_SIZE + 4 + bytes.length );
+                record.put( unhex( entry.getKey() ) ).putInt( bytes.length ).put( bytes ).flip();
+                write( record, position );
+
+                position += KEY_SIZE + 4 + bytes.length;
+                written.add( entry.getKey() );
+                appended++;
+            }
+
+            this.channel.force( false );
+
+            //Commit the records only once they are safely written
+            ByteBuffer committed = ByteBuffer.allocate( 8 );
+            committed.putLong( position ).flip();
+            write( committed, COMMITTED_OFFSET );
+            this.channel.force( false );
+
+            refresh();
+            this.appends.addAndGet( appended );
+
+            for ( String key : written ) {
+                this.pending.remove( key );
+            }
+        }
+        finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Maps and reads any records committed since the last refresh.
+     */
+    private synchronized void refresh() throws IOException {
+        long committed = committed();
+
+        if( committed <= this.scanned ) {
+            return;
+        }
+
+        if( committed > Integer.MAX_VALUE ) {
+            throw new IOException( "Analysis index is too large to map" );
+        }
+
+        MappedByteBuffer buffer = this.channel.map( FileChannel.MapMode.READ_ONLY, 0, committed );
+        this.mapped = buffer;
+
+        ByteBuffer records = buffer.duplicate();
+        records.position( (int) this.scanned );
+        byte[] key = new byte[ KEY_SIZE ];
+
+        while( records.position() < committed ) {
+            records.get( key );
+            int offset = records.position();
+            records.position( offset + 4 + records.getInt() );
+            this.offsets.putIfAbsent( hex( key ), offset );
+        }
+
+        this.scanned = committed;
+    }
+
+    /** @return The committed length of the file, as recorded in its header */
+    private long committed() throws IOException {
+        return read( COMMITTED_OFFSET, 8 ).getLong();
+    }
+
+    private ByteBuffer read( long position, int length ) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+
+        while( buffer.hasRemaining() ) {
+            if( this.channel.read( buffer, position + buffer.position() ) < 0 ) {
+                throw new IOException( "Truncated analysis index" );
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private void write( ByteBuffer buffer, long position ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            this.channel.write( buffer, position + buffer.position() );
+        }
+    }
+
+    private static String hex( byte[] bytes ) {
+        StringBuilder sb = new StringBuilder();
+
+        for ( byte b : bytes ) {
+            sb.append( Character.forDigit( (b >> 4) & 0xF, 16 ) );
+            sb.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+
+        return sb.toString();
+    }
+
+    private static byte[] unhex( String hex ) {
+        byte[] bytes = new byte[ hex.length() / 2 ];
+
+        for ( int i = 0; i < bytes.length; i++ ) {
+            bytes[i] = (byte) Integer.parseInt( hex.substring( 2 * i, 2 * i + 2 ), 16 );
+        }
+
+        return bytes;
+    }
+
+    /** @return The number of analyses in the index */
+    public int size() {
+        return this.offsets.size();
+    }
+
+    /**
+     * Writes any analyses that are held back, and closes the index.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            this.channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + this.hits.get() + " misses=" + this.misses.get()
+            + " appends=" + this.appends.get() + " size=" + this.offsets.size()
+            + " pending=" + this.pending.size();
+    }
+}
@@ -2,7 +2,32 @@
  * Wrapper class for a RuntimeException
  */
 public class AssertionException extends RuntimeException { 
+    private static final long serialVersionUID = 1L;
+
+    //What a test returned need not be serializable
+    private final transient Object expected;
+    private final transient Object actual;
+
     public AssertionException( String message ) {
+        this( message, null, null );
+    }
+
+    /**
+     * @param message The description of the failure
+     * @param expected The value that the test expected
+     * @param actual The value that the test got instead
+     */
+    public AssertionException( String message, Object expected, Object actual ) {
         super( message );
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    public Object getExpected() {
+        return this.expected;
+    }
+
+    public Object getActual() {
+        return this.actual;
     }
 }
@@ -0,0 +1,140 @@
+import java.util.Locale;
+
+/**
+ * The outcome of benchmarking a single method: how many calls it can take per
+ * second, how long a call takes, and how much a call allocates.
+ */
+public class BenchmarkResult {
+
+    private final String name;
+    private final long ops;
+    private final long nanos;
+    private final double p50Nanos;
+    private final double p99Nanos;
+    private final double bytesPerOp;
+    private final double[] iterationNanosPerOp;
+    private final String failure;
+
+    /**
+     * @param name The name of the benchmark.
+     * @param ops How many calls were measured.
+     * @param nanos How long the measured calls took together, in
+     * nanoseconds.
+     * @param p50Nanos The median latency of a call, in nanoseconds.
+     * @param p99Nanos The 99th percentile latency of a call, in nanoseconds.
+     * @param bytesPerOp The bytes allocated by a call, or -1 if the JVM does
+     * not keep track of allocations.
+     * @param iterationNanosPerOp The mean latency of a call in each
+     * measurement iteration, in nanoseconds.
+     */
+    public BenchmarkResult( String name, long ops, long nanos, double p50Nanos,
+            double p99Nanos, double bytesPerOp, double[] iterationNanosPerOp ) {
+        this( name, ops, nanos, p50Nanos, p99Nanos, bytesPerOp,
+                iterationNanosPerOp, null );
+    }
+
+    private BenchmarkResult( String name, long ops, long nanos, double p50Nanos,
+            double p99Nanos, double bytesPerOp, double[] iterationNanosPerOp,
+            String failure ) {
+        this.name                   = name;
+        this.ops                    = ops;
+        this.nanos                  = nanos;
+        this.p50Nanos               = p50Nanos;
+        this.p99Nanos               = p99Nanos;
+        this.bytesPerOp             = bytesPerOp;
+        this.iterationNanosPerOp    = iterationNanosPerOp.clone();
+        this.failure                = failure;
+    }
+
+    /**
+     * @param name The name of the benchmark.
+     * @param failure Why the benchmark could not be run to completion.
+     * @return The result of a benchmark that failed.
+     */
+    public static BenchmarkResult failed( String name, String failure ) {
+        return new BenchmarkResult( name, 0, 0, 0, 0, -1, new double[0], failure );
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public boolean succeeded() {
+        return this.failure == null;
+    }
+
+    /** @return Why the benchmark failed, or null if it did not */
+    public String getFailure() {
+        return this.failure;
+    }
+
+    public long getOps() {
+        return this.ops;
+    }
+
+    public long getNanos() {
+        return this.nanos;
+    }
+
+    public double getOpsPerSecond() {
+        return this.nanos == 0 ? 0 : this.ops * 1e9 / this.nanos;
+    }
+
+    public double getMeanNanos() {
+        return this.ops == 0 ? 0 : (double) this.nanos / this.ops;
+    }
+
+    public double getP50Nanos() {
+        return this.p50Nanos;
+    }
+
+    public double getP99Nanos() {
+        return this.p99Nanos;
+    }
+
+    /** @return The bytes allocated by a call, or -1 if it is not known */
+    public double getBytesPerOp() {
+        return this.bytesPerOp;
+    }
+
+    public double[] getIterationNanosPerOp() {
+        return this.iterationNanosPerOp.clone();
+    }
+
+    /**
+     * @return The standard deviation of the mean latency across measurement
+     * iterations, in nanoseconds.
+     */
+    public double getErrorNanos() {
+        int n = this.iterationNanosPerOp.length;
+
+        if( n < 2 ) {
+            return 0;
+        }
+
+        double mean = 0;
+        for ( double x : this.iterationNanosPerOp ) {
+            mean += x / n;
+        }
+
+        double variance = 0;
+        for ( double x : this.iterationNanosPerOp ) {
+            variance += ( x - mean ) * ( x - mean ) / ( n - 1 );
+        }
+
+        return Math.sqrt( variance );
+    }
+
+    @Override
+    public String toString() {
+        if( ! succeeded() ) {
+            return this.name + ": " + this.failure;
+        }
+
+        return String.format( Locale.ROOT,
+                "%s: %.1f ops/s, mean %.1f +- %.1f ns, p50 %.1f ns, p99 %.1f ns, %s",
+                this.name, getOpsPerSecond(), getMeanNanos(), getErrorNanos(),
+                this.p50Nanos, this.p99Nanos, this.bytesPerOp < 0 ? "allocation unknown"
+                : String.format( Locale.ROOT, "%.1f B/op", this.bytesPerOp ) );
+    }
+}
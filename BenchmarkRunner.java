@@ -0,0 +1,345 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.lang.ref.WeakReference;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Measures how fast a method is, the way generated benchmarks call it:
+ * <tt>runner.run( "Foo", () -&gt; Calc.foo( arg0 ) )</tt>.
+ *
+ * The call is first run for a number of warmup iterations, so that it is
+ * compiled, and then for a number of measurement iterations. Calls are timed
+ * in batches that take about ten microseconds each, so reading the clock
+ * costs next to nothing, and the mean time per call of every batch is one
+ * latency sample. For methods that are slower than a batch, every sample is a
+ * single call.
+ *
+ * There is an overload of <tt>run</tt> for each kind of value a method may
+ * return, which the compiler picks from the lambda, so that primitive results
+ * are never boxed. Every result is handed to <tt>consume</tt>, which compares
+ * it to values read from volatile fields, the way JMH's <tt>Blackhole</tt>
+ * does, so the JIT can neither throw the call away as dead code nor fold the
+ * loop. Since a volatile read also keeps later reads from moving ahead of it,
+ * a call whose arguments are read from non-final fields, as generated
+ * benchmarks do, is made again on every iteration instead of being hoisted out
+ * of the loop.
+ */
+public class BenchmarkRunner {
+
+    /** A call that returns an object */
+    public interface Operation {
+        Object invoke() throws Exception;
+    }
+
+    /** A call that returns an int, or a smaller integral type */
+    public interface IntOperation {
+        int invoke() throws Exception;
+    }
+
+    /** A call that returns a long */
+    public interface LongOperation {
+        long invoke() throws Exception;
+    }
+
+    /** A call that returns a double or a float */
+    public interface DoubleOperation {
+        double invoke() throws Exception;
+    }
+
+    /** A call that returns a boolean */
+    public interface BooleanOperation {
+        boolean invoke() throws Exception;
+    }
+
+    /** A call that returns nothing */
+    public interface VoidOperation {
+        void invoke() throws Exception;
+    }
+
+    //Runs a number of calls back to back
+    private interface Batch {
+        void run( long ops ) throws Exception;
+    }
+
+    //How long a timed batch of calls should take
+    private static final long TARGET_BATCH_NANOS = 10000;
+
+    //How many latency samples are kept, chosen at random once there are more
+    private static final int MAX_SAMPLES = 1 << 16;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+
+    //What results are compared to. The two of each kind differ, so no result equals both
+    private volatile int int1 = 1;
+    private volatile int int2 = 2;
+    private volatile long long1 = 1;
+    private volatile long long2 = 2;
+    private volatile double double1 = 1;
+    private volatile double double2 = 2;
+    private volatile boolean boolean1 = false;
+    private volatile boolean boolean2 = true;
+
+    //Objects are kept once in a while, ever more rarely, so that they escape
+    private int objectSeed = (int) System.nanoTime();
+    private volatile int objectMask = 1;
+    private Object retained;
+
+    /**
+     * Creates a runner configured through the system properties
+     * <tt>suitegenerator.bench.warmup</tt> (5 iterations),
+     * <tt>suitegenerator.bench.iterations</tt> (10 iterations) and
+     * <tt>suitegenerator.bench.iterationMillis</tt> (100 ms).
+     */
+    public BenchmarkRunner() {
+        this( Integer.getInteger( "suitegenerator.bench.warmup", 5 ),
+                Integer.getInteger( "suitegenerator.bench.iterations", 10 ),
+                Long.getLong( "suitegenerator.bench.iterationMillis", 100 ) );
+    }
+
+    /**
+     * @param warmupIterations How many iterations are run before measuring.
+     * @param measurementIterations How many iterations are measured.
+     * @param iterationMillis How long an iteration lasts, in milliseconds.
+     */
+    public BenchmarkRunner( int warmupIterations, int measurementIterations,
+            long iterationMillis ) {
+        if( measurementIterations < 1 || iterationMillis < 1 ) {
+            throw new IllegalArgumentException( "Nothing would be measured" );
+        }
+
+        this.warmupIterations       = Math.max( 0, warmupIterations );
+        this.measurementIterations  = measurementIterations;
+        this.iterationNanos         = iterationMillis * 1000000;
+    }
+
+    public BenchmarkResult run( String name, final Operation op ) throws Exception {
+        return measure( name, ops -> {
+            for ( long i = 0; i < ops; i++ ) {
+                consume( op.invoke() );
+            }
+        });
+    }
+
+    public BenchmarkResult run( String name, final IntOperation op ) throws Exception {
+        return measure( name, ops -> {
+            for ( long i = 0; i < ops; i++ ) {
+                consume( op.invoke() );
+            }
+        });
+    }
+
+    public BenchmarkResult run( String name, final LongOperation op ) throws Exception {
+        return measure( name, ops -> {
+            for ( long i = 0; i < ops; i++ ) {
+                consume( op.invoke() );
+            }
+        });
+    }
+
+    public BenchmarkResult run( String name, final DoubleOperation op ) throws Exception {
+        return measure( name, ops -> {
+            for ( long i = 0; i < ops; i++ ) {
+                consume( op.invoke() );
+            }
+        });
+    }
+
+    public BenchmarkResult run( String name, final BooleanOperation op ) throws Exception {
+        return measure( name, ops -> {
+            for ( long i = 0; i < ops; i++ ) {
+                consume( op.invoke() );
+            }
+        });
+    }
+
+    public BenchmarkResult run( String name, final VoidOperation op ) throws Exception {
+        return measure( name, ops -> {
+            for ( long i = 0; i < ops; i++ ) {
+                op.invoke();
+            }
+        });
+    }
+
+    /**
+     * Uses up a result, so that the JIT has to compute it.
+     */
+    public final void consume( int value ) {
+        if( value == this.int1 & value == this.int2 ) {
+            //Never happens
+            this.retained = value;
+        }
+    }
+
+    public final void consume( long value ) {
+        if( value == this.long1 & value == this.long2 ) {
+            this.retained = value;
+        }
+    }
+
+    public final void consume( double value ) {
+        if( value == this.double1 & value == this.double2 ) {
+            this.retained = value;
+        }
+    }
+
+    public final void consume( boolean value ) {
+        if( value == this.boolean1 & value == this.boolean2 ) {
+            this.retained = value;
+        }
+    }
+
+    public final void consume( Object value ) {
+        int mask = this.objectMask;
+        int seed = this.objectSeed * 1664525 + 1013904223;
+        this.objectSeed = seed;
+
+        //A fresh object that never escapes could still be optimized away
+        if( ( seed & mask ) == 0 ) {
+            this.retained = new WeakReference<>( value );
+            this.objectMask = ( mask << 1 ) + 1;
+        }
+    }
+
+    /**
+     * Warms a batch up, then measures it.
+     */
+    private BenchmarkResult measure( String name, Batch batch ) throws Exception {
+        for ( int i = 0; i < this.warmupIterations; i++ ) {
+            iterate( batch, calibrate( batch ), null, null );
+        }
+
+        //Calibrated once more, now that the calls are compiled
+        long ops = calibrate( batch );
+
+        Samples samples = new Samples();
+        double[] iterations = new double[ this.measurementIterations ];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long bytes = allocatedBytes();
+
+        for ( int i = 0; i < this.measurementIterations; i++ ) {
+            long[] measured = new long[2];
+            iterate( batch, ops, samples, measured );
+
+            totalOps += measured[0];
+            totalNanos += measured[1];
+            iterations[i] = (double) measured[1] / measured[0];
+        }
+
+        long allocated = allocatedBytes();
+
+        return new BenchmarkResult( name, totalOps, totalNanos,
+                samples.percentile( 0.50 ), samples.percentile( 0.99 ),
+                bytes < 0 || allocated < 0 ? -1 : (double) ( allocated - bytes ) / totalOps,
+                iterations );
+    }
+
+    /**
+     * Runs batches for the length of one iteration.
+     * @param samples Where the latency of every batch is recorded, if
+     * anywhere.
+     * @param measured Where the number of calls and the time they took are
+     * stored, if anywhere.
+     */
+    private void iterate( Batch batch, long ops, Samples samples, long[] measured )
+            throws Exception {
+        long end = System.nanoTime() + this.iterationNanos;
+        long now;
+
+        do {
+            if( Thread.interrupted() ) {
+                throw new InterruptedException( "Benchmark interrupted" );
+            }
+
+            long start = System.nanoTime();
+            batch.run( ops );
+            now = System.nanoTime();
+
+            if( samples != null ) {
+                samples.add( (double) ( now - start ) / ops );
+            }
+
+            if( measured != null ) {
+                measured[0] += ops;
+                measured[1] += now - start;
+            }
+        } while( now < end );
+    }
+
+    /**
+     * @return How many calls make up a batch that takes about
+     * <tt>TARGET_BATCH_NANOS</tt>.
+     */
+    private static long calibrate( Batch batch ) throws Exception {
+        long ops = 1;
+
+        while( ops < ( 1L << 40 ) ) {
+            long start = System.nanoTime();
+            batch.run( ops );
+
+            if( System.nanoTime() - start >= TARGET_BATCH_NANOS ) {
+                break;
+            }
+
+            ops *= 2;
+        }
+
+        return ops;
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, or -1 if the
+     * JVM does not keep track of it.
+     */
+    private static long allocatedBytes() {
+        if( threads instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes( Thread.currentThread().getId() );
+        }
+
+        return -1;
+    }
+
+    /**
+     * A bounded, uniformly chosen set of latency samples. Adding a sample
+     * never allocates, so it does not show up in the allocation per call.
+     */
+    private static final class Samples {
+        private final double[] values = new double[ MAX_SAMPLES ];
+        private final SplittableRandom random = new SplittableRandom( 0x5EED );
+        private int size;
+        private long seen;
+
+        void add( double value ) {
+            this.seen++;
+
+            if( this.size < this.values.length ) {
+                this.values[ this.size++ ] = value;
+            }
+            else {
+                long slot = this.random.nextLong( this.seen );
+
+                if( slot < this.values.length ) {
+                    this.values[ (int) slot ] = value;
+                }
+            }
+        }
+
+        double percentile( double p ) {
+            if( this.size == 0 ) {
+                return 0;
+            }
+
+            double[] sorted = Arrays.copyOf( this.values, this.size );
+            Arrays.sort( sorted );
+            return sorted[ (int) Math.round( p * ( this.size - 1 ) ) ];
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Thrown when a suite is stopped because it went over its execution budget.
+ */
+public class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final TestResult.Status status;
+
+    /**
+     * @param status Which budget was exceeded.
+     * @param message A description of the budget that was exceeded.
+     */
+    public BudgetExceededException( TestResult.Status status, String message ) {
+        super( message );
+        this.status = status;
+    }
+
+    public TestResult.Status getStatus() {
+        return this.status;
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a test suite test by test, straight to where its source goes, so
+ * that only the class currently being written is ever held open. The suite is
+ * split into part classes of a bounded number of tests, which keeps every
+ * generated method and class within the limits of the compiler however many
+ * tests there are:
+ *
+ * <tt>public class Foo { smartAssert, runParts0(), main() }</tt>
+ * <tt>public class FooPart0 extends Foo { tests, runPart0() }</tt>
+ * <tt>public class FooPart1 extends Foo { tests, runPart1() }</tt>
+ *
+ * Every part extends the suite class, so its tests see smartAssert, while
+ * the hierarchy stays a single level deep for any number of parts. A test is
+ * found by looking it up in each part, and the main method of the suite class
+ * runs every test just like a suite written by
+ * <tt>TestSuiteGenerator.generateTestSuite</tt>. Test names must be unique
+ * across the whole suite.
+ *
+ * Batches that the server runs are split into small units instead, which are
+ * compiled and cached on their own (see <tt>TestSuiteGenerator.generateTestUnits</tt>).
+ * This writer is for suites that are kept and compiled elsewhere, however
+ * many tests they have, and is run from the command line:
+ * <tt>java ChunkedSuiteWriter suiteName directory [partSize] &lt; tests</tt>
+ */
+public class ChunkedSuiteWriter {
+
+    /** The number of tests per part used when none is specified */
+    public static final int DEFAULT_PART_SIZE = 500;
+
+    //How many parts a single dispatcher of the suite class calls
+    private static final int PARTS_PER_DISPATCHER = 1000;
+
+    private static final LatencyHistogram writeTime = Metrics.histogram( "generator.write" );
+
+    /**
+     * Where the source of each generated class is written to.
+     */
+    public interface SourceSink {
+        /**
+         * @param className The name of the class whose source follows.
+         * @return Where to write the source, which is closed once the class
+         * is complete.
+         */
+        Writer open( String className ) throws IOException;
+    }
+
+    private final String suiteName;
+    private final List<String> imports;
+    private final SourceSink sink;
+    private final int partSize;
+
+    private final List<String> classNames = new ArrayList<>();
+
+    //The part being written, and the statements that run its tests so far
+    private Writer part;
+    private final List<String> partTests = new ArrayList<>();
+
+    /**
+     * @param suiteName The name of the suite class.
+     * @param imports The imports of every generated class.
+     * @param sink Where the source of each generated class is written to.
+     * @param partSize The largest number of tests in a single class.
+     */
+    public ChunkedSuiteWriter( String suiteName, List<String> imports,
+            SourceSink sink, int partSize ) {
+        if( partSize < 1 ) {
+            throw new IllegalArgumentException( "partSize must be positive" );
+        }
+
+        this.suiteName  = suiteName;
+        this.imports    = new ArrayList<>( imports );
+        this.sink       = sink;
+        this.partSize   = partSize;
+    }
+
+    /**
+     * Writes the source of each class into its own file in a directory.
+     * @param directory The directory, which is created if needed.
+     */
+    public static SourceSink directory( final File directory ) {
+        return className -> {
+            directory.mkdirs();
+            return new BufferedWriter( new OutputStreamWriter( new FileOutputStream(
+                            new File( directory, className + ".java" ) ),
+                        StandardCharsets.UTF_8 ) );
+        };
+    }
+
+    /**
+     * Writes a standard test. The arguments are the same as those of
+     * <tt>TestSuiteGenerator.generateStandardTest</tt>.
+     */
+    public void writeStandardTest( String className, String instanceName,
+            String methodName, String testName, String methodArguments, String
+            expectedValue, String constructorArguments ) throws IOException {
+        write( TestSuiteGenerator.standardTest( className, instanceName,
+                    methodName, testName, methodArguments, expectedValue,
+                    constructorArguments, null ) );
+    }
+
+    /**
+     * Writes a static test. The arguments are the same as those of
+     * <tt>TestSuiteGenerator.generateStaticTest</tt>.
+     */
+    public void writeStaticTest( String className, String testName,
+            String expectedValue, String methodName, String methodArguments )
+            throws IOException {
+        write( TestSuiteGenerator.staticTest( className, testName,
+                    expectedValue, methodName, methodArguments, null ) );
+    }
+
+    /**
+     * Writes a test into the current part, starting a new part if the
+     * current one is full.
+     */
+    void write( TestSuiteGenerator.TestCase testCase ) throws IOException {
+        if( this.part == null ) {
+            openPart();
+        }
+
+        testCase.render( this.part );
+        this.part.write( "\n" );
+        this.partTests.add( testCase.getCall() );
+
+        if( this.partTests.size() >= this.partSize ) {
+            closePart();
+        }
+    }
+
+    /**
+     * Writes the suite class, which runs every part from its main method.
+     * @return The names of the generated classes: every part in order,
+     * followed by the suite class itself.
+     */
+    public List<String> finish() throws IOException {
+        if( this.part != null ) {
+            closePart();
+        }
+
+        int parts = this.classNames.size();
+
+        try( Writer out = this.sink.open( this.suiteName ) ) {
+            writeHeader( out, this.suiteName, null );
+            out.write( TestSuiteGenerator.SMART_ASSERT );
+
+            //Group the parts so that no dispatcher grows too large
+            int dispatchers = ( parts + PARTS_PER_DISPATCHER - 1 ) / PARTS_PER_DISPATCHER;
+
+            for ( int d = 0; d < dispatchers; d++ ) {
+                out.write( "    public static void runParts" + d + "() throws Exception {\n" );
+
+                for ( int p = d * PARTS_PER_DISPATCHER;
+                        p < Math.min( parts, ( d + 1 ) * PARTS_PER_DISPATCHER ); p++ ) {
+                    out.write( "        " + partName( p ) + ".runPart" + p + "();\n" );
+                }
+
+                out.write( "    }\n\n" );
+            }
+
+            out.write( "    public static void main( String[] args ) throws Exception {\n" );
+
+            for ( int d = 0; d < dispatchers; d++ ) {
+                out.write( "        runParts" + d + "();\n" );
+            }
+
+            out.write( "    }\n" );
+            out.write( "}" );
+        }
+
+        this.classNames.add( this.suiteName );
+        return Collections.unmodifiableList( this.classNames );
+    }
+
+    private void openPart() throws IOException {
+        int index = this.classNames.size();
+        String name = partName( index );
+
+        this.part = this.sink.open( name );
+        writeHeader( this.part, name, this.suiteName );
+    }
+
+    /**
+     * Ends the current part with a dispatcher that runs each of its tests.
+     */
+    private void closePart() throws IOException {
+        int index = this.classNames.size();
+
+        this.part.write( "    public static void runPart" + index + "() throws Exception {\n" );
+
+        for ( String call : this.partTests ) {
+            this.part.write( "        " + call + "\n" );
+        }
+
+        this.part.write( "    }\n" );
+        this.part.write( "}" );
+        this.part.close();
+
+        this.classNames.add( partName( index ) );
+        this.partTests.clear();
+        this.part = null;
+    }
+
+    private void writeHeader( Writer out, String className, String superName )
+            throws IOException {
+        for ( String libraryToImport : this.imports ) {
+            out.write( "import " + libraryToImport + ";\n" );
+        }
+
+        out.write( "\npublic class " + className );
+
+        if( superName != null ) {
+            out.write( " extends " + superName );
+        }
+
+        out.write( " {\n\n" );
+    }
+
+    private String partName( int index ) {
+        return this.suiteName + "Part" + index;
+    }
+
+    /**
+     * Writes a suite whose tests are read one per line, with the fields of a
+     * <tt>SuiteGeneratorServer</tt> batch separated by tabs:
+     * <tt>static className testName expectedValue methodName
+     * methodArguments</tt> or <tt>standard className instanceName methodName
+     * testName methodArguments expectedValue constructorArguments</tt>. Tests
+     * that share a name are renamed the way <tt>SuiteGeneratorAPI.runTests</tt>
+     * renames them.
+     * @param in Where the tests are read from.
+     * @param suiteName The name of the suite class.
+     * @param sink Where the source of each generated class is written to.
+     * @param partSize The largest number of tests in a single class.
+     * @return The names of the generated classes, ending with the suite
+     * class itself.
+     * @throws IOException If the tests can not be read, or the sink can not
+     * be written to.
+     * @throws IllegalArgumentException If a line does not describe a test.
+     */
+    public static List<String> write( Reader in, String suiteName, SourceSink sink,
+            int partSize ) throws IOException {
+        long start = System.nanoTime();
+        ChunkedSuiteWriter writer = new ChunkedSuiteWriter( suiteName,
+                Collections.<String>emptyList(), sink, partSize );
+        BufferedReader lines = new BufferedReader( in );
+        Set<String> testNames = new HashSet<>();
+        String line;
+
+        while( ( line = lines.readLine() ) != null ) {
+            if( line.isEmpty() ) {
+                continue;
+            }
+
+            List<String> f = SuiteGeneratorServer.decode( line );
+
+            if( f.size() == 8 && f.get( 0 ).equals( "standard" ) ) {
+                writer.writeStandardTest( f.get( 1 ), f.get( 2 ), f.get( 3 ),
+                        uniqueName( f.get( 4 ), testNames ), f.get( 5 ), f.get( 6 ), f.get( 7 ) );
+            }
+            else if( f.size() == 6 && f.get( 0 ).equals( "static" ) ) {
+                writer.writeStaticTest( f.get( 1 ), uniqueName( f.get( 2 ), testNames ),
+                        f.get( 3 ), f.get( 4 ), f.get( 5 ) );
+            }
+            else {
+                throw new IllegalArgumentException( "Not a test: " + line );
+            }
+        }
+
+        List<String> classNames = writer.finish();
+        writeTime.recordSince( start );
+
+        return classNames;
+    }
+
+    private static String uniqueName( String testName, Set<String> testNames ) {
+        String name = testName;
+
+        for ( int i = 2; ! testNames.add( name ); i++ ) {
+            name = testName + "_" + i;
+        }
+
+        return name;
+    }
+
+    /**
+     * Writes a suite into a directory, one <tt>.java</tt> file per class,
+     * reading its tests from standard in as described on <tt>write</tt>.
+     * <tt>java ChunkedSuiteWriter suiteName directory [partSize] &lt; tests</tt>
+     */
+    public static void main( String[] args ) throws IOException {
+        if( args.length < 2 || args.length > 3 ) {
+            System.err.println( "Usage: java ChunkedSuiteWriter suiteName directory [partSize] < tests" );
+            System.exit( 1 );
+        }
+
+        int partSize = args.length == 3 ? Integer.parseInt( args[2] ) : DEFAULT_PART_SIZE;
+        List<String> classNames = write( new InputStreamReader( System.in, StandardCharsets.UTF_8 ),
+                args[0], directory( new File( args[1] ) ), partSize );
+
+        System.out.println( "Wrote " + classNames.size() + " classes to " + args[1] );
+    }
+}
@@ -0,0 +1,405 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a class file that describe a class's shape, read straight from
+ * its bytes. Nothing is loaded, linked or initialized, so this is safe to use
+ * on untrusted uploads and works even when the classes they refer to are
+ * missing.
+ */
+public class ClassFileInfo {
+
+    public static final int ACC_PUBLIC     = 0x0001;
+    public static final int ACC_PRIVATE    = 0x0002;
+    public static final int ACC_PROTECTED  = 0x0004;
+    public static final int ACC_STATIC     = 0x0008;
+    public static final int ACC_FINAL      = 0x0010;
+    public static final int ACC_BRIDGE     = 0x0040;
+    public static final int ACC_VARARGS    = 0x0080;
+    public static final int ACC_INTERFACE  = 0x0200;
+    public static final int ACC_ABSTRACT   = 0x0400;
+    public static final int ACC_SYNTHETIC  = 0x1000;
+    public static final int ACC_ENUM       = 0x4000;
+
+    //Constant pool tags
+    private static final int CONSTANT_Utf8               = 1;
+    private static final int CONSTANT_Integer            = 3;
+    private static final int CONSTANT_Float              = 4;
+    private static final int CONSTANT_Long               = 5;
+    private static final int CONSTANT_Double             = 6;
+    private static final int CONSTANT_Class              = 7;
+    private static final int CONSTANT_String             = 8;
+    private static final int CONSTANT_Fieldref           = 9;
+    private static final int CONSTANT_Methodref          = 10;
+    private static final int CONSTANT_InterfaceMethodref = 11;
+    private static final int CONSTANT_NameAndType        = 12;
+    private static final int CONSTANT_MethodHandle       = 15;
+    private static final int CONSTANT_MethodType         = 16;
+    private static final int CONSTANT_Dynamic            = 17;
+    private static final int CONSTANT_InvokeDynamic      = 18;
+    private static final int CONSTANT_Module             = 19;
+    private static final int CONSTANT_Package            = 20;
+
+    private final int access;
+    private final String name;
+    private final String superName;
+    private final List<String> interfaces;
+    private final List<FieldInfo> fields;
+    private final List<MethodInfo> methods;
+
+    private ClassFileInfo( int access, String name, String superName,
+            List<String> interfaces, List<FieldInfo> fields, List<MethodInfo> methods ) {
+        this.access     = access;
+        this.name       = name;
+        this.superName  = superName;
+        this.interfaces = Collections.unmodifiableList( interfaces );
+        this.fields     = Collections.unmodifiableList( fields );
+        this.methods    = Collections.unmodifiableList( methods );
+    }
+
+    /**
+     * Parses a class file.
+     * @param bytes The contents of the class file.
+     * @return The parsed class.
+     * @throws IOException If the bytes are not a well formed class file.
+     */
+    public static ClassFileInfo parse( byte[] bytes ) throws IOException {
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes ) );
+
+        if( in.readInt() != 0xCAFEBABE ) {
+            throw new IOException( "Not a class file" );
+        }
+
+        //Minor and major version
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        Object[] pool = readConstantPool( in );
+
+        int access = in.readUnsignedShort();
+        String name = className( pool, in.readUnsignedShort() );
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : className( pool, superIndex );
+
+        List<String> interfaces = new ArrayList<>();
+        int interfaceCount = in.readUnsignedShort();
+        for ( int i = 0; i < interfaceCount; i++ ) {
+            interfaces.add( className( pool, in.readUnsignedShort() ) );
+        }
+
+        List<FieldInfo> fields = new ArrayList<>();
+        int fieldCount = in.readUnsignedShort();
+        for ( int i = 0; i < fieldCount; i++ ) {
+            int fieldAccess = in.readUnsignedShort();
+            String fieldName = (String) pool[ in.readUnsignedShort() ];
+            String descriptor = (String) pool[ in.readUnsignedShort() ];
+            skipAttributes( in );
+
+            fields.add( new FieldInfo( fieldAccess, fieldName, descriptor ) );
+        }
+
+        List<MethodInfo> methods = new ArrayList<>();
+        int methodCount = in.readUnsignedShort();
+        for ( int i = 0; i < methodCount; i++ ) {
+            int methodAccess = in.readUnsignedShort();
+            String methodName = (String) pool[ in.readUnsignedShort() ];
+            String descriptor = (String) pool[ in.readUnsignedShort() ];
+            List<String> exceptions = new ArrayList<>();
+
+            int attributeCount = in.readUnsignedShort();
+            for ( int j = 0; j < attributeCount; j++ ) {
+                String attributeName = (String) pool[ in.readUnsignedShort() ];
+                int length = in.readInt();
+
+                if( "Exceptions".equals( attributeName ) ) {
+                    int exceptionCount = in.readUnsignedShort();
+                    for ( int k = 0; k < exceptionCount; k++ ) {
+                        exceptions.add( className( pool, in.readUnsignedShort() ) );
+                    }
+                }
+                else {
+                    in.skipBytes( length );
+                }
+            }
+
+            methods.add( new MethodInfo( methodAccess, methodName, descriptor,
+                        exceptions ) );
+        }
+
+        return new ClassFileInfo( access, name, superName, interfaces, fields, methods );
+    }
+
+    /**
+     * Reads the constant pool. UTF8 entries become strings, class entries
+     * become the index of their name, and every other entry is skipped.
+     */
+    private static Object[] readConstantPool( DataInputStream in ) throws IOException {
+        int count = in.readUnsignedShort();
+        Object[] pool = new Object[count];
+
+        for ( int i = 1; i < count; i++ ) {
+            int tag = in.readUnsignedByte();
+
+            switch( tag ) {
+                case CONSTANT_Utf8:
+                    pool[i] = in.readUTF();
+                    break;
+                case CONSTANT_Class:
+                    pool[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_String:
+                case CONSTANT_MethodType:
+                case CONSTANT_Module:
+                case CONSTANT_Package:
+                    in.skipBytes( 2 );
+                    break;
+                case CONSTANT_MethodHandle:
+                    in.skipBytes( 3 );
+                    break;
+                case CONSTANT_Integer:
+                case CONSTANT_Float:
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref:
+                case CONSTANT_NameAndType:
+                case CONSTANT_Dynamic:
+                case CONSTANT_InvokeDynamic:
+                    in.skipBytes( 4 );
+                    break;
+                case CONSTANT_Long:
+                case CONSTANT_Double:
+                    //Eight byte constants take up two entries
+                    in.skipBytes( 8 );
+                    i++;
+                    break;
+                default:
+                    throw new IOException( "Unknown constant pool tag " + tag );
+            }
+        }
+
+        return pool;
+    }
+
+    private static String className( Object[] pool, int index ) {
+        return ((String) pool[ (Integer) pool[index] ]).replace( '/', '.' );
+    }
+
+    private static void skipAttributes( DataInputStream in ) throws IOException {
+        int count = in.readUnsignedShort();
+
+        for ( int i = 0; i < count; i++ ) {
+            in.readUnsignedShort();
+            in.skipBytes( in.readInt() );
+        }
+    }
+
+    /**
+     * Splits a method descriptor into the descriptors of its parameters.
+     * @param descriptor A method descriptor such as <tt>(I[Ljava/lang/String;)V</tt>
+     * @return The descriptors of the parameters, such as <tt>I</tt> and
+     * <tt>[Ljava/lang/String;</tt>
+     */
+    public static List<String> parameterDescriptors( String descriptor ) {
+        List<String> params = new ArrayList<>();
+        int i = 1;
+
+        while( descriptor.charAt( i ) != ')' ) {
+            int start = i;
+
+            while( descriptor.charAt( i ) == '[' ) {
+                i++;
+            }
+
+            if( descriptor.charAt( i ) == 'L' ) {
+                i = descriptor.indexOf( ';', i );
+            }
+
+            params.add( descriptor.substring( start, ++i ) );
+        }
+
+        return params;
+    }
+
+    /**
+     * @param descriptor A method descriptor.
+     * @return The descriptor of the method's return type.
+     */
+    public static String returnDescriptor( String descriptor ) {
+        return descriptor.substring( descriptor.indexOf( ')' ) + 1 );
+    }
+
+    /**
+     * Turns a field descriptor into a Java type name, the way
+     * <tt>Class.getTypeName</tt> would write it.
+     * @param descriptor A field descriptor such as <tt>[Ljava/lang/String;</tt>
+     * @return The type name, such as <tt>java.lang.String[]</tt>
+     */
+    public static String typeName( String descriptor ) {
+        int dimensions = 0;
+
+        while( descriptor.charAt( dimensions ) == '[' ) {
+            dimensions++;
+        }
+
+        StringBuilder sb = new StringBuilder( elementTypeName( descriptor.substring( dimensions ) ) );
+
+        for ( int i = 0; i < dimensions; i++ ) {
+            sb.append( "[]" );
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Turns a field descriptor into a binary class name, the way
+     * <tt>Class.getName</tt> would write it.
+     * @param descriptor A field descriptor.
+     * @return The name, such as <tt>int</tt>, <tt>java.lang.String</tt> or
+     * <tt>[Ljava.lang.String;</tt>
+     */
+    public static String binaryName( String descriptor ) {
+        if( descriptor.startsWith( "[" ) ) {
+            return descriptor.replace( '/', '.' );
+        }
+
+        return elementTypeName( descriptor );
+    }
+
+    private static String elementTypeName( String descriptor ) {
+        switch( descriptor.charAt( 0 ) ) {
+            case 'B': return "byte";
+            case 'C': return "char";
+            case 'D': return "double";
+            case 'F': return "float";
+            case 'I': return "int";
+            case 'J': return "long";
+            case 'S': return "short";
+            case 'Z': return "boolean";
+            case 'V': return "void";
+            default:  return descriptor.substring( 1, descriptor.length() - 1 ).replace( '/', '.' );
+        }
+    }
+
+    public int getAccess() {
+        return this.access;
+    }
+
+    public boolean isInterface() {
+        return (this.access & ACC_INTERFACE) != 0;
+    }
+
+    public boolean isEnum() {
+        return (this.access & ACC_ENUM) != 0;
+    }
+
+    /** @return The binary name of the class, such as <tt>java.util.Map$Entry</tt> */
+    public String getName() {
+        return this.name;
+    }
+
+    public String getSuperName() {
+        return this.superName;
+    }
+
+    public List<String> getInterfaces() {
+        return this.interfaces;
+    }
+
+    public List<FieldInfo> getFields() {
+        return this.fields;
+    }
+
+    /** @return Every method of the class, including constructors and initializers */
+    public List<MethodInfo> getMethods() {
+        return this.methods;
+    }
+
+    /**
+     * A field declared in a class file.
+     */
+    public static class FieldInfo {
+        private final int access;
+        private final String name;
+        private final String descriptor;
+
+        FieldInfo( int access, String name, String descriptor ) {
+            this.access     = access;
+            this.name       = name;
+            this.descriptor = descriptor;
+        }
+
+        public int getAccess() {
+            return this.access;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescriptor() {
+            return this.descriptor;
+        }
+
+        /** @return Whether the field is one of its enum's constants */
+        public boolean isEnumConstant() {
+            return (this.access & ACC_ENUM) != 0;
+        }
+    }
+
+    /**
+     * A method declared in a class file.
+     */
+    public static class MethodInfo {
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final List<String> exceptions;
+
+        MethodInfo( int access, String name, String descriptor, List<String> exceptions ) {
+            this.access     = access;
+            this.name       = name;
+            this.descriptor = descriptor;
+            this.exceptions = Collections.unmodifiableList( exceptions );
+        }
+
+        public int getAccess() {
+            return this.access;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescriptor() {
+            return this.descriptor;
+        }
+
+        /** @return The binary names of the exceptions the method declares */
+        public List<String> getExceptions() {
+            return this.exceptions;
+        }
+
+        public boolean isConstructor() {
+            return this.name.equals( "<init>" );
+        }
+
+        public boolean isStaticInitializer() {
+            return this.name.equals( "<clinit>" );
+        }
+
+        /** @return The descriptors of the method's parameters */
+        public List<String> getParameterDescriptors() {
+            return parameterDescriptors( this.descriptor );
+        }
+
+        /** @return The descriptor of the method's return type */
+        public String getReturnDescriptor() {
+            return returnDescriptor( this.descriptor );
+        }
+    }
+}
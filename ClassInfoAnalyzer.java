@@ -1,25 +1,76 @@
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
-import javax.tools.ToolProvider;
-import javax.tools.JavaCompiler;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import java.lang.reflect.*;
-import java.util.regex.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Prints out all of the info about a class's methods, and those methods
  * parameters.
+ *
+ * By default the class is analyzed straight from its class file, so that it
+ * is never loaded or initialized and its dependencies do not have to be
+ * present. The old reflective analysis is still available through
+ * <tt>--reflect</tt>, and both produce the same dictionary.
+ *
+ * With <tt>--json</tt> each class is written as a single line of JSON instead
+ * of the report and dictionary:
+ * <tt>{"class":"Foo","methods":{"bar":{"(int,class java.lang.String)":"int"}}}</tt>
+ * Overloads of a method share its entry, keyed by their parameter lists. A
+ * <tt>fingerprints</tt> member follows, with the fingerprint of the bytecode
+ * that calling each method may run (see <tt>MethodFingerprints</tt>), and a
+ * <tt>types</tt> member, describing how to construct the parameter types
+ * through a <tt>TypeGraph</tt>.
+ *
+ * With <tt>--bulk</tt> the arguments are jars, directories or class paths, and
+ * every class in them is analyzed in parallel. Each JSON line is written as
+ * soon as its class is done, so the order of the lines is not fixed.
+ *
+ * Only the dictionary and the JSON are written to standard out; the human
+ * readable report, usage and errors go to standard error. Run with
+ * <tt>-Dsuitegenerator.metrics=true</tt> to also have the time spent analyzing
+ * reported there (see <tt>Metrics</tt>).
  */
 public class ClassInfoAnalyzer {
-    /**
-     * This regular expression identifies primative types and strings, as well
-     * as arrays containing those primatives types and strings.
-     */
-    private static final String primativeTypes =
-        "(long|int|short|byte|char|float|double|boolean|(.*String.*))(\\[\\d*\\])?";
 
-    private static final Pattern pattern = Pattern.compile( primativeTypes );
+    //How long reports, JSON records and bulk analyses take
+    private static final LatencyHistogram reportTime = Metrics.histogram( "analyzer.report" );
+    private static final LatencyHistogram jsonTime = Metrics.histogram( "analyzer.json" );
+    private static final LatencyHistogram bulkTime = Metrics.histogram( "analyzer.bulk" );
+
+    //How many records were found in the index, and how many were not
+    private static final LongAdder indexHits = Metrics.counter( "analyzer.index.hits" );
+    private static final LongAdder indexMisses = Metrics.counter( "analyzer.index.misses" );
 
     /** Empty Constructor */
     private ClassInfoAnalyzer() { }
@@ -31,16 +82,19 @@ public class ClassInfoAnalyzer {
         Constructor<?>[] constructors = clazz.getConstructors();
         StringBuilder str = new StringBuilder("");
 
+        //Abstract classes can not be constructed, whatever they declare
+        if( Modifier.isAbstract( clazz.getModifiers() ) ) {
+            return str.toString();
+        }
+
         //For every constructor...
         for ( Constructor constructor : constructors ) {
             //pad that shit and....
             for (int i = 0; i < tabDepth; i++) {
-                System.out.print("\t");
                 str.append("\t");
             }
 
-            //Print out information about the constructor.
-            System.out.println(constructor);
+            //Add information about the constructor.
             str.append( constructor ).append( "\n" );
         }
 
@@ -48,45 +102,52 @@ public class ClassInfoAnalyzer {
     }
 
     /**
-     * Prints out information about the contained classes methods
+     * Prints out information about the contained classes methods to standard
+     * error, and their dictionary to standard out.
      */
     public static String analyzeMethods( Class<?> classToAnalyze ) {
+        long start = System.nanoTime();
         StringBuilder dictionary = new StringBuilder();
         Method[] methods = classToAnalyze.getDeclaredMethods();
 
+        //The constructors of each parameter type, analyzed once
+        Map<Class<?>, String> constructors = new HashMap<>();
+
         // For every method in the class...
         for( Method method : methods ) {
-            System.out.println( method.getName() + ":" );
+            System.err.println( method.getName() + ":" );
 
             // Map the method name to a dictionary
             dictionary.append( "{\"" + method.getName() ).append("\":{(");
 
             for ( int i = 0; i < method.getName().length() + 1; i++)  {
-                System.out.print("-");
+                System.err.print("-");
             }
-            System.out.println();
+            System.err.println();
 
             // Get it's parameters.
             Class<?>[] methodParameters = method.getParameterTypes();
 
             if( methodParameters.length > 0 )
-                System.out.println("Takes as parameters:");
+                System.err.println("Takes as parameters:");
 
             // For each parameter...
             for( Class<?> methodParameter : methodParameters ) {
-                Matcher m = pattern.matcher( methodParameter.toString() );
-
                 dictionary.append( "\"" + methodParameter.toString() + "\"," );
 
-                // Print its name if it is a primative type
-                if( m.matches() ) {
-                    System.out.println( "\t" + methodParameter );
+                String parameterConstructors = TypeGraph.kindOf( methodParameter ).isLiteral()
+                    ? "" : constructors.computeIfAbsent( methodParameter,
+                            c -> analyzeConstructors( c, 2 ) );
 
+                // Print its name if it is written as a literal, or can not
+                // be constructed
+                if( parameterConstructors.isEmpty() ) {
+                    System.err.println( "\t" + methodParameter );
                 }
 
-                //And analyze the constructors of it otherwise
+                //And print the constructors of it otherwise
                 else {
-                    analyzeConstructors( methodParameter, 2 );
+                    System.err.print( parameterConstructors );
                 }
             }
 
@@ -94,11 +155,11 @@ public class ClassInfoAnalyzer {
             dictionary.append( "):" );
 
             // Prints out return value
-            System.out.println( "Returns:");
-            System.out.println( "\t" + method.getReturnType() );
+            System.err.println( "Returns:");
+            System.err.println( "\t" + method.getReturnType() );
 
             dictionary.append( "\"" + method.getReturnType() ).append( "\"}}," );
-            System.out.println("---------------------------------------------");
+            System.err.println("---------------------------------------------");
         }
 
         // End the dictionary string and print it
@@ -106,24 +167,512 @@ public class ClassInfoAnalyzer {
         dictionaryString.replaceAll( ",(\\))", "\\1" );
         System.out.println(dictionary);
 
+        reportTime.recordSince( start );
+
         return dictionary.toString();
     }
 
-    public static void main (String[] args) {
-        String filename = args[0];
+    /**
+     * Prints out information about the methods of a class file, without
+     * loading it.
+     * @param classFile The contents of the class file.
+     * @param types The graph that the types it refers to are described by.
+     * Types that can not be found are treated as classes without any public
+     * constructors.
+     * @return The same dictionary that <tt>analyzeMethods</tt> returns.
+     * @throws IOException If the class file is malformed.
+     */
+    public static String analyzeClassFile( byte[] classFile, TypeGraph types )
+            throws IOException {
+        long start = System.nanoTime();
+        StringBuilder dictionary = new StringBuilder();
+        ClassFileInfo info = ClassFileInfo.parse( classFile );
+
+        // For every method in the class...
+        for( ClassFileInfo.MethodInfo method : info.getMethods() ) {
+            if( method.isConstructor() || method.isStaticInitializer() ) {
+                continue;
+            }
+
+            System.err.println( method.getName() + ":" );
+
+            // Map the method name to a dictionary
+            dictionary.append( "{\"" + method.getName() ).append("\":{(");
+
+            for ( int i = 0; i < method.getName().length() + 1; i++)  {
+                System.err.print("-");
+            }
+            System.err.println();
+
+            // Get it's parameters.
+            List<String> methodParameters = method.getParameterDescriptors();
+
+            if( methodParameters.size() > 0 )
+                System.err.println("Takes as parameters:");
+
+            // For each parameter...
+            for( String methodParameter : methodParameters ) {
+                TypeGraph.Node type = types.node( methodParameter );
+
+                dictionary.append( "\"" + type + "\"," );
+
+                // Print its name if it is written as a literal, or can not
+                // be constructed
+                if( type.getKind().isLiteral() || type.getConstructors().isEmpty() ) {
+                    System.err.println( "\t" + type );
+                }
+
+                //And print the constructors of it otherwise
+                else {
+                    System.err.print( analyzeConstructors( type, 2 ) );
+                }
+            }
+
+            // End the tuple and map that to the return value
+            dictionary.append( "):" );
+
+            // Prints out return value
+            String returnType = types.describe( method.getReturnDescriptor() );
+            System.err.println( "Returns:");
+            System.err.println( "\t" + returnType );
+
+            dictionary.append( "\"" + returnType ).append( "\"}}," );
+            System.err.println("---------------------------------------------");
+        }
+
+        System.out.println(dictionary);
+
+        reportTime.recordSince( start );
+
+        return dictionary.toString();
+    }
+
+    /**
+     * Describes the methods of a class file as a single line of JSON.
+     * @param classFile The contents of the class file.
+     * @param resources Where the class files of the types it refers to are
+     * looked up.
+     * @return The JSON record of the class.
+     * @throws IOException If the class file is malformed.
+     */
+    public static String toJson( byte[] classFile, ClassLoader resources )
+            throws IOException {
+        return toJson( classFile, new TypeGraph( resources ), null );
+    }
+
+    /**
+     * Describes the methods of a class file as a single line of JSON, reusing
+     * the description of an identical class file if it was described before.
+     * Along with the methods, the record describes how to construct the types
+     * of their parameters, as far as the depth of the graph reaches:
+     * <tt>"types":{"class Foo":{"kind":"CLASS","constructors":[["int"]]}}</tt>
+     * Those types are other classes, which the index does not key on, so only
+     * the class's own analysis is reused and its types are described afresh.
+     * @param classFile The contents of the class file.
+     * @param types The graph that the types it refers to are described by.
+     * @param index Where descriptions are persisted, or null.
+     * @return The JSON record of the class.
+     * @throws IOException If the class file is malformed.
+     */
+    public static String toJson( byte[] classFile, TypeGraph types,
+            AnalysisIndex index ) throws IOException {
+        if( index == null ) {
+            return withTypes( analyze( classFile, ClassFileInfo.parse( classFile ), types ), types );
+        }
+
+        String key = AnalysisIndex.key( classFile, "fingerprints parameters" );
+        String analysis = index.get( key );
+
+        if( analysis == null ) {
+            indexMisses.increment();
+            analysis = analyze( classFile, ClassFileInfo.parse( classFile ), types );
+            index.put( key, analysis );
+        }
+        else {
+            indexHits.increment();
+        }
+
+        return withTypes( analysis, types );
+    }
+
+    /**
+     * Analyzes a class on its own.
+     * @return The JSON record of the class without its <tt>types</tt> member,
+     * followed by a line with the descriptors of its parameter types,
+     * separated by spaces.
+     */
+    private static String analyze( byte[] classFile, ClassFileInfo info, TypeGraph types )
+            throws IOException {
+        long start = System.nanoTime();
+        MethodFingerprints fingerprints = MethodFingerprints.of( classFile );
+
+        //Method name -> parameter list -> return type, overloads grouped together
+        Map<String, Map<String, String>> methods = new LinkedHashMap<>();
+        Set<String> parameterTypes = new LinkedHashSet<>();
+
+        for ( ClassFileInfo.MethodInfo method : info.getMethods() ) {
+            if( method.isConstructor() || method.isStaticInitializer() ) {
+                continue;
+            }
+
+            StringBuilder params = new StringBuilder( "(" );
+
+            for ( String param : method.getParameterDescriptors() ) {
+                if( params.length() > 1 ) {
+                    params.append( "," );
+                }
+
+                params.append( types.describe( param ) );
+                parameterTypes.add( param );
+            }
+
+            methods.computeIfAbsent( method.getName(), k -> new LinkedHashMap<>() )
+                .put( params.append( ")" ).toString(),
+                        types.describe( method.getReturnDescriptor() ) );
+        }
+
+        JsonWriter json = new JsonWriter().beginObject()
+            .name( "class" ).value( info.getName() )
+            .name( "methods" ).beginObject();
+
+        for ( Map.Entry<String, Map<String, String>> method : methods.entrySet() ) {
+            json.name( method.getKey() ).beginObject();
+
+            for ( Map.Entry<String, String> overload : method.getValue().entrySet() ) {
+                json.name( overload.getKey() ).value( overload.getValue() );
+            }
+
+            json.endObject();
+        }
+
+        //What a test of each method runs, so that a client can tell which changed
+        json.endObject().name( "fingerprints" ).beginObject();
+
+        for ( String method : methods.keySet() ) {
+            json.name( method ).value( fingerprints.getFingerprint( method, false ) );
+        }
+
+        //Descriptors never contain whitespace, and the JSON never contains a newline
+        String analysis = json.endObject().endObject().toString() + "\n"
+            + String.join( " ", parameterTypes );
+        jsonTime.recordSince( start );
+
+        return analysis;
+    }
+
+    /**
+     * Completes the analysis of a class with the <tt>types</tt> member.
+     * @param analysis The analysis, as returned by <tt>analyze</tt>.
+     * @return The JSON record of the class.
+     */
+    private static String withTypes( String analysis, TypeGraph types ) {
+        int split = analysis.lastIndexOf( '\n' );
+        String parameters = analysis.substring( split + 1 );
+        List<String> parameterTypes = parameters.isEmpty()
+            ? Collections.<String>emptyList() : Arrays.asList( parameters.split( " " ) );
+
+        //Reopen the record's object to add the last member
+        StringBuilder sb = new StringBuilder( analysis.length() + 256 );
+        sb.append( analysis, 0, split - 1 ).append( ",\"types\":" );
+        types.write( new JsonWriter( sb ), types.reachable( parameterTypes ) );
+
+        return sb.append( '}' ).toString();
+    }
+
+    /**
+     * Analyzes every class in a set of jars and directories in parallel, and
+     * writes the JSON record of each class as soon as it is done. A class
+     * that can not be analyzed gets a record with an <tt>error</tt> member
+     * instead of <tt>methods</tt>.
+     * @param classPath Jars and directories, separated by the path separator.
+     * @param out Where the records are written to, one per line.
+     * @param index Where records are persisted, so that unchanged classes are
+     * not analyzed again, or null.
+     * @param depth How many levels of parameter types are described.
+     * @return How many classes were analyzed.
+     */
+    public static int analyzeBulk( String classPath, Writer out, AnalysisIndex index,
+            int depth ) throws IOException {
+        long start = System.nanoTime();
+        String[] elements = classPath.split( File.pathSeparator );
+        List<URL> urls = new ArrayList<>();
+        List<ZipFile> jars = new ArrayList<>();
+        List<Callable<String>> tasks = new ArrayList<>();
+
+        for ( String element : elements ) {
+            if( ! element.isEmpty() ) {
+                urls.add( new File( element ).toURI().toURL() );
+            }
+        }
+
+        //Every class is resolved against the whole class path
+        URLClassLoader resources = new URLClassLoader( urls.toArray( new URL[0] ),
+                ClassLoader.getPlatformClassLoader() );
+        TypeGraph types = new TypeGraph( resources, depth );
+
+        try {
+            for ( String element : elements ) {
+                File file = new File( element );
+
+                if( file.isDirectory() ) {
+                    addDirectory( file.toPath(), types, index, tasks );
+                }
+                else if( file.isFile() ) {
+                    ZipFile jar = new ZipFile( file );
+                    jars.add( jar );
+                    addJar( jar, types, index, tasks );
+                }
+            }
+
+            ForkJoinPool pool = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+            CompletionService<String> done = new ExecutorCompletionService<>( pool );
 
-        //Verify that args array is at least length 1
-        if( args.length < 1 ) {
-            System.out.println("Usage: java ClassInfoAnalyzer <class_filename>");
+            try {
+                for ( Callable<String> task : tasks ) {
+                    done.submit( task );
+                }
+
+                for ( int i = 0; i < tasks.size(); i++ ) {
+                    //Only flush once there is nothing else ready to be written
+                    Future<String> record = done.poll();
+
+                    if( record == null ) {
+                        out.flush();
+                        record = done.take();
+                    }
+
+                    out.write( record.get() );
+                    out.write( "\n" );
+                }
+
+                out.flush();
+            }
+            catch( InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+            }
+            catch( ExecutionException ee ) {
+                System.err.println( "In ClassInfoAnalyzer.analyzeBulk:" );
+                ee.getCause().printStackTrace();
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
+        finally {
+            for ( ZipFile jar : jars ) {
+                jar.close();
+            }
+
+            resources.close();
+        }
+
+        bulkTime.recordSince( start );
+
+        return tasks.size();
+    }
+
+    private static void addDirectory( Path root, final TypeGraph types,
+            final AnalysisIndex index, List<Callable<String>> tasks ) throws IOException {
+        List<Path> files;
+
+        try( Stream<Path> walk = Files.walk( root ) ) {
+            files = walk.filter( p -> isClassFile( p.toString() ) )
+                .collect( Collectors.toList() );
+        }
+
+        for ( final Path file : files ) {
+            final String name = className( root.relativize( file ).toString()
+                    .replace( File.separatorChar, '/' ) );
+            tasks.add( () -> record( name, Files.readAllBytes( file ), types, index ) );
+        }
+    }
+
+    private static void addJar( final ZipFile jar, final TypeGraph types,
+            final AnalysisIndex index, List<Callable<String>> tasks ) {
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+
+        while( entries.hasMoreElements() ) {
+            final ZipEntry entry = entries.nextElement();
+
+            if( entry.isDirectory() || ! isClassFile( entry.getName() ) ) {
+                continue;
+            }
+
+            tasks.add( () -> {
+                try( InputStream in = jar.getInputStream( entry ) ) {
+                    return record( className( entry.getName() ), TypeGraph.readFully( in ), types, index );
+                }
+            });
+        }
+    }
+
+    /**
+     * @return Whether a path names a class file that describes a class, as
+     * opposed to a module or package.
+     */
+    private static boolean isClassFile( String path ) {
+        return path.endsWith( ".class" ) && ! path.endsWith( "module-info.class" )
+            && ! path.endsWith( "package-info.class" );
+    }
+
+    private static String className( String path ) {
+        return path.substring( 0, path.length() - ".class".length() ).replace( '/', '.' );
+    }
+
+    /**
+     * @return The JSON record of a class, or a record of why it could not be
+     * analyzed.
+     */
+    private static String record( String name, byte[] classFile, TypeGraph types,
+            AnalysisIndex index ) {
+        try {
+            return toJson( classFile, types, index );
+        }
+        catch( IOException | RuntimeException e ) {
+            return new JsonWriter().beginObject()
+                .name( "class" ).value( name )
+                .name( "error" ).value( e.toString() )
+                .endObject().toString();
+        }
+    }
+
+    /**
+     * Lists the public constructors of a type the way
+     * <tt>Constructor.toString</tt> would.
+     */
+    private static String analyzeConstructors( TypeGraph.Node type, int tabDepth ) {
+        StringBuilder str = new StringBuilder("");
+
+        //For every constructor...
+        for ( TypeGraph.Factory constructor : type.getConstructors() ) {
+            for (int i = 0; i < tabDepth; i++) {
+                str.append("\t");
+            }
+
+            str.append( "public " ).append( type.getName() ).append( "(" );
+            List<String> params = constructor.getParams();
+
+            for ( int i = 0; i < params.size(); i++ ) {
+                if( i > 0 ) {
+                    str.append( "," );
+                }
+
+                str.append( ClassFileInfo.typeName( params.get( i ) ) );
+            }
+
+            str.append( ")" );
+
+            if( ! constructor.getExceptions().isEmpty() ) {
+                str.append( " throws " ).append(
+                        String.join( ",", constructor.getExceptions() ) );
+            }
+
+            str.append( "\n" );
+        }
+
+        return str.toString();
+    }
+
+    /**
+     * Reads the class file of a class named on the command line.
+     * @param classname Either the binary name of a class, which is looked up
+     * in the working directory and then on the class path, or the path of a
+     * class file.
+     * @return The contents of the class file.
+     */
+    private static byte[] readClassFile( String classname )
+            throws ClassNotFoundException, IOException {
+        File file = new File( classname );
+
+        if( classname.endsWith( ".class" ) && file.isFile() ) {
+            return Files.readAllBytes( file.toPath() );
+        }
+
+        byte[] bytes = new SubmissionClassLoader( new File( "." ) ).readClassFile( classname );
+
+        if( bytes == null ) {
+            bytes = TypeGraph.readResource( ClassLoader.getSystemClassLoader(), classname );
+        }
+
+        if( bytes == null ) {
+            throw new ClassNotFoundException( classname );
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return Where the types that a class named on the command line refers
+     * to are looked up: next to its class file, or in the working directory.
+     */
+    private static ClassLoader resourcesFor( String classname ) {
+        File file = new File( classname );
+
+        if( classname.endsWith( ".class" ) && file.isFile() ) {
+            return new SubmissionClassLoader( file.getAbsoluteFile().getParentFile() );
+        }
+
+        return new SubmissionClassLoader( new File( "." ) );
+    }
+
+    /**
+     * <tt>java ClassInfoAnalyzer [--reflect | --json] &lt;class_filename&gt;...</tt>
+     * <tt>java ClassInfoAnalyzer --bulk &lt;jar, directory or class path&gt;...</tt>
+     * Either JSON mode takes <tt>--index &lt;file&gt;</tt>, to look classes up
+     * in and add them to an <tt>AnalysisIndex</tt>, and <tt>--depth &lt;n&gt;</tt>,
+     * to describe <tt>n</tt> levels of parameter types.
+     */
+    public static void main (String[] args) throws IOException {
+        List<String> classnames = new ArrayList<>();
+        boolean reflect = false;
+        boolean json = false;
+        boolean bulk = false;
+        AnalysisIndex index = null;
+        int depth = TypeGraph.DEFAULT_DEPTH;
+
+        for ( int i = 0; i < args.length; i++ ) {
+            String arg = args[i];
+
+            if( arg.equals( "--index" ) && i + 1 < args.length ) {
+                index = new AnalysisIndex( new File( args[++i] ) );
+            }
+            else if( arg.equals( "--depth" ) && i + 1 < args.length ) {
+                depth = Integer.parseInt( args[++i] );
+            }
+            else if( arg.equals( "--reflect" ) ) {
+                reflect = true;
+            }
+            else if( arg.equals( "--json" ) ) {
+                json = true;
+            }
+            else if( arg.equals( "--bulk" ) ) {
+                bulk = true;
+            }
+            else {
+                classnames.add( arg );
+            }
+        }
+
+        //Verify that there is at least one class to analyze
+        if( classnames.isEmpty() ) {
+            System.err.println("Usage: java ClassInfoAnalyzer [--reflect | --json [--index <file>] [--depth <n>]] <class_filename>...");
+            System.err.println("       java ClassInfoAnalyzer --bulk [--index <file>] [--depth <n>] <jar, directory or class path>...");
             System.exit(0);
         }
 
+        else if( bulk ) {
+            Writer out = new BufferedWriter( new OutputStreamWriter( System.out, "UTF-8" ) );
+
+            for ( String classPath : classnames ) {
+                analyzeBulk( classPath, out, index, depth );
+            }
+        }
+
         else {
             /*
-             * Load the class using the class loader and then pass that
-             * class to the analyzeMethods function. The std out from that
-             * function is a Python dictionary that maps the class in the
-             * following way:
+             * Read the class file, or load the class when reflecting, and
+             * analyze its methods. The std out from that is a Python
+             * dictionary that maps the class in the following way:
              *
              * { Method -> { (argument list) -> return type } }
              *
@@ -131,23 +680,43 @@ public class ClassInfoAnalyzer {
              * containing argument types to the return type of the method.
              */
 
-            //Iterate over each String in args and attempt to perform the
+            //Iterate over each class name and attempt to perform the
             //analyze methods procedure on it
-            for ( String classname : args ) {
-                System.out.println("Generating the report for " + classname + ":" );
+            for ( String classname : classnames ) {
+                if( ! json ) {
+                    System.err.println("Generating the report for " + classname + ":" );
+                }
 
                 try {
-                    //Get the system's class loader and load the users class
-                    ClassLoader loader = ToolProvider.getSystemToolClassLoader();
-                    Class<?> classToAnalyze = loader.loadClass( filename );
+                    if( reflect ) {
+                        //Load the users class on its own, like the tests do
+                        ClassLoader loader = new SubmissionClassLoader( new File( "." ) );
+                        Class<?> classToAnalyze = loader.loadClass( classname );
 
-                    //Analyze class and create dictionary
-                    ClassInfoAnalyzer.analyzeMethods( classToAnalyze );
+                        //Analyze class and create dictionary
+                        ClassInfoAnalyzer.analyzeMethods( classToAnalyze );
+                    }
+                    else if( json ) {
+                        System.out.println( ClassInfoAnalyzer.toJson( readClassFile( classname ),
+                                    new TypeGraph( resourcesFor( classname ), depth ), index ) );
+                    }
+                    else {
+                        ClassInfoAnalyzer.analyzeClassFile( readClassFile( classname ),
+                                new TypeGraph( resourcesFor( classname ), depth ) );
+                    }
                 }
                 catch(ClassNotFoundException cnfe) {
                     System.err.println("Error! Undefined class passed to analyzer!");
                 }
+                catch(IOException ioe) {
+                    System.err.println("Error! Malformed class file passed to analyzer!");
+                }
             }
         }
+
+        //Write out whatever the index is still holding back
+        if( index != null ) {
+            index.close();
+        }
     }
 }
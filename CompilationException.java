@@ -0,0 +1,21 @@
+/**
+ * Reported as the exception of a test whose suite did not compile, so that
+ * the compiler's diagnostics travel with the result of the test.
+ */
+public class CompilationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final CompilationResult result;
+
+    /**
+     * @param result The failed compilation.
+     */
+    public CompilationException( CompilationResult result ) {
+        super( result.describe() );
+        this.result = result;
+    }
+
+    public CompilationResult getResult() {
+        return this.result;
+    }
+}
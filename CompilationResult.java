@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of compiling generated source: the class files it produced, and
+ * everything the compiler had to say about it.
+ */
+public class CompilationResult {
+
+    /**
+     * A single error, warning or note reported by the compiler.
+     */
+    public static class Diagnostic {
+        private final String kind;
+        private final String source;
+        private final long line;
+        private final long column;
+        private final String code;
+        private final String message;
+
+        /**
+         * @param kind The kind of diagnostic, such as <tt>ERROR</tt>.
+         * @param source The name of the class whose source it is about, or
+         * null if it is not about any source.
+         * @param line The line it is about, or -1.
+         * @param column The column it is about, or -1.
+         * @param code The compiler's key for the diagnostic, such as
+         * <tt>compiler.err.cant.resolve.location</tt>.
+         * @param message The message, as the compiler would print it.
+         */
+        public Diagnostic( String kind, String source, long line, long column,
+                String code, String message ) {
+            this.kind       = kind;
+            this.source     = source;
+            this.line       = line;
+            this.column     = column;
+            this.code       = code;
+            this.message    = message;
+        }
+
+        public String getKind() {
+            return this.kind;
+        }
+
+        public String getSource() {
+            return this.source;
+        }
+
+        public long getLine() {
+            return this.line;
+        }
+
+        public long getColumn() {
+            return this.column;
+        }
+
+        public String getCode() {
+            return this.code;
+        }
+
+        public String getMessage() {
+            return this.message;
+        }
+
+        public boolean isError() {
+            return this.kind.equals( "ERROR" );
+        }
+
+        /**
+         * @return The diagnostic the way javac prints it, for example
+         * <tt>Suite.java:12:9: error: cannot find symbol</tt>.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+
+            if( this.source != null ) {
+                sb.append( this.source ).append( ".java:" );
+
+                if( this.line >= 0 ) {
+                    sb.append( this.line ).append( ':' ).append( this.column ).append( ':' );
+                }
+
+                sb.append( ' ' );
+            }
+
+            sb.append( this.kind.toLowerCase() ).append( ": " ).append( this.message );
+            return sb.toString();
+        }
+    }
+
+    private final Map<String, byte[]> classes;
+    private final List<Diagnostic> diagnostics;
+    private final long nanos;
+
+    /**
+     * @param classes The bytecode of the compiled classes keyed by their
+     * binary names, or null if the compilation failed.
+     * @param diagnostics Everything the compiler reported.
+     * @param nanos How long the compilation took, in nanoseconds.
+     */
+    public CompilationResult( Map<String, byte[]> classes,
+            List<Diagnostic> diagnostics, long nanos ) {
+        this.classes        = classes;
+        this.diagnostics    = Collections.unmodifiableList( new ArrayList<>( diagnostics ) );
+        this.nanos          = nanos;
+    }
+
+    public boolean succeeded() {
+        return this.classes != null;
+    }
+
+    /**
+     * @return The bytecode of the compiled classes keyed by their binary
+     * names, or null if the compilation failed.
+     */
+    public Map<String, byte[]> getClasses() {
+        return this.classes;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return this.diagnostics;
+    }
+
+    /** @return The errors among the diagnostics */
+    public List<Diagnostic> getErrors() {
+        List<Diagnostic> errors = new ArrayList<>();
+
+        for ( Diagnostic diagnostic : this.diagnostics ) {
+            if( diagnostic.isError() ) {
+                errors.add( diagnostic );
+            }
+        }
+
+        return errors;
+    }
+
+    public long getNanos() {
+        return this.nanos;
+    }
+
+    /**
+     * @param source The name of a class whose source was compiled.
+     * @return A failed result holding only the diagnostics about that class.
+     */
+    public CompilationResult forSource( String source ) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+
+        for ( Diagnostic diagnostic : this.diagnostics ) {
+            if( source.equals( diagnostic.getSource() ) ) {
+                diagnostics.add( diagnostic );
+            }
+        }
+
+        return new CompilationResult( null, diagnostics, this.nanos );
+    }
+
+    /**
+     * @return <tt>Compilation failed!</tt> followed by each error on its own
+     * line, or an empty string if the compilation succeeded.
+     */
+    public String describe() {
+        if( succeeded() ) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder( "Compilation failed!" );
+
+        for ( Diagnostic error : getErrors() ) {
+            sb.append( '\n' ).append( error );
+        }
+
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return succeeded() ? "Compiled " + this.classes.size() + " classes" : describe();
+    }
+}
@@ -0,0 +1,379 @@
+import javax.tools.DiagnosticCollector;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles generated source in memory, keeping the compiler warm between
+ * compilations.
+ *
+ * Every compilation takes a slot out of a pool, one pool per class path. A
+ * slot is a file manager with the class path already set on it and, where the
+ * JDK allows it, a pool of javac contexts, so that the symbol tables of the
+ * JDK and of the class path survive from one compilation to the next and a
+ * compilation in a resident JVM only pays for its own classes. A slot is used
+ * by one compilation at a time, and compilations on different threads each
+ * take their own.
+ *
+ * A reused context remembers the classes it has read, so every slot records a
+ * stamp of the class files directly inside the directories of its class path.
+ * Once a class is uploaded, recompiled or removed there, slots with an older
+ * stamp are thrown away rather than reused.
+ *
+ * Contexts are only reused when <tt>jdk.compiler</tt> exports its javac
+ * internals, which is what
+ * <tt>--add-exports jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED</tt>
+ * does. Without it only the file managers are reused.
+ */
+public class CompilationService {
+
+    //Suites never contain annotations, so skip looking for processors
+    private static final List<String> OPTIONS = Arrays.asList( "-proc:none" );
+
+    //The JDK's pool of reusable javac contexts, if it may be used
+    private static final String TASK_POOL = "com.sun.tools.javac.api.JavacTaskPool";
+
+    private final JavaCompiler compiler;
+    private final int maxIdle;
+
+    //How to reach the JDK's context pool, or null if it may not be used
+    private final Method getTask;
+    private final Object worker;
+
+    //Idle slots, by the class path they were set up for
+    private final Map<String, Deque<Slot>> idle = new ConcurrentHashMap<>();
+
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * A file manager, and the javac contexts that were set up with it.
+     */
+    private static final class Slot {
+        final StandardJavaFileManager standard;
+        final MemoryJavaFileManager fileManager;
+        final Object taskPool;
+        final long stamp;
+
+        Slot( StandardJavaFileManager standard, Object taskPool, long stamp ) {
+            this.standard       = standard;
+            this.fileManager    = new MemoryJavaFileManager( standard );
+            this.taskPool       = taskPool;
+            this.stamp          = stamp;
+        }
+    }
+
+    /**
+     * @param compiler The compiler to compile with.
+     * @param maxIdle How many idle slots are kept for each class path, which
+     * should be about the number of concurrent compilations.
+     */
+    public CompilationService( JavaCompiler compiler, int maxIdle ) {
+        if( compiler == null ) {
+            throw new IllegalStateException( "No Java compiler is available, is this a JRE?" );
+        }
+
+        this.compiler   = compiler;
+        this.maxIdle    = maxIdle;
+
+        Method getTask = null;
+        Object worker = null;
+
+        try {
+            Class<?> taskPool = Class.forName( TASK_POOL );
+            Class<?> workerClass = Class.forName( TASK_POOL + "$Worker" );
+
+            //Only usable if the package is exported to this class
+            if( taskPool.getModule().isExported( taskPool.getPackage().getName(),
+                        CompilationService.class.getModule() ) ) {
+                getTask = taskPool.getMethod( "getTask", Writer.class,
+                        JavaFileManager.class, DiagnosticListener.class,
+                        Iterable.class, Iterable.class, Iterable.class, workerClass );
+
+                //The worker just runs the task it is handed
+                worker = Proxy.newProxyInstance( workerClass.getClassLoader(),
+                        new Class<?>[] { workerClass }, ( proxy, method, args ) ->
+                        method.getName().equals( "withTask" )
+                        ? ( (JavaCompiler.CompilationTask) args[0] ).call()
+                        : method.invoke( this, args ) );
+            }
+        }
+        catch( ReflectiveOperationException | RuntimeException e ) {
+            //Fall back to a new context for every compilation
+            getTask = null;
+            worker = null;
+        }
+
+        this.getTask    = getTask;
+        this.worker     = worker;
+    }
+
+    /**
+     * Compiles java source held in memory.
+     * @param sources The source of each class to compile, keyed by the name
+     * of its top level class. They are compiled together in a single task, so
+     * they may refer to each other.
+     * @param classPath The class path the source is compiled against.
+     * @return The compiled classes, or the diagnostics of why they did not
+     * compile.
+     */
+    public CompilationResult compile( Map<String, String> sources, List<File> classPath ) {
+        long start = System.nanoTime();
+        String key = key( classPath );
+
+        List<JavaFileObject> units = new ArrayList<>();
+
+        for ( Map.Entry<String, String> source : sources.entrySet() ) {
+            units.add( MemoryJavaFileManager.source( source.getKey(), source.getValue() ) );
+        }
+
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        Slot slot = acquire( key, classPath );
+        boolean reusable = false;
+
+        try {
+            slot.fileManager.clear();
+            boolean success = call( slot, collector, units );
+            reusable = true;
+
+            long elapsed = System.nanoTime() - start;
+            this.compilations.incrementAndGet();
+            this.nanos.addAndGet( elapsed );
+
+            if( ! success ) {
+                this.failures.incrementAndGet();
+            }
+
+            return new CompilationResult( success ? slot.fileManager.getClassBytes() : null,
+                    diagnostics( collector ), elapsed );
+        }
+        finally {
+            //A compiler that blew up may have left the slot in any state
+            if( reusable ) {
+                release( key, slot );
+            }
+            else {
+                close( slot );
+            }
+        }
+    }
+
+    /**
+     * Runs a single compilation task in a slot.
+     * @return Whether the compilation succeeded.
+     */
+    private boolean call( Slot slot, DiagnosticCollector<JavaFileObject> collector,
+            List<JavaFileObject> units ) {
+        if( slot.taskPool == null ) {
+            return this.compiler.getTask( null, slot.fileManager, collector,
+                    OPTIONS, null, units ).call();
+        }
+
+        try {
+            return (Boolean) this.getTask.invoke( slot.taskPool, null,
+                    slot.fileManager, collector, OPTIONS, null, units, this.worker );
+        }
+        catch( InvocationTargetException ite ) {
+            if( ite.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException) ite.getCause();
+            }
+
+            throw new IllegalStateException( ite.getCause() );
+        }
+        catch( IllegalAccessException iae ) {
+            throw new IllegalStateException( iae );
+        }
+    }
+
+    /**
+     * Takes an idle slot for a class path, or creates one. Slots set up
+     * before the class path last changed are closed.
+     */
+    private Slot acquire( String key, List<File> classPath ) {
+        Deque<Slot> pool = this.idle.computeIfAbsent( key, k -> new ConcurrentLinkedDeque<>() );
+        long stamp = stamp( classPath );
+        Slot slot;
+
+        while( (slot = pool.pollFirst()) != null ) {
+            if( slot.stamp == stamp ) {
+                return slot;
+            }
+
+            this.stale.incrementAndGet();
+            close( slot );
+        }
+
+        StandardJavaFileManager standard = this.compiler.getStandardFileManager(
+                null, null, StandardCharsets.UTF_8 );
+
+        try {
+            standard.setLocation( StandardLocation.CLASS_PATH, classPath );
+        }
+        catch( IOException ioe ) {
+            close( standard );
+            throw new IllegalArgumentException( "Invalid class path " + key, ioe );
+        }
+
+        Object taskPool = null;
+
+        if( this.getTask != null ) {
+            try {
+                //A single context per slot, since a slot is used by one thread
+                taskPool = this.getTask.getDeclaringClass().getConstructor(
+                        int.class ).newInstance( 1 );
+            }
+            catch( ReflectiveOperationException roe ) {
+                taskPool = null;
+            }
+        }
+
+        this.created.incrementAndGet();
+        return new Slot( standard, taskPool, stamp );
+    }
+
+    /**
+     * Puts a slot back into its pool, or closes it if the pool is full.
+     */
+    private void release( String key, Slot slot ) {
+        Deque<Slot> pool = this.idle.get( key );
+
+        if( pool.size() < this.maxIdle ) {
+            pool.offerFirst( slot );
+        }
+        else {
+            close( slot );
+        }
+    }
+
+    private static void close( Slot slot ) {
+        close( slot.standard );
+    }
+
+    private static void close( StandardJavaFileManager fileManager ) {
+        try {
+            fileManager.close();
+        }
+        catch( IOException ioe ) {
+            System.err.println( "In CompilationService.close:" );
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Summarizes the class files directly inside the directories of a class
+     * path, so that a change to any of them changes the stamp.
+     */
+    private static long stamp( List<File> classPath ) {
+        long stamp = 0;
+
+        for ( File entry : classPath ) {
+            File[] files = entry.listFiles();
+
+            if( files == null ) {
+                continue;
+            }
+
+            for ( File file : files ) {
+                if( file.getName().endsWith( ".class" ) ) {
+                    //Order independent, since listings come in any order
+                    long hash = file.getPath().hashCode();
+                    hash = 31 * hash + file.lastModified();
+                    hash = 31 * hash + file.length();
+                    stamp += hash * 0x9E3779B97F4A7C15L;
+                }
+            }
+        }
+
+        return stamp;
+    }
+
+    /**
+     * Turns what the compiler reported into plain data.
+     */
+    private static List<CompilationResult.Diagnostic> diagnostics(
+            DiagnosticCollector<JavaFileObject> collector ) {
+        List<CompilationResult.Diagnostic> diagnostics = new ArrayList<>();
+
+        for ( javax.tools.Diagnostic<? extends JavaFileObject> diagnostic
+                : collector.getDiagnostics() ) {
+            diagnostics.add( new CompilationResult.Diagnostic(
+                        diagnostic.getKind().name(),
+                        sourceName( diagnostic.getSource() ),
+                        diagnostic.getLineNumber(),
+                        diagnostic.getColumnNumber(),
+                        diagnostic.getCode(),
+                        diagnostic.getMessage( null ) ) );
+        }
+
+        return diagnostics;
+    }
+
+    /**
+     * @return The name of the class a source file holds, or null if there is
+     * no source file.
+     */
+    private static String sourceName( JavaFileObject source ) {
+        if( source == null ) {
+            return null;
+        }
+
+        String name = source.getName();
+        name = name.substring( name.lastIndexOf( '/' ) + 1 );
+
+        if( name.endsWith( JavaFileObject.Kind.SOURCE.extension ) ) {
+            name = name.substring( 0, name.length() - JavaFileObject.Kind.SOURCE.extension.length() );
+        }
+
+        return name;
+    }
+
+    private static String key( List<File> classPath ) {
+        StringBuilder sb = new StringBuilder();
+
+        for ( File entry : classPath ) {
+            sb.append( entry.getPath() ).append( File.pathSeparatorChar );
+        }
+
+        return sb.toString();
+    }
+
+    /** @return Whether javac contexts are reused between compilations */
+    public boolean reusesContexts() {
+        return this.getTask != null;
+    }
+
+    @Override
+    public String toString() {
+        long count = this.compilations.get();
+
+        return "compilations=" + count + " failures=" + this.failures.get()
+            + " slots=" + this.created.get() + " stale=" + this.stale.get()
+            + " reuseContexts=" + reusesContexts()
+            + " meanMillis=" + ( count == 0 ? 0 : this.nanos.get() / count / 1000000 );
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the bytecode of compiled test suites so that resubmitting the
+ * same suite against the same class skips the compiler entirely.
+ *
+ * Suites are keyed by a hash of their source and of the class files that they
+ * test. The most recently used suites are kept in memory, and when a
+ * directory is given every suite is also written to disk so that it survives
+ * restarts and memory evictions.
+ */
+public class CompiledSuiteCache {
+
+    private final int maxEntries;
+    private final File directory;
+    private final LinkedHashMap<String, Map<String, byte[]>> entries;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxEntries The number of suites kept in memory.
+     * @param directory The directory suites are persisted to, or null to only
+     * keep them in memory.
+     */
+    public CompiledSuiteCache( int maxEntries, File directory ) {
+        this.maxEntries = maxEntries;
+        this.directory  = directory;
+
+        //Access ordered, so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, Map<String, byte[]>>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Map<String, byte[]>> eldest ) {
+                if( size() > CompiledSuiteCache.this.maxEntries ) {
+                    CompiledSuiteCache.this.evictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+
+        if( directory != null ) {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * Computes the key of a suite.
+     * @param src The generated source of the suite.
+     * @param classesUnderTest The class files of the classes that the suite
+     * tests.
+     * @return A hex encoded SHA-256 hash of the source and the class files.
+     */
+    public static String key( String src, List<byte[]> classesUnderTest ) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException nsae ) {
+            throw new IllegalStateException( nsae );
+        }
+
+        digest.update( src.getBytes( StandardCharsets.UTF_8 ) );
+
+        for ( byte[] classFile : classesUnderTest ) {
+            //Separate the inputs so that different splits never collide
+            digest.update( (byte) 0 );
+            digest.update( Integer.toString( classFile.length ).getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( classFile );
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( byte b : digest.digest() ) {
+            sb.append( Character.forDigit( (b >> 4) & 0xF, 16 ) );
+            sb.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Looks up a compiled suite, first in memory and then on disk. Only the
+     * in-memory tier is locked, so a slow read from disk does not hold up
+     * other lookups.
+     * @param key The key of the suite.
+     * @return The bytecode of the suite's classes, or null if it is not cached.
+     */
+    public Map<String, byte[]> get( String key ) {
+        synchronized( this ) {
+            Map<String, byte[]> classes = this.entries.get( key );
+
+            if( classes != null ) {
+                this.hits++;
+                return classes;
+            }
+        }
+
+        Map<String, byte[]> classes = read( key );
+
+        synchronized( this ) {
+            if( classes != null ) {
+                this.diskHits++;
+                this.entries.put( key, classes );
+                return classes;
+            }
+
+            this.misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Caches a compiled suite. The suite is written to disk outside of the
+     * lock, and readers only ever see a fully written file.
+     * @param key The key of the suite.
+     * @param classes The bytecode of the suite's classes.
+     */
+    public void put( String key, Map<String, byte[]> classes ) {
+        synchronized( this ) {
+            this.entries.put( key, classes );
+        }
+
+        write( key, classes );
+    }
+
+    /**
+     * Reads a suite from the disk tier.
+     * @return The suite, or null if it is not on disk.
+     */
+    private Map<String, byte[]> read( String key ) {
+        if( this.directory == null ) {
+            return null;
+        }
+
+        File file = new File( this.directory, key + ".suite" );
+
+        if( ! file.isFile() ) {
+            return null;
+        }
+
+        try( DataInputStream in = new DataInputStream(
+                    new BufferedInputStream( new FileInputStream( file ) ) ) ) {
+            int count = in.readInt();
+            Map<String, byte[]> classes = new HashMap<>();
+
+            for ( int i = 0; i < count; i++ ) {
+                String name = in.readUTF();
+                byte[] bytes = new byte[ in.readInt() ];
+                in.readFully( bytes );
+                classes.put( name, bytes );
+            }
+
+            return classes;
+        }
+        catch( IOException ioe ) {
+            System.err.println( "In CompiledSuiteCache.read:" );
+            ioe.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a suite to the disk tier. The suite is written to a temporary
+     * file first, so that readers never see half of a suite.
+     */
+    private void write( String key, Map<String, byte[]> classes ) {
+        if( this.directory == null ) {
+            return;
+        }
+
+        File tmp = null;
+
+        try {
+            tmp = File.createTempFile( key, ".tmp", this.directory );
+
+            try( DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream( new FileOutputStream( tmp ) ) ) ) {
+                out.writeInt( classes.size() );
+
+                for ( Map.Entry<String, byte[]> entry : classes.entrySet() ) {
+                    out.writeUTF( entry.getKey() );
+                    out.writeInt( entry.getValue().length );
+                    out.write( entry.getValue() );
+                }
+            }
+
+            Files.move( tmp.toPath(), new File( this.directory, key + ".suite" ).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( IOException ioe ) {
+            System.err.println( "In CompiledSuiteCache.write:" );
+            ioe.printStackTrace();
+
+            //Half a suite is of no use to anyone
+            if( tmp != null ) {
+                try {
+                    Files.deleteIfExists( tmp.toPath() );
+                }
+                catch( IOException e ) {
+                    System.err.println( "In CompiledSuiteCache.write:" );
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /** @return The number of lookups answered from memory */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /** @return The number of lookups answered from disk */
+    public synchronized long getDiskHits() {
+        return this.diskHits;
+    }
+
+    /** @return The number of lookups that had to compile */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /** @return The number of suites dropped from memory */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /** @return The number of suites currently held in memory */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + this.hits + " diskHits=" + this.diskHits + " misses="
+            + this.misses + " evictions=" + this.evictions + " size="
+            + this.entries.size();
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records which lines and branches of a submission's classes a run of tests
+ * reached.
+ *
+ * A <tt>SubmissionClassLoader</tt> that is given a <tt>Coverage</tt> passes
+ * every class it defines through <tt>instrument</tt>, which adds a probe, a
+ * single <tt>boolean</tt> store, at the start of every line and on every
+ * outcome of every branch, by way of <tt>CoverageInstrumenter</tt>. Running
+ * instrumented code costs about one store per line, and a class's probes are
+ * a single array that it fetches from <tt>probes</tt> when it is initialized,
+ * so a run does not synchronize or allocate to record its coverage.
+ *
+ * Once the tests have run, <tt>getMethods</tt> reads the probes back as the
+ * coverage of every method, and <tt>close</tt> lets go of them:
+ * <tt>try( Coverage coverage = new Coverage() ) { SuiteGeneratorAPI.runTests(
+ * tests, suiteName, root, coverage ); coverage.getMethods(); }</tt>
+ */
+public class Coverage implements AutoCloseable {
+
+    private static final LatencyHistogram instrumentTime = Metrics.histogram( "coverage.instrument" );
+
+    //The probes of every instrumented class that is still being covered
+    private static final Map<Integer, boolean[]> registry = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger( 1 );
+
+    //Where classes whose session was closed before they were initialized write to
+    private static final boolean[] unused = new boolean[ CoverageInstrumenter.MAX_PROBES ];
+
+    static {
+        Metrics.register( "coverage.classes", () -> registry.size() );
+    }
+
+    /**
+     * The coverage of a single method.
+     */
+    public static class MethodCoverage {
+        private final String className;
+        private final String name;
+        private final String descriptor;
+        private final boolean instrumented;
+        private final int lines;
+        private final int coveredLines;
+        private final int branches;
+        private final int coveredBranches;
+        private final List<Integer> missedLines;
+
+        MethodCoverage( String className, String name, String descriptor,
+                boolean instrumented, int lines, int coveredLines, int branches,
+                int coveredBranches, List<Integer> missedLines ) {
+            this.className          = className;
+            this.name               = name;
+            this.descriptor         = descriptor;
+            this.instrumented       = instrumented;
+            this.lines              = lines;
+            this.coveredLines       = coveredLines;
+            this.branches           = branches;
+            this.coveredBranches    = coveredBranches;
+            this.missedLines        = Collections.unmodifiableList( missedLines );
+        }
+
+        public String getClassName() {
+            return this.className;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescriptor() {
+            return this.descriptor;
+        }
+
+        /**
+         * @return Whether the method's code has probes. Methods that could not
+         * be instrumented report no lines or branches.
+         */
+        public boolean isInstrumented() {
+            return this.instrumented;
+        }
+
+        public int getLines() {
+            return this.lines;
+        }
+
+        public int getCoveredLines() {
+            return this.coveredLines;
+        }
+
+        /**
+         * @return How many outcomes the method's branches have: two for every
+         * condition, and one for every distinct target of every switch.
+         */
+        public int getBranches() {
+            return this.branches;
+        }
+
+        public int getCoveredBranches() {
+            return this.coveredBranches;
+        }
+
+        /** @return The lines that were never reached, in order */
+        public List<Integer> getMissedLines() {
+            return this.missedLines;
+        }
+
+        @Override
+        public String toString() {
+            return this.className + "." + this.name + this.descriptor
+                + " lines=" + this.coveredLines + "/" + this.lines
+                + " branches=" + this.coveredBranches + "/" + this.branches
+                + " missed=" + this.missedLines;
+        }
+    }
+
+    /**
+     * A class instrumented by this session.
+     */
+    private static final class CoveredClass {
+        final String name;
+        final CoverageInstrumenter.Result result;
+        final boolean[] probes;
+        final int id;
+
+        CoveredClass( String name, CoverageInstrumenter.Result result, boolean[] probes, int id ) {
+            this.name   = name;
+            this.result = result;
+            this.probes = probes;
+            this.id     = id;
+        }
+    }
+
+    private final List<CoveredClass> classes = Collections.synchronizedList( new ArrayList<>() );
+
+    /**
+     * Looks up the probes of an instrumented class. Instrumented classes call
+     * this from their static initializer, so it has to stay public.
+     * @param id The id the class was instrumented with.
+     * @return The class's probes, or probes that go nowhere if its coverage
+     * is no longer being recorded.
+     */
+    public static boolean[] probes( int id ) {
+        boolean[] probes = registry.get( id );
+        return probes == null ? unused : probes;
+    }
+
+    /**
+     * Adds probes to a class file.
+     * @param className The binary name of the class.
+     * @param classFile The contents of the class file.
+     * @return The instrumented class file, or <tt>classFile</tt> itself if the
+     * class has nothing to instrument or can not be instrumented.
+     */
+    public byte[] instrument( String className, byte[] classFile ) {
+        long start = System.nanoTime();
+        int id = nextId.getAndIncrement();
+        CoverageInstrumenter.Result result;
+
+        try {
+            result = CoverageInstrumenter.instrument( classFile, id );
+        }
+        catch( IOException ioe ) {
+            System.err.println( "In Coverage.instrument: " + className );
+            ioe.printStackTrace();
+            return classFile;
+        }
+        finally {
+            instrumentTime.recordSince( start );
+        }
+
+        if( result == null ) {
+            return classFile;
+        }
+
+        boolean[] probes = new boolean[ result.probeCount ];
+        registry.put( id, probes );
+        this.classes.add( new CoveredClass( className, result, probes, id ) );
+
+        return result.classFile;
+    }
+
+    /**
+     * @return The coverage of every method of every class that was
+     * instrumented, so far, by class in the order they were loaded and then
+     * by method in the order they were declared.
+     */
+    public List<MethodCoverage> getMethods() {
+        List<MethodCoverage> methods = new ArrayList<>();
+
+        synchronized( this.classes ) {
+            for ( CoveredClass covered : this.classes ) {
+                for ( CoverageInstrumenter.MethodProbes method : covered.result.methods ) {
+                    methods.add( cover( covered.name, method, covered.probes ) );
+                }
+            }
+        }
+
+        return methods;
+    }
+
+    private static MethodCoverage cover( String className,
+            CoverageInstrumenter.MethodProbes method, boolean[] probes ) {
+        //A line counts as reached if it was entered, or any branch on it was taken
+        TreeSet<Integer> lines = new TreeSet<>();
+        TreeSet<Integer> covered = new TreeSet<>();
+
+        for ( int[] line : method.lines ) {
+            lines.add( line[1] );
+
+            if( probes[ line[0] ] ) {
+                covered.add( line[1] );
+            }
+        }
+
+        int branches = 0;
+        int coveredBranches = 0;
+
+        for ( int[] branch : method.branches ) {
+            for ( int i = 1; i < branch.length; i++ ) {
+                branches++;
+
+                if( probes[ branch[i] ] ) {
+                    coveredBranches++;
+                    covered.add( branch[0] );
+                }
+            }
+        }
+
+        covered.retainAll( lines );
+
+        List<Integer> missed = new ArrayList<>( lines );
+        missed.removeAll( covered );
+
+        return new MethodCoverage( className, method.name, method.descriptor,
+                method.instrumented, lines.size(), covered.size(), branches,
+                coveredBranches, missed );
+    }
+
+    /**
+     * Lets go of the probes of every class this session instrumented. Classes
+     * that were already initialized keep writing to their own probes until
+     * they are unloaded, and the rest write to probes that go nowhere.
+     */
+    @Override
+    public void close() {
+        synchronized( this.classes ) {
+            for ( CoveredClass covered : this.classes ) {
+                registry.remove( covered.id );
+            }
+        }
+    }
+}
@@ -0,0 +1,1165 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Adds coverage probes to a class file, straight in its bytes, the way
+ * <tt>ClassFileInfo</tt> reads them.
+ *
+ * A probe is a single <tt>boolean</tt> in an array held in a static field
+ * that the instrumented class gets, and hitting it is one store of
+ * <tt>true</tt>, eight bytes of bytecode that never allocate or branch:
+ * <tt>getstatic $suitegeneratorCoverage; sipush probe; iconst_1; bastore</tt>.
+ * The class's static initializer fetches the array from
+ * <tt>Coverage.probes</tt> before it does anything else.
+ *
+ * Every line a method's <tt>LineNumberTable</tt> starts gets a probe where it
+ * starts. Every conditional branch gets a probe where it falls through and
+ * one on a trampoline, appended to the method, that its jump goes through on
+ * the way to the original target. Every distinct target of a switch gets a
+ * trampoline too. Branches and exception handlers that jumped to a line still
+ * hit its probe, but jumps never hit the probe of a branch falling through.
+ *
+ * Moving instructions means every offset in the method is moved with them:
+ * jumps, switches, the exception table, the line and local variable tables
+ * and the stack map frames, which are all written back as full frames. A
+ * method that can not be instrumented, because it uses <tt>jsr</tt>, would
+ * outgrow a 16 bit jump or 64 KB of code, or is missing a frame that a
+ * trampoline needs, is left as it was and reported as not instrumented.
+ */
+final class CoverageInstrumenter {
+
+    /** The name of the field that instrumented classes hold their probes in */
+    static final String FIELD = "$suitegeneratorCoverage";
+
+    /** The most probes a single class can have, so that each fits a sipush */
+    static final int MAX_PROBES = Short.MAX_VALUE;
+
+    //Opcodes that are rewritten or inserted
+    private static final int ICONST_1       = 0x04;
+    private static final int SIPUSH         = 0x11;
+    private static final int LDC_W          = 0x13;
+    private static final int BASTORE        = 0x54;
+    private static final int IFEQ           = 0x99;
+    private static final int IF_ACMPNE      = 0xa6;
+    private static final int GOTO           = 0xa7;
+    private static final int JSR            = 0xa8;
+    private static final int RET            = 0xa9;
+    private static final int TABLESWITCH    = 0xaa;
+    private static final int LOOKUPSWITCH   = 0xab;
+    private static final int RETURN         = 0xb1;
+    private static final int GETSTATIC      = 0xb2;
+    private static final int PUTSTATIC      = 0xb3;
+    private static final int INVOKESTATIC   = 0xb8;
+    private static final int WIDE           = 0xc4;
+    private static final int IFNULL         = 0xc6;
+    private static final int IFNONNULL      = 0xc7;
+    private static final int GOTO_W         = 0xc8;
+    private static final int JSR_W          = 0xc9;
+
+    //The length of every instruction that does not vary, 0 for those that do
+    private static final int[] LENGTHS = new int[256];
+
+    static {
+        Arrays.fill( LENGTHS, 0x00, 0x10, 1 );
+        LENGTHS[0x10] = 2;
+        LENGTHS[0x11] = 3;
+        LENGTHS[0x12] = 2;
+        LENGTHS[0x13] = 3;
+        LENGTHS[0x14] = 3;
+        Arrays.fill( LENGTHS, 0x15, 0x1a, 2 );
+        Arrays.fill( LENGTHS, 0x1a, 0x36, 1 );
+        Arrays.fill( LENGTHS, 0x36, 0x3b, 2 );
+        Arrays.fill( LENGTHS, 0x3b, 0x84, 1 );
+        LENGTHS[0x84] = 3;
+        Arrays.fill( LENGTHS, 0x85, 0x99, 1 );
+        Arrays.fill( LENGTHS, 0x99, 0xa9, 3 );
+        LENGTHS[0xa9] = 2;
+        Arrays.fill( LENGTHS, 0xac, 0xb2, 1 );
+        Arrays.fill( LENGTHS, 0xb2, 0xb9, 3 );
+        LENGTHS[0xb9] = 5;
+        LENGTHS[0xba] = 5;
+        LENGTHS[0xbb] = 3;
+        LENGTHS[0xbc] = 2;
+        LENGTHS[0xbd] = 3;
+        LENGTHS[0xbe] = 1;
+        LENGTHS[0xbf] = 1;
+        LENGTHS[0xc0] = 3;
+        LENGTHS[0xc1] = 3;
+        LENGTHS[0xc2] = 1;
+        LENGTHS[0xc3] = 1;
+        LENGTHS[0xc5] = 4;
+        LENGTHS[0xc6] = 3;
+        LENGTHS[0xc7] = 3;
+        LENGTHS[0xc8] = 5;
+        LENGTHS[0xc9] = 5;
+    }
+
+    //The length of a probe, and of the start of an instrumented static initializer
+    private static final int PROBE_LENGTH = 8;
+    private static final int HEAD_LENGTH = 9;
+    private static final int TRAMPOLINE_LENGTH = PROBE_LENGTH + 5;
+
+    //Verification types of stack map frames, packed as the tag over its data
+    private static final int ITEM_TOP = 0;
+    private static final int ITEM_INTEGER = 1;
+    private static final int ITEM_FLOAT = 2;
+    private static final int ITEM_DOUBLE = 3;
+    private static final int ITEM_LONG = 4;
+    private static final int ITEM_UNINITIALIZED_THIS = 6;
+    private static final int ITEM_OBJECT = 7;
+    private static final int ITEM_UNINITIALIZED = 8;
+
+    /**
+     * The probes of a single method.
+     */
+    static final class MethodProbes {
+        final String name;
+        final String descriptor;
+        final boolean instrumented;
+
+        //The probe at the start of each line, and the line it starts
+        final List<int[]> lines = new ArrayList<>();
+
+        //The line of each branching instruction, followed by a probe per outcome
+        final List<int[]> branches = new ArrayList<>();
+
+        MethodProbes( String name, String descriptor, boolean instrumented ) {
+            this.name           = name;
+            this.descriptor     = descriptor;
+            this.instrumented   = instrumented;
+        }
+    }
+
+    /**
+     * An instrumented class file.
+     */
+    static final class Result {
+        final byte[] classFile;
+        final int probeCount;
+        final List<MethodProbes> methods;
+
+        Result( byte[] classFile, int probeCount, List<MethodProbes> methods ) {
+            this.classFile  = classFile;
+            this.probeCount = probeCount;
+            this.methods    = methods;
+        }
+    }
+
+    //The class file being instrumented, and where it is being read from
+    private final byte[] bytes;
+    private int pos;
+
+    private int major;
+    private int thisClass;
+    private String[] utf8;
+    private int poolCount;
+
+    //Constants added to the end of the pool
+    private final ByteArrayOutputStream extra = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream( this.extra );
+    private final Map<String, Integer> added = new HashMap<>();
+
+    private int probes;
+
+    private CoverageInstrumenter( byte[] bytes ) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Instruments a class file.
+     * @param classFile The contents of the class file.
+     * @param classId What the class's static initializer passes to
+     * <tt>Coverage.probes</tt> to get its probes.
+     * @return The instrumented class, or null if it has nothing to instrument
+     * or is not a class that can be.
+     * @throws IOException If the class file is malformed.
+     */
+    static Result instrument( byte[] classFile, int classId ) throws IOException {
+        try {
+            return new CoverageInstrumenter( classFile ).instrument( classId );
+        }
+        catch( IndexOutOfBoundsException ioobe ) {
+            throw new IOException( "Truncated class file", ioobe );
+        }
+        catch( UnsupportedOperationException uoe ) {
+            //Even the static initializer could not take the probes
+            return null;
+        }
+    }
+
+    private Result instrument( int classId ) throws IOException {
+        if( u4() != 0xCAFEBABE ) {
+            throw new IOException( "Not a class file" );
+        }
+
+        int minor = u2();
+        this.major = u2();
+
+        readConstantPool();
+        int poolEnd = this.pos;
+
+        int access = u2();
+        this.thisClass = u2();
+
+        //Annotations and modules have no code of their own
+        if( ( access & ( 0x2000 | 0x8000 ) ) != 0 ) {
+            return null;
+        }
+
+        boolean isInterface = ( access & ClassFileInfo.ACC_INTERFACE ) != 0;
+        int superClass = u2();
+        int interfacesStart = this.pos;
+        int interfaceCount = u2();
+        this.pos += 2 * interfaceCount;
+        int interfacesEnd = this.pos;
+
+        int fieldsStart = this.pos;
+        int fieldCount = u2();
+        for ( int i = 0; i < fieldCount; i++ ) {
+            this.pos += 6;
+            skipAttributes();
+        }
+        int fieldsEnd = this.pos;
+
+        int codeName = utf8( "Code" );
+        int fieldRef = fieldRef();
+        int probesRef = methodRef( "Coverage", "probes", "(I)[Z" );
+        int idConstant = integer( classId );
+
+        ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( methods );
+        List<MethodProbes> probes = new ArrayList<>();
+        boolean initialized = false;
+        int methodCount = u2();
+
+        for ( int i = 0; i < methodCount; i++ ) {
+            int methodAccess = u2();
+            int nameIndex = u2();
+            int descriptorIndex = u2();
+            String name = this.utf8[ nameIndex ];
+            String descriptor = this.utf8[ descriptorIndex ];
+            boolean clinit = name.equals( "<clinit>" );
+
+            //Only probe code that was written, which includes lambdas
+            boolean probed = ( methodAccess & ( ClassFileInfo.ACC_SYNTHETIC
+                        | ClassFileInfo.ACC_BRIDGE ) ) == 0 || name.startsWith( "lambda$" );
+
+            out.writeShort( methodAccess );
+            out.writeShort( nameIndex );
+            out.writeShort( descriptorIndex );
+
+            int attributeCount = u2();
+            out.writeShort( attributeCount );
+
+            for ( int j = 0; j < attributeCount; j++ ) {
+                int attributeName = u2();
+                int length = u4();
+                int start = this.pos;
+                this.pos += length;
+
+                if( ! "Code".equals( this.utf8[ attributeName ] ) || ! ( probed || clinit ) ) {
+                    out.writeShort( attributeName );
+                    out.writeInt( length );
+                    out.write( this.bytes, start, length );
+                    continue;
+                }
+
+                MethodProbes method = new MethodProbes( name, descriptor, true );
+                int firstProbe = this.probes;
+                byte[] code = null;
+
+                try {
+                    code = instrumentCode( start, methodAccess, name, descriptor,
+                            probed ? method : null, clinit ? idConstant : 0,
+                            fieldRef, probesRef );
+                }
+                catch( UnsupportedOperationException uoe ) {
+                    //Left as it was
+                }
+
+                if( code == null ) {
+                    this.probes = firstProbe;
+                    method = new MethodProbes( name, descriptor, false );
+                    code = Arrays.copyOfRange( this.bytes, start, start + length );
+
+                    //The static initializer still has to fetch the probes
+                    if( clinit ) {
+                        code = instrumentCode( start, methodAccess, name, descriptor,
+                                null, idConstant, fieldRef, probesRef );
+                    }
+                }
+
+                if( probed ) {
+                    probes.add( method );
+                }
+
+                initialized |= clinit;
+                out.writeShort( attributeName );
+                out.writeInt( code.length );
+                out.write( code );
+            }
+        }
+
+        if( this.probes == 0 ) {
+            return null;
+        }
+
+        //Classes without a static initializer get one that only fetches the probes
+        if( ! initialized ) {
+            out.writeShort( ClassFileInfo.ACC_STATIC );
+            out.writeShort( utf8( "<clinit>" ) );
+            out.writeShort( utf8( "()V" ) );
+            out.writeShort( 1 );
+            out.writeShort( codeName );
+            out.writeInt( 12 + HEAD_LENGTH + 1 );
+            out.writeShort( 1 );
+            out.writeShort( 0 );
+            out.writeInt( HEAD_LENGTH + 1 );
+            writeHead( out, idConstant, probesRef, fieldRef );
+            out.writeByte( RETURN );
+            out.writeShort( 0 );
+            out.writeShort( 0 );
+            methodCount++;
+        }
+
+        int fieldName = utf8( FIELD );
+        int fieldType = utf8( "[Z" );
+
+        //Everything is added to the pool by now
+        ByteArrayOutputStream result = new ByteArrayOutputStream( this.bytes.length * 5 / 4 );
+        DataOutputStream classFile = new DataOutputStream( result );
+
+        classFile.writeInt( 0xCAFEBABE );
+        classFile.writeShort( minor );
+        classFile.writeShort( this.major );
+        classFile.writeShort( this.poolCount );
+        classFile.write( this.bytes, 10, poolEnd - 10 );
+        this.extra.writeTo( result );
+
+        classFile.writeShort( access );
+        classFile.writeShort( this.thisClass );
+        classFile.writeShort( superClass );
+        classFile.write( this.bytes, interfacesStart, interfacesEnd - interfacesStart );
+
+        //The probe field comes first, then every field the class had
+        classFile.writeShort( fieldCount + 1 );
+        classFile.writeShort( ( isInterface ? ClassFileInfo.ACC_PUBLIC : ClassFileInfo.ACC_PRIVATE )
+                | ClassFileInfo.ACC_STATIC | ClassFileInfo.ACC_FINAL | ClassFileInfo.ACC_SYNTHETIC );
+        classFile.writeShort( fieldName );
+        classFile.writeShort( fieldType );
+        classFile.writeShort( 0 );
+        classFile.write( this.bytes, fieldsStart + 2, fieldsEnd - fieldsStart - 2 );
+
+        classFile.writeShort( methodCount );
+        methods.writeTo( result );
+
+        //The class's own attributes
+        classFile.write( this.bytes, this.pos, this.bytes.length - this.pos );
+
+        return new Result( result.toByteArray(), this.probes, probes );
+    }
+
+    /**
+     * Rewrites the <tt>Code</tt> attribute of a method.
+     * @param start Where the attribute starts, after its name and length.
+     * @param method Where the method's probes are recorded, or null to add
+     * none.
+     * @param idConstant The constant holding the class id, if this is the
+     * static initializer that fetches the probes, or 0.
+     * @return The new attribute, without its name and length.
+     * @throws UnsupportedOperationException If the method can not be
+     * instrumented.
+     */
+    private byte[] instrumentCode( int start, int access, String name, String descriptor,
+            MethodProbes method, int idConstant, int fieldRef, int probesRef ) throws IOException {
+        int saved = this.pos;
+        this.pos = start;
+
+        int maxStack = u2();
+        int maxLocals = u2();
+        int length = u4();
+        int codeStart = this.pos;
+        this.pos += length;
+
+        int[] exceptions = new int[ u2() * 4 ];
+        for ( int i = 0; i < exceptions.length; i++ ) {
+            exceptions[i] = u2();
+        }
+
+        //Line numbers by where they start, and every other table of the code
+        TreeMap<Integer, Integer> lineStarts = new TreeMap<>();
+        Map<Integer, int[]> tables = new LinkedHashMap<>();
+        int stackMapName = 0;
+        int stackMapStart = -1;
+
+        int attributeCount = u2();
+        for ( int i = 0; i < attributeCount; i++ ) {
+            int attributeName = u2();
+            int attributeLength = u4();
+            int attributeStart = this.pos;
+            String kind = this.utf8[ attributeName ];
+
+            if( kind.equals( "LineNumberTable" ) ) {
+                int count = u2();
+                for ( int j = 0; j < count; j++ ) {
+                    lineStarts.putIfAbsent( u2(), u2() );
+                }
+            }
+            else if( kind.equals( "LocalVariableTable" ) || kind.equals( "LocalVariableTypeTable" ) ) {
+                int[] table = new int[ u2() * 5 ];
+                for ( int j = 0; j < table.length; j++ ) {
+                    table[j] = u2();
+                }
+                tables.put( attributeName, table );
+            }
+            else if( kind.equals( "StackMapTable" ) ) {
+                stackMapName = attributeName;
+                stackMapStart = attributeStart;
+            }
+
+            //Anything else that refers to offsets is dropped
+            this.pos = attributeStart + attributeLength;
+        }
+
+        this.pos = saved;
+
+        //Find every instruction, and the branches among them
+        boolean[] starts = new boolean[ length + 1 ];
+        boolean[] fallThrough = new boolean[ length + 1 ];
+        boolean[] lineStart = new boolean[ length + 1 ];
+        int[] linePc = new int[ length + 1 ];
+        Map<Integer, int[]> targets = new LinkedHashMap<>();
+        int line = 0;
+
+        for ( int pc = 0; pc < length; ) {
+            int op = this.bytes[ codeStart + pc ] & 0xff;
+            starts[pc] = true;
+
+            Integer lineNumber = lineStarts.get( pc );
+            if( lineNumber != null ) {
+                line = lineNumber;
+                lineStart[pc] = method != null;
+            }
+            linePc[pc] = line;
+
+            if( op == JSR || op == JSR_W || op == RET ) {
+                throw new UnsupportedOperationException( "jsr" );
+            }
+
+            int[] jumps = jumps( codeStart, pc, op );
+
+            if( jumps != null ) {
+                targets.put( pc, jumps );
+                fallThrough[ pc + length( codeStart, pc ) ] = method != null && conditional( op );
+            }
+
+            pc += length( codeStart, pc );
+
+            if( pc > length ) {
+                throw new IOException( "Truncated code" );
+            }
+        }
+
+        starts[ length ] = true;
+
+        for ( int pc : lineStarts.keySet() ) {
+            if( pc > length || ! starts[pc] ) {
+                throw new IOException( "Line number outside of the code" );
+            }
+        }
+
+        //Where every instruction goes, along with the probes in front of it
+        int[] blockStart = new int[ length + 1 ];
+        int[] targetStart = new int[ length + 1 ];
+        int[] instructionStart = new int[ length + 1 ];
+        int at = idConstant == 0 ? 0 : HEAD_LENGTH;
+
+        for ( int pc = 0; pc <= length; pc++ ) {
+            if( ! starts[pc] ) {
+                continue;
+            }
+
+            blockStart[pc] = at;
+            at += fallThrough[pc] ? PROBE_LENGTH : 0;
+            targetStart[pc] = at;
+            at += lineStart[pc] ? PROBE_LENGTH : 0;
+            instructionStart[pc] = at;
+
+            if( pc < length ) {
+                int op = this.bytes[ codeStart + pc ] & 0xff;
+                at += op == TABLESWITCH || op == LOOKUPSWITCH
+                    ? length( codeStart, pc ) - padding( pc ) + padding( at )
+                    : length( codeStart, pc );
+            }
+        }
+
+        //The main code ends where the instruction past the end would start
+        blockStart[ length ] = targetStart[ length ] = instructionStart[ length ];
+
+        //Number the probes in the order they appear, and lay out trampolines
+        int[] fallThroughProbe = new int[ length + 1 ];
+        int[] lineProbe = new int[ length + 1 ];
+        Map<Integer, int[]> trampolines = new LinkedHashMap<>();
+        List<int[]> trampolineList = new ArrayList<>();
+        int end = instructionStart[ length ];
+
+        for ( int pc = 0; pc < length; pc++ ) {
+            if( fallThrough[pc] ) {
+                fallThroughProbe[pc] = nextProbe();
+            }
+
+            if( lineStart[pc] ) {
+                lineProbe[pc] = nextProbe();
+                method.lines.add( new int[] { lineProbe[pc], linePc[pc] } );
+            }
+
+            int[] jumps = targets.get( pc );
+
+            if( jumps == null || method == null
+                    || ( this.bytes[ codeStart + pc ] & 0xff ) == GOTO
+                    || ( this.bytes[ codeStart + pc ] & 0xff ) == GOTO_W ) {
+                continue;
+            }
+
+            //A probe per distinct target, on its way there
+            Map<Integer, Integer> byTarget = new LinkedHashMap<>();
+            int[] trampolineOf = new int[ jumps.length ];
+
+            for ( int i = 0; i < jumps.length; i++ ) {
+                Integer trampoline = byTarget.get( jumps[i] );
+
+                if( trampoline == null ) {
+                    trampoline = end;
+                    byTarget.put( jumps[i], trampoline );
+                    trampolineList.add( new int[] { end, nextProbe(), jumps[i] } );
+                    end += TRAMPOLINE_LENGTH;
+                }
+
+                trampolineOf[i] = trampoline;
+            }
+
+            trampolines.put( pc, trampolineOf );
+
+            int[] branch = new int[ 1 + byTarget.size()
+                + ( conditional( this.bytes[ codeStart + pc ] & 0xff ) ? 1 : 0 ) ];
+            branch[0] = linePc[pc];
+
+            int outcome = 1;
+            for ( int[] trampoline : trampolineList.subList(
+                        trampolineList.size() - byTarget.size(), trampolineList.size() ) ) {
+                branch[ outcome++ ] = trampoline[1];
+            }
+
+            if( outcome < branch.length ) {
+                branch[ outcome ] = fallThroughProbe[ pc + length( codeStart, pc ) ];
+
+                //The fall through probe is numbered when its instruction is reached
+                if( branch[ outcome ] == 0 ) {
+                    branch[ outcome ] = -( pc + length( codeStart, pc ) ) - 1;
+                }
+            }
+
+            method.branches.add( branch );
+        }
+
+        //Fall through probes numbered after their branch was recorded
+        if( method != null ) {
+            for ( int[] branch : method.branches ) {
+                for ( int i = 1; i < branch.length; i++ ) {
+                    if( branch[i] < 0 ) {
+                        branch[i] = fallThroughProbe[ -branch[i] - 1 ];
+                    }
+                }
+            }
+        }
+
+        if( end > 65535 ) {
+            throw new UnsupportedOperationException( "Code too large" );
+        }
+
+        //Write the code
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream( end + 64 );
+        DataOutputStream out = new DataOutputStream( buffer );
+
+        if( idConstant != 0 ) {
+            writeHead( out, idConstant, probesRef, fieldRef );
+        }
+
+        for ( int pc = 0; pc < length; pc += length( codeStart, pc ) ) {
+            if( fallThrough[pc] ) {
+                writeProbe( out, fieldRef, fallThroughProbe[pc] );
+            }
+
+            if( lineStart[pc] ) {
+                writeProbe( out, fieldRef, lineProbe[pc] );
+            }
+
+            int op = this.bytes[ codeStart + pc ] & 0xff;
+            int[] jumps = targets.get( pc );
+            int[] through = trampolines.get( pc );
+            int here = instructionStart[pc];
+
+            if( jumps == null ) {
+                out.write( this.bytes, codeStart + pc, length( codeStart, pc ) );
+            }
+            else if( op == TABLESWITCH || op == LOOKUPSWITCH ) {
+                int old = codeStart + pc + 1 + padding( pc );
+                out.writeByte( op );
+                out.write( new byte[ padding( here ) ] );
+                out.writeInt( switchTarget( through, jumps, targetStart, 0 ) - here );
+
+                if( op == TABLESWITCH ) {
+                    out.writeInt( s4( old + 4 ) );
+                    out.writeInt( s4( old + 8 ) );
+
+                    for ( int i = 1; i < jumps.length; i++ ) {
+                        out.writeInt( switchTarget( through, jumps, targetStart, i ) - here );
+                    }
+                }
+                else {
+                    out.writeInt( jumps.length - 1 );
+
+                    for ( int i = 1; i < jumps.length; i++ ) {
+                        out.writeInt( s4( old + 8 * i ) );
+                        out.writeInt( switchTarget( through, jumps, targetStart, i ) - here );
+                    }
+                }
+            }
+            else {
+                int target = through != null ? through[0] : targetStart[ jumps[0] ];
+
+                if( op == GOTO_W ) {
+                    out.writeByte( op );
+                    out.writeInt( target - here );
+                }
+                else {
+                    out.writeByte( op );
+                    out.writeShort( short16( target - here ) );
+                }
+            }
+        }
+
+        for ( int[] trampoline : trampolineList ) {
+            writeProbe( out, fieldRef, trampoline[1] );
+            out.writeByte( GOTO_W );
+            out.writeInt( targetStart[ trampoline[2] ] - ( trampoline[0] + PROBE_LENGTH ) );
+        }
+
+        byte[] code = buffer.toByteArray();
+
+        //Then the rest of the attribute, with every offset moved
+        ByteArrayOutputStream attribute = new ByteArrayOutputStream( code.length + 256 );
+        out = new DataOutputStream( attribute );
+
+        out.writeShort( maxStack + ( method != null ? 3 : 0 ) + ( idConstant != 0 ? 1 : 0 ) );
+        out.writeShort( maxLocals );
+        out.writeInt( code.length );
+        out.write( code );
+
+        out.writeShort( exceptions.length / 4 );
+        for ( int i = 0; i < exceptions.length; i += 4 ) {
+            out.writeShort( blockStart[ exceptions[i] ] );
+            out.writeShort( blockStart[ exceptions[ i + 1 ] ] );
+            out.writeShort( targetStart[ exceptions[ i + 2 ] ] );
+            out.writeShort( exceptions[ i + 3 ] );
+        }
+
+        if( stackMapStart < 0 && ! trampolineList.isEmpty() && this.major >= 50 ) {
+            throw new UnsupportedOperationException( "No stack map frames" );
+        }
+
+        byte[] frames = stackMapStart < 0 ? null : frames( stackMapStart, access, name,
+                descriptor, targetStart, instructionStart, trampolineList );
+
+        out.writeShort( ( lineStarts.isEmpty() ? 0 : 1 ) + tables.size()
+                + ( frames == null ? 0 : 1 ) );
+
+        if( ! lineStarts.isEmpty() ) {
+            out.writeShort( utf8( "LineNumberTable" ) );
+            out.writeInt( 2 + 4 * lineStarts.size() );
+            out.writeShort( lineStarts.size() );
+
+            for ( Map.Entry<Integer, Integer> lineNumber : lineStarts.entrySet() ) {
+                out.writeShort( targetStart[ lineNumber.getKey() ] );
+                out.writeShort( lineNumber.getValue() );
+            }
+        }
+
+        for ( Map.Entry<Integer, int[]> table : tables.entrySet() ) {
+            int[] entries = table.getValue();
+            out.writeShort( table.getKey() );
+            out.writeInt( 2 + 2 * entries.length );
+            out.writeShort( entries.length / 5 );
+
+            for ( int i = 0; i < entries.length; i += 5 ) {
+                int from = Math.min( entries[i], length );
+                int to = Math.min( entries[i] + entries[ i + 1 ], length );
+
+                if( ! starts[ from ] || ! starts[ to ] ) {
+                    throw new IOException( "Local variable outside of the code" );
+                }
+
+                out.writeShort( blockStart[ from ] );
+                out.writeShort( blockStart[ to ] - blockStart[ from ] );
+                out.writeShort( entries[ i + 2 ] );
+                out.writeShort( entries[ i + 3 ] );
+                out.writeShort( entries[ i + 4 ] );
+            }
+        }
+
+        if( frames != null ) {
+            out.writeShort( stackMapName );
+            out.writeInt( frames.length );
+            out.write( frames );
+        }
+
+        return attribute.toByteArray();
+    }
+
+    /**
+     * Reads a method's stack map frames, and writes them back as full frames
+     * at the offsets their instructions moved to, along with a frame for
+     * every trampoline, which is the frame of the target it goes on to.
+     */
+    private byte[] frames( int start, int access, String name, String descriptor,
+            int[] targetStart, int[] instructionStart, List<int[]> trampolineList )
+            throws IOException {
+        int saved = this.pos;
+        this.pos = start;
+
+        //The implicit frame the method starts with
+        List<Integer> locals = new ArrayList<>();
+
+        if( ( access & ClassFileInfo.ACC_STATIC ) == 0 ) {
+            locals.add( name.equals( "<init>" ) ? ITEM_UNINITIALIZED_THIS << 16
+                    : ITEM_OBJECT << 16 | this.thisClass );
+        }
+
+        for ( int i = 1; descriptor.charAt( i ) != ')'; i++ ) {
+            int from = i;
+
+            while( descriptor.charAt( i ) == '[' ) {
+                i++;
+            }
+
+            if( descriptor.charAt( i ) == 'L' ) {
+                i = descriptor.indexOf( ';', i );
+            }
+
+            locals.add( verificationType( descriptor.substring( from, i + 1 ) ) );
+        }
+
+        TreeMap<Integer, int[][]> frames = new TreeMap<>();
+        int count = u2();
+        int offset = -1;
+
+        for ( int i = 0; i < count; i++ ) {
+            int type = u1();
+            List<Integer> stack = new ArrayList<>();
+
+            if( type < 64 ) {
+                offset += type + 1;
+            }
+            else if( type < 128 ) {
+                offset += type - 64 + 1;
+                stack.add( readType() );
+            }
+            else if( type == 247 ) {
+                offset += u2() + 1;
+                stack.add( readType() );
+            }
+            else if( type >= 248 && type <= 250 ) {
+                offset += u2() + 1;
+                locals = new ArrayList<>( locals.subList( 0, locals.size() - ( 251 - type ) ) );
+            }
+            else if( type == 251 ) {
+                offset += u2() + 1;
+            }
+            else if( type >= 252 && type <= 254 ) {
+                offset += u2() + 1;
+                locals = new ArrayList<>( locals );
+
+                for ( int j = 0; j < type - 251; j++ ) {
+                    locals.add( readType() );
+                }
+            }
+            else if( type == 255 ) {
+                offset += u2() + 1;
+                locals = new ArrayList<>();
+
+                for ( int j = u2(); j > 0; j-- ) {
+                    locals.add( readType() );
+                }
+                for ( int j = u2(); j > 0; j-- ) {
+                    stack.add( readType() );
+                }
+            }
+            else {
+                throw new IOException( "Unknown stack map frame " + type );
+            }
+
+            frames.put( offset, new int[][] { toArray( locals ), toArray( stack ) } );
+        }
+
+        this.pos = saved;
+
+        //Move every frame, and add one for every trampoline
+        TreeMap<Integer, int[][]> moved = new TreeMap<>();
+
+        for ( Map.Entry<Integer, int[][]> frame : frames.entrySet() ) {
+            moved.put( targetStart[ frame.getKey() ], frame.getValue() );
+        }
+
+        for ( int[] trampoline : trampolineList ) {
+            int[][] frame = frames.get( trampoline[2] );
+
+            if( frame == null ) {
+                throw new UnsupportedOperationException( "No frame for a branch target" );
+            }
+
+            moved.put( trampoline[0], frame );
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( buffer );
+        int previous = -1;
+
+        out.writeShort( moved.size() );
+
+        for ( Map.Entry<Integer, int[][]> frame : moved.entrySet() ) {
+            out.writeByte( 255 );
+            out.writeShort( frame.getKey() - previous - 1 );
+            previous = frame.getKey();
+
+            for ( int[] types : frame.getValue() ) {
+                out.writeShort( types.length );
+
+                for ( int type : types ) {
+                    int tag = type >>> 16;
+                    out.writeByte( tag );
+
+                    if( tag == ITEM_OBJECT ) {
+                        out.writeShort( type & 0xffff );
+                    }
+                    else if( tag == ITEM_UNINITIALIZED ) {
+                        out.writeShort( instructionStart[ type & 0xffff ] );
+                    }
+                }
+            }
+        }
+
+        return buffer.toByteArray();
+    }
+
+    private int readType() {
+        int tag = u1();
+        return tag == ITEM_OBJECT || tag == ITEM_UNINITIALIZED ? tag << 16 | u2() : tag << 16;
+    }
+
+    /**
+     * @return The verification type of a parameter of the given type.
+     */
+    private int verificationType( String type ) throws IOException {
+        switch( type.charAt( 0 ) ) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I':
+                return ITEM_INTEGER << 16;
+            case 'F':
+                return ITEM_FLOAT << 16;
+            case 'J':
+                return ITEM_LONG << 16;
+            case 'D':
+                return ITEM_DOUBLE << 16;
+            case 'L':
+                return ITEM_OBJECT << 16 | classRef( type.substring( 1, type.length() - 1 ) );
+            default:
+                return ITEM_OBJECT << 16 | classRef( type );
+        }
+    }
+
+    private static int[] toArray( List<Integer> types ) {
+        int[] array = new int[ types.size() ];
+        for ( int i = 0; i < array.length; i++ ) {
+            array[i] = types.get( i );
+        }
+        return array;
+    }
+
+    /**
+     * @return The original targets of a branching instruction, with the
+     * default of a switch first, or null if it does not branch.
+     */
+    private int[] jumps( int codeStart, int pc, int op ) {
+        int at = codeStart + pc;
+
+        if( ( op >= IFEQ && op <= GOTO ) || op == IFNULL || op == IFNONNULL ) {
+            return new int[] { pc + (short) s2( at + 1 ) };
+        }
+        else if( op == GOTO_W ) {
+            return new int[] { pc + s4( at + 1 ) };
+        }
+        else if( op == TABLESWITCH ) {
+            int table = at + 1 + padding( pc );
+            int low = s4( table + 4 );
+            int high = s4( table + 8 );
+            int[] jumps = new int[ high - low + 2 ];
+
+            jumps[0] = pc + s4( table );
+            for ( int i = 1; i < jumps.length; i++ ) {
+                jumps[i] = pc + s4( table + 8 + 4 * i );
+            }
+
+            return jumps;
+        }
+        else if( op == LOOKUPSWITCH ) {
+            int table = at + 1 + padding( pc );
+            int[] jumps = new int[ s4( table + 4 ) + 1 ];
+
+            jumps[0] = pc + s4( table );
+            for ( int i = 1; i < jumps.length; i++ ) {
+                jumps[i] = pc + s4( table + 4 + 8 * i );
+            }
+
+            return jumps;
+        }
+
+        return null;
+    }
+
+    private static boolean conditional( int op ) {
+        return ( op >= IFEQ && op <= IF_ACMPNE ) || op == IFNULL || op == IFNONNULL;
+    }
+
+    private static int switchTarget( int[] through, int[] jumps, int[] targetStart, int i ) {
+        return through != null ? through[i] : targetStart[ jumps[i] ];
+    }
+
+    /**
+     * @return The length of the instruction at <tt>pc</tt>.
+     */
+    private int length( int codeStart, int pc ) throws IOException {
+        return instructionLength( this.bytes, codeStart, pc );
+    }
+
+    /**
+     * @param bytes The class file the code is in.
+     * @param codeStart Where the code starts in <tt>bytes</tt>.
+     * @param pc The offset of the instruction in the code.
+     * @return The length of the instruction at <tt>pc</tt>, operands and
+     * padding included.
+     * @throws IOException If the opcode is not one the JVM knows.
+     */
+    static int instructionLength( byte[] bytes, int codeStart, int pc ) throws IOException {
+        int op = bytes[ codeStart + pc ] & 0xff;
+
+        if( op == TABLESWITCH ) {
+            int table = codeStart + pc + 1 + padding( pc );
+            return 1 + padding( pc ) + 12 + 4 * ( s4( bytes, table + 8 ) - s4( bytes, table + 4 ) + 1 );
+        }
+        else if( op == LOOKUPSWITCH ) {
+            int table = codeStart + pc + 1 + padding( pc );
+            return 1 + padding( pc ) + 8 + 8 * s4( bytes, table + 4 );
+        }
+        else if( op == WIDE ) {
+            return ( bytes[ codeStart + pc + 1 ] & 0xff ) == 0x84 ? 6 : 4;
+        }
+        else if( LENGTHS[ op ] == 0 ) {
+            throw new IOException( "Unknown opcode " + op );
+        }
+
+        return LENGTHS[ op ];
+    }
+
+    /** @return The padding after a switch at <tt>pc</tt>, which aligns its table */
+    private static int padding( int pc ) {
+        return 3 - ( pc & 3 );
+    }
+
+    private static int short16( int offset ) {
+        if( offset < Short.MIN_VALUE || offset > Short.MAX_VALUE ) {
+            throw new UnsupportedOperationException( "Jump too far" );
+        }
+        return offset;
+    }
+
+    private int nextProbe() {
+        if( this.probes >= MAX_PROBES ) {
+            throw new UnsupportedOperationException( "Too many probes" );
+        }
+        return this.probes++;
+    }
+
+    private static void writeProbe( DataOutputStream out, int fieldRef, int probe )
+            throws IOException {
+        out.writeByte( GETSTATIC );
+        out.writeShort( fieldRef );
+        out.writeByte( SIPUSH );
+        out.writeShort( probe );
+        out.writeByte( ICONST_1 );
+        out.writeByte( BASTORE );
+    }
+
+    private static void writeHead( DataOutputStream out, int idConstant, int probesRef,
+            int fieldRef ) throws IOException {
+        out.writeByte( LDC_W );
+        out.writeShort( idConstant );
+        out.writeByte( INVOKESTATIC );
+        out.writeShort( probesRef );
+        out.writeByte( PUTSTATIC );
+        out.writeShort( fieldRef );
+    }
+
+    /**
+     * Reads the constant pool, keeping its UTF8 entries.
+     */
+    private void readConstantPool() throws IOException {
+        this.poolCount = u2();
+        this.utf8 = new String[ this.poolCount ];
+
+        for ( int i = 1; i < this.poolCount; i++ ) {
+            int tag = u1();
+
+            switch( tag ) {
+                case 1:
+                    int length = u2();
+                    this.utf8[i] = new DataInputStream( new ByteArrayInputStream(
+                                this.bytes, this.pos - 2, length + 2 ) ).readUTF();
+                    this.pos += length;
+                    break;
+                case 7: case 8: case 16: case 19: case 20:
+                    this.pos += 2;
+                    break;
+                case 15:
+                    this.pos += 3;
+                    break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                    this.pos += 4;
+                    break;
+                case 5: case 6:
+                    //Eight byte constants take up two entries
+                    this.pos += 8;
+                    i++;
+                    break;
+                default:
+                    throw new IOException( "Unknown constant pool tag " + tag );
+            }
+        }
+    }
+
+    private void skipAttributes() {
+        for ( int count = u2(); count > 0; count-- ) {
+            this.pos += 2;
+            int length = u4();
+            this.pos += length;
+        }
+    }
+
+    //Constants added to the pool, each added once
+
+    private int utf8( String value ) throws IOException {
+        Integer index = this.added.get( "U" + value );
+
+        if( index == null ) {
+            this.pool.writeByte( 1 );
+            this.pool.writeUTF( value );
+            index = add( "U" + value );
+        }
+
+        return index;
+    }
+
+    private int classRef( String name ) throws IOException {
+        Integer index = this.added.get( "C" + name );
+
+        if( index == null ) {
+            int nameIndex = utf8( name );
+            this.pool.writeByte( 7 );
+            this.pool.writeShort( nameIndex );
+            index = add( "C" + name );
+        }
+
+        return index;
+    }
+
+    private int integer( int value ) throws IOException {
+        this.pool.writeByte( 3 );
+        this.pool.writeInt( value );
+        return add( "I" + value );
+    }
+
+    private int fieldRef() throws IOException {
+        int nameAndType = nameAndType( FIELD, "[Z" );
+        this.pool.writeByte( 9 );
+        this.pool.writeShort( this.thisClass );
+        this.pool.writeShort( nameAndType );
+        return add( "F" );
+    }
+
+    private int methodRef( String owner, String name, String descriptor ) throws IOException {
+        int ownerIndex = classRef( owner );
+        int nameAndType = nameAndType( name, descriptor );
+        this.pool.writeByte( 10 );
+        this.pool.writeShort( ownerIndex );
+        this.pool.writeShort( nameAndType );
+        return add( "M" + owner + "." + name + descriptor );
+    }
+
+    private int nameAndType( String name, String descriptor ) throws IOException {
+        int nameIndex = utf8( name );
+        int descriptorIndex = utf8( descriptor );
+        this.pool.writeByte( 12 );
+        this.pool.writeShort( nameIndex );
+        this.pool.writeShort( descriptorIndex );
+        return add( "N" + name + descriptor );
+    }
+
+    private int add( String key ) throws IOException {
+        if( this.poolCount >= 65535 ) {
+            throw new IOException( "Constant pool is full" );
+        }
+
+        this.added.put( key, this.poolCount );
+        return this.poolCount++;
+    }
+
+    //Reading the class file
+
+    private int u1() {
+        return this.bytes[ this.pos++ ] & 0xff;
+    }
+
+    private int u2() {
+        int value = s2( this.pos );
+        this.pos += 2;
+        return value;
+    }
+
+    private int u4() {
+        int value = s4( this.pos );
+        this.pos += 4;
+        return value;
+    }
+
+    private int s2( int at ) {
+        return ( this.bytes[ at ] & 0xff ) << 8 | ( this.bytes[ at + 1 ] & 0xff );
+    }
+
+    private int s4( int at ) {
+        return s4( this.bytes, at );
+    }
+
+    private static int s4( byte[] bytes, int at ) {
+        return ( bytes[ at ] & 0xff ) << 24 | ( bytes[ at + 1 ] & 0xff ) << 16
+            | ( bytes[ at + 2 ] & 0xff ) << 8 | ( bytes[ at + 3 ] & 0xff );
+    }
+}
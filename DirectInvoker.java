@@ -0,0 +1,579 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Runs tests whose arguments and expected value are plain literals without
+ * generating or compiling anything. The target constructor and method are
+ * resolved the way javac would resolve them, turned into method handles, and
+ * then invoked directly.
+ *
+ * Every run loads the class under test through its own loader, as a
+ * compiled suite does, so that static state never carries over from one run
+ * to the next. Only the outcome of resolution, the signature of the target,
+ * is cached, keyed by the bytes of the class file, and it is looked up again
+ * in the class of each run.
+ *
+ * Whenever a test is not that simple, for example because an argument is an
+ * arbitrary expression, the overload is ambiguous, or the target declares a
+ * checked exception, the test is left for the compiler, so that it reports
+ * exactly what a generated suite would.
+ */
+public final class DirectInvoker {
+
+    //Primitive types and the primitive types each of them widens to
+    private static final Map<Class<?>, List<Class<?>>> widenings = new HashMap<>();
+
+    //Primitive types and their wrappers
+    private static final Map<Class<?>, Class<?>> boxes = new HashMap<>();
+
+    static {
+        widenings.put( byte.class, Arrays.<Class<?>>asList( short.class, int.class, long.class, float.class, double.class ) );
+        widenings.put( short.class, Arrays.<Class<?>>asList( int.class, long.class, float.class, double.class ) );
+        widenings.put( char.class, Arrays.<Class<?>>asList( int.class, long.class, float.class, double.class ) );
+        widenings.put( int.class, Arrays.<Class<?>>asList( long.class, float.class, double.class ) );
+        widenings.put( long.class, Arrays.<Class<?>>asList( float.class, double.class ) );
+        widenings.put( float.class, Arrays.<Class<?>>asList( double.class ) );
+        widenings.put( double.class, Arrays.<Class<?>>asList() );
+        widenings.put( boolean.class, Arrays.<Class<?>>asList() );
+
+        boxes.put( byte.class, Byte.class );
+        boxes.put( short.class, Short.class );
+        boxes.put( char.class, Character.class );
+        boxes.put( int.class, Integer.class );
+        boxes.put( long.class, Long.class );
+        boxes.put( float.class, Float.class );
+        boxes.put( double.class, Double.class );
+        boxes.put( boolean.class, Boolean.class );
+    }
+
+    //Marks a lookup that has no usable target
+    private static final Target NONE = new Target( null, null, false, null );
+
+    //Resolution that found no usable target
+    private static final Signature UNUSABLE = new Signature( null, null );
+
+    private static final int MAX_SIGNATURES = Integer.getInteger( "suitegenerator.direct.cacheSize", 4096 );
+
+    //The signature that every resolution picked, least recently used first
+    private static final Map<String, Signature> signatures =
+        new LinkedHashMap<String, Signature>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Signature> eldest ) {
+                return size() > MAX_SIGNATURES;
+            }
+        };
+
+    /** Empty Constructor */
+    private DirectInvoker() { }
+
+    /**
+     * Runs a test directly, if it can be.
+     * @param test The test to run.
+     * @param submission The loader of the run that the test is part of, which
+     * the class under test is loaded through.
+     * @param executor The executor whose budget the test is held to.
+     * @return The result of the test, or null if it has to be compiled.
+     */
+    public static TestResult tryRun( TestSpec test, SubmissionClassLoader submission,
+            TestExecutor executor ) {
+        final List<LiteralParser.Literal> args =
+            LiteralParser.parseList( test.getMethodArguments() );
+        final LiteralParser.Literal expected =
+            LiteralParser.parse( test.getExpectedValue() );
+        List<LiteralParser.Literal> consArgs = null;
+
+        if( args == null || expected == null ) {
+            return null;
+        }
+
+        if( ! test.isStatic() ) {
+            consArgs = LiteralParser.parseList( test.getConstructorArguments() );
+
+            if( consArgs == null ) {
+                return null;
+            }
+        }
+
+        byte[] classFile = submission.readClassFile( test.getClassName() );
+        Class<?> clazz;
+
+        if( classFile == null ) {
+            return null;
+        }
+
+        try {
+            clazz = submission.loadClass( test.getClassName() );
+        }
+        catch( ClassNotFoundException | LinkageError e ) {
+            return null;
+        }
+
+        if( ! Modifier.isPublic( clazz.getModifiers() ) ) {
+            return null;
+        }
+
+        //Resolutions are only reused for the same bytes
+        String classKey = CompiledSuiteCache.key( test.getClassName(),
+                Collections.singletonList( classFile ) );
+
+        final Target constructor = consArgs == null ? null
+            : resolve( clazz, classKey, "<init>", false, consArgs );
+        final Target method = resolve( clazz, classKey, test.getMethodName(),
+                test.isStatic(), args );
+
+        if( constructor == NONE || method == NONE ) {
+            return null;
+        }
+
+        final Object[] consValues = constructor == null ? null
+            : constructor.coerce( consArgs );
+        final Object[] methodValues = method.coerce( args );
+        final String assertion = TestSuiteGenerator.assertion(
+                method.getReturnDescriptor(), test.getExpectedValue() );
+
+        return executor.runBudgeted( test.getTestName(), () -> {
+            Object actual;
+
+            if( constructor == null ) {
+                actual = method.invoke( methodValues );
+            }
+            else {
+                Object instance = constructor.invoke( consValues );
+
+                //Instance methods take their receiver as the first argument
+                if( ! method.takesReceiver() ) {
+                    actual = method.invoke( methodValues );
+                }
+                else {
+                    Object[] withReceiver = new Object[ methodValues.length + 1 ];
+                    withReceiver[0] = instance;
+                    System.arraycopy( methodValues, 0, withReceiver, 1, methodValues.length );
+                    actual = method.invoke( withReceiver );
+                }
+            }
+
+            check( assertion, expected.getValue(), actual );
+        });
+    }
+
+    /**
+     * Compares what a method returned to the expected value the same way
+     * that the generated assertion of the same name does.
+     * @param assertion The name of the assertion, as picked by
+     * <tt>TestSuiteGenerator.assertion</tt>.
+     * @throws AssertionException If the values are not equal.
+     */
+    static void check( String assertion, Object expected, Object actual ) {
+        String condition;
+        boolean holds;
+
+        switch( assertion ) {
+            case "assertBoolean":
+            case "assertChar":
+                condition = "a == b";
+                holds = expected.equals( actual );
+                break;
+            case "assertIntegral":
+                //Both sides are widened to long, as the generated code does
+                expected = longValue( expected );
+                actual = longValue( actual );
+                condition = "a == b";
+                holds = expected.equals( actual );
+                break;
+            case "assertFloat":
+                //A char literal is widened like any other integral one
+                expected = doubleValue( expected );
+                condition = "closeEnough( a, b, 1e-6 )";
+                holds = closeEnough( (Double) expected, doubleValue( actual ), 1e-6 );
+                break;
+            case "assertDouble":
+                expected = doubleValue( expected );
+                condition = "closeEnough( a, b, 1e-9 )";
+                holds = closeEnough( (Double) expected, doubleValue( actual ), 1e-9 );
+                break;
+            case "assertArray":
+                condition = actual instanceof Object[] ? "Arrays.deepEquals(a, b)" : "Arrays.equals(a, b)";
+                holds = Objects.deepEquals( expected, actual );
+                break;
+            default:
+                condition = "a.equals(b)";
+                holds = Objects.deepEquals( expected, actual );
+                break;
+        }
+
+        if( ! holds ) {
+            throw new AssertionException( "Assertion Error: " + condition
+                    + " returned false!", expected, actual );
+        }
+    }
+
+    private static Long longValue( Object value ) {
+        return value instanceof Character
+            ? Long.valueOf( (Character) value ) : Long.valueOf( ((Number) value).longValue() );
+    }
+
+    private static Double doubleValue( Object value ) {
+        return value instanceof Character
+            ? Double.valueOf( (Character) value ) : Double.valueOf( ((Number) value).doubleValue() );
+    }
+
+    /**
+     * @return Whether two values are within a relative tolerance of each
+     * other, or an absolute one close to zero, or both NaN.
+     */
+    private static boolean closeEnough( double a, double b, double epsilon ) {
+        return a == b || ( a != a && b != b ) || Math.abs( a - b )
+            <= epsilon * Math.max( 1.0, Math.max( Math.abs( a ), Math.abs( b ) ) );
+    }
+
+    /**
+     * Finds the single constructor or method that javac would pick for a list
+     * of literal arguments. Which one it is, is cached.
+     * @param clazz The class that declares the target.
+     * @param classKey The hash of the class's class file.
+     * @param name The name of the method, or &lt;init&gt; for a constructor.
+     * @param onlyStatic Whether only static methods may be picked.
+     * @param args The arguments.
+     * @return The target, or NONE if there is no single usable target.
+     */
+    private static Target resolve( Class<?> clazz, String classKey, String name,
+            boolean onlyStatic, List<LiteralParser.Literal> args ) {
+        StringBuilder key = new StringBuilder( classKey ).append( '|' ).append( name )
+            .append( onlyStatic ? "|static" : "|any" );
+
+        for ( LiteralParser.Literal arg : args ) {
+            key.append( '|' ).append( arg.getType() == null ? "null" : arg.getType().getName() );
+        }
+
+        Signature signature;
+
+        synchronized( signatures ) {
+            signature = signatures.get( key.toString() );
+        }
+
+        if( signature == null ) {
+            Executable chosen = choose( clazz, name, onlyStatic, args );
+
+            synchronized( signatures ) {
+                signatures.put( key.toString(), chosen == null ? UNUSABLE : new Signature( chosen ) );
+            }
+
+            return chosen == null ? NONE : target( chosen );
+        }
+
+        Executable found = signature.find( clazz );
+        return found == null ? NONE : target( found );
+    }
+
+    /**
+     * @return The constructor or method that javac would pick, or null if
+     * there is no single one that can be invoked directly.
+     */
+    private static Executable choose( Class<?> clazz, String name, boolean
+            onlyStatic, List<LiteralParser.Literal> args ) {
+        List<Executable> candidates = new ArrayList<>();
+
+        if( name.equals( "<init>" ) ) {
+            candidates.addAll( Arrays.asList( clazz.getConstructors() ) );
+        }
+        else {
+            for ( Method method : clazz.getMethods() ) {
+                if( method.getName().equals( name ) && ! method.isBridge() && ( ! onlyStatic
+                            || Modifier.isStatic( method.getModifiers() ) ) ) {
+                    candidates.add( method );
+                }
+            }
+        }
+
+        //Like javac, try without boxing before trying with it
+        Executable chosen = mostSpecific( applicable( candidates, args, false ) );
+
+        if( chosen == null ) {
+            chosen = mostSpecific( applicable( candidates, args, true ) );
+        }
+
+        if( chosen == null || throwsChecked( chosen ) || ( chosen instanceof Method
+                    && ((Method) chosen).getReturnType() == void.class ) ) {
+            return null;
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Turns a constructor or method into a handle that takes every argument
+     * as one array, so that invoking never has to adapt.
+     */
+    private static Target target( Executable chosen ) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle handle = chosen instanceof Method
+                ? lookup.unreflect( (Method) chosen )
+                : lookup.unreflectConstructor( (Constructor<?>) chosen );
+            int arity = handle.type().parameterCount();
+
+            handle = handle.asType( MethodType.genericMethodType( arity ) )
+                .asSpreader( Object[].class, arity );
+
+            return new Target( handle, chosen.getParameterTypes(), chosen instanceof Method
+                    && ! Modifier.isStatic( chosen.getModifiers() ), chosen instanceof Method
+                    ? ((Method) chosen).getReturnType() : null );
+        }
+        catch( IllegalAccessException iae ) {
+            return NONE;
+        }
+    }
+
+    /**
+     * The name and descriptor of a resolved constructor or method, which
+     * holds on to no class, so that it can be looked up again in the same
+     * class defined by another loader.
+     */
+    private static final class Signature {
+        private final String name;
+        private final String descriptor;
+
+        Signature( String name, String descriptor ) {
+            this.name       = name;
+            this.descriptor = descriptor;
+        }
+
+        Signature( Executable chosen ) {
+            this( chosen instanceof Method ? chosen.getName() : "<init>",
+                    MethodType.methodType( chosen instanceof Method
+                        ? ((Method) chosen).getReturnType() : void.class,
+                        chosen.getParameterTypes() ).toMethodDescriptorString() );
+        }
+
+        /**
+         * @return The constructor or method in the class, or null if it has
+         * none with this signature.
+         */
+        Executable find( Class<?> clazz ) {
+            if( this.name == null ) {
+                return null;
+            }
+
+            try {
+                MethodType type = MethodType.fromMethodDescriptorString(
+                        this.descriptor, clazz.getClassLoader() );
+
+                if( this.name.equals( "<init>" ) ) {
+                    return clazz.getConstructor( type.parameterArray() );
+                }
+
+                Method method = clazz.getMethod( this.name, type.parameterArray() );
+                return method.getReturnType() == type.returnType() ? method : null;
+            }
+            catch( NoSuchMethodException | TypeNotPresentException | IllegalArgumentException e ) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return The candidates that accept the arguments.
+     */
+    private static List<Executable> applicable( List<Executable> candidates,
+            List<LiteralParser.Literal> args, boolean boxing ) {
+        List<Executable> applicable = new ArrayList<>();
+
+        for ( Executable candidate : candidates ) {
+            Class<?>[] params = candidate.getParameterTypes();
+            boolean accepts = params.length == args.size();
+
+            for ( int i = 0; accepts && i < params.length; i++ ) {
+                accepts = accepts( params[i], args.get( i ).getType(), boxing );
+            }
+
+            if( accepts ) {
+                applicable.add( candidate );
+            }
+        }
+
+        return applicable;
+    }
+
+    /**
+     * @return The candidate whose parameters are all at least as specific as
+     * every other candidate's, or null if there is no such candidate.
+     */
+    private static Executable mostSpecific( List<Executable> candidates ) {
+        Executable best = null;
+
+        for ( Executable candidate : candidates ) {
+            boolean specific = true;
+
+            for ( Executable other : candidates ) {
+                if( other == candidate ) {
+                    continue;
+                }
+
+                Class<?>[] mine = candidate.getParameterTypes();
+                Class<?>[] theirs = other.getParameterTypes();
+
+                for ( int i = 0; specific && i < mine.length; i++ ) {
+                    specific = accepts( theirs[i], mine[i], false );
+                }
+            }
+
+            if( specific ) {
+                if( best != null ) {
+                    return null;
+                }
+
+                best = candidate;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Whether a parameter accepts a value, through method invocation
+     * conversion.
+     * @param param The type of the parameter.
+     * @param type The type of the value, or null for the null literal.
+     * @param boxing Whether boxing and unboxing are allowed.
+     */
+    private static boolean accepts( Class<?> param, Class<?> type, boolean boxing ) {
+        if( type == null ) {
+            return ! param.isPrimitive();
+        }
+
+        if( param == type ) {
+            return true;
+        }
+
+        if( type.isPrimitive() ) {
+            if( param.isPrimitive() ) {
+                return widenings.get( type ).contains( param );
+            }
+
+            return boxing && param.isAssignableFrom( boxes.get( type ) );
+        }
+
+        if( param.isPrimitive() ) {
+            return false;
+        }
+
+        return param.isAssignableFrom( type );
+    }
+
+    /**
+     * @return Whether the target declares a checked exception, which the
+     * generated code would fail to compile against.
+     */
+    private static boolean throwsChecked( Executable target ) {
+        for ( Class<?> exception : target.getExceptionTypes() ) {
+            if( ! RuntimeException.class.isAssignableFrom( exception )
+                    && ! Error.class.isAssignableFrom( exception ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A resolved constructor or method.
+     */
+    private static final class Target {
+        private final MethodHandle handle;
+        private final Class<?>[] params;
+        private final boolean receiver;
+        private final Class<?> returnType;
+
+        Target( MethodHandle handle, Class<?>[] params, boolean receiver, Class<?> returnType ) {
+            this.handle     = handle;
+            this.params     = params;
+            this.receiver   = receiver;
+            this.returnType = returnType;
+        }
+
+        /**
+         * @return The descriptor of the type that the method returns, such as
+         * <tt>I</tt>, or null for a constructor.
+         */
+        String getReturnDescriptor() {
+            return this.returnType == null ? null
+                : MethodType.methodType( this.returnType ).toMethodDescriptorString().substring( 2 );
+        }
+
+        /**
+         * Converts literal values to the exact types of the parameters.
+         */
+        Object[] coerce( List<LiteralParser.Literal> args ) {
+            Object[] values = new Object[ args.size() ];
+
+            for ( int i = 0; i < values.length; i++ ) {
+                values[i] = DirectInvoker.coerce( args.get( i ).getValue(), this.params[i] );
+            }
+
+            return values;
+        }
+
+        /**
+         * @return Whether the target is an instance method, which takes its
+         * receiver in front of its arguments.
+         */
+        boolean takesReceiver() {
+            return this.receiver;
+        }
+
+        Object invoke( Object[] args ) throws Throwable {
+            return (Object) this.handle.invokeExact( args );
+        }
+    }
+
+    /**
+     * Applies a widening primitive conversion to a boxed value.
+     * @param value The boxed value.
+     * @param param The type of the parameter that it is passed to.
+     * @return The value, boxed as the parameter's type if that is primitive.
+     */
+    static Object coerce( Object value, Class<?> param ) {
+        if( ! param.isPrimitive() || value instanceof Boolean ) {
+            return value;
+        }
+
+        Number number = value instanceof Character
+            ? Integer.valueOf( (Character) value ) : (Number) value;
+
+        if( param == char.class ) {
+            return value;
+        }
+        if( param == short.class ) {
+            return number.shortValue();
+        }
+        if( param == int.class ) {
+            return number.intValue();
+        }
+        if( param == long.class ) {
+            return number.longValue();
+        }
+        if( param == float.class ) {
+            return number.floatValue();
+        }
+        if( param == double.class ) {
+            return number.doubleValue();
+        }
+
+        return number.byteValue();
+    }
+}
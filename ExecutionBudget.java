@@ -0,0 +1,66 @@
+/**
+ * Limits how much a test, or a whole suite, may consume before it is stopped:
+ * wall-clock time, CPU time and allocated bytes. A limit of zero means that
+ * resource is unlimited.
+ */
+public class ExecutionBudget {
+
+    /** A budget that never stops anything */
+    public static final ExecutionBudget UNLIMITED = new ExecutionBudget( 0, 0, 0 );
+
+    private final long wallMillis;
+    private final long cpuMillis;
+    private final long allocatedBytes;
+
+    /**
+     * @param wallMillis The wall-clock time allowed, in milliseconds.
+     * @param cpuMillis The CPU time allowed, in milliseconds.
+     * @param allocatedBytes The number of bytes that may be allocated.
+     */
+    public ExecutionBudget( long wallMillis, long cpuMillis, long allocatedBytes ) {
+        this.wallMillis     = wallMillis;
+        this.cpuMillis      = cpuMillis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Reads a budget from the system properties <tt>prefix.timeout</tt>,
+     * <tt>prefix.cpu</tt> (both in milliseconds) and <tt>prefix.memory</tt>
+     * (in bytes).
+     * @param prefix The prefix of the properties.
+     * @param defaultWallMillis The wall-clock limit used when none is set.
+     * @return The configured budget.
+     */
+    public static ExecutionBudget fromSystemProperties( String prefix,
+            long defaultWallMillis ) {
+        return new ExecutionBudget(
+                Long.getLong( prefix + ".timeout", defaultWallMillis ),
+                Long.getLong( prefix + ".cpu", 0 ),
+                Long.getLong( prefix + ".memory", 0 ) );
+    }
+
+    public long getWallMillis() {
+        return this.wallMillis;
+    }
+
+    public long getCpuMillis() {
+        return this.cpuMillis;
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * @return Whether this budget limits nothing at all.
+     */
+    public boolean isUnlimited() {
+        return this.wallMillis <= 0 && this.cpuMillis <= 0 && this.allocatedBytes <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "wall=" + this.wallMillis + "ms cpu=" + this.cpuMillis
+            + "ms memory=" + this.allocatedBytes + "B";
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when requests that generate, compile and run code may start, so
+ * that a burst of them queues up instead of thrashing the machine.
+ *
+ * At most <tt>concurrency</tt> requests run at once, which should be about
+ * the number of cores. Every other request waits in the queue of the user it
+ * came from, and whenever a request finishes, the next one is taken from the
+ * users in turn, so a user with a hundred requests waiting does not hold up
+ * a user with one. A request is turned away straight away, rather than
+ * queued, once <tt>maxQueued</tt> requests are waiting in all, or
+ * <tt>maxQueuedPerUser</tt> are waiting for its user.
+ *
+ * A request enters with <tt>enter</tt>, waits for its turn with
+ * <tt>Ticket.await</tt>, and leaves with <tt>Ticket.close</tt>, which also
+ * takes it out of the queue if it gave up waiting:
+ * <tt>try( ExecutionScheduler.Ticket ticket = scheduler.enter( user ) ) {
+ * ticket.await(); ... }</tt>
+ */
+public class ExecutionScheduler {
+
+    //How long requests wait for their turn, and how long they run once it comes
+    private static final LatencyHistogram waitTime = Metrics.histogram( "scheduler.wait" );
+    private static final LatencyHistogram serviceTime = Metrics.histogram( "scheduler.service" );
+
+    private final int concurrency;
+    private final int maxQueued;
+    private final int maxQueuedPerUser;
+
+    //The waiting tickets of every user with any, in the order users are served
+    private final Map<String, Deque<Ticket>> queues = new LinkedHashMap<>();
+
+    private int running;
+    private int queued;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * A request's place in the scheduler.
+     */
+    public final class Ticket implements AutoCloseable {
+        private final String user;
+        private final int position;
+        private final long entered = System.nanoTime();
+
+        //Guarded by the scheduler
+        private boolean started;
+        private boolean closed;
+        private long startedAt;
+
+        private Ticket( String user, int position ) {
+            this.user       = user;
+            this.position   = position;
+        }
+
+        /**
+         * @return The request's place in line when it entered, counting the
+         * turns other users get before it: 1 if it was next. 0 if it could
+         * start straight away.
+         */
+        public int getPosition() {
+            return this.position;
+        }
+
+        /**
+         * Waits until the request may start.
+         * @throws InterruptedException If the thread was interrupted while
+         * waiting. The ticket still has to be closed.
+         */
+        public void await() throws InterruptedException {
+            synchronized( ExecutionScheduler.this ) {
+                while( ! this.started ) {
+                    ExecutionScheduler.this.wait();
+                }
+            }
+        }
+
+        /**
+         * Leaves the scheduler, letting the next request start if this one
+         * was running, or giving up its place in the queue otherwise.
+         */
+        @Override
+        public void close() {
+            synchronized( ExecutionScheduler.this ) {
+                if( this.closed ) {
+                    return;
+                }
+
+                this.closed = true;
+
+                if( this.started ) {
+                    serviceTime.recordSince( this.startedAt );
+                    ExecutionScheduler.this.running--;
+                    dispatch();
+                }
+                else {
+                    Deque<Ticket> queue = ExecutionScheduler.this.queues.get( this.user );
+                    queue.remove( this );
+                    ExecutionScheduler.this.queued--;
+
+                    if( queue.isEmpty() ) {
+                        ExecutionScheduler.this.queues.remove( this.user );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param concurrency How many requests may run at once.
+     * @param maxQueued How many requests may wait in all.
+     * @param maxQueuedPerUser How many requests of a single user may wait.
+     */
+    public ExecutionScheduler( int concurrency, int maxQueued, int maxQueuedPerUser ) {
+        if( concurrency < 1 || maxQueued < 0 || maxQueuedPerUser < 0 ) {
+            throw new IllegalArgumentException( "Invalid scheduler limits: concurrency="
+                    + concurrency + " maxQueued=" + maxQueued
+                    + " maxQueuedPerUser=" + maxQueuedPerUser );
+        }
+
+        this.concurrency        = concurrency;
+        this.maxQueued          = maxQueued;
+        this.maxQueuedPerUser   = maxQueuedPerUser;
+    }
+
+    /**
+     * Reads the limits from <tt>suitegenerator.scheduler.concurrency</tt>
+     * (the number of cores by default), <tt>suitegenerator.scheduler.maxQueued</tt>
+     * (256) and <tt>suitegenerator.scheduler.maxQueuedPerUser</tt> (16).
+     * @return A scheduler with those limits.
+     */
+    public static ExecutionScheduler fromSystemProperties() {
+        return new ExecutionScheduler(
+                Integer.getInteger( "suitegenerator.scheduler.concurrency",
+                    Runtime.getRuntime().availableProcessors() ),
+                Integer.getInteger( "suitegenerator.scheduler.maxQueued", 256 ),
+                Integer.getInteger( "suitegenerator.scheduler.maxQueuedPerUser", 16 ) );
+    }
+
+    /**
+     * Lets a request in, either to run straight away or to wait its turn.
+     * @param user Who the request came from. Requests without a user share
+     * the empty one.
+     * @return The request's ticket, or null if it was turned away because
+     * too many requests are waiting already.
+     */
+    public synchronized Ticket enter( String user ) {
+        user = user == null ? "" : user;
+        Deque<Ticket> queue = this.queues.get( user );
+        int waiting = queue == null ? 0 : queue.size();
+
+        if( this.running < this.concurrency && this.queued == 0 ) {
+            Ticket ticket = new Ticket( user, 0 );
+            start( ticket );
+            this.admitted.increment();
+            return ticket;
+        }
+
+        if( this.queued >= this.maxQueued || waiting >= this.maxQueuedPerUser ) {
+            this.rejected.increment();
+            return null;
+        }
+
+        //Every other user gets up to as many turns before it as it waits behind
+        int position = waiting;
+
+        for ( Map.Entry<String, Deque<Ticket>> other : this.queues.entrySet() ) {
+            if( ! other.getKey().equals( user ) ) {
+                position += Math.min( other.getValue().size(), waiting + 1 );
+            }
+        }
+
+        Ticket ticket = new Ticket( user, position + 1 );
+
+        if( queue == null ) {
+            queue = new ArrayDeque<>();
+            this.queues.put( user, queue );
+        }
+
+        queue.addLast( ticket );
+        this.queued++;
+        this.admitted.increment();
+
+        return ticket;
+    }
+
+    /**
+     * Starts waiting requests while there is room, one user at a time.
+     */
+    private void dispatch() {
+        while( this.running < this.concurrency && ! this.queues.isEmpty() ) {
+            Iterator<Map.Entry<String, Deque<Ticket>>> users = this.queues.entrySet().iterator();
+            Map.Entry<String, Deque<Ticket>> next = users.next();
+            Ticket ticket = next.getValue().removeFirst();
+            this.queued--;
+
+            //The user goes to the back of the line, if it has more waiting
+            users.remove();
+
+            if( ! next.getValue().isEmpty() ) {
+                this.queues.put( next.getKey(), next.getValue() );
+            }
+
+            start( ticket );
+        }
+
+        notifyAll();
+    }
+
+    private void start( Ticket ticket ) {
+        ticket.started = true;
+        ticket.startedAt = System.nanoTime();
+        waitTime.record( ticket.startedAt - ticket.entered );
+        this.running++;
+    }
+
+    /** @return How many requests are running */
+    public synchronized int getRunning() {
+        return this.running;
+    }
+
+    /** @return How many requests are waiting */
+    public synchronized int getQueued() {
+        return this.queued;
+    }
+
+    /**
+     * @return About how long a request that is turned away should wait
+     * before it tries again: how long the requests that are waiting take to
+     * run, going by how long requests have taken so far.
+     */
+    public synchronized long getRetryAfterMillis() {
+        double perRequest = Math.max( serviceTime.getMeanNanos(), 1000000 );
+        return (long) Math.ceil( perRequest * ( this.queued + 1 ) / this.concurrency / 1000000 );
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "running=" + this.running + " queued=" + this.queued
+            + " users=" + this.queues.size() + " concurrency=" + this.concurrency
+            + " admitted=" + this.admitted.sum() + " rejected=" + this.rejected.sum();
+    }
+}
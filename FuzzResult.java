@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of fuzzing a single method: how many generated inputs it was
+ * called with, and the shrunk inputs of every distinct way it failed.
+ */
+public class FuzzResult {
+
+    /**
+     * A distinct failure, with the simplest input found that still causes
+     * it.
+     */
+    public static class Failure {
+        private final String kind;
+        private final String input;
+        private final String message;
+        private final long caseSeed;
+
+        /**
+         * @param kind <tt>CRASH</tt> if the method threw, or <tt>INVARIANT</tt>
+         * if the invariant did not hold for its result.
+         * @param input The call that fails, as Java source.
+         * @param message What was thrown, or which invariant did not hold.
+         * @param caseSeed The seed that generated the input before it was
+         * shrunk.
+         */
+        public Failure( String kind, String input, String message, long caseSeed ) {
+            this.kind       = kind;
+            this.input      = input;
+            this.message    = message;
+            this.caseSeed   = caseSeed;
+        }
+
+        public String getKind() {
+            return this.kind;
+        }
+
+        public String getInput() {
+            return this.input;
+        }
+
+        public String getMessage() {
+            return this.message;
+        }
+
+        public long getCaseSeed() {
+            return this.caseSeed;
+        }
+
+        @Override
+        public String toString() {
+            return this.kind + " " + this.input + ": " + this.message;
+        }
+    }
+
+    private final String name;
+    private final long seed;
+    private final long cases;
+    private final long invocations;
+    private final long discarded;
+    private final long nanos;
+    private final List<Failure> failures;
+    private final String error;
+
+    /**
+     * @param name The name of the fuzzing run.
+     * @param seed The seed that every input was generated from.
+     * @param cases How many inputs were generated.
+     * @param invocations How many of them the method was called with.
+     * @param discarded How many of them could not be built, because a
+     * constructor or factory threw.
+     * @param nanos How long fuzzing took, in nanoseconds.
+     * @param failures Every distinct failure that was found.
+     */
+    public FuzzResult( String name, long seed, long cases, long invocations,
+            long discarded, long nanos, List<Failure> failures ) {
+        this( name, seed, cases, invocations, discarded, nanos, failures, null );
+    }
+
+    private FuzzResult( String name, long seed, long cases, long invocations,
+            long discarded, long nanos, List<Failure> failures, String error ) {
+        this.name           = name;
+        this.seed           = seed;
+        this.cases          = cases;
+        this.invocations    = invocations;
+        this.discarded      = discarded;
+        this.nanos          = nanos;
+        this.failures       = Collections.unmodifiableList( new ArrayList<>( failures ) );
+        this.error          = error;
+    }
+
+    /**
+     * @param name The name of the fuzzing run.
+     * @param error Why the method could not be fuzzed.
+     * @return The result of a run that never called the method.
+     */
+    public static FuzzResult error( String name, long seed, String error ) {
+        return new FuzzResult( name, seed, 0, 0, 0, 0,
+                Collections.<Failure>emptyList(), error );
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /** @return Why the method could not be fuzzed, or null if it was */
+    public String getError() {
+        return this.error;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public long getCases() {
+        return this.cases;
+    }
+
+    public long getInvocations() {
+        return this.invocations;
+    }
+
+    public long getDiscarded() {
+        return this.discarded;
+    }
+
+    public long getNanos() {
+        return this.nanos;
+    }
+
+    public List<Failure> getFailures() {
+        return this.failures;
+    }
+
+    /** @return Whether the method was fuzzed without failing */
+    public boolean passed() {
+        return this.error == null && this.failures.isEmpty();
+    }
+
+    /** @return How many invocations were made per second */
+    public double getInvocationsPerSecond() {
+        return this.nanos == 0 ? 0 : this.invocations * 1e9 / this.nanos;
+    }
+
+    @Override
+    public String toString() {
+        if( this.error != null ) {
+            return this.name + ": " + this.error;
+        }
+
+        StringBuilder sb = new StringBuilder( this.name ).append( ": " )
+            .append( this.invocations ).append( " invocations in " )
+            .append( this.nanos / 1000000 ).append( " ms, seed " ).append( this.seed )
+            .append( ", " ).append( this.failures.size() ).append( " failures" );
+
+        for ( Failure failure : this.failures ) {
+            sb.append( "\n    " ).append( failure );
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,494 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calls a method with large numbers of generated inputs, in the current
+ * thread, and reports every distinct way it fails: by throwing, or by
+ * returning a result that an invariant does not hold for.
+ *
+ * The parameter types come from the method's class file, the same way
+ * <tt>ClassInfoAnalyzer</tt> reads them, and values of them are generated by
+ * an <tt>InputGenerator</tt>. Instance methods are called on a generated
+ * receiver. Every input is generated from a seed derived from the seed of the
+ * run and the number of the input, so a run with the same seed calls the
+ * method with the same inputs again.
+ *
+ * The first input that fails in a new way is shrunk, by repeatedly removing
+ * and lowering the choices it was generated from for as long as the input
+ * still fails the same way, so that what is reported is a simple call that
+ * still fails, such as <tt>Calc.div( 0, 0 )</tt>.
+ *
+ * A fuzzer keeps the state of the current input, so it is not safe to share
+ * between threads.
+ */
+public class Fuzzer {
+
+    /**
+     * An invariant that the result of every call should satisfy.
+     */
+    public interface Property {
+        /**
+         * @param values The receiver of an instance method, followed by the
+         * arguments and then the result, unless the method is void.
+         * @return Whether the invariant holds.
+         */
+        boolean holds( Object[] values ) throws Throwable;
+    }
+
+    //How many distinct failures are shrunk and reported
+    private static final int MAX_FAILURES = Integer.getInteger( "suitegenerator.fuzz.maxFailures", 5 );
+
+    //How many inputs a single failure is shrunk with at most
+    private static final int SHRINK_ATTEMPTS = Integer.getInteger( "suitegenerator.fuzz.shrinkAttempts", 2000 );
+
+    private final String name;
+    private final String methodName;
+    private final String typeName;
+    private final MethodHandle target;
+    private final InputGenerator.Generator[] generators;
+    private final boolean receiver;
+    private final boolean returnsValue;
+    private final String parameters;
+
+    private Property property;
+
+    //What the last failing call threw, and what it returned
+    private Throwable thrown;
+    private Object result;
+
+    private Fuzzer( String name, String methodName, String typeName,
+            MethodHandle target, InputGenerator.Generator[] generators,
+            boolean receiver, boolean returnsValue, String parameters ) {
+        this.name           = name;
+        this.methodName     = methodName;
+        this.typeName       = typeName;
+        this.target         = target;
+        this.generators     = generators;
+        this.receiver       = receiver;
+        this.returnsValue   = returnsValue;
+        this.parameters     = parameters;
+    }
+
+    /**
+     * Sets up fuzzing of a public method, as it is declared in its class
+     * file.
+     * @param name The name of the fuzzing run.
+     * @param inputs Generates the inputs.
+     * @param types Where the class file of the class is read from.
+     * @param className The binary name of the class that declares the
+     * method.
+     * @param methodName The name of the method.
+     * @param parameterTypes The parameter types of the method separated by
+     * commas, such as <tt>int, java.lang.String[]</tt>, or an empty string if
+     * the method is not overloaded.
+     * @return The fuzzer.
+     * @throws IllegalArgumentException If there is no single such method, or
+     * if values of any of its parameter types can not be generated.
+     */
+    public static Fuzzer forMethod( String name, InputGenerator inputs,
+            TypeGraph types, String className, String methodName,
+            String parameterTypes ) {
+        ClassFileInfo info = types.lookup( className );
+
+        if( info == null ) {
+            throw new IllegalArgumentException( "Could not find the class " + className );
+        }
+
+        String wanted = parameterTypes.replace( " ", "" );
+        List<ClassFileInfo.MethodInfo> candidates = new ArrayList<>();
+        List<String> signatures = new ArrayList<>();
+
+        for ( ClassFileInfo.MethodInfo method : info.getMethods() ) {
+            if( ! method.getName().equals( methodName )
+                    || (method.getAccess() & ClassFileInfo.ACC_PUBLIC) == 0
+                    || (method.getAccess() & ClassFileInfo.ACC_SYNTHETIC) != 0 ) {
+                continue;
+            }
+
+            String signature = signature( method );
+            signatures.add( methodName + "(" + signature + ")" );
+
+            if( wanted.isEmpty() || signature.replace( " ", "" ).equals( wanted ) ) {
+                candidates.add( method );
+            }
+        }
+
+        if( candidates.size() != 1 ) {
+            if( signatures.isEmpty() ) {
+                throw new IllegalArgumentException( "No public method named "
+                        + methodName + " in " + className );
+            }
+
+            throw new IllegalArgumentException( ( candidates.isEmpty()
+                        ? "No public method " + methodName + "(" + parameterTypes + "), "
+                        : "" ) + "Give the parameter types of one of " + signatures );
+        }
+
+        ClassFileInfo.MethodInfo method = candidates.get( 0 );
+        boolean isStatic = (method.getAccess() & ClassFileInfo.ACC_STATIC) != 0;
+        String classDescriptor = "L" + className.replace( '.', '/' ) + ";";
+        List<String> params = method.getParameterDescriptors();
+
+        List<String> descriptors = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        if( ! isStatic ) {
+            descriptors.add( classDescriptor );
+            names.add( "self" );
+        }
+
+        for ( int i = 0; i < params.size(); i++ ) {
+            descriptors.add( params.get( i ) );
+            names.add( "arg" + i );
+        }
+
+        InputGenerator.Generator[] generators = new InputGenerator.Generator[ descriptors.size() ];
+        StringBuilder parameters = new StringBuilder();
+
+        for ( int i = 0; i < generators.length; i++ ) {
+            generators[i] = inputs.forType( descriptors.get( i ) );
+
+            if( generators[i] == null ) {
+                throw new IllegalArgumentException( "Can not generate values of "
+                        + ClassFileInfo.typeName( descriptors.get( i ) ) );
+            }
+
+            parameters.append( i == 0 ? "" : ", " )
+                .append( InputGenerator.typeName( descriptors.get( i ) ) ).append( ' ' )
+                .append( names.get( i ) );
+        }
+
+        boolean returnsValue = ! method.getReturnDescriptor().equals( "V" );
+
+        if( returnsValue ) {
+            parameters.append( generators.length == 0 ? "" : ", " )
+                .append( InputGenerator.typeName( method.getReturnDescriptor() ) )
+                .append( " result" );
+        }
+
+        Class<?> clazz = inputs.classFor( classDescriptor );
+        Class<?>[] paramClasses = new Class<?>[ params.size() ];
+
+        for ( int i = 0; i < paramClasses.length; i++ ) {
+            paramClasses[i] = inputs.classFor( params.get( i ) );
+        }
+
+        MethodHandle target;
+
+        try {
+            target = InputGenerator.spread( MethodHandles.publicLookup().unreflect(
+                        clazz.getMethod( methodName, paramClasses ) ) );
+        }
+        catch( ReflectiveOperationException | RuntimeException | LinkageError e ) {
+            throw new IllegalArgumentException( "Could not access " + className + "."
+                    + methodName + "(" + signature( method ) + "): " + e, e );
+        }
+
+        return new Fuzzer( name, methodName, InputGenerator.typeName( classDescriptor ),
+                target, generators, ! isStatic, returnsValue, parameters.toString() );
+    }
+
+    private static String signature( ClassFileInfo.MethodInfo method ) {
+        StringBuilder sb = new StringBuilder();
+
+        for ( String param : method.getParameterDescriptors() ) {
+            sb.append( sb.length() == 0 ? "" : ", " ).append( ClassFileInfo.typeName( param ) );
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @return The parameters that an invariant is written against, such as
+     * <tt>Calc self, int arg0, int result</tt>. Instance methods are called
+     * on <tt>self</tt>, and <tt>result</tt> is only there for methods that
+     * return something.
+     */
+    public String getPropertyParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * @param property The invariant every result should satisfy, or null to
+     * only look for calls that throw.
+     */
+    public void setProperty( Property property ) {
+        this.property = property;
+    }
+
+    /**
+     * Calls the method with generated inputs.
+     * @param seed The seed that the inputs are generated from.
+     * @param maxCases How many inputs are generated at most.
+     * @param maxMillis How long inputs are generated for at most, not
+     * counting the time spent shrinking.
+     * @return Every distinct failure, shrunk.
+     */
+    public FuzzResult run( long seed, long maxCases, long maxMillis ) {
+        InputGenerator.Choices choices = new InputGenerator.Choices();
+        Object[] args = new Object[ this.generators.length ];
+        Object[] values = new Object[ this.generators.length + ( this.returnsValue ? 1 : 0 ) ];
+        Map<String, FuzzResult.Failure> failures = new LinkedHashMap<>();
+
+        long start = System.nanoTime();
+        long deadline = start + maxMillis * 1000000;
+        long shrinking = 0;
+        long invocations = 0;
+        long discarded = 0;
+        long cases;
+
+        for ( cases = 0; cases < maxCases; cases++ ) {
+            //Only look at the clock every so often
+            if( (cases & 1023) == 0 && ( System.nanoTime() - shrinking > deadline
+                        || Thread.currentThread().isInterrupted() ) ) {
+                break;
+            }
+
+            long caseSeed = caseSeed( seed, cases );
+            choices.random( caseSeed );
+
+            if( ! generate( choices, args, null ) ) {
+                discarded++;
+                continue;
+            }
+
+            invocations++;
+            String failure = check( args, values );
+
+            if( failure != null && ! failures.containsKey( failure )
+                    && failures.size() < MAX_FAILURES ) {
+                long shrinkStart = System.nanoTime();
+                failures.put( failure, shrink( choices.recorded(), failure, caseSeed ) );
+                shrinking += System.nanoTime() - shrinkStart;
+            }
+        }
+
+        return new FuzzResult( this.name, seed, cases, invocations, discarded,
+                System.nanoTime() - start, new ArrayList<>( failures.values() ) );
+    }
+
+    /**
+     * @return The seed of a single input, which is the same for every run
+     * with the same seed.
+     */
+    static long caseSeed( long seed, long index ) {
+        long z = seed + index * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Generates the receiver and arguments of a call.
+     * @param sources Where the source of each value is written, or null.
+     * @return Whether they could be generated.
+     */
+    private boolean generate( InputGenerator.Choices choices, Object[] args,
+            StringBuilder[] sources ) {
+        try {
+            for ( int i = 0; i < args.length; i++ ) {
+                args[i] = this.generators[i].generate( choices,
+                        sources == null ? null : sources[i] );
+            }
+
+            return true;
+        }
+        catch( Throwable t ) {
+            return false;
+        }
+    }
+
+    /**
+     * Calls the method and checks its result.
+     * @return null if the call passed, and otherwise what makes its failure
+     * distinct from others: whether it was the method or the invariant that
+     * failed, and what was thrown.
+     */
+    private String check( Object[] args, Object[] values ) {
+        Object result;
+
+        try {
+            result = (Object) this.target.invokeExact( args );
+        }
+        catch( Throwable t ) {
+            //Not told apart by where they were thrown, since the JIT drops
+            //the stack traces of exceptions that are thrown often
+            this.thrown = t;
+            return "CRASH " + t.getClass().getName();
+        }
+
+        if( this.property == null ) {
+            return null;
+        }
+
+        System.arraycopy( args, 0, values, 0, args.length );
+
+        if( this.returnsValue ) {
+            values[ args.length ] = result;
+        }
+
+        try {
+            if( this.property.holds( values ) ) {
+                return null;
+            }
+
+            this.thrown = null;
+            this.result = result;
+            return "INVARIANT";
+        }
+        catch( Throwable t ) {
+            this.thrown = t;
+            return "INVARIANT " + t.getClass().getName();
+        }
+    }
+
+    /**
+     * Looks for the simplest choices that still fail the same way, and
+     * describes the failure they lead to.
+     */
+    private FuzzResult.Failure shrink( long[] failing, String failure, long caseSeed ) {
+        InputGenerator.Choices choices = new InputGenerator.Choices();
+        Object[] args = new Object[ this.generators.length ];
+        Object[] values = new Object[ this.generators.length + ( this.returnsValue ? 1 : 0 ) ];
+        int[] attempts = { 0 };
+        long[] best = failing;
+        boolean improved = true;
+
+        while( improved && attempts[0] < SHRINK_ATTEMPTS ) {
+            improved = false;
+
+            //Remove runs of choices, which ends strings and arrays early
+            for ( int size = 8; size >= 1; size /= 2 ) {
+                for ( int at = 0; at + size <= best.length && attempts[0] < SHRINK_ATTEMPTS; ) {
+                    long[] candidate = new long[ best.length - size ];
+                    System.arraycopy( best, 0, candidate, 0, at );
+                    System.arraycopy( best, at + size, candidate, at, best.length - at - size );
+
+                    long[] accepted = attempt( choices, candidate, failure, args, values, attempts );
+
+                    if( accepted != null && simpler( accepted, best ) ) {
+                        best = accepted;
+                        improved = true;
+                    }
+                    else {
+                        at++;
+                    }
+                }
+            }
+
+            //Lower each choice, to 0 if it can be and by halves otherwise
+            for ( int at = 0; at < best.length && attempts[0] < SHRINK_ATTEMPTS; at++ ) {
+                for ( long lower : new long[] { 0, best[at] / 2, best[at] - 1 } ) {
+                    if( at >= best.length || lower < 0 || lower >= best[at] ) {
+                        continue;
+                    }
+
+                    long[] candidate = best.clone();
+                    candidate[at] = lower;
+
+                    long[] accepted = attempt( choices, candidate, failure, args, values, attempts );
+
+                    if( accepted != null && simpler( accepted, best ) ) {
+                        best = accepted;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        //Replay the simplest choices once more, to describe them
+        StringBuilder[] sources = new StringBuilder[ args.length ];
+        for ( int i = 0; i < sources.length; i++ ) {
+            sources[i] = new StringBuilder();
+        }
+
+        choices.replay( best );
+        generate( choices, args, sources );
+        check( args, values );
+
+        return new FuzzResult.Failure( failure.startsWith( "CRASH" ) ? "CRASH" : "INVARIANT",
+                call( sources ), message( failure ), caseSeed );
+    }
+
+    /**
+     * Replays candidate choices.
+     * @return The choices that were actually drawn, if they fail the same
+     * way, or null.
+     */
+    private long[] attempt( InputGenerator.Choices choices, long[] candidate,
+            String failure, Object[] args, Object[] values, int[] attempts ) {
+        attempts[0]++;
+        choices.replay( candidate );
+
+        if( ! generate( choices, args, null ) ) {
+            return null;
+        }
+
+        long[] drawn = choices.recorded();
+        return failure.equals( check( args, values ) ) ? drawn : null;
+    }
+
+    /**
+     * @return Whether choices are simpler than others: fewer of them, or the
+     * same number of smaller ones.
+     */
+    private static boolean simpler( long[] a, long[] b ) {
+        if( a.length != b.length ) {
+            return a.length < b.length;
+        }
+
+        for ( int i = 0; i < a.length; i++ ) {
+            if( a[i] != b[i] ) {
+                return a[i] < b[i];
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The failing call as Java source.
+     */
+    private String call( StringBuilder[] sources ) {
+        StringBuilder sb = new StringBuilder();
+        int first = 0;
+
+        if( this.receiver ) {
+            sb.append( sources[0] );
+            first = 1;
+        }
+        else {
+            sb.append( this.typeName );
+        }
+
+        sb.append( '.' ).append( this.methodName ).append( '(' );
+
+        for ( int i = first; i < sources.length; i++ ) {
+            sb.append( i == first ? " " : ", " ).append( sources[i] );
+        }
+
+        return sb.append( sources.length == first ? ")" : " )" ).toString();
+    }
+
+    private String message( String failure ) {
+        if( this.thrown != null ) {
+            return ( failure.startsWith( "CRASH" ) ? "" : "The invariant threw " )
+                + this.thrown;
+        }
+
+        if( ! this.returnsValue ) {
+            return "The invariant does not hold";
+        }
+
+        String result = this.result != null && this.result.getClass().isArray()
+            ? Arrays.deepToString( new Object[] { this.result } ) : String.valueOf( this.result );
+
+        return "The invariant does not hold for the result " + result;
+    }
+}
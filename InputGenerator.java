@@ -0,0 +1,583 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.lang.reflect.Array;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates random values of the types that <tt>TypeGraph</tt> describes:
+ * primitives, their boxes, strings, arrays, enum constants, and objects built
+ * through public constructors and static factories whose own parameters can be
+ * generated in turn.
+ *
+ * Generators never use a random number generator directly. Every random
+ * decision is drawn from a <tt>Choices</tt>, which records it, so that the
+ * same choices generate the same value again. A value is made simpler by
+ * making its choices smaller, since the choice 0 always stands for the
+ * simplest option: the number 0, the end of a string or array, or the
+ * constructor with the fewest parameters. That is what <tt>Fuzzer</tt>
+ * shrinks failing inputs with, whatever their types are.
+ */
+public class InputGenerator {
+
+    //How many elements an array or string holds at most
+    private static final int MAX_LENGTH = 64;
+
+    private static final long[][] integralEdges = {
+        { 0, 1, -1, Byte.MIN_VALUE, Byte.MAX_VALUE },
+        { 0, 1, -1, Short.MIN_VALUE, Short.MAX_VALUE },
+        { 0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE },
+        { 0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE }
+    };
+
+    private static final double[] floatingEdges = {
+        0.0, -0.0, 1.0, -1.0, Double.NaN, Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE,
+        Double.MIN_NORMAL
+    };
+
+    /**
+     * Generates a value out of recorded choices.
+     */
+    interface Generator {
+        /**
+         * @param choices Where every random decision is drawn from.
+         * @param source Where the Java expression of the value is appended,
+         * or null when it is not needed.
+         * @return The value, boxed if it is primitive.
+         * @throws Throwable Whatever a constructor or factory threw, which
+         * makes the choices unusable.
+         */
+        Object generate( Choices choices, StringBuilder source ) throws Throwable;
+    }
+
+    /**
+     * A stream of random choices that is either drawn from a seed or replayed
+     * from an earlier recording, and that records every choice drawn from it.
+     * Not safe to share between threads.
+     */
+    public static final class Choices {
+        //Choices past this many are always 0, which keeps values finite
+        private static final int MAX_CHOICES = 4096;
+
+        private long[] recorded = new long[64];
+        private int position;
+
+        private long state;
+        private long[] replay;
+
+        /** Starts drawing new choices from a seed */
+        public void random( long seed ) {
+            this.state      = seed;
+            this.replay     = null;
+            this.position   = 0;
+        }
+
+        /**
+         * Starts replaying recorded choices. Choices past the end of the
+         * recording are 0, and choices that are too large for what they are
+         * drawn for are clamped.
+         */
+        public void replay( long[] choices ) {
+            this.replay     = choices;
+            this.position   = 0;
+        }
+
+        /**
+         * @param bound The number of options, which must be positive.
+         * @return A choice between 0 inclusive and <tt>bound</tt> exclusive.
+         */
+        public long draw( long bound ) {
+            if( this.position >= MAX_CHOICES ) {
+                return 0;
+            }
+
+            long choice;
+
+            if( this.replay == null ) {
+                choice = Long.remainderUnsigned( next(), bound );
+            }
+            else {
+                choice = this.position < this.replay.length
+                    ? Math.min( this.replay[ this.position ], bound - 1 ) : 0;
+            }
+
+            if( this.position == this.recorded.length ) {
+                this.recorded = Arrays.copyOf( this.recorded, this.recorded.length * 2 );
+            }
+
+            this.recorded[ this.position++ ] = choice;
+            return choice;
+        }
+
+        /** @return The choices drawn since the last restart */
+        public long[] recorded() {
+            return Arrays.copyOf( this.recorded, this.position );
+        }
+
+        //SplitMix64, which is all the randomness fuzzing needs
+        private long next() {
+            long z = (this.state += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    private final TypeGraph types;
+    private final ClassLoader loader;
+    private final int depth;
+
+    //Generators by descriptor and level, or NONE for types that can not be generated
+    private final Map<String, Generator> generators = new ConcurrentHashMap<>();
+    private static final Generator NONE = ( choices, source ) -> null;
+
+    /**
+     * @param types Describes how types are constructed.
+     * @param loader Loads the classes that values are constructed from.
+     * @param depth How many levels of constructors deep objects are built,
+     * so that a type that takes itself still ends.
+     */
+    public InputGenerator( TypeGraph types, ClassLoader loader, int depth ) {
+        this.types  = types;
+        this.loader = loader;
+        this.depth  = depth;
+    }
+
+    /**
+     * @param descriptor The descriptor of a type.
+     * @return A generator of values of the type, or null if none can be
+     * generated.
+     */
+    public Generator forType( String descriptor ) {
+        return forType( descriptor, 0 );
+    }
+
+    private Generator forType( String descriptor, int level ) {
+        if( level > this.depth ) {
+            return null;
+        }
+
+        String key = descriptor + "@" + level;
+        Generator generator = this.generators.get( key );
+
+        if( generator == null ) {
+            generator = build( descriptor, level );
+            this.generators.putIfAbsent( key, generator == null ? NONE : generator );
+        }
+
+        return generator == NONE ? null : generator;
+    }
+
+    private Generator build( String descriptor, int level ) {
+        switch( descriptor ) {
+            case "Z": case "Ljava/lang/Boolean;":
+                return ( choices, source ) -> {
+                    boolean value = choices.draw( 2 ) == 1;
+                    append( source, Boolean.toString( value ) );
+                    return value;
+                };
+            case "B": case "Ljava/lang/Byte;":
+                return ( choices, source ) -> {
+                    byte value = (byte) integral( choices, 0 );
+                    append( source, "(byte) " + value );
+                    return value;
+                };
+            case "S": case "Ljava/lang/Short;":
+                return ( choices, source ) -> {
+                    short value = (short) integral( choices, 1 );
+                    append( source, "(short) " + value );
+                    return value;
+                };
+            case "I": case "Ljava/lang/Integer;":
+                return ( choices, source ) -> {
+                    int value = (int) integral( choices, 2 );
+                    append( source, Integer.toString( value ) );
+                    return value;
+                };
+            case "J": case "Ljava/lang/Long;":
+                return ( choices, source ) -> {
+                    long value = integral( choices, 3 );
+                    append( source, value + "L" );
+                    return value;
+                };
+            case "F": case "Ljava/lang/Float;":
+                return ( choices, source ) -> {
+                    float value = (float) floating( choices );
+                    append( source, floatSource( value ) );
+                    return value;
+                };
+            case "D": case "Ljava/lang/Double;":
+                return ( choices, source ) -> {
+                    double value = floating( choices );
+                    append( source, doubleSource( value ) );
+                    return value;
+                };
+            case "C": case "Ljava/lang/Character;":
+                return ( choices, source ) -> {
+                    char value = character( choices );
+                    append( source, "'" + escape( value, '\'' ) + "'" );
+                    return value;
+                };
+            case "Ljava/lang/String;":
+            case "Ljava/lang/CharSequence;":
+                return InputGenerator::string;
+            case "Ljava/lang/Object;":
+                return object();
+            default:
+                break;
+        }
+
+        TypeGraph.Node node = this.types.node( descriptor );
+
+        switch( node.getKind() ) {
+            case ARRAY:
+                return array( node, level );
+            case ENUM:
+                return enumConstant( node );
+            case CLASS:
+            case INTERFACE:
+                return construct( node, level );
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Draws an integral number, which is mostly small, sometimes an edge
+     * case of its width and sometimes any number at all.
+     * @param width 0 for bytes, 1 for shorts, 2 for ints and 3 for longs.
+     */
+    private static long integral( Choices choices, int width ) {
+        long mode = choices.draw( 8 );
+
+        if( mode < 5 ) {
+            return zigzag( choices.draw( 64 ) );
+        }
+        if( mode == 5 ) {
+            long[] edges = integralEdges[ width ];
+            return edges[ (int) choices.draw( edges.length ) ];
+        }
+
+        return zigzag( ( choices.draw( 1L << 32 ) << 32 ) | choices.draw( 1L << 32 ) );
+    }
+
+    private static double floating( Choices choices ) {
+        long mode = choices.draw( 8 );
+
+        if( mode < 4 ) {
+            return zigzag( choices.draw( 64 ) );
+        }
+        if( mode == 4 ) {
+            return zigzag( choices.draw( 1 << 16 ) ) / 256.0;
+        }
+        if( mode == 5 ) {
+            return floatingEdges[ (int) choices.draw( floatingEdges.length ) ];
+        }
+
+        return Double.longBitsToDouble( ( choices.draw( 1L << 32 ) << 32 )
+                | choices.draw( 1L << 32 ) );
+    }
+
+    private static char character( Choices choices ) {
+        long mode = choices.draw( 4 );
+
+        if( mode < 2 ) {
+            return (char) ( 'a' + choices.draw( 26 ) );
+        }
+        if( mode == 2 ) {
+            return (char) ( ' ' + choices.draw( 95 ) );
+        }
+
+        return (char) choices.draw( 1 << 16 );
+    }
+
+    /**
+     * Draws whether a string or array goes on, which it does seven times out
+     * of eight, so that the choice 0 ends it.
+     */
+    private static boolean more( Choices choices, int length ) {
+        return length < MAX_LENGTH && choices.draw( 8 ) != 0;
+    }
+
+    private static Object string( Choices choices, StringBuilder source ) {
+        StringBuilder value = new StringBuilder();
+
+        while( more( choices, value.length() ) ) {
+            value.append( character( choices ) );
+        }
+
+        if( source != null ) {
+            source.append( '"' );
+
+            for ( int i = 0; i < value.length(); i++ ) {
+                source.append( escape( value.charAt( i ), '"' ) );
+            }
+
+            source.append( '"' );
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Values for parameters that take any object: numbers or strings.
+     */
+    private Generator object() {
+        final Generator number = forType( "I" );
+
+        return ( choices, source ) -> choices.draw( 2 ) == 0
+            ? number.generate( choices, source ) : string( choices, source );
+    }
+
+    private Generator array( TypeGraph.Node node, int level ) {
+        final Generator component = forType( node.getComponent(), level );
+        final Class<?> componentClass = classFor( node.getComponent() );
+
+        if( component == null || componentClass == null ) {
+            return null;
+        }
+
+        final String typeName = typeName( node.getDescriptor() );
+
+        return ( choices, source ) -> {
+            List<Object> elements = new ArrayList<>();
+
+            if( source != null ) {
+                source.append( "new " ).append( typeName ).append( " {" );
+            }
+
+            while( more( choices, elements.size() ) ) {
+                if( source != null ) {
+                    source.append( elements.isEmpty() ? " " : ", " );
+                }
+
+                elements.add( component.generate( choices, source ) );
+            }
+
+            append( source, elements.isEmpty() ? "}" : " }" );
+
+            Object array = Array.newInstance( componentClass, elements.size() );
+
+            for ( int i = 0; i < elements.size(); i++ ) {
+                Array.set( array, i, elements.get( i ) );
+            }
+
+            return array;
+        };
+    }
+
+    private Generator enumConstant( TypeGraph.Node node ) {
+        Class<?> clazz = classFor( node.getDescriptor() );
+
+        if( clazz == null || ! clazz.isEnum() || clazz.getEnumConstants().length == 0 ) {
+            return null;
+        }
+
+        final Object[] constants = clazz.getEnumConstants();
+        final String typeName = typeName( node.getDescriptor() );
+
+        return ( choices, source ) -> {
+            Enum<?> constant = (Enum<?>) constants[ (int) choices.draw( constants.length ) ];
+            append( source, typeName + "." + constant.name() );
+            return constant;
+        };
+    }
+
+    /**
+     * Builds objects through whichever public constructor or static factory
+     * is chosen, with generated arguments. The ones taking the fewest
+     * arguments come first, so that shrinking prefers them.
+     */
+    private Generator construct( TypeGraph.Node node, int level ) {
+        Class<?> clazz = classFor( node.getDescriptor() );
+
+        if( clazz == null ) {
+            return null;
+        }
+
+        List<TypeGraph.Factory> factories = new ArrayList<>( node.getConstructors() );
+        factories.addAll( node.getFactories() );
+        factories.sort( Comparator.comparingInt( f -> f.getParams().size() ) );
+
+        final List<Construction> constructions = new ArrayList<>();
+        final String typeName = typeName( node.getDescriptor() );
+
+        for ( TypeGraph.Factory factory : factories ) {
+            Construction construction = construction( clazz, typeName, factory, level );
+
+            if( construction != null ) {
+                constructions.add( construction );
+            }
+        }
+
+        if( constructions.isEmpty() ) {
+            return null;
+        }
+
+        return ( choices, source ) -> constructions.get(
+                (int) choices.draw( constructions.size() ) ).generate( choices, source );
+    }
+
+    private Construction construction( Class<?> clazz, String typeName,
+            TypeGraph.Factory factory, int level ) {
+        List<String> params = factory.getParams();
+        Generator[] arguments = new Generator[ params.size() ];
+        Class<?>[] paramClasses = new Class<?>[ params.size() ];
+
+        for ( int i = 0; i < arguments.length; i++ ) {
+            arguments[i] = forType( params.get( i ), level + 1 );
+            paramClasses[i] = classFor( params.get( i ) );
+
+            if( arguments[i] == null || paramClasses[i] == null ) {
+                return null;
+            }
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle handle = factory.getName().equals( "<init>" )
+                ? lookup.unreflectConstructor( clazz.getConstructor( paramClasses ) )
+                : lookup.unreflect( clazz.getMethod( factory.getName(), paramClasses ) );
+
+            return new Construction( spread( handle ), arguments,
+                    factory.getName().equals( "<init>" ) ? "new " + typeName
+                    : typeName + "." + factory.getName() );
+        }
+        catch( ReflectiveOperationException | LinkageError e ) {
+            return null;
+        }
+    }
+
+    /**
+     * A constructor or factory, and the generators of its arguments.
+     */
+    private static final class Construction implements Generator {
+        private final MethodHandle handle;
+        private final Generator[] arguments;
+        private final String call;
+
+        Construction( MethodHandle handle, Generator[] arguments, String call ) {
+            this.handle     = handle;
+            this.arguments  = arguments;
+            this.call       = call;
+        }
+
+        @Override
+        public Object generate( Choices choices, StringBuilder source ) throws Throwable {
+            Object[] values = new Object[ this.arguments.length ];
+            append( source, this.call + "(" );
+
+            for ( int i = 0; i < values.length; i++ ) {
+                append( source, i == 0 ? " " : ", " );
+                values[i] = this.arguments[i].generate( choices, source );
+            }
+
+            append( source, values.length == 0 ? ")" : " )" );
+            return (Object) this.handle.invokeExact( values );
+        }
+    }
+
+    /**
+     * Adapts a method handle to take every argument as one array, so that
+     * invoking it never has to adapt.
+     */
+    static MethodHandle spread( MethodHandle handle ) {
+        int arity = handle.type().parameterCount();
+
+        return handle.asType( MethodType.genericMethodType( arity ) )
+            .asSpreader( Object[].class, arity );
+    }
+
+    /**
+     * @return The class a descriptor stands for, or null if it can not be
+     * loaded.
+     */
+    Class<?> classFor( String descriptor ) {
+        switch( descriptor ) {
+            case "Z": return boolean.class;
+            case "B": return byte.class;
+            case "S": return short.class;
+            case "C": return char.class;
+            case "I": return int.class;
+            case "J": return long.class;
+            case "F": return float.class;
+            case "D": return double.class;
+            default:  break;
+        }
+
+        try {
+            return Class.forName( ClassFileInfo.binaryName( descriptor ), false, this.loader );
+        }
+        catch( ClassNotFoundException | LinkageError e ) {
+            return null;
+        }
+    }
+
+    /** @return The name a type is written as in source */
+    static String typeName( String descriptor ) {
+        return ClassFileInfo.typeName( descriptor ).replace( '$', '.' );
+    }
+
+    private static void append( StringBuilder source, String text ) {
+        if( source != null ) {
+            source.append( text );
+        }
+    }
+
+    private static long zigzag( long n ) {
+        return ( n >>> 1 ) ^ -( n & 1 );
+    }
+
+    private static String doubleSource( double value ) {
+        if( Double.isNaN( value ) ) {
+            return "Double.NaN";
+        }
+        if( Double.isInfinite( value ) ) {
+            return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+
+        return Double.toString( value );
+    }
+
+    private static String floatSource( float value ) {
+        if( Float.isNaN( value ) ) {
+            return "Float.NaN";
+        }
+        if( Float.isInfinite( value ) ) {
+            return value > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+        }
+
+        return value + "f";
+    }
+
+    /**
+     * Escapes a character for a string or character literal.
+     * @param quote The quote of the literal, which is escaped too.
+     */
+    private static String escape( char c, char quote ) {
+        switch( c ) {
+            case '\n': return "\\n";
+            case '\t': return "\\t";
+            case '\r': return "\\r";
+            case '\\': return "\\\\";
+            default:   break;
+        }
+
+        if( c == quote ) {
+            return "\\" + c;
+        }
+        if( c < ' ' || c > '~' ) {
+            return String.format( "\\u%04x", (int) c );
+        }
+
+        return String.valueOf( c );
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Writes JSON text into a <tt>StringBuilder</tt>, taking care of quoting and
+ * of the commas between members and elements. For example
+ * <tt>new JsonWriter().beginObject().name( "a" ).value( 1 ).endObject()</tt>
+ * produces <tt>{"a":1}</tt>.
+ */
+public class JsonWriter {
+
+    private final StringBuilder sb;
+
+    //Whether the next member or element is the first of its object or array
+    private boolean first = true;
+
+    //Whether a member name was just written, so that its value follows
+    private boolean afterName = false;
+
+    public JsonWriter() {
+        this( new StringBuilder() );
+    }
+
+    /**
+     * @param sb Where the JSON text is appended to.
+     */
+    public JsonWriter( StringBuilder sb ) {
+        this.sb = sb;
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        this.sb.append( '{' );
+        this.first = true;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        this.sb.append( '}' );
+        this.first = false;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        this.sb.append( '[' );
+        this.first = true;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        this.sb.append( ']' );
+        this.first = false;
+        return this;
+    }
+
+    /**
+     * Writes the name of an object member, which the next value belongs to.
+     */
+    public JsonWriter name( String name ) {
+        separate();
+        quote( name );
+        this.sb.append( ':' );
+        this.afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string, or <tt>null</tt>.
+     */
+    public JsonWriter value( String value ) {
+        separate();
+
+        if( value == null ) {
+            this.sb.append( "null" );
+        }
+        else {
+            quote( value );
+        }
+
+        this.first = false;
+        return this;
+    }
+
+    public JsonWriter value( long value ) {
+        separate();
+        this.sb.append( value );
+        this.first = false;
+        return this;
+    }
+
+    public JsonWriter value( double value ) {
+        separate();
+
+        //JSON has no literals for these
+        if( Double.isNaN( value ) || Double.isInfinite( value ) ) {
+            this.sb.append( "null" );
+        }
+        else {
+            this.sb.append( value );
+        }
+
+        this.first = false;
+        return this;
+    }
+
+    public JsonWriter value( boolean value ) {
+        separate();
+        this.sb.append( value );
+        this.first = false;
+        return this;
+    }
+
+    /**
+     * Writes the comma in front of a member or element, unless it is the
+     * first one or the value of a member.
+     */
+    private void separate() {
+        if( this.afterName ) {
+            this.afterName = false;
+        }
+        else if( ! this.first ) {
+            this.sb.append( ',' );
+        }
+    }
+
+    private void quote( String s ) {
+        this.sb.append( '"' );
+
+        for ( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt( i );
+
+            switch( c ) {
+                case '"':  this.sb.append( "\\\"" ); break;
+                case '\\': this.sb.append( "\\\\" ); break;
+                case '\n': this.sb.append( "\\n" ); break;
+                case '\r': this.sb.append( "\\r" ); break;
+                case '\t': this.sb.append( "\\t" ); break;
+                case '\b': this.sb.append( "\\b" ); break;
+                case '\f': this.sb.append( "\\f" ); break;
+                default:
+                    if( c < 0x20 ) {
+                        this.sb.append( String.format( "\\u%04x", (int) c ) );
+                    }
+                    else {
+                        this.sb.append( c );
+                    }
+            }
+        }
+
+        this.sb.append( '"' );
+    }
+
+    /**
+     * @return The JSON text written so far.
+     */
+    @Override
+    public String toString() {
+        return this.sb.toString();
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long something took, in nanoseconds, in buckets whose width
+ * grows with the values they hold, the way HdrHistogram does: every power of
+ * two is split into 32 buckets, so any recorded value is known to within about
+ * 3%, from a nanosecond to centuries, in a fixed 15 KB.
+ *
+ * Recording is a handful of instructions and never allocates or locks, so
+ * histograms can be left on in production. Reads are not atomic with respect
+ * to concurrent recording, which only matters for values recorded while they
+ * are being read.
+ */
+public class LatencyHistogram {
+
+    //Each power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = ( 64 - SUB_BITS ) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param name The name the histogram is reported under.
+     */
+    public LatencyHistogram( String name ) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Records a single value.
+     * @param nanos How long something took. Negative values count as 0.
+     */
+    public void record( long nanos ) {
+        long value = Math.max( 0, nanos );
+
+        this.counts.incrementAndGet( bucket( value ) );
+        this.count.increment();
+        this.total.add( value );
+
+        long seen = this.max.get();
+        while( value > seen && ! this.max.compareAndSet( seen, value ) ) {
+            seen = this.max.get();
+        }
+    }
+
+    /**
+     * Records the time since <tt>startNanos</tt>.
+     * @param startNanos What <tt>System.nanoTime</tt> returned when the
+     * timed work started.
+     */
+    public void recordSince( long startNanos ) {
+        record( System.nanoTime() - startNanos );
+    }
+
+    /**
+     * @return The bucket of a value: values below 32 have one of their own,
+     * and larger ones share theirs with values of the same power of two and
+     * the same five leading bits.
+     */
+    private static int bucket( long value ) {
+        if( value < SUB_COUNT ) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int sub = (int) ( value >>> ( exponent - SUB_BITS ) ) & ( SUB_COUNT - 1 );
+
+        return ( exponent - SUB_BITS + 1 ) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return The smallest value that falls into a bucket.
+     */
+    private static long lowest( int bucket ) {
+        if( bucket < SUB_COUNT ) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+
+        return ( 1L << exponent ) | ( sub << ( exponent - SUB_BITS ) );
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getTotalNanos() {
+        return this.total.sum();
+    }
+
+    public long getMaxNanos() {
+        return this.max.get();
+    }
+
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotalNanos() / count;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100.
+     * @return The smallest recorded value that at least that percentage of
+     * values are at or below, to within the width of its bucket, or 0 if
+     * nothing was recorded.
+     */
+    public long getPercentileNanos( double percentile ) {
+        long[] snapshot = new long[ BUCKETS ];
+        long count = 0;
+
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            snapshot[i] = this.counts.get( i );
+            count += snapshot[i];
+        }
+
+        if( count == 0 ) {
+            return 0;
+        }
+
+        long rank = Math.max( 1, (long) Math.ceil( percentile / 100 * count ) );
+        long seen = 0;
+
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            seen += snapshot[i];
+
+            if( seen >= rank ) {
+                //The middle of the bucket, but never more than was recorded
+                long low = lowest( i );
+                long high = i + 1 < BUCKETS ? lowest( i + 1 ) - 1 : Long.MAX_VALUE;
+                return Math.min( low + ( high - low ) / 2, getMaxNanos() );
+            }
+        }
+
+        return getMaxNanos();
+    }
+
+    /**
+     * @return The histogram as a single line, with times in microseconds,
+     * for example <tt>count=12 mean=350.2 p50=310.0 p90=420.0 p99=900.0
+     * max=1012.3</tt>.
+     */
+    @Override
+    public String toString() {
+        return String.format( Locale.ROOT, "count=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+                getCount(), getMeanNanos() / 1000, getPercentileNanos( 50 ) / 1000.0,
+                getPercentileNanos( 90 ) / 1000.0, getPercentileNanos( 99 ) / 1000.0,
+                getMaxNanos() / 1000.0 );
+    }
+}
@@ -0,0 +1,307 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the Java literals that users type in as arguments and expected
+ * values, such as <tt>5</tt>, <tt>-2.5f</tt>, <tt>'c'</tt> or
+ * <tt>"text"</tt>, into typed values without going through the compiler.
+ * Anything that is not a plain literal is rejected, so that it can be handed
+ * to the compiler instead.
+ */
+public final class LiteralParser {
+
+    /**
+     * A parsed literal: its value, boxed, and the type that the compiler
+     * would give it.
+     */
+    public static final class Literal {
+        private final Object value;
+        private final Class<?> type;
+
+        Literal( Object value, Class<?> type ) {
+            this.value  = value;
+            this.type   = type;
+        }
+
+        /** @return The boxed value, or null for the null literal */
+        public Object getValue() {
+            return this.value;
+        }
+
+        /** @return The type of the literal, or null for the null literal */
+        public Class<?> getType() {
+            return this.type;
+        }
+    }
+
+    /** Empty Constructor */
+    private LiteralParser() { }
+
+    /**
+     * Splits an argument list on the commas that separate its arguments,
+     * ignoring commas inside of string and character literals, parentheses,
+     * brackets and braces.
+     * @param list The argument list, without the surrounding parentheses.
+     * @return The trimmed arguments. An empty or blank list has no arguments.
+     */
+    public static List<String> split( String list ) {
+        List<String> args = new ArrayList<>();
+
+        if( list == null || list.trim().isEmpty() ) {
+            return args;
+        }
+
+        int depth = 0;
+        int start = 0;
+        char quote = 0;
+
+        for ( int i = 0; i < list.length(); i++ ) {
+            char c = list.charAt( i );
+
+            if( quote != 0 ) {
+                if( c == '\\' ) {
+                    i++;
+                }
+                else if( c == quote ) {
+                    quote = 0;
+                }
+            }
+            else if( c == '"' || c == '\'' ) {
+                quote = c;
+            }
+            else if( c == '(' || c == '[' || c == '{' ) {
+                depth++;
+            }
+            else if( c == ')' || c == ']' || c == '}' ) {
+                depth--;
+            }
+            else if( c == ',' && depth == 0 ) {
+                args.add( list.substring( start, i ).trim() );
+                start = i + 1;
+            }
+        }
+
+        args.add( list.substring( start ).trim() );
+        return args;
+    }
+
+    /**
+     * Parses every argument of an argument list.
+     * @param list The argument list, without the surrounding parentheses.
+     * @return The parsed arguments, or null if any of them is not a literal.
+     */
+    public static List<Literal> parseList( String list ) {
+        List<Literal> literals = new ArrayList<>();
+
+        for ( String arg : split( list ) ) {
+            Literal literal = parse( arg );
+
+            if( literal == null ) {
+                return null;
+            }
+
+            literals.add( literal );
+        }
+
+        return literals;
+    }
+
+    /**
+     * Parses a single literal.
+     * @param src The source of the literal.
+     * @return The literal, or null if <tt>src</tt> is not a literal.
+     */
+    public static Literal parse( String src ) {
+        String s = src.trim();
+
+        if( s.isEmpty() ) {
+            return null;
+        }
+
+        switch( s ) {
+            case "null":  return new Literal( null, null );
+            case "true":  return new Literal( Boolean.TRUE, boolean.class );
+            case "false": return new Literal( Boolean.FALSE, boolean.class );
+            default:      break;
+        }
+
+        char first = s.charAt( 0 );
+
+        if( first == '"' ) {
+            String value = unescape( s, '"' );
+            return value == null ? null : new Literal( value, String.class );
+        }
+
+        if( first == '\'' ) {
+            String value = unescape( s, '\'' );
+            return value == null || value.length() != 1 ? null
+                : new Literal( value.charAt( 0 ), char.class );
+        }
+
+        return parseNumber( s );
+    }
+
+    /**
+     * Parses a number, with an optional sign in front of it.
+     * @return The number, or null if <tt>s</tt> is not a numeric literal.
+     */
+    private static Literal parseNumber( String s ) {
+        boolean negative = false;
+        String digits = s;
+
+        if( digits.startsWith( "-" ) || digits.startsWith( "+" ) ) {
+            negative = digits.charAt( 0 ) == '-';
+            digits = digits.substring( 1 ).trim();
+        }
+
+        if( digits.isEmpty() || ! ( Character.isDigit( digits.charAt( 0 ) )
+                    || digits.charAt( 0 ) == '.' ) ) {
+            return null;
+        }
+
+        digits = digits.replace( "_", "" );
+        String lower = digits.toLowerCase();
+        char suffix = lower.charAt( lower.length() - 1 );
+        boolean hex = lower.startsWith( "0x" );
+
+        try {
+            //Floating point, which hex digits can not be confused for
+            if( ! hex && ( lower.indexOf( '.' ) >= 0 || lower.indexOf( 'e' ) >= 0
+                        || suffix == 'f' || suffix == 'd' ) ) {
+                if( suffix == 'f' ) {
+                    float value = Float.parseFloat( digits );
+                    return new Literal( negative ? -value : value, float.class );
+                }
+
+                double value = Double.parseDouble( digits );
+                return new Literal( negative ? -value : value, double.class );
+            }
+
+            boolean isLong = suffix == 'l';
+            String number = isLong ? lower.substring( 0, lower.length() - 1 ) : lower;
+            int radix = 10;
+
+            if( hex ) {
+                radix = 16;
+                number = number.substring( 2 );
+            }
+            else if( number.startsWith( "0b" ) ) {
+                radix = 2;
+                number = number.substring( 2 );
+            }
+            else if( number.length() > 1 && number.startsWith( "0" ) ) {
+                radix = 8;
+                number = number.substring( 1 );
+            }
+
+            if( number.isEmpty() ) {
+                return null;
+            }
+
+            if( isLong ) {
+                long value = radix == 10 ? Long.parseLong( number )
+                    : Long.parseUnsignedLong( number, radix );
+                return new Literal( negative ? -value : value, long.class );
+            }
+
+            //Decimal ints must fit, other radixes may use all 32 bits
+            long value = Long.parseLong( number, radix );
+
+            if( radix == 10 ? value > Integer.MAX_VALUE + ( negative ? 1L : 0L )
+                    : value > 0xFFFFFFFFL ) {
+                return null;
+            }
+
+            int intValue = (int) value;
+            return new Literal( negative ? -intValue : intValue, int.class );
+        }
+        catch( NumberFormatException nfe ) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the contents of a quoted string or character literal.
+     * @param s The literal, including its quotes.
+     * @param quote The quote character.
+     * @return The contents with escape sequences applied, or null if
+     * <tt>s</tt> is not a single well formed literal.
+     */
+    private static String unescape( String s, char quote ) {
+        if( s.length() < 2 || s.charAt( s.length() - 1 ) != quote ) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 1; i < s.length() - 1; i++ ) {
+            char c = s.charAt( i );
+
+            if( c == quote ) {
+                return null;
+            }
+
+            if( c != '\\' ) {
+                sb.append( c );
+                continue;
+            }
+
+            if( ++i >= s.length() - 1 ) {
+                return null;
+            }
+
+            char escaped = s.charAt( i );
+
+            switch( escaped ) {
+                case 'b':  sb.append( '\b' ); break;
+                case 't':  sb.append( '\t' ); break;
+                case 'n':  sb.append( '\n' ); break;
+                case 'f':  sb.append( '\f' ); break;
+                case 'r':  sb.append( '\r' ); break;
+                case 's':  sb.append( ' ' ); break;
+                case '"':  sb.append( '"' ); break;
+                case '\'': sb.append( '\'' ); break;
+                case '\\': sb.append( '\\' ); break;
+                case 'u': {
+                    //Unicode escapes may repeat the u
+                    while( i < s.length() - 1 && s.charAt( i ) == 'u' ) {
+                        i++;
+                    }
+
+                    if( i + 4 > s.length() - 1 ) {
+                        return null;
+                    }
+
+                    try {
+                        sb.append( (char) Integer.parseInt( s.substring( i, i + 4 ), 16 ) );
+                    }
+                    catch( NumberFormatException nfe ) {
+                        return null;
+                    }
+
+                    i += 3;
+                    break;
+                }
+                default: {
+                    //Octal escapes, up to \377
+                    int end = i;
+                    int max = escaped <= '3' ? 3 : 2;
+
+                    while( end < s.length() - 1 && end - i < max
+                            && s.charAt( end ) >= '0' && s.charAt( end ) <= '7' ) {
+                        end++;
+                    }
+
+                    if( end == i ) {
+                        return null;
+                    }
+
+                    sb.append( (char) Integer.parseInt( s.substring( i, end ), 8 ) );
+                    i = end - 1;
+                }
+            }
+        }
+
+        return sb.toString();
+    }
+}
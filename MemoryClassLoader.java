@@ -0,0 +1,55 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines classes straight from bytecode held in memory. Classes that this
+ * loader was given are always defined by it, even if the parent loader can
+ * see a class with the same name.
+ */
+public class MemoryClassLoader extends ClassLoader {
+
+    private final Map<String, byte[]> classBytes;
+
+    /**
+     * @param classBytes The bytecode of the classes to define, keyed by their
+     * binary names.
+     * @param parent The loader that every other class is loaded from.
+     */
+    public MemoryClassLoader( Map<String, byte[]> classBytes, ClassLoader parent ) {
+        super( parent );
+        this.classBytes = new HashMap<>( classBytes );
+    }
+
+    @Override
+    protected Class<?> loadClass( String name, boolean resolve )
+            throws ClassNotFoundException {
+        if( ! this.classBytes.containsKey( name ) ) {
+            return super.loadClass( name, resolve );
+        }
+
+        synchronized( getClassLoadingLock( name ) ) {
+            Class<?> loaded = findLoadedClass( name );
+
+            if( loaded == null ) {
+                loaded = findClass( name );
+            }
+
+            if( resolve ) {
+                resolveClass( loaded );
+            }
+
+            return loaded;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass( String name ) throws ClassNotFoundException {
+        byte[] bytes = this.classBytes.get( name );
+
+        if( bytes == null ) {
+            throw new ClassNotFoundException( name );
+        }
+
+        return defineClass( name, bytes, 0, bytes.length );
+    }
+}
@@ -0,0 +1,116 @@
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import java.net.URI;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A file manager that keeps the class files produced by the compiler in
+ * memory instead of writing them next to the source.
+ */
+public class MemoryJavaFileManager
+        extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<String, ClassFile> classFiles;
+
+    /**
+     * Creates a file manager that reads everything it is not handed through
+     * <tt>fileManager</tt>, but keeps the class files it writes in memory.
+     * @param fileManager The file manager used to read the class path.
+     */
+    public MemoryJavaFileManager( StandardJavaFileManager fileManager ) {
+        super( fileManager );
+        this.classFiles = new HashMap<>();
+    }
+
+    /**
+     * Creates a compilation unit whose source is held in a string.
+     * @param className The name of the top level class inside the source.
+     * @param src The source code.
+     * @return The compilation unit.
+     */
+    public static JavaFileObject source( String className, String src ) {
+        return new SourceFile( className, src );
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput( JavaFileManager.Location
+            location, String className, JavaFileObject.Kind kind, FileObject
+            sibling ) {
+        ClassFile classFile = new ClassFile( className, kind );
+        this.classFiles.put( className, classFile );
+        return classFile;
+    }
+
+    /**
+     * @return The bytecode of every class written by the compiler, keyed by
+     * its binary name.
+     */
+    public Map<String, byte[]> getClassBytes() {
+        Map<String, byte[]> bytes = new HashMap<>();
+
+        for ( Map.Entry<String, ClassFile> entry : this.classFiles.entrySet() ) {
+            bytes.put( entry.getKey(), entry.getValue().getBytes() );
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Forgets every class file written so far, so that the file manager can
+     * be used for another compilation.
+     */
+    public void clear() {
+        this.classFiles.clear();
+    }
+
+    /**
+     * Source code that lives in a string.
+     */
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String src;
+
+        SourceFile( String className, String src ) {
+            super( URI.create( "string:///" + className.replace( '.', '/' )
+                        + JavaFileObject.Kind.SOURCE.extension ),
+                    JavaFileObject.Kind.SOURCE );
+            this.src = src;
+        }
+
+        @Override
+        public CharSequence getCharContent( boolean ignoreEncodingErrors ) {
+            return this.src;
+        }
+    }
+
+    /**
+     * A class file that is written into a byte array.
+     */
+    private static class ClassFile extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        ClassFile( String className, JavaFileObject.Kind kind ) {
+            super( URI.create( "bytes:///" + className.replace( '.', '/' )
+                        + kind.extension ), kind );
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            this.bytes.reset();
+            return this.bytes;
+        }
+
+        byte[] getBytes() {
+            return this.bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,704 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Fingerprints of the bytecode of every method of a class, which only change
+ * when what the method does changes.
+ *
+ * A method's own fingerprint hashes its access flags, its code and its
+ * exception table. Every constant the code refers to is hashed by what it
+ * says rather than by where it sits in the constant pool, so editing one
+ * method does not change the fingerprint of the others, and line numbers and
+ * other debugging attributes are left out, so moving a method around does not
+ * either.
+ *
+ * The fingerprint of a method as a whole also covers everything in the same
+ * class that it may run: the methods it calls, the lambdas it creates, and
+ * the methods those call in turn, as well as the static initializer. A test
+ * of a method only has to run again when that fingerprint changed, or when
+ * one of the other classes it refers to (see <tt>getReferencedClasses</tt>)
+ * did.
+ */
+public class MethodFingerprints {
+
+    //Opcodes whose operands are constant pool indexes
+    private static final int LDC                = 0x12;
+    private static final int LDC_W              = 0x13;
+    private static final int LDC2_W             = 0x14;
+    private static final int GETSTATIC          = 0xb2;
+    private static final int PUTSTATIC          = 0xb3;
+    private static final int INVOKEINTERFACE    = 0xb9;
+    private static final int INVOKEDYNAMIC      = 0xba;
+    private static final int NEW                = 0xbb;
+    private static final int ANEWARRAY          = 0xbd;
+    private static final int CHECKCAST          = 0xc0;
+    private static final int INSTANCEOF         = 0xc1;
+    private static final int MULTIANEWARRAY     = 0xc5;
+
+    //Members whose result differs from one call to the next, by class and name
+    private static final Set<String> NONDETERMINISTIC = new HashSet<>( Arrays.asList(
+            "java.lang.System.nanoTime", "java.lang.System.currentTimeMillis",
+            "java.lang.Math.random", "java.lang.StrictMath.random",
+            "java.lang.Object.hashCode", "java.lang.Object.toString",
+            "java.lang.System.identityHashCode",
+            "java.lang.Thread.currentThread", "java.util.UUID.randomUUID" ) );
+
+    //Classes whose every use differs from one call to the next
+    private static final Set<String> NONDETERMINISTIC_CLASSES = new HashSet<>( Arrays.asList(
+            "java.util.Random", "java.security.SecureRandom",
+            "java.util.concurrent.ThreadLocalRandom", "java.util.SplittableRandom",
+            "java.time.Clock", "java.time.Instant", "java.time.LocalDate",
+            "java.time.LocalDateTime", "java.time.LocalTime" ) );
+
+    private final String className;
+
+    //Every method by its name and descriptor, such as foo(I)V
+    private final Map<String, Method> methods = new LinkedHashMap<>();
+
+    /**
+     * What is known about a single method.
+     */
+    private static final class Method {
+        final String name;
+        final String descriptor;
+        final byte[] own;
+        final Set<String> callees = new TreeSet<>();
+        final Set<String> classes = new TreeSet<>();
+        boolean sharesStatics;
+        boolean nondeterministic;
+
+        Method( String name, String descriptor, byte[] own ) {
+            this.name       = name;
+            this.descriptor = descriptor;
+            this.own        = own;
+        }
+    }
+
+    private MethodFingerprints( String className ) {
+        this.className = className;
+    }
+
+    /**
+     * Fingerprints the methods of a class file.
+     * @param classFile The contents of the class file.
+     * @return The fingerprints.
+     * @throws IOException If the bytes are not a well formed class file.
+     */
+    public static MethodFingerprints of( byte[] classFile ) throws IOException {
+        try {
+            return new Reader( classFile ).read();
+        }
+        catch( IndexOutOfBoundsException | ClassCastException e ) {
+            throw new IOException( "Malformed class file", e );
+        }
+    }
+
+    /** @return The binary name of the class */
+    public String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * @return The name and descriptor of every method of the class, such as
+     * <tt>foo(I)V</tt>, in the order they were declared.
+     */
+    public Set<String> getMethods() {
+        return Collections.unmodifiableSet( this.methods.keySet() );
+    }
+
+    /**
+     * @param method The name and descriptor of a method, such as
+     * <tt>foo(I)V</tt>.
+     * @return A hex encoded hash of the method's own bytecode, or null if the
+     * class has no such method.
+     */
+    public String getOwnFingerprint( String method ) {
+        Method found = this.methods.get( method );
+        return found == null ? null : hex( found.own );
+    }
+
+    /**
+     * @param method The name and descriptor of a method, such as
+     * <tt>foo(I)V</tt>.
+     * @return A hex encoded hash of the method's bytecode and the bytecode of
+     * everything in the class it may run, or null if the class has no such
+     * method.
+     */
+    public String getFingerprint( String method ) {
+        return this.methods.containsKey( method )
+            ? fingerprint( Collections.singletonList( method ) ) : null;
+    }
+
+    /**
+     * Fingerprints what a test of a method depends on.
+     * @param methodName The name of the method. Every overload of it is
+     * covered, since which one a test calls depends on its arguments.
+     * @param constructors Whether the test constructs an instance of the
+     * class first, so that every constructor is covered as well.
+     * @return A hex encoded hash of the bytecode that the test may run.
+     */
+    public String getFingerprint( String methodName, boolean constructors ) {
+        return fingerprint( roots( methodName, constructors ) );
+    }
+
+    /**
+     * @param methodName The name of the method.
+     * @param constructors Whether to include what the constructors refer to.
+     * @return The binary names of the other classes that the overloads of the
+     * method, and everything in the class they may run, refer to.
+     */
+    public Set<String> getReferencedClasses( String methodName, boolean constructors ) {
+        Set<String> classes = new TreeSet<>();
+
+        for ( String method : reachable( roots( methodName, constructors ) ) ) {
+            classes.addAll( this.methods.get( method ).classes );
+        }
+
+        classes.remove( this.className );
+        return classes;
+    }
+
+    /**
+     * @param methodName The name of the method.
+     * @return The descriptor of the type that every overload of the method
+     * returns, such as <tt>I</tt>, or null if the class declares no such
+     * method or its overloads return different types.
+     */
+    public String getReturnDescriptor( String methodName ) {
+        String returned = null;
+
+        for ( Method method : this.methods.values() ) {
+            if( method.name.equals( methodName ) ) {
+                String descriptor = method.descriptor.substring( method.descriptor.indexOf( ')' ) + 1 );
+
+                if( returned != null && ! returned.equals( descriptor ) ) {
+                    return null;
+                }
+
+                returned = descriptor;
+            }
+        }
+
+        return returned;
+    }
+
+    /**
+     * Whether a test of a method is sure to give the same result every time
+     * it runs against the same bytecode, so that its result may be reused.
+     * It is not if any method of the class besides the static initializer
+     * writes a static field, or reads a static field that holds an object
+     * that may be changed, since the method may then see what earlier tests
+     * left behind, or if anything the method may run reads the clock,
+     * a random number generator or an identity hash.
+     * @param methodName The name of the method. Every overload is covered.
+     * @param constructors Whether the test constructs an instance first.
+     * @return Whether the test's result only depends on the bytecode.
+     */
+    public boolean isDeterministic( String methodName, boolean constructors ) {
+        if( hasMutableStatics() ) {
+            return false;
+        }
+
+        for ( String method : reachable( roots( methodName, constructors ) ) ) {
+            if( this.methods.get( method ).nondeterministic ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether calling any method of the class is sure to give the same
+     * result every time, as <tt>isDeterministic</tt> decides it for a single
+     * method.
+     */
+    public boolean isDeterministic() {
+        if( hasMutableStatics() ) {
+            return false;
+        }
+
+        for ( Method method : this.methods.values() ) {
+            if( method.nondeterministic ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Whether any method besides the static initializer writes a
+     * static field, or reads one of the class's own that may be changed.
+     */
+    private boolean hasMutableStatics() {
+        for ( Method method : this.methods.values() ) {
+            if( method.sharesStatics && ! method.name.equals( "<clinit>" ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private List<String> roots( String methodName, boolean constructors ) {
+        List<String> roots = new ArrayList<>();
+
+        for ( Method method : this.methods.values() ) {
+            if( method.name.equals( methodName )
+                    || ( constructors && method.name.equals( "<init>" ) ) ) {
+                roots.add( method.name + method.descriptor );
+            }
+        }
+
+        return roots;
+    }
+
+    /**
+     * @return Every method reachable from the given ones, along with the
+     * static initializer, in a fixed order.
+     */
+    private Set<String> reachable( List<String> roots ) {
+        Set<String> reached = new TreeSet<>();
+        Deque<String> pending = new ArrayDeque<>( roots );
+        pending.add( "<clinit>()V" );
+
+        while( ! pending.isEmpty() ) {
+            String next = pending.removeFirst();
+            Method method = this.methods.get( next );
+
+            if( method != null && reached.add( next ) ) {
+                pending.addAll( method.callees );
+            }
+        }
+
+        return reached;
+    }
+
+    private String fingerprint( List<String> roots ) {
+        MessageDigest digest = digest();
+
+        for ( String method : reachable( roots ) ) {
+            digest.update( method.getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( this.methods.get( method ).own );
+        }
+
+        return hex( digest.digest() );
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException nsae ) {
+            throw new IllegalStateException( nsae );
+        }
+    }
+
+    private static String hex( byte[] bytes ) {
+        StringBuilder sb = new StringBuilder();
+
+        for ( byte b : bytes ) {
+            sb.append( Character.forDigit( (b >> 4) & 0xF, 16 ) );
+            sb.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Reads a class file into its fingerprints.
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private final DataInputStream in;
+
+        //The tag of every constant, and where its contents start in bytes
+        private int[] tags;
+        private int[] offsets;
+        private String[] resolved;
+        private String[] utf8;
+
+        //Where the BootstrapMethods attribute starts, if the class has one
+        private int bootstrapMethods = -1;
+
+        Reader( byte[] bytes ) {
+            this.bytes  = bytes;
+            this.in     = new DataInputStream( new ByteArrayInputStream( bytes ) );
+        }
+
+        MethodFingerprints read() throws IOException {
+            if( this.in.readInt() != 0xCAFEBABE ) {
+                throw new IOException( "Not a class file" );
+            }
+
+            //Minor and major version
+            this.in.readInt();
+
+            readConstantPool();
+
+            this.in.readUnsignedShort();
+            MethodFingerprints fingerprints = new MethodFingerprints(
+                    className( this.in.readUnsignedShort() ) );
+
+            this.in.readUnsignedShort();
+            this.in.skipBytes( 2 * this.in.readUnsignedShort() );
+
+            int fieldCount = this.in.readUnsignedShort();
+            for ( int i = 0; i < fieldCount; i++ ) {
+                this.in.skipBytes( 6 );
+                skipAttributes();
+            }
+
+            //Methods are read once the bootstrap methods after them are known
+            int methodsStart = this.bytes.length - this.in.available();
+            int methodCount = this.in.readUnsignedShort();
+            for ( int i = 0; i < methodCount; i++ ) {
+                this.in.skipBytes( 6 );
+                skipAttributes();
+            }
+
+            int attributeCount = this.in.readUnsignedShort();
+            for ( int i = 0; i < attributeCount; i++ ) {
+                String name = this.utf8[ this.in.readUnsignedShort() ];
+                int length = this.in.readInt();
+
+                if( "BootstrapMethods".equals( name ) ) {
+                    this.bootstrapMethods = this.bytes.length - this.in.available();
+                }
+
+                this.in.skipBytes( length );
+            }
+
+            DataInputStream methods = new DataInputStream( new ByteArrayInputStream(
+                        this.bytes, methodsStart, this.bytes.length - methodsStart ) );
+            methodCount = methods.readUnsignedShort();
+
+            for ( int i = 0; i < methodCount; i++ ) {
+                readMethod( methods, fingerprints );
+            }
+
+            return fingerprints;
+        }
+
+        private void readMethod( DataInputStream methods, MethodFingerprints fingerprints )
+                throws IOException {
+            int access = methods.readUnsignedShort();
+            String name = this.utf8[ methods.readUnsignedShort() ];
+            String descriptor = this.utf8[ methods.readUnsignedShort() ];
+            MessageDigest digest = digest();
+            Set<String> callees = new TreeSet<>();
+            Set<String> classes = new TreeSet<>();
+            Set<String> members = new TreeSet<>();
+            boolean sharesStatics = false;
+
+            update( digest, Integer.toString( access ) );
+
+            int attributeCount = methods.readUnsignedShort();
+            for ( int j = 0; j < attributeCount; j++ ) {
+                String attributeName = this.utf8[ methods.readUnsignedShort() ];
+                int length = methods.readInt();
+                int start = this.bytes.length - methods.available();
+                methods.skipBytes( length );
+
+                if( "Code".equals( attributeName ) ) {
+                    sharesStatics |= readCode( start, digest, fingerprints.className,
+                            callees, classes, members );
+                }
+            }
+
+            Method method = new Method( name, descriptor, digest.digest() );
+            method.callees.addAll( callees );
+            method.classes.addAll( classes );
+            method.sharesStatics = sharesStatics;
+            method.nondeterministic = ! Collections.disjoint( members, NONDETERMINISTIC )
+                || ! Collections.disjoint( classes, NONDETERMINISTIC_CLASSES );
+            fingerprints.methods.put( name + descriptor, method );
+        }
+
+        /**
+         * Hashes the code of a method, and finds what it calls.
+         * @param members Where the fields and methods it refers to are added,
+         * such as <tt>java.lang.System.nanoTime</tt>.
+         * @return Whether the method writes a static field, or reads a static
+         * field of the class that holds an object that may be changed.
+         */
+        private boolean readCode( int start, MessageDigest digest, String className,
+                Set<String> callees, Set<String> classes, Set<String> members )
+                throws IOException {
+            boolean sharesStatics = false;
+            int length = s4( start + 4 );
+            int codeStart = start + 8;
+
+            //The limits, then every instruction with its constants spelled out
+            digest.update( this.bytes, start, 4 );
+
+            for ( int pc = 0; pc < length; ) {
+                int op = this.bytes[ codeStart + pc ] & 0xff;
+                int size = CoverageInstrumenter.instructionLength( this.bytes, codeStart, pc );
+                int index = -1;
+
+                if( op == LDC ) {
+                    index = this.bytes[ codeStart + pc + 1 ] & 0xff;
+                }
+                else if( op == LDC_W || op == LDC2_W || ( op >= GETSTATIC && op <= INVOKEDYNAMIC )
+                        || op == NEW || op == ANEWARRAY || op == CHECKCAST || op == INSTANCEOF
+                        || op == MULTIANEWARRAY ) {
+                    index = u2( codeStart + pc + 1 );
+                }
+
+                if( index < 0 ) {
+                    digest.update( this.bytes, codeStart + pc, size );
+                }
+                else {
+                    digest.update( (byte) op );
+                    update( digest, resolve( index ) );
+
+                    //The dimensions of multianewarray, or the count of invokeinterface
+                    if( op == MULTIANEWARRAY || op == INVOKEINTERFACE ) {
+                        digest.update( this.bytes[ codeStart + pc + 3 ] );
+                    }
+
+                    references( index, className, callees, classes, members );
+                }
+
+                sharesStatics |= op == PUTSTATIC
+                    || ( op == GETSTATIC && mutableStatic( index, className ) );
+                pc += size;
+            }
+
+            int exceptions = codeStart + length;
+            int exceptionCount = u2( exceptions );
+
+            for ( int i = 0; i < exceptionCount; i++ ) {
+                int entry = exceptions + 2 + 8 * i;
+                digest.update( this.bytes, entry, 6 );
+                int catchType = u2( entry + 6 );
+                update( digest, catchType == 0 ? "finally" : resolve( catchType ) );
+            }
+
+            return sharesStatics;
+        }
+
+        /**
+         * @return Whether a static field of the class may hold an object that
+         * can be changed. Strings, primitives and the constants of an enum
+         * can not, and neither can the array that <tt>values</tt> copies.
+         */
+        private boolean mutableStatic( int index, String className ) {
+            int at = this.offsets[ index ];
+            int nameAndType = this.offsets[ u2( at + 2 ) ];
+            String name = this.utf8[ u2( nameAndType ) ];
+            String descriptor = this.utf8[ u2( nameAndType + 2 ) ];
+
+            if( ! className( u2( at ) ).equals( className ) || name.equals( "$VALUES" ) ) {
+                return false;
+            }
+
+            return ( descriptor.startsWith( "L" ) || descriptor.startsWith( "[" ) )
+                && ! descriptor.equals( "Ljava/lang/String;" )
+                && ! descriptor.equals( "L" + className.replace( '.', '/' ) + ";" );
+        }
+
+        /**
+         * Notes which methods of the class and which other classes a constant
+         * refers to, following method handles and bootstrap arguments.
+         */
+        private void references( int index, String className, Set<String> callees,
+                Set<String> classes, Set<String> members ) {
+            int at = this.offsets[ index ];
+
+            switch( this.tags[ index ] ) {
+                case 7:
+                    classes.add( className( index ) );
+                    break;
+                case 9: case 10: case 11:
+                    String owner = className( u2( at ) );
+                    int nameAndType = this.offsets[ u2( at + 2 ) ];
+                    classes.add( owner );
+                    members.add( owner + "." + this.utf8[ u2( nameAndType ) ] );
+
+                    if( owner.equals( className ) && this.tags[ index ] != 9 ) {
+                        callees.add( this.utf8[ u2( nameAndType ) ]
+                                + this.utf8[ u2( nameAndType + 2 ) ] );
+                    }
+                    break;
+                case 15:
+                    references( u2( at + 1 ), className, callees, classes, members );
+                    break;
+                case 17: case 18:
+                    if( this.bootstrapMethods >= 0 ) {
+                        int bootstrap = bootstrap( u2( at ) );
+                        references( u2( bootstrap ), className, callees, classes, members );
+
+                        for ( int i = 0; i < u2( bootstrap + 2 ); i++ ) {
+                            references( u2( bootstrap + 4 + 2 * i ), className, callees,
+                                    classes, members );
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /** @return Where a bootstrap method's entry starts */
+        private int bootstrap( int number ) {
+            int at = this.bootstrapMethods + 2;
+
+            for ( int i = 0; i < number; i++ ) {
+                at += 4 + 2 * u2( at + 2 );
+            }
+
+            return at;
+        }
+
+        /**
+         * @return What a constant says, regardless of where it is in the
+         * pool, such as <tt>M:Foo.bar:(I)V</tt>.
+         */
+        private String resolve( int index ) {
+            if( this.resolved[ index ] != null ) {
+                return this.resolved[ index ];
+            }
+
+            int at = this.offsets[ index ];
+            String value;
+
+            switch( this.tags[ index ] ) {
+                case 1:
+                    value = this.utf8[ index ];
+                    break;
+                case 3:
+                    value = "I:" + s4( at );
+                    break;
+                case 4:
+                    value = "F:" + s4( at );
+                    break;
+                case 5: case 6:
+                    value = "J:" + s4( at ) + ":" + s4( at + 4 );
+                    break;
+                case 7:
+                    value = "C:" + this.utf8[ u2( at ) ];
+                    break;
+                case 8:
+                    value = "S:" + this.utf8[ u2( at ) ];
+                    break;
+                case 9: case 10: case 11:
+                    value = "M" + this.tags[ index ] + ":" + resolve( u2( at ) ) + "."
+                        + resolve( u2( at + 2 ) );
+                    break;
+                case 12:
+                    value = this.utf8[ u2( at ) ] + ":" + this.utf8[ u2( at + 2 ) ];
+                    break;
+                case 15:
+                    value = "H" + ( this.bytes[ at ] & 0xff ) + ":" + resolve( u2( at + 1 ) );
+                    break;
+                case 16:
+                    value = "T:" + this.utf8[ u2( at ) ];
+                    break;
+                case 17: case 18:
+                    StringBuilder sb = new StringBuilder( "D:" ).append( resolve( u2( at + 2 ) ) );
+
+                    if( this.bootstrapMethods >= 0 ) {
+                        int bootstrap = bootstrap( u2( at ) );
+                        sb.append( ":" ).append( resolve( u2( bootstrap ) ) );
+
+                        for ( int i = 0; i < u2( bootstrap + 2 ); i++ ) {
+                            sb.append( "," ).append( resolve( u2( bootstrap + 4 + 2 * i ) ) );
+                        }
+                    }
+
+                    value = sb.toString();
+                    break;
+                default:
+                    value = "?" + this.tags[ index ];
+                    break;
+            }
+
+            this.resolved[ index ] = value;
+            return value;
+        }
+
+        private String className( int index ) {
+            return this.utf8[ u2( this.offsets[ index ] ) ].replace( '/', '.' );
+        }
+
+        private void readConstantPool() throws IOException {
+            int count = this.in.readUnsignedShort();
+            this.tags = new int[ count ];
+            this.offsets = new int[ count ];
+            this.resolved = new String[ count ];
+            this.utf8 = new String[ count ];
+
+            for ( int i = 1; i < count; i++ ) {
+                int tag = this.in.readUnsignedByte();
+                this.tags[i] = tag;
+                this.offsets[i] = this.bytes.length - this.in.available();
+
+                switch( tag ) {
+                    case 1:
+                        this.utf8[i] = this.in.readUTF();
+                        break;
+                    case 7: case 8: case 16: case 19: case 20:
+                        this.in.skipBytes( 2 );
+                        break;
+                    case 15:
+                        this.in.skipBytes( 3 );
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        this.in.skipBytes( 4 );
+                        break;
+                    case 5: case 6:
+                        //Eight byte constants take up two entries
+                        this.in.skipBytes( 8 );
+                        i++;
+                        break;
+                    default:
+                        throw new IOException( "Unknown constant pool tag " + tag );
+                }
+            }
+        }
+
+        private void skipAttributes() throws IOException {
+            int count = this.in.readUnsignedShort();
+
+            for ( int i = 0; i < count; i++ ) {
+                this.in.readUnsignedShort();
+                this.in.skipBytes( this.in.readInt() );
+            }
+        }
+
+        private int u2( int at ) {
+            return ( this.bytes[ at ] & 0xff ) << 8 | ( this.bytes[ at + 1 ] & 0xff );
+        }
+
+        private int s4( int at ) {
+            return u2( at ) << 16 | u2( at + 2 );
+        }
+
+        private static void update( MessageDigest digest, String value ) {
+            digest.update( value.getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+        }
+    }
+}
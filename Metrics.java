@@ -0,0 +1,231 @@
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Every latency histogram, counter and cache of the harness, by name, so that
+ * a slow request can be traced to the phase it was spent in.
+ *
+ * Phases hold on to their histograms and counters in static fields, so that
+ * timing a phase costs two calls to <tt>System.nanoTime</tt> and a few atomic
+ * increments:
+ * <tt>long start = System.nanoTime(); ... compileTime.recordSince( start );</tt>
+ *
+ * Everything registered here can be read in three ways: as text through
+ * <tt>report</tt>, which the server's <tt>metrics</tt> command answers with,
+ * over JMX as the attributes of <tt>SuiteGenerator:type=Metrics</tt> once
+ * <tt>registerMBean</tt> has been called, and on standard error at exit when
+ * a tool is run with <tt>-Dsuitegenerator.metrics=true</tt>.
+ */
+public final class Metrics {
+
+    /** The name of the MBean that the metrics are exposed through */
+    public static final String MBEAN_NAME = "SuiteGenerator:type=Metrics";
+
+    private static final ConcurrentMap<String, LatencyHistogram> histograms =
+        new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, LongAdder> counters =
+        new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, Supplier<?>> gauges =
+        new ConcurrentSkipListMap<>();
+
+    static {
+        if( Boolean.getBoolean( "suitegenerator.metrics" ) ) {
+            Runtime.getRuntime().addShutdownHook( new Thread( () ->
+                        System.err.print( report() ) ) );
+        }
+    }
+
+    /** Empty Constructor */
+    private Metrics() { }
+
+    /**
+     * @param name The name of a phase, such as <tt>api.compile</tt>.
+     * @return The histogram of how long the phase took, which is created the
+     * first time it is asked for.
+     */
+    public static LatencyHistogram histogram( String name ) {
+        return histograms.computeIfAbsent( name, LatencyHistogram::new );
+    }
+
+    /**
+     * @param name The name of something that is counted, such as
+     * <tt>api.tests.direct</tt>.
+     * @return Its counter, which is created the first time it is asked for.
+     */
+    public static LongAdder counter( String name ) {
+        return counters.computeIfAbsent( name, n -> new LongAdder() );
+    }
+
+    /**
+     * Reports something that keeps statistics of its own, such as a cache,
+     * under a name.
+     * @param name The name it is reported under.
+     * @param gauge Returns its current statistics, which are reported as
+     * text.
+     */
+    public static void register( String name, Supplier<?> gauge ) {
+        gauges.put( name, gauge );
+    }
+
+    /**
+     * @return Every metric on its own line, sorted by name within histograms,
+     * counters and gauges, for example
+     * <tt>histogram api.compile count=3 mean=12.5 ...</tt>
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+
+        for ( LatencyHistogram histogram : histograms.values() ) {
+            sb.append( "histogram " ).append( histogram.getName() ).append( ' ' )
+                .append( histogram ).append( '\n' );
+        }
+
+        for ( Map.Entry<String, LongAdder> counter : counters.entrySet() ) {
+            sb.append( "counter " ).append( counter.getKey() ).append( ' ' )
+                .append( counter.getValue().sum() ).append( '\n' );
+        }
+
+        for ( Map.Entry<String, Supplier<?>> gauge : gauges.entrySet() ) {
+            sb.append( "gauge " ).append( gauge.getKey() ).append( ' ' )
+                .append( gauge.getValue().get() ).append( '\n' );
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Exposes the metrics over JMX, unless they already are.
+     */
+    public static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName( MBEAN_NAME );
+
+            if( ! server.isRegistered( name ) ) {
+                server.registerMBean( new MetricsMBean(), name );
+            }
+        }
+        catch( JMException jme ) {
+            System.err.println( "In Metrics.registerMBean:" );
+            jme.printStackTrace();
+        }
+    }
+
+    /**
+     * Exposes every metric as read only attributes: <tt>name.count</tt>,
+     * <tt>name.meanNanos</tt>, <tt>name.p50Nanos</tt>, <tt>name.p99Nanos</tt>
+     * and <tt>name.maxNanos</tt> for a histogram, the name alone for a counter
+     * and its statistics as text for a gauge. The attributes are worked out
+     * on every request, so metrics created later show up too.
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+        private static final String[] HISTOGRAM_STATS = {
+            "count", "meanNanos", "p50Nanos", "p99Nanos", "maxNanos"
+        };
+
+        @Override
+        public Object getAttribute( String attribute ) throws AttributeNotFoundException {
+            LongAdder counter = counters.get( attribute );
+            if( counter != null ) {
+                return counter.sum();
+            }
+
+            Supplier<?> gauge = gauges.get( attribute );
+            if( gauge != null ) {
+                return String.valueOf( gauge.get() );
+            }
+
+            int dot = attribute.lastIndexOf( '.' );
+            LatencyHistogram histogram = dot < 0 ? null
+                : histograms.get( attribute.substring( 0, dot ) );
+
+            if( histogram != null ) {
+                switch( attribute.substring( dot + 1 ) ) {
+                    case "count":       return histogram.getCount();
+                    case "meanNanos":   return histogram.getMeanNanos();
+                    case "p50Nanos":    return histogram.getPercentileNanos( 50 );
+                    case "p99Nanos":    return histogram.getPercentileNanos( 99 );
+                    case "maxNanos":    return histogram.getMaxNanos();
+                    default:            break;
+                }
+            }
+
+            throw new AttributeNotFoundException( attribute );
+        }
+
+        @Override
+        public AttributeList getAttributes( String[] attributes ) {
+            AttributeList list = new AttributeList();
+
+            for ( String attribute : attributes ) {
+                try {
+                    list.add( new Attribute( attribute, getAttribute( attribute ) ) );
+                }
+                catch( AttributeNotFoundException anfe ) {
+                    //Left out, as JMX expects
+                }
+            }
+
+            return list;
+        }
+
+        @Override
+        public void setAttribute( Attribute attribute ) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException( attribute.getName() + " is read only" );
+        }
+
+        @Override
+        public AttributeList setAttributes( AttributeList attributes ) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke( String actionName, Object[] params, String[] signature ) {
+            throw new UnsupportedOperationException( actionName );
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+            for ( String name : histograms.keySet() ) {
+                for ( String stat : HISTOGRAM_STATS ) {
+                    attributes.add( new MBeanAttributeInfo( name + "." + stat,
+                                stat.equals( "meanNanos" ) ? "double" : "long",
+                                stat + " of " + name, true, false, false ) );
+                }
+            }
+
+            for ( String name : counters.keySet() ) {
+                attributes.add( new MBeanAttributeInfo( name, "long", name,
+                            true, false, false ) );
+            }
+
+            for ( String name : gauges.keySet() ) {
+                attributes.add( new MBeanAttributeInfo( name, "java.lang.String",
+                            name, true, false, false ) );
+            }
+
+            return new MBeanInfo( Metrics.class.getName(),
+                    "Latencies, counters and caches of the test suite generator",
+                    attributes.toArray( new MBeanAttributeInfo[0] ), null, null, null );
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Captures what a single execution writes to standard out, without touching
+ * what any other thread writes.
+ *
+ * The first capture replaces System.out, once, with a stream that routes every
+ * write to the capture started on the writing thread, or to the original
+ * standard out when that thread is not capturing. Captures on different
+ * threads never see each other's output, so many suites can run in one JVM
+ * at the same time.
+ *
+ * A server that answers on standard out <tt>claim</tt>s it instead, after
+ * which output that is not captured, such as that of a thread a submission
+ * started, goes to standard error rather than into its answers.
+ */
+public final class OutputCapture implements AutoCloseable {
+
+    //The capture that the current thread is writing into, if any
+    private static final ThreadLocal<OutputCapture> current = new ThreadLocal<>();
+
+    //Standard out as it was before it was replaced
+    private static PrintStream original;
+
+    //Where threads that are not capturing write to
+    private static volatile PrintStream uncaptured;
+
+    private final ByteArrayOutputStream buffer;
+    private final OutputCapture previous;
+    private final Thread owner;
+
+    private OutputCapture( OutputCapture previous ) {
+        this.buffer     = new ByteArrayOutputStream();
+        this.previous   = previous;
+        this.owner      = Thread.currentThread();
+    }
+
+    /**
+     * Starts capturing everything the current thread writes to standard out,
+     * until the capture is closed. Captures may be nested.
+     * @return The capture.
+     */
+    public static OutputCapture start() {
+        install();
+
+        OutputCapture capture = new OutputCapture( current.get() );
+        current.set( capture );
+        return capture;
+    }
+
+    /**
+     * Takes standard out for the caller alone. From then on, everything
+     * written to System.out that is not captured goes to standard error.
+     * @return Standard out as it was before captures were installed.
+     */
+    public static synchronized PrintStream claim() {
+        install();
+
+        uncaptured = System.err;
+        return original;
+    }
+
+    /**
+     * Replaces System.out with the routing stream, if that has not happened
+     * yet.
+     */
+    private static synchronized void install() {
+        if( original != null ) {
+            return;
+        }
+
+        original = System.out;
+        uncaptured = original;
+        System.setOut( new PrintStream( new RoutingOutputStream(), true ) );
+    }
+
+    /**
+     * @return Everything written while this capture was active.
+     */
+    public String getOutput() {
+        return this.buffer.toString();
+    }
+
+    /**
+     * Stops capturing, and goes back to whatever the thread was writing to
+     * before this capture was started.
+     */
+    @Override
+    public void close() {
+        if( Thread.currentThread() != this.owner ) {
+            throw new IllegalStateException( "A capture must be closed by the thread that started it" );
+        }
+
+        if( this.previous == null ) {
+            current.remove();
+        }
+        else {
+            current.set( this.previous );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getOutput();
+    }
+
+    /**
+     * Sends every write to the current thread's capture, or to the original
+     * standard out, unless that was claimed.
+     */
+    private static class RoutingOutputStream extends OutputStream {
+
+        private OutputStream target() {
+            OutputCapture capture = current.get();
+            return capture == null ? uncaptured : capture.buffer;
+        }
+
+        @Override
+        public void write( int b ) throws IOException {
+            target().write( b );
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException {
+            target().write( b, off, len );
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads the classes of a single submission from the directory they were
+ * compiled into. A new loader is made for every submission, so once a run is
+ * over its classes can be unloaded, and a class that was uploaded again is
+ * always read fresh instead of reusing a stale copy.
+ *
+ * JDK classes come from the platform class loader, which every submission
+ * shares. The handful of harness classes that generated suites refer to come
+ * from the loader that loaded the harness, so that the harness can recognize
+ * them. Everything else is defined by this loader from the submission's
+ * directory, even when the application class path has a class with the same
+ * name.
+ */
+public class SubmissionClassLoader extends ClassLoader {
+
+    //Harness classes that generated suites share with the harness
+    private static final Set<String> sharedClasses = Collections.unmodifiableSet(
+            new HashSet<>( Arrays.asList( "AssertionException", "BenchmarkRunner",
+                        "BenchmarkResult", "Coverage" ) ) );
+
+    private final File root;
+
+    //Where classes are instrumented for coverage, if they are
+    private final Coverage coverage;
+
+    /**
+     * @param root The directory that the submission's classes were compiled
+     * into.
+     */
+    public SubmissionClassLoader( File root ) {
+        this( root, null );
+    }
+
+    /**
+     * @param root The directory that the submission's classes were compiled
+     * into.
+     * @param coverage What every class the loader defines is instrumented
+     * for, or null to define them as they were compiled.
+     */
+    public SubmissionClassLoader( File root, Coverage coverage ) {
+        super( ClassLoader.getPlatformClassLoader() );
+        this.root       = root;
+        this.coverage   = coverage;
+    }
+
+    /**
+     * @return The directory that the submission's classes are loaded from.
+     */
+    public File getRoot() {
+        return this.root;
+    }
+
+    @Override
+    protected Class<?> loadClass( String name, boolean resolve )
+            throws ClassNotFoundException {
+        //Nested classes are shared along with the class they are nested in
+        int nested = name.indexOf( '$' );
+
+        if( sharedClasses.contains( nested < 0 ? name : name.substring( 0, nested ) ) ) {
+            return SubmissionClassLoader.class.getClassLoader().loadClass( name );
+        }
+
+        synchronized( getClassLoadingLock( name ) ) {
+            Class<?> loaded = findLoadedClass( name );
+
+            if( loaded == null ) {
+                try {
+                    loaded = getParent().loadClass( name );
+                }
+                catch( ClassNotFoundException cnfe ) {
+                    loaded = findClass( name );
+                }
+            }
+
+            if( resolve ) {
+                resolveClass( loaded );
+            }
+
+            return loaded;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass( String name ) throws ClassNotFoundException {
+        byte[] bytes = readClassFile( name );
+
+        if( bytes == null ) {
+            throw new ClassNotFoundException( name );
+        }
+
+        if( this.coverage != null ) {
+            bytes = this.coverage.instrument( name, bytes );
+        }
+
+        return defineClass( name, bytes, 0, bytes.length );
+    }
+
+    private File classFile( String name ) {
+        return new File( this.root, name.replace( '.', File.separatorChar ) + ".class" );
+    }
+
+    @Override
+    protected URL findResource( String name ) {
+        File file = new File( this.root, name );
+
+        try {
+            return file.isFile() ? file.toURI().toURL() : null;
+        }
+        catch( MalformedURLException mue ) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the class file of one of the submission's classes, without loading
+     * it.
+     * @param name The binary name of the class.
+     * @return The contents of the class file, or null if the submission has no
+     * such class.
+     */
+    public byte[] readClassFile( String name ) {
+        File file = classFile( name );
+
+        try {
+            return file.isFile() ? Files.readAllBytes( file.toPath() ) : null;
+        }
+        catch( IOException ioe ) {
+            return null;
+        }
+    }
+}
@@ -1,19 +1,98 @@
-import javax.tools.JavaCompiler;
 import javax.tools.ToolProvider;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
 
 import java.io.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Provides a simplistic, and callable API for test suite generation is
  * extremely simple use cases where excessive customization is not needed.
  */
 public class SuiteGeneratorAPI {
 
-    private static ClassLoader loader = ToolProvider.getSystemToolClassLoader();
-    private static JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    //The directory that uploaded classes are compiled into
+    private static File submissionRoot = new File(
+            System.getProperty( "suitegenerator.root", "." ) );
+
+    //Compiles suites with file managers that stay warm between compilations
+    private static CompilationService compilationService = new CompilationService(
+            ToolProvider.getSystemJavaCompiler(), Integer.getInteger(
+                "suitegenerator.parallelism", Runtime.getRuntime().availableProcessors() ) );
+
+    //Runs the tests of batches in parallel, within their budgets
+    private static TestExecutor executor = new TestExecutor( Integer.getInteger(
+                "suitegenerator.parallelism", Runtime.getRuntime().availableProcessors() ),
+            ExecutionBudget.fromSystemProperties( "suitegenerator.test", 10000 ),
+            ExecutionBudget.fromSystemProperties( "suitegenerator.suite", 0 ) );
+
+    //Whether tests that only use literals skip code generation
+    private static boolean directInvocation = Boolean.parseBoolean(
+            System.getProperty( "suitegenerator.direct", "true" ) );
+
+    //The average number of tests in a separately compiled unit of a batch
+    private static int unitSize = Integer.getInteger( "suitegenerator.unitSize", 32 );
+
+    //How long a method is fuzzed for, and how deep its inputs are built
+    private static long fuzzMillis = Long.getLong( "suitegenerator.fuzz.millis", 5000 );
+    private static int fuzzDepth = Integer.getInteger( "suitegenerator.fuzz.depth", 3 );
+
+    //Compiled suites, keyed by their source and the classes they test
+    private static CompiledSuiteCache suiteCache = new CompiledSuiteCache(
+            Integer.getInteger( "suitegenerator.cache.size", 256 ),
+            System.getProperty( "suitegenerator.cache.dir" ) == null ? null
+            : new File( System.getProperty( "suitegenerator.cache.dir" ) ) );
+
+    //Compiled units of batches, keyed by their tests and the classes they test
+    private static CompiledSuiteCache unitCache = new CompiledSuiteCache(
+            Integer.getInteger( "suitegenerator.unitCache.size", 2048 ),
+            System.getProperty( "suitegenerator.cache.dir" ) == null ? null
+            : new File( System.getProperty( "suitegenerator.cache.dir" ) ) );
+
+    //The last result of every test, kept while the code it runs is unchanged
+    private static TestResultCache resultCache = new TestResultCache(
+            Integer.getInteger( "suitegenerator.resultCache.size", 8192 ) );
+
+    //How long each phase of running tests takes
+    private static final LatencyHistogram compileTime = Metrics.histogram( "api.compile" );
+    private static final LatencyHistogram loadTime = Metrics.histogram( "api.load" );
+    private static final LatencyHistogram executeTime = Metrics.histogram( "api.execute" );
+    private static final LatencyHistogram directTime = Metrics.histogram( "api.direct" );
+    private static final LatencyHistogram batchTime = Metrics.histogram( "api.batch" );
+    private static final LatencyHistogram benchmarkTime = Metrics.histogram( "api.benchmark" );
+    private static final LatencyHistogram fuzzTime = Metrics.histogram( "api.fuzz" );
+
+    //How many tests were invoked directly, and how many had to be compiled
+    private static final LongAdder directTests = Metrics.counter( "api.tests.direct" );
+    private static final LongAdder compiledTests = Metrics.counter( "api.tests.compiled" );
+
+    //How many tests were answered with their last result, since nothing they run changed
+    private static final LongAdder cachedTests = Metrics.counter( "api.tests.cached" );
+
+    static {
+        Metrics.register( "suiteCache", () -> suiteCache );
+        Metrics.register( "unitCache", () -> unitCache );
+        Metrics.register( "compiler", () -> compilationService );
+        Metrics.register( "resultCache", () -> resultCache );
+    }
 
     /**
      * Generates, compiles, and executes a singular test case.
@@ -33,18 +112,29 @@ public class SuiteGeneratorAPI {
             instanceName, String methodName, String testName, String
             methodArguments, String expectedValue, String constructorArguments,
             String suiteName ) {
+        TestSpec test = TestSpec.standard( className, instanceName, methodName,
+                testName, methodArguments, expectedValue, constructorArguments );
+
+        //Skip code generation when the test only uses literals, in a fresh loader so it sees the latest upload
+        SubmissionClassLoader submission = new SubmissionClassLoader( submissionRoot );
+        TestResult direct = runDirect( test, submission, null );
+
+        if( direct != null ) {
+            return unwrap( direct );
+        }
+
         //Create the suite generator
         TestSuiteGenerator generator = new TestSuiteGenerator( suiteName );
 
-        //Generate the test
-        generator.generateStandardTest( className, instanceName, methodName,
-                testName, methodArguments, expectedValue, constructorArguments );
+        //Generate the test, with the assertion its method's return type calls for
+        test.withReturnDescriptor( returnDescriptor( test, submission,
+                    new HashMap<String, MethodFingerprints>() ) ).addTo( generator );
 
         //Generate the suite
         String generatedTestSuite = generator.generateTestSuite();
 
         //Compe and run the suite
-        return compileAndRun( generatedTestSuite, suiteName );
+        return compileAndRun( generatedTestSuite, suiteName, className );
     }
 
     /**
@@ -62,91 +152,765 @@ public class SuiteGeneratorAPI {
     public static String runAStaticTest( String className, String testName,
             String expectedValue, String methodName, String methodArguments,
             String suiteName ) {
+        TestSpec test = TestSpec.staticTest( className, testName, expectedValue,
+                methodName, methodArguments );
+
+        //Skip code generation when the test only uses literals, in a fresh loader so it sees the latest upload
+        SubmissionClassLoader submission = new SubmissionClassLoader( submissionRoot );
+        TestResult direct = runDirect( test, submission, null );
+
+        if( direct != null ) {
+            return unwrap( direct );
+        }
+
         //Create the suite generator
         TestSuiteGenerator generator = new TestSuiteGenerator( suiteName );
 
-        //Generate the test
-        generator.generateStaticTest( className, testName, expectedValue,
-                methodName, methodArguments );
+        //Generate the test, with the assertion its method's return type calls for
+        test.withReturnDescriptor( returnDescriptor( test, submission,
+                    new HashMap<String, MethodFingerprints>() ) ).addTo( generator );
 
         //Generate the suite
         String generatedTestSuite = generator.generateTestSuite();
 
         //Compile and run the suite
-        return compileAndRun( generatedTestSuite, suiteName );
+        return compileAndRun( generatedTestSuite, suiteName, className );
+    }
+
+    /**
+     * Generates, compiles, and benchmarks a method called on an instance of a
+     * class. The method is warmed up before it is measured, and the
+     * benchmark is held to the budget of a single test, so the number and
+     * length of its iterations (see <tt>BenchmarkRunner</tt>) have to fit in
+     * it.
+     * @param className The name of the class that is being benchmarked.
+     * @param instanceName The name of the instance of <tt>clazz</tt> that will
+     * be created.
+     * @param methodName The name of the method that is being benchmarked.
+     * @param testName The name of the benchmark.
+     * @param methodArguments The string of arguments that are passed to
+     * <tt>methodName</tt>.
+     * @param constructorArguments The string of arguments that are passed to
+     * the object constructor.
+     * @param suiteName The name of the suite generated and ran.
+     * @return How fast the method ran, or why it could not be benchmarked.
+     */
+    public static BenchmarkResult runAStandardBenchmark( String className,
+            String instanceName, String methodName, String testName,
+            String methodArguments, String constructorArguments, String suiteName ) {
+        TestSuiteGenerator generator = new TestSuiteGenerator( suiteName );
+
+        generator.generateStandardBenchmark( className, instanceName, methodName,
+                testName, methodArguments, constructorArguments );
+
+        return compileAndBenchmark( generator.generateTestSuite(), suiteName,
+                className, testName );
     }
 
-    private static String compileAndRun( String testSuiteSrc, String suiteName ) {
-        //Create the file object
-        File javaFile = new File( suiteName + ".java" );
+    /**
+     * Generates, compiles, and benchmarks a static method, the same way as
+     * <tt>runAStandardBenchmark</tt>.
+     * @param className The name of the class that is being benchmarked.
+     * @param testName The name of the benchmark.
+     * @param methodName The name of the method that is being benchmarked.
+     * @param methodArguments The string of arguments that are passed to
+     * <tt>methodName</tt>.
+     * @param suiteName The name of the suite generated and ran.
+     * @return How fast the method ran, or why it could not be benchmarked.
+     */
+    public static BenchmarkResult runAStaticBenchmark( String className,
+            String testName, String methodName, String methodArguments,
+            String suiteName ) {
+        TestSuiteGenerator generator = new TestSuiteGenerator( suiteName );
+
+        generator.generateStaticBenchmark( className, testName, methodName,
+                methodArguments );
+
+        return compileAndBenchmark( generator.generateTestSuite(), suiteName,
+                className, testName );
+    }
+
+    /**
+     * Calls a method of an uploaded class with generated inputs for a while,
+     * and reports the simplest input found for each distinct way it failed.
+     * See <tt>Fuzzer</tt>. Fuzzing stops after <tt>invocations</tt> inputs,
+     * or once <tt>suitegenerator.fuzz.millis</tt> have passed, and is held to
+     * the budget of a single test.
+     * @param className The name of the class that declares the method.
+     * @param methodName The name of the method that is being fuzzed.
+     * @param parameterTypes The parameter types of the method, such as
+     * <tt>int, java.lang.String</tt>, or an empty string if the method is not
+     * overloaded.
+     * @param invariant A boolean Java expression that should hold after every
+     * call, over the arguments <tt>arg0</tt>, <tt>arg1</tt> and so on, the
+     * receiver <tt>self</tt> and the <tt>result</tt>, or an empty string to
+     * only look for calls that throw.
+     * @param seed The seed the inputs are generated from.
+     * @param invocations How many inputs are generated at most.
+     * @param suiteName The name of the class that the invariant is compiled
+     * into.
+     * @return The failures found, or why the method could not be fuzzed.
+     */
+    public static FuzzResult runFuzz( String className, String methodName,
+            String parameterTypes, String invariant, long seed, long invocations,
+            String suiteName ) {
+        SubmissionClassLoader submission = new SubmissionClassLoader( submissionRoot );
+        TypeGraph types = new TypeGraph( submission, fuzzDepth );
+        InputGenerator inputs = new InputGenerator( types, submission, fuzzDepth );
+        final Fuzzer fuzzer;
 
         try {
-            javaFile.createNewFile();
+            fuzzer = Fuzzer.forMethod( suiteName, inputs, types, className,
+                    methodName, parameterTypes );
+        }
+        catch( IllegalArgumentException iae ) {
+            return FuzzResult.error( suiteName, seed, iae.getMessage() );
+        }
+
+        if( ! invariant.trim().isEmpty() ) {
+            TestTemplate template = TestTemplate.load( "FuzzPropertyTemplate.txt" );
+            StringBuilder source = new StringBuilder();
+
+            template.render( template.bind(
+                        "className",    suiteName,
+                        "parameters",   fuzzer.getPropertyParameters(),
+                        "invariant",    invariant ), source );
+
+            CompilationResult compilation = compile( Collections.singletonMap(
+                        suiteName, source.toString() ), Collections.singleton( className ),
+                    submission );
+
+            if( ! compilation.succeeded() ) {
+                return FuzzResult.error( suiteName, seed, compilation.describe() );
+            }
+
+            try {
+                Class<?> property = new MemoryClassLoader( compilation.getClasses(),
+                        submission ).loadClass( suiteName );
 
-            //Write the test suite into the file
-            FileWriter writer = new FileWriter( javaFile );
-            writer.write( testSuiteSrc );
-            writer.flush();
-            writer.close();
+                for ( Method method : property.getMethods() ) {
+                    if( method.getName().equals( "holds" ) ) {
+                        final MethodHandle holds = InputGenerator.spread(
+                                MethodHandles.publicLookup().unreflect( method ) );
+
+                        fuzzer.setProperty( values -> (Boolean) (Object) holds.invokeExact( values ) );
+                    }
+                }
+            }
+            catch( ClassNotFoundException | IllegalAccessException e ) {
+                return FuzzResult.error( suiteName, seed, "Could not load the invariant: " + e );
+            }
         }
-        catch(IOException ioe) {
-            System.err.println("In SuiteGeneratorAPI.runAStaticTest" );
-            ioe.printStackTrace();
+
+        AtomicReference<FuzzResult> fuzzed = new AtomicReference<>();
+        long start = System.nanoTime();
+        TestResult result = executor.runBudgeted( suiteName,
+                () -> fuzzed.set( fuzzer.run( seed, invocations, fuzzMillis ) ) );
+        fuzzTime.recordSince( start );
+
+        if( fuzzed.get() == null ) {
+            return FuzzResult.error( suiteName, seed, result.getFailure() );
         }
 
-        //Now compile that file and verify it successfully compiled.
-        int compilationResult = compileSrcFile( suiteName + ".java" );
+        return fuzzed.get();
+    }
 
-        if( compilationResult != 0 ) {
-            return "Compilation failed!";
+    /**
+     * Generates every test into a single suite, compiles that suite once and
+     * then runs each of its tests on its own, so that one failing test does
+     * not keep the rest from running.
+     * @param tests The tests to generate and run. Tests that share a name are
+     * renamed so that each of them is still run. The tests run in parallel.
+     * @param suiteName The name of the test suite generated and ran.
+     * @return The result of each test, in the same order as <tt>tests</tt>.
+     */
+    public static List<TestResult> runTests( List<TestSpec> tests,
+            String suiteName ) {
+        return runTests( tests, suiteName, submissionRoot );
+    }
+
+    /**
+     * Runs a batch of tests against the submission, while recording which
+     * lines and branches of its classes they reach.
+     * @param tests The tests to generate and run.
+     * @param suiteName The name of the test suite generated and ran.
+     * @param coverage Where the coverage of the tests is recorded.
+     * @return The result of each test, in the same order as <tt>tests</tt>.
+     */
+    public static List<TestResult> runTests( List<TestSpec> tests,
+            String suiteName, Coverage coverage ) {
+        return runTests( tests, suiteName, submissionRoot, coverage );
+    }
+
+    /**
+     * Generates, compiles, and runs a batch of tests against the classes of a
+     * single submission. A test that ran before is answered with its last
+     * result, as long as none of the bytecode it runs changed since (see
+     * <tt>MethodFingerprints</tt>), so a class that was uploaded again after
+     * an edit only has the tests of the methods the edit reached run again.
+     * Tests that only use literals are invoked directly
+     * without compiling anything. The rest are compiled in small units, of
+     * which only those that changed since an earlier batch are recompiled,
+     * and the submission's classes they test are loaded by a class loader of
+     * their own, which is released once the tests have run.
+     * @param tests The tests to generate and run.
+     * @param suiteName The name of the test suite generated and ran.
+     * @param root The directory that the submission's classes were compiled
+     * into.
+     * @return The result of each test, in the same order as <tt>tests</tt>.
+     */
+    public static List<TestResult> runTests( List<TestSpec> tests,
+            String suiteName, File root ) {
+        return runTests( tests, suiteName, root, null );
+    }
+
+    /**
+     * Runs a batch of tests like <tt>runTests</tt>, while recording which
+     * lines and branches of the submission's classes they reach. Every test
+     * is compiled, since tests that are invoked directly run against classes
+     * that were loaded without probes.
+     * @param tests The tests to generate and run.
+     * @param suiteName The name of the test suite generated and ran.
+     * @param root The directory that the submission's classes were compiled
+     * into.
+     * @param coverage Where the coverage of the tests is recorded, or null to
+     * run them without recording any.
+     * @return The result of each test, in the same order as <tt>tests</tt>.
+     */
+    public static List<TestResult> runTests( List<TestSpec> tests,
+            String suiteName, File root, Coverage coverage ) {
+        long start = System.nanoTime();
+        TestSuiteGenerator generator = new TestSuiteGenerator( suiteName );
+        SubmissionClassLoader submission = new SubmissionClassLoader( root, coverage );
+        List<TestResult> results = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> compiledIndexes = new ArrayList<>();
+        Set<String> testNames = new HashSet<>();
+        Set<String> classesUnderTest = new HashSet<>();
+        Map<String, String> fingerprints = new HashMap<>();
+        Map<String, MethodFingerprints> classes = new HashMap<>();
+        String[] keys = new String[ tests.size() ];
+        Map<String, Integer> occurrences = new HashMap<>();
+
+        //A test that is in the batch more than once may depend on its earlier runs
+        for ( TestSpec test : tests ) {
+            occurrences.merge( TestResultCache.key( root.getAbsolutePath(), test ), 1, Integer::sum );
         }
 
-        //Redirect standard out...because reasons...
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        System.setOut( new PrintStream(baos) );
+        for ( TestSpec test : tests ) {
+            String testName = test.getTestName();
+
+            for ( int i = 2; ! testNames.add( testName ); i++ ) {
+                testName = test.getTestName() + "_" + i;
+            }
+
+            //Compare the result the way its type calls for, without boxing it if it can be
+            TestSpec renamed = test.withTestName( testName ).withReturnDescriptor(
+                    returnDescriptor( test, submission, classes ) );
+
+            //Coverage has to be recorded by running the test, every time
+            if( coverage == null ) {
+                String key = TestResultCache.key( root.getAbsolutePath(), test );
+                String fingerprint = occurrences.get( key ) > 1 ? null
+                    : fingerprint( test, submission, classes, fingerprints );
+                TestResult cached = null;
+
+                if( fingerprint != null ) {
+                    keys[ results.size() ] = key;
+                    cached = resultCache.get( key, fingerprint );
+                }
+
+                if( cached != null ) {
+                    cachedTests.increment();
+                    keys[ results.size() ] = null;
+                    results.add( cached.withTestName( testName ) );
+                    continue;
+                }
+            }
+
+            TestResult direct = runDirect( renamed, submission, coverage );
+            results.add( direct );
+
+            //Add every test that needs the compiler to the same suite
+            if( direct == null ) {
+                renamed.addTo( generator );
+                names.add( testName );
+                compiledIndexes.add( results.size() - 1 );
+                classesUnderTest.add( test.getClassName() );
+            }
+        }
+
+        if( ! names.isEmpty() ) {
+            List<TestResult> compiledResults = runCompiled( generator, names,
+                    classesUnderTest, submission );
+
+            for ( int i = 0; i < compiledIndexes.size(); i++ ) {
+                results.set( compiledIndexes.get( i ), compiledResults.get( i ) );
+            }
+        }
+
+        for ( int i = 0; i < keys.length; i++ ) {
+            if( keys[i] != null ) {
+                resultCache.put( keys[i], fingerprints.get( fingerprintKey( tests.get( i ) ) ),
+                        results.get( i ) );
+            }
+        }
+
+        batchTime.recordSince( start );
+
+        return results;
+    }
+
+    /**
+     * Fingerprints the bytecode that a test may run: the method it tests,
+     * along with every overload of it, the constructors if it constructs an
+     * instance, everything in the class they call, and the class files of the
+     * submission's other classes they refer to.
+     * @param classes The fingerprints of the classes read so far, by name.
+     * @param fingerprints The fingerprints of the tests so far, by
+     * <tt>fingerprintKey</tt>.
+     * @return The fingerprint, or null if the class under test could not be
+     * read, or the test may give a different result when it runs again (see
+     * <tt>MethodFingerprints.isDeterministic</tt>), so that its result must
+     * not be reused.
+     */
+    private static String fingerprint( TestSpec test, SubmissionClassLoader submission,
+            Map<String, MethodFingerprints> classes, Map<String, String> fingerprints ) {
+        String key = fingerprintKey( test );
+
+        if( fingerprints.containsKey( key ) ) {
+            return fingerprints.get( key );
+        }
+
+        String fingerprint = null;
 
-        //Run the file
         try {
-            //Load the class file
-            Class<?> compiledTestSuite = loader.loadClass( suiteName );
+            MethodFingerprints methods = methods( test.getClassName(), submission, classes );
+            boolean deterministic = methods != null
+                && methods.isDeterministic( test.getMethodName(), ! test.isStatic() );
+            List<byte[]> referenced = new ArrayList<>();
+
+            if( deterministic ) {
+                for ( String className : methods.getReferencedClasses( test.getMethodName(),
+                            ! test.isStatic() ) ) {
+                    byte[] classFile = submission.readClassFile( className );
+
+                    //The submission's other classes may keep state of their own
+                    if( classFile != null ) {
+                        MethodFingerprints other = methods( className, submission, classes );
+                        deterministic &= other != null && other.isDeterministic();
+                        referenced.add( classFile );
+                    }
+                }
+            }
+
+            if( deterministic ) {
+                fingerprint = CompiledSuiteCache.key( methods.getFingerprint(
+                            test.getMethodName(), ! test.isStatic() ), referenced );
+            }
+        }
+        catch( IOException ioe ) {
+            //A class that can not be read is remembered as such, and the test is not reused
+        }
+
+        fingerprints.put( key, fingerprint );
+        return fingerprint;
+    }
+
+    /**
+     * Reads a class of the submission, once per batch.
+     * @param classes The fingerprints of the classes read so far, by name.
+     * @return The fingerprints of the class, or null if it could not be read.
+     */
+    private static MethodFingerprints methods( String className, SubmissionClassLoader
+            submission, Map<String, MethodFingerprints> classes ) throws IOException {
+        MethodFingerprints methods = classes.get( className );
+
+        if( methods == null && ! classes.containsKey( className ) ) {
+            //Not read again if it can not be
+            classes.put( className, null );
+            byte[] classFile = submission.readClassFile( className );
+            methods = classFile == null ? null : MethodFingerprints.of( classFile );
+            classes.put( className, methods );
+        }
+
+        return methods;
+    }
+
+    /**
+     * @param classes The fingerprints of the classes read so far, by name.
+     * @return The descriptor of the type that the method a test tests
+     * returns, or null if the class could not be read, or does not itself
+     * declare the method with a single return type.
+     */
+    private static String returnDescriptor( TestSpec test, SubmissionClassLoader
+            submission, Map<String, MethodFingerprints> classes ) {
+        try {
+            MethodFingerprints methods = methods( test.getClassName(), submission, classes );
+            return methods == null ? null : methods.getReturnDescriptor( test.getMethodName() );
+        }
+        catch( IOException ioe ) {
+            return null;
+        }
+    }
+
+    /** @return What the fingerprint of a test depends on */
+    private static String fingerprintKey( TestSpec test ) {
+        return test.getClassName() + "." + test.getMethodName() + ( test.isStatic() ? "" : "()" );
+    }
+
+    /**
+     * Compiles a generated suite and runs the given tests out of it. The
+     * suite is split into units, and only units that have not been compiled
+     * against the same classes under test before are compiled, so a batch
+     * that differs from an earlier one in a single test only recompiles the
+     * unit of that test. A test that does not compile only fails itself.
+     * @return The result of each test, in the same order as <tt>names</tt>.
+     */
+    private static List<TestResult> runCompiled( TestSuiteGenerator generator,
+            List<String> names, Set<String> classesUnderTest,
+            SubmissionClassLoader submission ) {
+        List<byte[]> classFiles = readClassFiles( classesUnderTest, submission );
+        Map<String, byte[]> compiledClasses = new HashMap<>();
+        Map<String, TestSuiteGenerator.TestUnit> units = new LinkedHashMap<>();
+        Map<String, String> keys = new HashMap<>();
+        Map<String, String> unitOfTest = new HashMap<>();
+
+        for ( TestSuiteGenerator.TestUnit unit : generator.generateTestUnits( unitSize ) ) {
+            String key = CompiledSuiteCache.key( unit.getFingerprint(), classFiles );
+            Map<String, byte[]> cached = unitCache.get( key );
+
+            for ( String testName : unit.getTestNames() ) {
+                unitOfTest.put( testName, unit.getName() );
+            }
 
-            //Access the main method inside the loaded class file
-            Method mainMethod = compiledTestSuite.getMethod( "main", String[].class );
+            if( cached != null ) {
+                compiledClasses.putAll( cached );
+            }
+            else {
+                units.put( unit.getName(), unit );
+                keys.put( unit.getName(), key );
+            }
+        }
+
+        Map<String, CompilationResult> failures = compileUnits( units, keys,
+                compiledClasses, submission );
+
+        //Run the tests of every unit that compiled
+        ClassLoader loader = new MemoryClassLoader( compiledClasses, submission );
+        List<Class<?>> suite = new ArrayList<>();
+        List<String> runnable = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for ( String testName : names ) {
+            String unitName = unitOfTest.get( "test" + testName );
+
+            if( ! failures.containsKey( "test" + testName ) ) {
+                runnable.add( testName );
+
+                try {
+                    Class<?> unit = loader.loadClass( unitName );
+
+                    if( ! suite.contains( unit ) ) {
+                        suite.add( unit );
+                    }
+                }
+                catch( ClassNotFoundException cnfe ) {
+                    //Reported as a test that could not be found
+                }
+            }
+        }
+
+        loadTime.recordSince( start );
+
+        start = System.nanoTime();
+        Iterator<TestResult> ran = executor.run( suite, runnable ).iterator();
+        executeTime.recordSince( start );
+
+        List<TestResult> results = new ArrayList<>();
+
+        for ( String testName : names ) {
+            CompilationResult failure = failures.get( "test" + testName );
+
+            if( failure == null ) {
+                results.add( ran.next() );
+            }
+            else {
+                results.add( new TestResult( testName, TestResult.Status.FAIL, "",
+                            failure.describe(), null, null,
+                            new CompilationException( failure ), 0 ) );
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Compiles units of a batch together, and caches each of them on its
+     * own. When some of them do not compile, the tests that the errors are
+     * in are taken out of their units, and the rest are compiled again
+     * without them. A unit that had tests taken out is not cached, since its
+     * key is that of the whole unit.
+     * @param units The units to compile, keyed by their names.
+     * @param keys The cache key of each unit, keyed by its name.
+     * @param compiledClasses Where the classes of the units that compiled are
+     * put.
+     * @param submission The loader of the submission being tested.
+     * @return Why each test that did not compile failed, keyed by the name of
+     * its test method.
+     */
+    private static Map<String, CompilationResult> compileUnits(
+            Map<String, TestSuiteGenerator.TestUnit> units, Map<String, String> keys,
+            Map<String, byte[]> compiledClasses, SubmissionClassLoader submission ) {
+        Map<String, CompilationResult> failures = new HashMap<>();
+        Set<String> reduced = new HashSet<>();
+        units = new LinkedHashMap<>( units );
+
+        while( ! units.isEmpty() ) {
+            Map<String, String> sources = new LinkedHashMap<>();
+
+            for ( TestSuiteGenerator.TestUnit unit : units.values() ) {
+                sources.put( unit.getName(), unit.generateSource() );
+            }
+
+            long start = System.nanoTime();
+            CompilationResult compilation = compilationService.compile( sources,
+                    classPath( submission.getRoot() ) );
+            compileTime.recordSince( start );
+
+            if( compilation.succeeded() ) {
+                for ( String unitName : sources.keySet() ) {
+                    Map<String, byte[]> classes = new HashMap<>();
+
+                    //A unit's classes are its own and the ones nested in it
+                    for ( Map.Entry<String, byte[]> entry : compilation.getClasses().entrySet() ) {
+                        if( entry.getKey().equals( unitName )
+                                || entry.getKey().startsWith( unitName + "$" ) ) {
+                            classes.put( entry.getKey(), entry.getValue() );
+                        }
+                    }
+
+                    if( ! reduced.contains( unitName ) ) {
+                        unitCache.put( keys.get( unitName ), classes );
+                    }
+
+                    compiledClasses.putAll( classes );
+                }
+
+                break;
+            }
+
+            //The errors of every broken unit, by the test method they are in
+            Map<String, Map<String, List<CompilationResult.Diagnostic>>> broken = new LinkedHashMap<>();
+
+            for ( CompilationResult.Diagnostic error : compilation.getErrors() ) {
+                TestSuiteGenerator.TestUnit unit = units.get( error.getSource() );
+                String testName = unit == null ? null : unit.getTestAt( error.getLine() );
+
+                broken.computeIfAbsent( error.getSource(), k -> new LinkedHashMap<>() )
+                    .computeIfAbsent( testName, k -> new ArrayList<>() ).add( error );
+            }
+
+            //Errors that no single unit is to blame for fail every test
+            if( broken.isEmpty() || ! units.keySet().containsAll( broken.keySet() ) ) {
+                for ( TestSuiteGenerator.TestUnit unit : units.values() ) {
+                    for ( String testName : unit.getTestNames() ) {
+                        failures.put( testName, compilation );
+                    }
+                }
+
+                break;
+            }
+
+            for ( Map.Entry<String, Map<String, List<CompilationResult.Diagnostic>>> entry
+                    : broken.entrySet() ) {
+                TestSuiteGenerator.TestUnit unit = units.get( entry.getKey() );
+                Map<String, List<CompilationResult.Diagnostic>> byTest = entry.getValue();
+
+                //Errors outside of every test fail the whole unit
+                if( byTest.containsKey( null ) ) {
+                    for ( String testName : unit.getTestNames() ) {
+                        failures.put( testName, compilation.forSource( unit.getName() ) );
+                    }
 
-            //Set up the arguments for main
-            final Object[] args = new Object[1];
-            args[0] = new String[] {};
+                    units.remove( unit.getName() );
+                    continue;
+                }
 
-            //Invoke the main method
-            mainMethod.invoke( null, args );
+                for ( Map.Entry<String, List<CompilationResult.Diagnostic>> test : byTest.entrySet() ) {
+                    failures.put( test.getKey(), new CompilationResult( null, test.getValue(),
+                                compilation.getNanos() ) );
+                }
+
+                unit = unit.without( byTest.keySet() );
+
+                if( unit.getTestNames().isEmpty() ) {
+                    units.remove( unit.getName() );
+                }
+                else {
+                    units.put( unit.getName(), unit );
+                    reduced.add( unit.getName() );
+                }
+            }
         }
-        catch( InvocationTargetException ite ) {
-            //Unwrap and rethrow this as the exception it knows it can be.
-            throw (RuntimeException)ite.getCause();
+
+        return failures;
+    }
+
+    /**
+     * Runs a test without generating or compiling any code, if it is simple
+     * enough, direct invocation is enabled, and its coverage is not being
+     * recorded.
+     * @return The result of the test, or null if it has to be compiled.
+     */
+    private static TestResult runDirect( TestSpec test, SubmissionClassLoader submission,
+            Coverage coverage ) {
+        if( ! directInvocation || coverage != null ) {
+            compiledTests.increment();
+            return null;
         }
-        catch( ClassNotFoundException cnfe ) {
-            System.out.println( "Could not locate the class to load it." );
+
+        long start = System.nanoTime();
+        TestResult result = DirectInvoker.tryRun( test, submission, executor );
+
+        if( result == null ) {
+            compiledTests.increment();
         }
-        catch( NoSuchMethodException nsme ) {
-            System.out.println( "Could not find the main method in the class file" );
+        else {
+            directTime.recordSince( start );
+            directTests.increment();
+        }
+
+        return result;
+    }
+
+    private static String compileAndRun( String testSuiteSrc, String suiteName,
+            String className ) {
+        //Load the classes under test fresh for this run
+        SubmissionClassLoader submission = new SubmissionClassLoader( submissionRoot );
+
+        //Compile the suite straight from memory and verify it compiled.
+        CompilationResult compilation = compile( Collections.singletonMap(
+                    suiteName, testSuiteSrc ), Collections.singleton( className ), submission );
+
+        if( ! compilation.succeeded() ) {
+            return compilation.describe();
         }
-        catch( IllegalAccessException iae ) {
-            System.out.println( "Could not access class details!" );
+
+        //Every run gets its own loader, so suites sharing a name never clash
+        ClassLoader loader = new MemoryClassLoader( compilation.getClasses(), submission );
+
+        //Run the file, capturing standard out...because reasons...
+        long start = System.nanoTime();
+        TestResult result = executor.runBudgeted( suiteName, () -> {
+            try {
+                //Load the class file
+                long loading = System.nanoTime();
+                Class<?> compiledTestSuite = loader.loadClass( suiteName );
+                loadTime.recordSince( loading );
+
+                //Access the main method inside the loaded class file
+                Method mainMethod = compiledTestSuite.getMethod( "main", String[].class );
+
+                //Set up the arguments for main
+                final Object[] args = new Object[1];
+                args[0] = new String[] {};
+
+                //Invoke the main method
+                mainMethod.invoke( null, args );
+            }
+            catch( InvocationTargetException ite ) {
+                throw ite.getCause();
+            }
+            catch( ClassNotFoundException cnfe ) {
+                System.err.println( "Could not locate the class to load it." );
+            }
+            catch( NoSuchMethodException nsme ) {
+                System.err.println( "Could not find the main method in the class file" );
+            }
+            catch( IllegalAccessException iae ) {
+                System.err.println( "Could not access class details!" );
+            }
+        });
+        executeTime.recordSince( start );
+
+        return unwrap( result );
+    }
+
+    private static BenchmarkResult compileAndBenchmark( String testSuiteSrc,
+            String suiteName, String className, String testName ) {
+        SubmissionClassLoader submission = new SubmissionClassLoader( submissionRoot );
+
+        CompilationResult compilation = compile( Collections.singletonMap(
+                    suiteName, testSuiteSrc ), Collections.singleton( className ), submission );
+
+        if( ! compilation.succeeded() ) {
+            return BenchmarkResult.failed( testName, compilation.describe() );
         }
 
-        //Get the output of the file
-        String resultOfTest = baos.toString();
+        ClassLoader loader = new MemoryClassLoader( compilation.getClasses(), submission );
+        AtomicReference<BenchmarkResult> benchmark = new AtomicReference<>();
 
-        //Return standard out back to normal
-        PrintStream ps = new PrintStream( new FileOutputStream( FileDescriptor.out ) );
-        System.setOut( ps );
+        //The runner is made here, so it is configured by the harness
+        long start = System.nanoTime();
+        TestResult result = executor.runBudgeted( testName, () -> {
+            try {
+                Method method = loader.loadClass( suiteName ).getMethod(
+                        "benchmark" + testName, BenchmarkRunner.class );
 
-        return resultOfTest;
+                benchmark.set( (BenchmarkResult) method.invoke( null, new BenchmarkRunner() ) );
+            }
+            catch( InvocationTargetException ite ) {
+                throw ite.getCause();
+            }
+        });
+        benchmarkTime.recordSince( start );
+
+        if( ! result.passed() ) {
+            return BenchmarkResult.failed( testName, result.getFailure() );
+        }
+
+        return benchmark.get();
     }
 
-    public static void main (String[] args) {
-        //Print out information about the current arguments
+    /**
+     * Turns the result of a single test back into what the single test API
+     * has always returned: the test's output, or the exception it failed
+     * with.
+     * @param result The result of the test.
+     * @return The output of the test, if it passed.
+     */
+    private static String unwrap( TestResult result ) {
+        switch( result.getStatus() ) {
+            case PASS:
+                //Get the output of the file
+                return result.getOutput();
+
+            case FAIL:
+                //Unwrap and rethrow this as the exception it knows it can be.
+                Throwable cause = result.getException();
+
+                if( cause instanceof Error ) {
+                    throw (Error) cause;
+                }
 
+                throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new RuntimeException( cause );
+
+            default:
+                throw new BudgetExceededException( result.getStatus(), result.getFailure() );
+        }
+    }
+
+    /**
+     * Runs the test described by a command line style argument list. Eight
+     * arguments describe a standard test and six arguments describe a static
+     * test, in the order documented on <tt>main</tt>.
+     * @param args The arguments describing the test.
+     * @return The output of the test suite, or null if the arguments could not
+     * be understood.
+     */
+    public static String run( String[] args ) {
         //8 arguments indicates a standard test case
         if( args.length == 8 ) {
             //Unpack the argument list
@@ -160,7 +924,7 @@ public class SuiteGeneratorAPI {
             String suiteName            = args[7];
 
             //Call the standard suite generator with these arguments
-            String out = runAStandardTest( className, instanceName, methodName,
+            return runAStandardTest( className, instanceName, methodName,
                     testName, methodArguments, expectedValue,
                     constructorArguments, suiteName );
         }
@@ -176,22 +940,179 @@ public class SuiteGeneratorAPI {
             String suiteName        = args[5];
 
             //Call the static suite generator with these arguments
-            String out = runAStaticTest( className, testName, expectedValue,
+            return runAStaticTest( className, testName, expectedValue,
                     methodName, methodArguments, suiteName );
         }
 
         //Otherwise fail
+        return null;
+    }
+
+    /**
+     * Hands the test off to a running <tt>SuiteGeneratorServer</tt>, and only
+     * runs it inside of this JVM when no server can be reached.
+     *
+     * Standard tests take the arguments
+     * <tt>className instanceName methodName testName methodArguments
+     * expectedValue constructorArguments suiteName</tt>
+     * and static tests take the arguments
+     * <tt>className testName expectedValue methodName methodArguments
+     * suiteName</tt>.
+     */
+    public static void main (String[] args) {
+        List<String> request = new ArrayList<>();
+        request.add( "run" );
+        request.addAll( Arrays.asList( args ) );
+
+        List<String> response;
+
+        try {
+            response = SuiteGeneratorServer.send( request );
+        }
+        catch( IOException ioe ) {
+            //No server is running, so do the work here
+            String out = run( args );
+
+            if( out == null ) {
+                System.err.println( "Invalid argument setup!" );
+            }
+            else {
+                System.out.print( out );
+            }
+
+            return;
+        }
+
+        if( response.get( 0 ).equals( "OK" ) ) {
+            System.out.print( response.get( 1 ) );
+        }
+        else if( response.get( 0 ).equals( "BUSY" ) ) {
+            System.err.println( "The server is busy, try again in "
+                    + response.get( 1 ) + " ms" );
+            System.exit( 2 );
+        }
         else {
-            System.out.println( "Invalid argument setup!" );
+            System.err.println( response.get( 1 ) );
+            System.exit( 1 );
         }
     }
 
     /**
-     * Compiles the specified java file
-     * @param filename The name of the file that you would like to compile.
-     * @return The result of the compilation.
+     * @return The cache that compiled suites are kept in.
      */
-    private static int compileSrcFile( String filename ) {
-        return compiler.run( null, null, null, filename );
+    public static CompiledSuiteCache getSuiteCache() {
+        return suiteCache;
+    }
+
+    /**
+     * @return The cache that the compiled units of batches are kept in.
+     */
+    public static CompiledSuiteCache getUnitCache() {
+        return unitCache;
+    }
+
+    /**
+     * @return The cache that the last result of every test is kept in.
+     */
+    public static TestResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * @return The service that suites are compiled with.
+     */
+    public static CompilationService getCompilationService() {
+        return compilationService;
+    }
+
+    /**
+     * Compiles a generated suite, unless the same suite has already been
+     * compiled against the same classes under test.
+     * @param sources The source of each class of the suite, keyed by the
+     * name of the class.
+     * @param classesUnderTest The names of the classes that the suite tests.
+     * @param submission The loader of the submission being tested.
+     * @return The compiled classes, or the diagnostics of why they did not
+     * compile.
+     */
+    private static CompilationResult compile( Map<String, String> sources,
+            Collection<String> classesUnderTest, SubmissionClassLoader submission ) {
+        List<byte[]> classFiles = readClassFiles( classesUnderTest, submission );
+        String key = CompiledSuiteCache.key( keySource( sources ), classFiles );
+        Map<String, byte[]> compiledClasses = suiteCache.get( key );
+
+        if( compiledClasses != null ) {
+            return new CompilationResult( compiledClasses,
+                    Collections.<CompilationResult.Diagnostic>emptyList(), 0 );
+        }
+
+        long start = System.nanoTime();
+        CompilationResult compilation = compilationService.compile( sources,
+                classPath( submission.getRoot() ) );
+        compileTime.recordSince( start );
+
+        if( compilation.succeeded() ) {
+            suiteCache.put( key, compilation.getClasses() );
+        }
+
+        return compilation;
+    }
+
+    /**
+     * Reads the class files of the classes under test, which a compiled
+     * suite is only valid for.
+     * @return The class files, ordered by the names of their classes.
+     */
+    private static List<byte[]> readClassFiles( Collection<String> classesUnderTest,
+            SubmissionClassLoader submission ) {
+        List<byte[]> classFiles = new ArrayList<>();
+
+        //Sort the names so that the key does not depend on their order
+        for ( String className : new TreeSet<>( classesUnderTest ) ) {
+            byte[] classFile = submission.readClassFile( className );
+
+            if( classFile != null ) {
+                classFiles.add( classFile );
+            }
+        }
+
+        return classFiles;
+    }
+
+    /**
+     * @return The class path that suites testing a submission are compiled
+     * against.
+     */
+    private static List<File> classPath( File root ) {
+        //The submission comes first, so freshly uploaded classes win
+        List<File> classPath = new ArrayList<>();
+        classPath.add( root );
+
+        for ( String entry : System.getProperty( "java.class.path" ).split( File.pathSeparator ) ) {
+            if( ! entry.isEmpty() ) {
+                classPath.add( new File( entry ) );
+            }
+        }
+
+        return classPath;
+    }
+
+    /**
+     * @return The text that a suite's cache key is computed from. A suite of
+     * a single class is keyed by its source alone.
+     */
+    private static String keySource( Map<String, String> sources ) {
+        if( sources.size() == 1 ) {
+            return sources.values().iterator().next();
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( Map.Entry<String, String> source : sources.entrySet() ) {
+            sb.append( '\0' ).append( source.getKey() ).append( '\0' )
+                .append( source.getValue() );
+        }
+
+        return sb.toString();
     }
 }
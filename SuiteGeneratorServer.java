@@ -0,0 +1,570 @@
+import java.io.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a single warm JVM around so that test requests no longer pay for JVM
+ * startup, compiler initialization and class loading on every case.
+ *
+ * Requests are read one per line, either from a socket bound to the loopback
+ * interface or from standard in. A request line is a tab separated list of
+ * fields where the first field is the command, for example:
+ * <tt>run    Foo    TestBar    5    bar    1, 2    barTests</tt>
+ * The fields after <tt>run</tt> are exactly the arguments accepted by
+ * <tt>SuiteGeneratorAPI.main</tt>. Every request is answered with a single
+ * line whose first field is either <tt>OK</tt> or <tt>ERROR</tt>.
+ *
+ * The <tt>run</tt>, <tt>batch</tt>, <tt>coverage</tt>, <tt>benchmark</tt> and
+ * <tt>fuzz</tt> commands go through an <tt>ExecutionScheduler</tt>, which runs as many of
+ * them at once as there are cores and takes turns between the users waiting.
+ * The <tt>user</tt> command, followed by an id such as the uid cookie, sets
+ * who the following requests on the connection come from. A request that has
+ * to wait is first answered with a <tt>QUEUED</tt> line holding its place in
+ * line, and then with its response once it ran. When too
+ * many requests are waiting, it is answered with <tt>BUSY</tt>, the number
+ * of milliseconds to wait before trying again and the number of requests
+ * waiting, without being run.
+ *
+ * The <tt>batch</tt> command runs many tests out of a single compiled suite.
+ * Its second field is the suite name, followed by each test as either
+ * <tt>standard</tt> and the seven standard test arguments, or <tt>static</tt>
+ * and the five static test arguments. It is answered with <tt>OK</tt>
+ * followed by six fields for every test: its name, its status (<tt>PASS</tt>,
+ * <tt>FAIL</tt>, <tt>TIMEOUT</tt>, <tt>CPU_LIMIT</tt> or
+ * <tt>MEMORY_LIMIT</tt>), its output or failure, the expected and actual values of a
+ * failed comparison (empty otherwise), and how many nanoseconds it ran for.
+ *
+ * The <tt>coverage</tt> command takes the same fields as <tt>batch</tt> and
+ * runs its tests with the submission's classes instrumented for coverage. It
+ * is answered with <tt>OK</tt>, the number of tests, the six fields of every
+ * test as for <tt>batch</tt>, and then eight fields for every method of the
+ * classes the tests loaded: its class, name and descriptor, its covered and
+ * total lines, its covered and total branch outcomes, and the lines it
+ * missed, separated by commas.
+ *
+ * The <tt>benchmark</tt> command measures how fast a method runs. It takes
+ * either <tt>standard</tt> followed by <tt>className instanceName methodName
+ * testName methodArguments constructorArguments suiteName</tt>, or
+ * <tt>static</tt> followed by <tt>className testName methodName
+ * methodArguments suiteName</tt>. It is answered with <tt>OK</tt> followed by
+ * the name of the benchmark, its calls per second, and the mean, median and
+ * 99th percentile nanoseconds per call and the bytes allocated per call
+ * (<tt>-1</tt> if unknown), or with <tt>ERROR</tt> and why it failed.
+ *
+ * The <tt>fuzz</tt> command calls a method with generated inputs. It takes
+ * <tt>className methodName parameterTypes invariant seed invocations
+ * suiteName</tt>, where the parameter types and the invariant may be empty
+ * (see <tt>SuiteGeneratorAPI.runFuzz</tt>). It is answered with <tt>OK</tt>
+ * followed by the seed, the number of inputs generated, of invocations made
+ * and of inputs discarded and the nanoseconds it took, and then four fields
+ * for every distinct failure: its kind (<tt>CRASH</tt> or
+ * <tt>INVARIANT</tt>), the shrunk call that fails, what went wrong and the
+ * seed of the input it was shrunk from.
+ *
+ * The <tt>stats</tt> command reports the counters of the compiled suite
+ * and unit caches, of the compiler, of the cache of test results and of the
+ * scheduler.
+ *
+ * The <tt>metrics</tt> command is answered with <tt>OK</tt> followed by a
+ * field for every latency histogram, counter and cache of the harness (see
+ * <tt>Metrics</tt>), such as <tt>histogram api.compile count=3 mean=...</tt>.
+ * The same metrics are exposed over JMX as <tt>SuiteGenerator:type=Metrics</tt>.
+ */
+public class SuiteGeneratorServer {
+
+    /** The port used when none is specified */
+    public static final int DEFAULT_PORT = 4815;
+
+    /** The system property that overrides the default port */
+    public static final String PORT_PROPERTY = "suitegenerator.port";
+
+    /** How long a client waits to connect before running in process */
+    private static final int CONNECT_TIMEOUT_MILLIS = 250;
+
+    //How long requests take, and how many of them failed
+    private static final LatencyHistogram requestTime = Metrics.histogram( "server.request" );
+    private static final LongAdder requestErrors = Metrics.counter( "server.errors" );
+
+    //The commands that generate, compile or run code, and take turns doing so
+    private static final Set<String> SCHEDULED = new HashSet<>( Arrays.asList(
+                "run", "batch", "coverage", "benchmark", "fuzz" ) );
+
+    private static final ExecutionScheduler scheduler = ExecutionScheduler.fromSystemProperties();
+
+    static {
+        Metrics.register( "scheduler", () -> scheduler );
+        Metrics.register( "scheduler.queued", scheduler::getQueued );
+        Metrics.register( "scheduler.running", scheduler::getRunning );
+    }
+
+    /** Empty Constructor */
+    private SuiteGeneratorServer() { }
+
+    /**
+     * Starts the server.
+     * <tt>java SuiteGeneratorServer [--stdio] [port]</tt>
+     */
+    public static void main (String[] args) throws IOException {
+        boolean stdio = false;
+        int port = port();
+
+        for ( String arg : args ) {
+            if( arg.equals( "--stdio" ) ) {
+                stdio = true;
+            }
+            else {
+                port = Integer.parseInt( arg );
+            }
+        }
+
+        //Answer on the real standard out alone, before anything else can print to it
+        PrintStream answers = stdio ? OutputCapture.claim() : null;
+
+        Metrics.registerMBean();
+
+        if( stdio ) {
+            serve( new InputStreamReader( System.in, "UTF-8" ),
+                    new OutputStreamWriter( answers, "UTF-8" ) );
+        }
+        else {
+            listen( port );
+        }
+    }
+
+    /**
+     * @return The port configured through the system property, or the default
+     * port.
+     */
+    public static int port() {
+        return Integer.getInteger( PORT_PROPERTY, DEFAULT_PORT );
+    }
+
+    /**
+     * Accepts connections on the loopback interface and serves each of them on
+     * its own thread.
+     * @param port The port to listen on.
+     */
+    private static void listen( int port ) throws IOException {
+        ExecutorService connections = Executors.newCachedThreadPool( runnable -> {
+            Thread thread = new Thread( runnable, "suite-generator-connection" );
+            thread.setDaemon( true );
+            return thread;
+        });
+
+        try( ServerSocket server = new ServerSocket() ) {
+            server.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ) );
+            System.err.println( "SuiteGeneratorServer listening on port " + port );
+
+            while( true ) {
+                final Socket socket = server.accept();
+
+                connections.execute( () -> {
+                    try( Socket s = socket ) {
+                        serve( new InputStreamReader( s.getInputStream(), "UTF-8" ),
+                                new OutputStreamWriter( s.getOutputStream(), "UTF-8" ) );
+                    }
+                    catch( IOException ioe ) {
+                        System.err.println( "In SuiteGeneratorServer.listen:" );
+                        ioe.printStackTrace();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Answers requests read from <tt>in</tt> until it is exhausted.
+     * @param in Where requests are read from.
+     * @param out Where responses are written to.
+     */
+    private static void serve( Reader in, Writer out ) throws IOException {
+        BufferedReader reader = new BufferedReader( in );
+        String user = "";
+        String line;
+
+        while( (line = reader.readLine()) != null ) {
+            if( line.isEmpty() ) {
+                continue;
+            }
+
+            List<String> request = decode( line );
+            long start = System.nanoTime();
+            List<String> response;
+
+            if( request.get( 0 ).equals( "user" ) ) {
+                user = request.size() > 1 ? request.get( 1 ) : "";
+                response = Arrays.asList( "OK", user );
+            }
+            else if( SCHEDULED.contains( request.get( 0 ) ) ) {
+                response = schedule( user, request, out );
+            }
+            else {
+                response = handle( request );
+            }
+
+            requestTime.recordSince( start );
+
+            if( ! response.get( 0 ).equals( "OK" ) ) {
+                requestErrors.increment();
+            }
+
+            out.write( encode( response ) );
+            out.write( "\n" );
+            out.flush();
+        }
+    }
+
+    /**
+     * Executes a single request once the scheduler lets it, telling the
+     * client where it is in the queue if it has to wait.
+     * @param user Who the request came from.
+     * @param request The decoded fields of the request.
+     * @param out Where the <tt>QUEUED</tt> line is written to.
+     * @return The fields of the response.
+     */
+    private static List<String> schedule( String user, List<String> request,
+            Writer out ) throws IOException {
+        try( ExecutionScheduler.Ticket ticket = scheduler.enter( user ) ) {
+            if( ticket == null ) {
+                return Arrays.asList( "BUSY", Long.toString( scheduler.getRetryAfterMillis() ),
+                        Integer.toString( scheduler.getQueued() ) );
+            }
+
+            if( ticket.getPosition() > 0 ) {
+                out.write( encode( Arrays.asList( "QUEUED",
+                                Integer.toString( ticket.getPosition() ) ) ) );
+                out.write( "\n" );
+                out.flush();
+            }
+
+            ticket.await();
+
+            return handle( request );
+        }
+        catch( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            return Arrays.asList( "ERROR", "Interrupted while queued" );
+        }
+    }
+
+    /**
+     * Executes a single request.
+     * @param request The decoded fields of the request.
+     * @return The fields of the response.
+     */
+    static List<String> handle( List<String> request ) {
+        String command = request.get( 0 );
+        String[] args = request.subList( 1, request.size() ).toArray( new String[0] );
+
+        try {
+            if( command.equals( "ping" ) ) {
+                return Arrays.asList( "OK", "pong" );
+            }
+
+            else if( command.equals( "stats" ) ) {
+                return Arrays.asList( "OK", "suiteCache "
+                        + SuiteGeneratorAPI.getSuiteCache(), "unitCache "
+                        + SuiteGeneratorAPI.getUnitCache(), "compiler "
+                        + SuiteGeneratorAPI.getCompilationService(), "resultCache "
+                        + SuiteGeneratorAPI.getResultCache(), "scheduler "
+                        + scheduler );
+            }
+
+            else if( command.equals( "metrics" ) ) {
+                List<String> response = new ArrayList<>();
+                response.add( "OK" );
+                response.addAll( Arrays.asList( Metrics.report().split( "\n" ) ) );
+
+                return response;
+            }
+
+            else if( command.equals( "run" ) ) {
+                String out = SuiteGeneratorAPI.run( args );
+
+                if( out == null ) {
+                    return Arrays.asList( "ERROR", "Invalid argument setup!" );
+                }
+
+                return Arrays.asList( "OK", out );
+            }
+
+            else if( command.equals( "batch" ) ) {
+                List<TestSpec> tests = parseTests( args );
+
+                if( tests == null ) {
+                    return Arrays.asList( "ERROR", "Invalid argument setup!" );
+                }
+
+                List<String> response = new ArrayList<>();
+                response.add( "OK" );
+                addResults( response, SuiteGeneratorAPI.runTests( tests, args[0] ) );
+
+                return response;
+            }
+
+            else if( command.equals( "coverage" ) ) {
+                List<TestSpec> tests = parseTests( args );
+
+                if( tests == null ) {
+                    return Arrays.asList( "ERROR", "Invalid argument setup!" );
+                }
+
+                try( Coverage coverage = new Coverage() ) {
+                    List<TestResult> results = SuiteGeneratorAPI.runTests( tests,
+                            args[0], coverage );
+
+                    List<String> response = new ArrayList<>();
+                    response.add( "OK" );
+                    response.add( Integer.toString( results.size() ) );
+                    addResults( response, results );
+
+                    for ( Coverage.MethodCoverage method : coverage.getMethods() ) {
+                        StringBuilder missed = new StringBuilder();
+
+                        for ( int line : method.getMissedLines() ) {
+                            missed.append( missed.length() == 0 ? "" : "," ).append( line );
+                        }
+
+                        response.add( method.getClassName() );
+                        response.add( method.getName() );
+                        response.add( method.getDescriptor() );
+                        response.add( Integer.toString( method.getCoveredLines() ) );
+                        response.add( Integer.toString( method.getLines() ) );
+                        response.add( Integer.toString( method.getCoveredBranches() ) );
+                        response.add( Integer.toString( method.getBranches() ) );
+                        response.add( missed.toString() );
+                    }
+
+                    return response;
+                }
+            }
+
+            else if( command.equals( "benchmark" ) ) {
+                BenchmarkResult result;
+
+                if( args.length == 8 && args[0].equals( "standard" ) ) {
+                    result = SuiteGeneratorAPI.runAStandardBenchmark( args[1],
+                            args[2], args[3], args[4], args[5], args[6], args[7] );
+                }
+                else if( args.length == 6 && args[0].equals( "static" ) ) {
+                    result = SuiteGeneratorAPI.runAStaticBenchmark( args[1],
+                            args[2], args[3], args[4], args[5] );
+                }
+                else {
+                    return Arrays.asList( "ERROR", "Invalid argument setup!" );
+                }
+
+                if( ! result.succeeded() ) {
+                    return Arrays.asList( "ERROR", result.getFailure() );
+                }
+
+                return Arrays.asList( "OK", result.getName(),
+                        Double.toString( result.getOpsPerSecond() ),
+                        Double.toString( result.getMeanNanos() ),
+                        Double.toString( result.getP50Nanos() ),
+                        Double.toString( result.getP99Nanos() ),
+                        Double.toString( result.getBytesPerOp() ) );
+            }
+
+            else if( command.equals( "fuzz" ) ) {
+                if( args.length != 7 ) {
+                    return Arrays.asList( "ERROR", "Invalid argument setup!" );
+                }
+
+                FuzzResult result = SuiteGeneratorAPI.runFuzz( args[0], args[1],
+                        args[2], args[3], Long.parseLong( args[4] ),
+                        Long.parseLong( args[5] ), args[6] );
+
+                if( result.getError() != null ) {
+                    return Arrays.asList( "ERROR", result.getError() );
+                }
+
+                List<String> response = new ArrayList<>( Arrays.asList( "OK",
+                            Long.toString( result.getSeed() ),
+                            Long.toString( result.getCases() ),
+                            Long.toString( result.getInvocations() ),
+                            Long.toString( result.getDiscarded() ),
+                            Long.toString( result.getNanos() ) ) );
+
+                for ( FuzzResult.Failure failure : result.getFailures() ) {
+                    response.add( failure.getKind() );
+                    response.add( failure.getInput() );
+                    response.add( failure.getMessage() );
+                    response.add( Long.toString( failure.getCaseSeed() ) );
+                }
+
+                return response;
+            }
+
+            return Arrays.asList( "ERROR", "Unknown command: " + command );
+        }
+        catch( RuntimeException re ) {
+            return Arrays.asList( "ERROR", re.toString() );
+        }
+    }
+
+    /**
+     * Adds the six fields of every result of a batch to a response.
+     */
+    private static void addResults( List<String> response, List<TestResult> results ) {
+        for ( TestResult result : results ) {
+            response.add( result.getTestName() );
+            response.add( result.getStatus().name() );
+            response.add( result.passed() ? result.getOutput() : result.getFailure() );
+            response.add( result.getExpected() == null ? "" : result.getExpected() );
+            response.add( result.getActual() == null ? "" : result.getActual() );
+            response.add( Long.toString( result.getNanos() ) );
+        }
+    }
+
+    /**
+     * Unpacks the tests of a <tt>batch</tt> request.
+     * @param args The fields of the request following the command, starting
+     * with the suite name.
+     * @return The tests, or null if the fields could not be understood.
+     */
+    private static List<TestSpec> parseTests( String[] args ) {
+        List<TestSpec> tests = new ArrayList<>();
+        int i = 1;
+
+        if( args.length < 1 ) {
+            return null;
+        }
+
+        while( i < args.length ) {
+            if( args[i].equals( "standard" ) && i + 7 < args.length ) {
+                tests.add( TestSpec.standard( args[i + 1], args[i + 2],
+                            args[i + 3], args[i + 4], args[i + 5], args[i + 6],
+                            args[i + 7] ) );
+                i += 8;
+            }
+            else if( args[i].equals( "static" ) && i + 5 < args.length ) {
+                tests.add( TestSpec.staticTest( args[i + 1], args[i + 2],
+                            args[i + 3], args[i + 4], args[i + 5] ) );
+                i += 6;
+            }
+            else {
+                return null;
+            }
+        }
+
+        return tests;
+    }
+
+    /**
+     * Sends a request to a running server.
+     * @param request The fields of the request.
+     * @return The fields of the response, once the request ran or was
+     * turned away. <tt>QUEUED</tt> lines are skipped.
+     * @throws IOException If no server could be reached.
+     */
+    public static List<String> send( List<String> request ) throws IOException {
+        try( Socket socket = new Socket() ) {
+            socket.connect( new InetSocketAddress( InetAddress.getLoopbackAddress(),
+                        port() ), CONNECT_TIMEOUT_MILLIS );
+
+            Writer out = new OutputStreamWriter( socket.getOutputStream(), "UTF-8" );
+            out.write( encode( request ) );
+            out.write( "\n" );
+            out.flush();
+
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader( socket.getInputStream(), "UTF-8" ) );
+
+            while( true ) {
+                String line = in.readLine();
+
+                if( line == null ) {
+                    throw new EOFException( "The server closed the connection" );
+                }
+
+                //Wait out the queue for the actual response
+                List<String> response = decode( line );
+
+                if( ! response.get( 0 ).equals( "QUEUED" ) ) {
+                    return response;
+                }
+            }
+        }
+    }
+
+    /**
+     * Joins fields into a single line, escaping tabs, newlines and
+     * backslashes inside of them.
+     * @param fields The fields to join.
+     * @return The encoded line, without a trailing newline.
+     */
+    static String encode( List<String> fields ) {
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < fields.size(); i++ ) {
+            if( i > 0 ) {
+                sb.append( '\t' );
+            }
+
+            String field = fields.get( i );
+
+            for ( int j = 0; j < field.length(); j++ ) {
+                char c = field.charAt( j );
+
+                switch( c ) {
+                    case '\\': sb.append( "\\\\" ); break;
+                    case '\t': sb.append( "\\t" ); break;
+                    case '\n': sb.append( "\\n" ); break;
+                    case '\r': sb.append( "\\r" ); break;
+                    default:   sb.append( c );
+                }
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Splits a line produced by <tt>encode</tt> back into its fields.
+     * @param line The encoded line.
+     * @return The decoded fields.
+     */
+    static List<String> decode( String line ) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < line.length(); i++ ) {
+            char c = line.charAt( i );
+
+            if( c == '\t' ) {
+                fields.add( sb.toString() );
+                sb.setLength( 0 );
+            }
+            else if( c == '\\' && i + 1 < line.length() ) {
+                char escaped = line.charAt( ++i );
+
+                switch( escaped ) {
+                    case 't': sb.append( '\t' ); break;
+                    case 'n': sb.append( '\n' ); break;
+                    case 'r': sb.append( '\r' ); break;
+                    default:  sb.append( escaped );
+                }
+            }
+            else {
+                sb.append( c );
+            }
+        }
+
+        fields.add( sb.toString() );
+        return fields;
+    }
+}
@@ -0,0 +1,480 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the test methods of a compiled suite on a pool of threads, and records
+ * a result for every one of them. A failing test never keeps the others from
+ * running.
+ *
+ * Tests can be held to an execution budget. A budgeted test runs on a thread
+ * of its own, which is watched by the pool thread that started it. A test
+ * that goes over its budget is interrupted, and if it does not stop it is
+ * abandoned so that it can no longer hold up the pool.
+ */
+public class TestExecutor {
+
+    //How often a running test's resource usage is checked
+    private static final long POLL_MILLIS = 10;
+
+    //How long a test is given to stop after being interrupted
+    private static final long GRACE_MILLIS = 100;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final ForkJoinPool pool;
+    private final ExecutionBudget testBudget;
+    private final ExecutionBudget suiteBudget;
+
+    /**
+     * @param parallelism The number of tests that may run at the same time.
+     */
+    public TestExecutor( int parallelism ) {
+        this( parallelism, ExecutionBudget.UNLIMITED, ExecutionBudget.UNLIMITED );
+    }
+
+    /**
+     * @param parallelism The number of tests that may run at the same time.
+     * @param testBudget What each test may consume.
+     * @param suiteBudget What all of the tests of a single run may consume
+     * together.
+     */
+    public TestExecutor( int parallelism, ExecutionBudget testBudget,
+            ExecutionBudget suiteBudget ) {
+        this.pool           = new ForkJoinPool( parallelism );
+        this.testBudget     = testBudget;
+        this.suiteBudget    = suiteBudget;
+
+        if( threads.isThreadCpuTimeSupported() ) {
+            threads.setThreadCpuTimeEnabled( true );
+        }
+    }
+
+    /**
+     * Finds the generated test methods of a suite: every public static method
+     * that takes no arguments and whose name starts with "test".
+     * @param suite The compiled suite.
+     * @return The test methods, sorted by name.
+     */
+    public static List<Method> findTests( Class<?> suite ) {
+        List<Method> tests = new ArrayList<>();
+
+        for ( Method method : suite.getMethods() ) {
+            int modifiers = method.getModifiers();
+
+            if( method.getName().startsWith( "test" )
+                    && method.getParameterCount() == 0
+                    && Modifier.isStatic( modifiers ) ) {
+                tests.add( method );
+            }
+        }
+
+        tests.sort( Comparator.comparing( Method::getName ) );
+        return tests;
+    }
+
+    /**
+     * Runs every test of a suite.
+     * @param suite The compiled suite.
+     * @return The result of each test, sorted by test name.
+     */
+    public List<TestResult> run( Class<?> suite ) {
+        return run( findTests( suite ) );
+    }
+
+    /**
+     * Runs the given tests of a suite.
+     * @param suite The compiled suite.
+     * @param testNames The names of the tests, without the "test" prefix.
+     * @return The result of each test, in the same order as <tt>testNames</tt>.
+     */
+    public List<TestResult> run( Class<?> suite, List<String> testNames ) {
+        return run( Collections.<Class<?>>singletonList( suite ), testNames );
+    }
+
+    /**
+     * Runs the given tests of a suite that is split across several classes.
+     * @param suite The compiled classes of the suite, which each test is
+     * looked up in, in order.
+     * @param testNames The names of the tests, without the "test" prefix.
+     * @return The result of each test, in the same order as <tt>testNames</tt>.
+     */
+    public List<TestResult> run( List<Class<?>> suite, List<String> testNames ) {
+        List<Method> tests = new ArrayList<>();
+
+        for ( String testName : testNames ) {
+            tests.add( findTest( suite, "test" + testName ) );
+        }
+
+        List<TestResult> results = run( tests );
+
+        //Report tests that could not be found under the name they were asked for
+        for ( int i = 0; i < results.size(); i++ ) {
+            if( results.get( i ) == null ) {
+                results.set( i, new TestResult( testNames.get( i ), false, "",
+                            "Could not find the test method test" + testNames.get( i ) ) );
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @return The first public test method with the given name in any of the
+     * classes, or null if there is none.
+     */
+    private static Method findTest( List<Class<?>> classes, String name ) {
+        for ( Class<?> clazz : classes ) {
+            try {
+                return clazz.getMethod( name );
+            }
+            catch( NoSuchMethodException nsme ) {
+                //Keep looking in the next class
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs a piece of code under the budget of a single test, on the current
+     * thread if the budget is unlimited. This is how suites that are run
+     * through their main method are held to a budget.
+     * @param name The name reported in the result.
+     * @param invocation The code to run.
+     * @return The result of running the code.
+     */
+    public TestResult runBudgeted( String name, Invocation invocation ) {
+        return runTest( name, invocation, new SuiteUsage( this.suiteBudget ) );
+    }
+
+    /**
+     * Runs test methods, in parallel when there is more than one of them.
+     * @return The result of each test, or null for each method that was null.
+     */
+    private List<TestResult> run( List<Method> tests ) {
+        final SuiteUsage usage = new SuiteUsage( this.suiteBudget );
+        List<TestResult> results = new ArrayList<>();
+
+        if( tests.size() == 1 ) {
+            results.add( tests.get( 0 ) == null ? null : runTest( tests.get( 0 ), usage ) );
+            return results;
+        }
+
+        List<Callable<TestResult>> tasks = new ArrayList<>();
+
+        for ( final Method test : tests ) {
+            tasks.add( () -> test == null ? null : runTest( test, usage ) );
+        }
+
+        for ( Future<TestResult> future : this.pool.invokeAll( tasks ) ) {
+            try {
+                results.add( future.get() );
+            }
+            catch( InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( "Interrupted while running tests", ie );
+            }
+            catch( ExecutionException ee ) {
+                throw new IllegalStateException( "The test runner failed", ee.getCause() );
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs a single test method.
+     * @param test The test method.
+     * @param usage What the other tests of the run have consumed so far.
+     * @return The result of the test.
+     */
+    private TestResult runTest( final Method test, SuiteUsage usage ) {
+        String testName = test.getName().substring( "test".length() );
+
+        return runTest( testName, () -> {
+            try {
+                test.invoke( null );
+            }
+            catch( InvocationTargetException ite ) {
+                throw ite.getCause();
+            }
+        }, usage );
+    }
+
+    /**
+     * Runs a test, holding it to the test and suite budgets.
+     */
+    private TestResult runTest( String testName, Invocation invocation,
+            SuiteUsage usage ) {
+        if( usage.isExhausted() ) {
+            return new TestResult( testName, TestResult.Status.TIMEOUT, "",
+                    "Not run, the suite ran out of budget: " + this.suiteBudget,
+                    null, null, null, 0 );
+        }
+
+        if( this.testBudget.isUnlimited() && this.suiteBudget.isUnlimited() ) {
+            return runInline( testName, invocation );
+        }
+
+        return runWatched( testName, invocation, usage );
+    }
+
+    /**
+     * Runs a test on the current thread, without any limits.
+     */
+    private static TestResult runInline( String testName, Invocation invocation ) {
+        //Capture standard out so that the output belongs to this test
+        try( OutputCapture capture = OutputCapture.start() ) {
+            Throwable exception = null;
+            long start = System.nanoTime();
+
+            try {
+                invocation.invoke();
+            }
+            catch( Throwable t ) {
+                exception = t;
+            }
+
+            long nanos = System.nanoTime() - start;
+
+            return result( testName, capture.getOutput(), exception, nanos );
+        }
+    }
+
+    /**
+     * Runs a test on a thread of its own, and stops it when it goes over the
+     * test budget or the suite budget.
+     */
+    private TestResult runWatched( String testName, final Invocation invocation,
+            SuiteUsage usage ) {
+        final AtomicReference<OutputCapture> capture = new AtomicReference<>();
+        final AtomicReference<Throwable> exception = new AtomicReference<>();
+        final AtomicLong nanos = new AtomicLong();
+
+        Thread runner = new Thread( () -> {
+            try( OutputCapture output = OutputCapture.start() ) {
+                capture.set( output );
+                long start = System.nanoTime();
+
+                try {
+                    invocation.invoke();
+                }
+                catch( Throwable t ) {
+                    exception.set( t );
+                }
+
+                nanos.set( System.nanoTime() - start );
+            }
+        }, "suite-test-" + testName );
+
+        //An abandoned test must never keep the JVM alive
+        runner.setDaemon( true );
+
+        long start = System.nanoTime();
+        long wallLimit = usage.remainingWallNanos( this.testBudget );
+        long cpuUsed = 0;
+        long bytesUsed = 0;
+        TestResult.Status breach = null;
+        String reason = null;
+
+        runner.start();
+
+        try {
+            while( runner.isAlive() ) {
+                runner.join( POLL_MILLIS );
+
+                //Charge the suite for what was used since the last check
+                long cpu = cpuTime( runner );
+                long bytes = allocatedBytes( runner );
+
+                if( cpu >= 0 ) {
+                    usage.cpuNanos.addAndGet( cpu - cpuUsed );
+                    cpuUsed = cpu;
+                }
+
+                if( bytes >= 0 ) {
+                    usage.allocatedBytes.addAndGet( bytes - bytesUsed );
+                    bytesUsed = bytes;
+                }
+
+                if( ! runner.isAlive() ) {
+                    break;
+                }
+
+                if( wallLimit > 0 && System.nanoTime() - start > wallLimit ) {
+                    breach = TestResult.Status.TIMEOUT;
+                    reason = "Exceeded the wall-clock budget of "
+                        + TimeUnit.NANOSECONDS.toMillis( wallLimit ) + " ms";
+                }
+                else if( over( cpuUsed, this.testBudget.getCpuMillis() * 1000000 ) ) {
+                    breach = TestResult.Status.CPU_LIMIT;
+                    reason = "Exceeded the CPU time budget of "
+                        + this.testBudget.getCpuMillis() + " ms";
+                }
+                else if( usage.overCpu() ) {
+                    breach = TestResult.Status.CPU_LIMIT;
+                    reason = "The suite exceeded its CPU time budget of "
+                        + this.suiteBudget.getCpuMillis() + " ms";
+                }
+                else if( over( bytesUsed, this.testBudget.getAllocatedBytes() ) ) {
+                    breach = TestResult.Status.MEMORY_LIMIT;
+                    reason = "Exceeded the allocation budget of "
+                        + this.testBudget.getAllocatedBytes() + " bytes";
+                }
+                else if( usage.overMemory() ) {
+                    breach = TestResult.Status.MEMORY_LIMIT;
+                    reason = "The suite exceeded its allocation budget of "
+                        + this.suiteBudget.getAllocatedBytes() + " bytes";
+                }
+
+                if( breach != null ) {
+                    //Ask nicely, then give up on the thread if it will not stop
+                    runner.interrupt();
+                    runner.join( GRACE_MILLIS );
+                    break;
+                }
+            }
+        }
+        catch( InterruptedException ie ) {
+            runner.interrupt();
+            Thread.currentThread().interrupt();
+            breach = TestResult.Status.TIMEOUT;
+            reason = "Interrupted while waiting for the test";
+        }
+
+        OutputCapture output = capture.get();
+        String out = output == null ? "" : output.getOutput();
+
+        if( breach != null ) {
+            return new TestResult( testName, breach, out, reason, null, null,
+                    null, System.nanoTime() - start );
+        }
+
+        return result( testName, out, exception.get(), nanos.get() );
+    }
+
+    private static boolean over( long used, long limit ) {
+        return limit > 0 && used > limit;
+    }
+
+    /**
+     * @return The CPU time used by a thread in nanoseconds, or -1 if it is not
+     * known.
+     */
+    private static long cpuTime( Thread thread ) {
+        return threads.isThreadCpuTimeSupported()
+            ? threads.getThreadCpuTime( thread.getId() ) : -1;
+    }
+
+    /**
+     * @return The bytes allocated by a thread since it started, or -1 if the
+     * JVM does not keep track of it.
+     */
+    private static long allocatedBytes( Thread thread ) {
+        if( threads instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes( thread.getId() );
+        }
+
+        return -1;
+    }
+
+    /**
+     * Builds the result of a test that has finished running.
+     * @param exception The exception that the test threw, or null.
+     */
+    static TestResult result( String testName, String output, Throwable
+            exception, long nanos ) {
+        if( exception == null ) {
+            return new TestResult( testName, TestResult.Status.PASS, output,
+                    null, null, null, null, nanos );
+        }
+
+        String expected = null;
+        String actual = null;
+
+        if( exception instanceof AssertionException ) {
+            AssertionException ae = (AssertionException) exception;
+            expected = describe( ae.getExpected() );
+            actual = describe( ae.getActual() );
+        }
+
+        return new TestResult( testName, TestResult.Status.FAIL, output,
+                exception.toString(), expected, actual, exception, nanos );
+    }
+
+    /** @return A value as it is reported, with the elements of arrays */
+    private static String describe( Object value ) {
+        String described = Arrays.deepToString( new Object[] { value } );
+        return described.substring( 1, described.length() - 1 );
+    }
+
+    /**
+     * A piece of code that is run as a test.
+     */
+    public interface Invocation {
+        void invoke() throws Throwable;
+    }
+
+    /**
+     * What the tests of a single run have consumed together.
+     */
+    private static class SuiteUsage {
+        private final ExecutionBudget budget;
+        private final long start = System.nanoTime();
+        final AtomicLong cpuNanos = new AtomicLong();
+        final AtomicLong allocatedBytes = new AtomicLong();
+
+        SuiteUsage( ExecutionBudget budget ) {
+            this.budget = budget;
+        }
+
+        boolean overCpu() {
+            return over( this.cpuNanos.get(), this.budget.getCpuMillis() * 1000000 );
+        }
+
+        boolean overMemory() {
+            return over( this.allocatedBytes.get(), this.budget.getAllocatedBytes() );
+        }
+
+        boolean isExhausted() {
+            return overCpu() || overMemory() || ( this.budget.getWallMillis() > 0
+                    && System.nanoTime() - this.start
+                    >= TimeUnit.MILLISECONDS.toNanos( this.budget.getWallMillis() ) );
+        }
+
+        /**
+         * @return How long a test may run for, given both its own budget and
+         * what is left of the suite's, or 0 if neither limits it.
+         */
+        long remainingWallNanos( ExecutionBudget testBudget ) {
+            long limit = TimeUnit.MILLISECONDS.toNanos( testBudget.getWallMillis() );
+
+            if( this.budget.getWallMillis() > 0 ) {
+                long remaining = TimeUnit.MILLISECONDS.toNanos( this.budget.getWallMillis() )
+                    - ( System.nanoTime() - this.start );
+                limit = Math.max( limit > 0 ? Math.min( limit, remaining ) : remaining, 1 );
+            }
+
+            return limit;
+        }
+    }
+}
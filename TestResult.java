@@ -0,0 +1,114 @@
+/**
+ * The outcome of a single test inside of a generated suite.
+ */
+public class TestResult {
+
+    /**
+     * How a test ended.
+     */
+    public enum Status {
+        /** The test ran to completion */
+        PASS,
+        /** The test threw an exception, usually a failed assertion */
+        FAIL,
+        /** The test ran for longer than its wall-clock budget */
+        TIMEOUT,
+        /** The test used more than its CPU time budget */
+        CPU_LIMIT,
+        /** The test allocated more than its memory budget */
+        MEMORY_LIMIT
+    }
+
+    private final String testName;
+    private final Status status;
+    private final String output;
+    private final String failure;
+    private final String expected;
+    private final String actual;
+    private final Throwable exception;
+    private final long nanos;
+
+    /**
+     * @param testName The name of the test.
+     * @param passed Whether or not the test passed.
+     * @param output Everything the test wrote to standard out.
+     * @param failure Why the test failed, or null if it passed.
+     */
+    public TestResult( String testName, boolean passed, String output,
+            String failure ) {
+        this( testName, passed ? Status.PASS : Status.FAIL, output, failure,
+                null, null, null, 0 );
+    }
+
+    /**
+     * @param testName The name of the test.
+     * @param status How the test ended.
+     * @param output Everything the test wrote to standard out.
+     * @param failure Why the test failed, or null if it passed.
+     * @param expected The value the test expected, if a comparison failed.
+     * @param actual The value the test got, if a comparison failed.
+     * @param exception The exception that failed the test, if any.
+     * @param nanos How long the test ran for, in nanoseconds.
+     */
+    public TestResult( String testName, Status status, String output,
+            String failure, String expected, String actual, Throwable
+            exception, long nanos ) {
+        this.testName   = testName;
+        this.status     = status;
+        this.output     = output;
+        this.failure    = failure;
+        this.expected   = expected;
+        this.actual     = actual;
+        this.exception  = exception;
+        this.nanos      = nanos;
+    }
+
+    /**
+     * @return A copy of this result that has a different test name.
+     */
+    public TestResult withTestName( String testName ) {
+        return new TestResult( testName, this.status, this.output, this.failure,
+                this.expected, this.actual, this.exception, this.nanos );
+    }
+
+    public String getTestName() {
+        return this.testName;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public boolean passed() {
+        return this.status == Status.PASS;
+    }
+
+    public String getOutput() {
+        return this.output;
+    }
+
+    public String getFailure() {
+        return this.failure;
+    }
+
+    public String getExpected() {
+        return this.expected;
+    }
+
+    public String getActual() {
+        return this.actual;
+    }
+
+    public Throwable getException() {
+        return this.exception;
+    }
+
+    public long getNanos() {
+        return this.nanos;
+    }
+
+    @Override
+    public String toString() {
+        return this.testName + ": " + this.status + ( passed() ? "" : " " + this.failure );
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last result of every test, so that a class that is uploaded
+ * again only has the tests of the methods that changed run again.
+ *
+ * A result is kept under the test itself, that is everything about it apart
+ * from its name, and the fingerprint of everything it may run (see
+ * <tt>MethodFingerprints</tt>). It is only handed back while the test's
+ * fingerprint is the same as when it ran. Only tests that ran to completion
+ * and passed or failed are kept, since a test that ran out of time or memory
+ * may well finish on its next run, and a test whose suite did not compile may
+ * have only failed because of the other tests compiled along with it.
+ *
+ * Since the key leaves the name out, a test that is in a batch more than once
+ * is never kept, as its runs may see what the earlier ones left behind. Nor
+ * is a test of a method that keeps state or reads the clock, which its caller
+ * finds out from <tt>MethodFingerprints.isDeterministic</tt>.
+ */
+public class TestResultCache {
+
+    private final int maxEntries;
+
+    //The last result of every test, by its key
+    private final LinkedHashMap<String, CachedResult> entries;
+
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    /**
+     * A result, and the fingerprint of what the test ran for it.
+     */
+    private static final class CachedResult {
+        final String fingerprint;
+        final TestResult result;
+
+        CachedResult( String fingerprint, TestResult result ) {
+            this.fingerprint    = fingerprint;
+            this.result         = result;
+        }
+    }
+
+    /**
+     * @param maxEntries The number of results kept. The least recently used
+     * result is dropped once there are more.
+     */
+    public TestResultCache( int maxEntries ) {
+        this.maxEntries = maxEntries;
+
+        //Access ordered, so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, CachedResult>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, CachedResult> eldest ) {
+                return size() > TestResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Computes the key of a test.
+     * @param root Where the classes it tests are loaded from.
+     * @param test The test. Its name is not part of the key.
+     * @return The key.
+     */
+    public static String key( String root, TestSpec test ) {
+        StringBuilder sb = new StringBuilder( root );
+
+        for ( String field : new String[] { test.isStatic() ? "static" : "standard",
+                test.getClassName(), test.getInstanceName(), test.getMethodName(),
+                test.getMethodArguments(), test.getExpectedValue(),
+                test.getConstructorArguments() } ) {
+            //Separate the fields so that different splits never collide
+            sb.append( '\0' ).append( field == null ? "" : field.length() + ":" + field );
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Looks up the last result of a test.
+     * @param key The key of the test.
+     * @param fingerprint The fingerprint of what the test runs now.
+     * @return The result, or null if the test has not run since it last
+     * changed.
+     */
+    public synchronized TestResult get( String key, String fingerprint ) {
+        CachedResult entry = this.entries.get( key );
+
+        if( entry == null ) {
+            this.misses++;
+            return null;
+        }
+
+        if( ! entry.fingerprint.equals( fingerprint ) ) {
+            this.entries.remove( key );
+            this.invalidations++;
+            this.misses++;
+            return null;
+        }
+
+        this.hits++;
+        return entry.result;
+    }
+
+    /**
+     * Keeps the result of a test, if it is worth keeping.
+     * @param key The key of the test.
+     * @param fingerprint The fingerprint of what the test ran.
+     * @param result The result.
+     */
+    public synchronized void put( String key, String fingerprint, TestResult result ) {
+        TestResult.Status status = result.getStatus();
+
+        if( ( status != TestResult.Status.PASS && status != TestResult.Status.FAIL )
+                || result.getException() instanceof CompilationException ) {
+            return;
+        }
+
+        this.entries.put( key, new CachedResult( fingerprint, result ) );
+    }
+
+    /** @return The number of results currently kept */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + this.hits + " misses=" + this.misses + " invalidations="
+            + this.invalidations + " size=" + this.entries.size();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Describes a single test that should be generated into a suite, so that many
+ * tests can be handed to <tt>SuiteGeneratorAPI</tt> at once.
+ */
+public class TestSpec {
+
+    private final boolean isStatic;
+    private final String className;
+    private final String instanceName;
+    private final String methodName;
+    private final String testName;
+    private final String methodArguments;
+    private final String expectedValue;
+    private final String constructorArguments;
+    private final String returnDescriptor;
+
+    private TestSpec( boolean isStatic, String className, String instanceName,
+            String methodName, String testName, String methodArguments,
+            String expectedValue, String constructorArguments,
+            String returnDescriptor ) {
+        this.isStatic               = isStatic;
+        this.className              = className;
+        this.instanceName           = instanceName;
+        this.methodName             = methodName;
+        this.testName               = testName;
+        this.methodArguments        = methodArguments;
+        this.expectedValue          = expectedValue;
+        this.constructorArguments   = constructorArguments;
+        this.returnDescriptor       = returnDescriptor;
+    }
+
+    /**
+     * Describes a test that invokes a method on a newly constructed instance.
+     * @param className The name of the class that this test is evaluating.
+     * @param instanceName The name of the instance of <tt>className</tt> that
+     * will be created.
+     * @param methodName The name of the method that is being evaluated
+     * @param testName The test that is running
+     * @param methodArguments The string of arguments that are passed to
+     * <tt>methodName</tt>.
+     * @param expectedValue The value expected to return from the target
+     * method.
+     * @param constructorArguments The string of arguments that are passed to
+     * the object constructor.
+     */
+    public static TestSpec standard( String className, String instanceName,
+            String methodName, String testName, String methodArguments,
+            String expectedValue, String constructorArguments ) {
+        return new TestSpec( false, className, instanceName, methodName,
+                testName, methodArguments, expectedValue, constructorArguments, null );
+    }
+
+    /**
+     * Describes a test that invokes a static method.
+     * @param className The name of the class that this test is evaluating.
+     * @param testName The test that is running
+     * @param expectedValue The value expected to return from the target
+     * method.
+     * @param methodName The name of the method that is being evaluated
+     * @param methodArguments The string of arguments that are passed to
+     * <tt>methodName</tt>.
+     */
+    public static TestSpec staticTest( String className, String testName,
+            String expectedValue, String methodName, String methodArguments ) {
+        return new TestSpec( true, className, null, methodName, testName,
+                methodArguments, expectedValue, null, null );
+    }
+
+    /**
+     * @return A copy of this test that has a different name.
+     */
+    public TestSpec withTestName( String testName ) {
+        return new TestSpec( this.isStatic, this.className, this.instanceName,
+                this.methodName, testName, this.methodArguments,
+                this.expectedValue, this.constructorArguments, this.returnDescriptor );
+    }
+
+    /**
+     * @param returnDescriptor The descriptor of the type that the method
+     * returns, such as <tt>I</tt>, or null if it is not known.
+     * @return A copy of this test whose generated assertion is picked by the
+     * method's return type.
+     */
+    public TestSpec withReturnDescriptor( String returnDescriptor ) {
+        return new TestSpec( this.isStatic, this.className, this.instanceName,
+                this.methodName, this.testName, this.methodArguments,
+                this.expectedValue, this.constructorArguments, returnDescriptor );
+    }
+
+    /**
+     * Adds this test to a generator.
+     * @param generator The generator that the test is added to.
+     */
+    public void addTo( TestSuiteGenerator generator ) {
+        if( this.isStatic ) {
+            generator.generateStaticTest( this.className, this.testName,
+                    this.expectedValue, this.methodName, this.methodArguments,
+                    this.returnDescriptor );
+        }
+        else {
+            generator.generateStandardTest( this.className, this.instanceName,
+                    this.methodName, this.testName, this.methodArguments,
+                    this.expectedValue, this.constructorArguments,
+                    this.returnDescriptor );
+        }
+    }
+
+    public boolean isStatic() {
+        return this.isStatic;
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    public String getInstanceName() {
+        return this.instanceName;
+    }
+
+    public String getMethodName() {
+        return this.methodName;
+    }
+
+    public String getTestName() {
+        return this.testName;
+    }
+
+    public String getMethodArguments() {
+        return this.methodArguments;
+    }
+
+    public String getExpectedValue() {
+        return this.expectedValue;
+    }
+
+    public String getConstructorArguments() {
+        return this.constructorArguments;
+    }
+
+    /** @return The descriptor of the method's return type, or null */
+    public String getReturnDescriptor() {
+        return this.returnDescriptor;
+    }
+}
@@ -1,25 +1,57 @@
-import java.io.File;
 import java.io.IOException;
 
-import javax.tools.ToolProvider;
-
-import java.util.Scanner;
+import java.util.Collections;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Set;
 
 /**
  * Generates test suites.
  */
 public class TestSuiteGenerator {
 
-    //System class loader object
-    private final ClassLoader loader = ToolProvider.getSystemToolClassLoader();
+    /**
+     * The assertions that generated tests end in. <tt>smartAssert</tt>
+     * compares any two values, boxing primitives to do so, while the others
+     * take the values as they are returned, so that a passing test does not
+     * allocate. Floating point values are equal if they are within a small
+     * relative tolerance of each other, or both NaN.
+     */
+    static final String SMART_ASSERT =
+          "    public static void smartAssert( Object a, Object b ) {\n"
+        + "        if( ! java.util.Objects.deepEquals( a, b ) ) {\n"
+        + "            throw new AssertionException( \"Assertion Error: a.equals(b) returned false!\", a, b );\n"
+        + "        }\n"
+        + "    }\n\n"
+        + primitiveAssert( "assertBoolean", "boolean", "boolean", "a == b" )
+        + primitiveAssert( "assertIntegral", "long", "long", "a == b" )
+        + primitiveAssert( "assertChar", "char", "char", "a == b" )
+        + primitiveAssert( "assertFloat", "double", "float", "closeEnough( a, b, 1e-6 )" )
+        + primitiveAssert( "assertDouble", "double", "double", "closeEnough( a, b, 1e-9 )" )
+        + "    public static boolean closeEnough( double a, double b, double epsilon ) {\n"
+        + "        return a == b || ( a != a && b != b ) || Math.abs( a - b )\n"
+        + "            <= epsilon * Math.max( 1.0, Math.max( Math.abs( a ), Math.abs( b ) ) );\n"
+        + "    }\n\n"
+        + arrayAssert( "boolean[]", "equals" )
+        + arrayAssert( "byte[]", "equals" )
+        + arrayAssert( "short[]", "equals" )
+        + arrayAssert( "char[]", "equals" )
+        + arrayAssert( "int[]", "equals" )
+        + arrayAssert( "long[]", "equals" )
+        + arrayAssert( "float[]", "equals" )
+        + arrayAssert( "double[]", "equals" )
+        + arrayAssert( "Object[]", "deepEquals" );
+
+    //How long generating and rendering suites takes
+    private static final LatencyHistogram generateTime = Metrics.histogram( "generator.suite" );
+    private static final LatencyHistogram unitsTime = Metrics.histogram( "generator.units" );
+    private static final LatencyHistogram renderTime = Metrics.histogram( "generator.render" );
 
     private String suiteName;
     private List<String> imports;
-    private Map<String, String> testCases;
+    private Map<String, TestCase> testCases;
 
     /**
      * Creates a generator for a test suite
@@ -27,10 +59,83 @@ public class TestSuiteGenerator {
      */
     public TestSuiteGenerator( String suiteName ) {
         this.suiteName  = suiteName;
-        this.testCases  = new HashMap<>();
+        this.testCases  = new LinkedHashMap<>();
         this.imports    = new ArrayList<>();
     }
 
+    private static String primitiveAssert( String name, String expectedType,
+            String actualType, String condition ) {
+        return "    public static void " + name + "( " + expectedType + " a, "
+            + actualType + " b ) {\n"
+            + "        if( ! ( " + condition + " ) ) {\n"
+            + "            throw new AssertionException( \"Assertion Error: " + condition
+            + " returned false!\", a, b );\n"
+            + "        }\n"
+            + "    }\n\n";
+    }
+
+    private static String arrayAssert( String type, String comparison ) {
+        return "    public static void assertArray( " + type + " a, " + type + " b ) {\n"
+            + "        if( ! java.util.Arrays." + comparison + "( a, b ) ) {\n"
+            + "            throw new AssertionException( \"Assertion Error: Arrays."
+            + comparison + "(a, b) returned false!\", a, b );\n"
+            + "        }\n"
+            + "    }\n\n";
+    }
+
+    /**
+     * Picks the assertion that a test compares its expected value to what
+     * the method returned with.
+     * @param returnDescriptor The descriptor of the type that the method
+     * returns, such as <tt>I</tt> or <tt>[Ljava/lang/String;</tt>, or null if
+     * it is not known.
+     * @param expectedValue The expected value, as it is written in the test.
+     * @return The name of one of the assertions in <tt>SMART_ASSERT</tt>.
+     * <tt>smartAssert</tt> whenever the return type is not known, or the
+     * expected value is not a literal that the others are sure to accept.
+     */
+    static String assertion( String returnDescriptor, String expectedValue ) {
+        if( returnDescriptor == null || returnDescriptor.isEmpty() || expectedValue == null ) {
+            return "smartAssert";
+        }
+
+        LiteralParser.Literal expected = LiteralParser.parse( expectedValue );
+        char kind = returnDescriptor.charAt( 0 );
+
+        //Arrays are built by expressions, so anything but a non-null literal may be one
+        if( kind == '[' ) {
+            return expected == null || expected.getType() == null ? "assertArray" : "smartAssert";
+        }
+
+        Class<?> type = expected == null ? null : expected.getType();
+
+        if( type == null ) {
+            return "smartAssert";
+        }
+
+        boolean integral = type == int.class || type == long.class || type == char.class;
+
+        switch( kind ) {
+            case 'Z':
+                return type == boolean.class ? "assertBoolean" : "smartAssert";
+            case 'C':
+                return type == char.class ? "assertChar" : integral ? "assertIntegral" : "smartAssert";
+            case 'B':
+            case 'S':
+            case 'I':
+            case 'J':
+                return integral ? "assertIntegral" : "smartAssert";
+            case 'F':
+                return integral || type == float.class || type == double.class
+                    ? "assertFloat" : "smartAssert";
+            case 'D':
+                return integral || type == float.class || type == double.class
+                    ? "assertDouble" : "smartAssert";
+            default:
+                return "smartAssert";
+        }
+    }
+
     /**
      * Generates a test suite containing a few test tests.
      */
@@ -71,24 +176,15 @@ public class TestSuiteGenerator {
     }
 
     /**
-     * Attempts to load the class with the specified name using the system's
-     * specified class loader.
-     * @param classToLoad The name of the class to load
-     * @return The class with the specified name or null if that class could not
-     * be loaded.
+     * Works out the simple name of a class from its binary name, without
+     * loading the class. Generated suites only ever refer to classes by their
+     * simple names.
+     * @param className The binary name of the class.
+     * @return The simple name of the class.
      */
-    private Class<?> loadClassFromString( String classToLoad ) {
-        Class<?> loadedResult = null;
-
-        try {
-            loadedResult = this.loader.loadClass( classToLoad );
-        }
-        catch( ClassNotFoundException cnfe) {
-            System.err.println( "In TestSuiteGenerator.loadClassFromString:");
-            cnfe.printStackTrace();
-        }
-
-        return loadedResult;
+    private static String simpleName( String className ) {
+        int start = Math.max( className.lastIndexOf( '.' ), className.lastIndexOf( '$' ) );
+        return className.substring( start + 1 );
     }
 
     /**
@@ -97,8 +193,16 @@ public class TestSuiteGenerator {
      * containing the previously created tests.
      */
     public String generateTestSuite() {
+        long start = System.nanoTime();
+
+        //Size the buffer up front so it is not regrown for large suites
+        int length = 1024;
+        for ( TestCase testCase : this.testCases.values() ) {
+            length += testCase.estimateLength() + 32;
+        }
+
         //Add necessary header information
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder( length );
 
         //Add user defined imports
         for ( String libraryToImport : this.imports )  {
@@ -109,30 +213,101 @@ public class TestSuiteGenerator {
         sb.append( "\npublic class ").append( this.suiteName ).append( " {\n\n" );
 
         //Add smartAssert
-        sb.append( "    public static void smartAssert( Object a, Object b ) {\n" );
-        sb.append( "        boolean result = a.equals(b);\n" );
-        sb.append( "        if( ! result ) {\n" );
-        sb.append( "            throw new AssertionException( \"Assertion Error: a.equals(b) returned false!\");\n" );
-        sb.append( "        }\n" );
-        sb.append( "    }\n\n" );
+        sb.append( SMART_ASSERT );
 
         //Write each test case to the StringBuilder
-        for ( String testCase : this.testCases.values() ) {
-            sb.append( testCase ).append("\n" );
+        for ( TestCase testCase : this.testCases.values() ) {
+            testCase.render( sb );
+            sb.append( "\n" );
         }
 
-        //Generate the main method
-        sb.append( "    public static void main( String[] args ) {\n" );
+        //Generate the main method, which benchmarks may throw out of
+        sb.append( "    public static void main( String[] args ) throws Exception {\n" );
 
         //Make calls to the generated test methods in the suite
-        for ( String testName : this.testCases.keySet() )  {
-            sb.append( "        " + testName + "();\n" );
+        for ( TestCase testCase : this.testCases.values() )  {
+            sb.append( "        " ).append( testCase.getCall() ).append( "\n" );
         }
 
         sb.append( "    }\n" );
         sb.append( "}" );
 
-        return sb.toString();
+        String source = sb.toString();
+        generateTime.recordSince( start );
+
+        return source;
+    }
+
+    /**
+     * Splits the suite into small classes that are compiled and cached on
+     * their own, so that changing a test only recompiles the few tests that
+     * share its class.
+     *
+     * A unit ends after a test whose name hashes to a multiple of
+     * <tt>unitSize</tt>, or once it holds four times that many tests. Where
+     * the units end only depends on the names of the tests around it, so
+     * adding, changing or removing a test leaves every other unit as it was.
+     * @param unitSize The number of tests in a unit on average.
+     * @return The units, in the order of their tests.
+     */
+    public List<TestUnit> generateTestUnits( int unitSize ) {
+        long start = System.nanoTime();
+        List<TestUnit> units = new ArrayList<>();
+        List<TestCase> unit = new ArrayList<>();
+
+        for ( TestCase testCase : this.testCases.values() ) {
+            unit.add( testCase );
+
+            if( endsUnit( testCase.getName(), unitSize ) || unit.size() >= 4 * unitSize ) {
+                units.add( new TestUnit( this.suiteName + "_" + unit.get( 0 ).getName(),
+                            this.imports, unit ) );
+                unit = new ArrayList<>();
+            }
+        }
+
+        if( ! unit.isEmpty() ) {
+            units.add( new TestUnit( this.suiteName + "_" + unit.get( 0 ).getName(),
+                        this.imports, unit ) );
+        }
+
+        unitsTime.recordSince( start );
+
+        return units;
+    }
+
+    /**
+     * @return Whether a unit ends after the test with the given name.
+     */
+    private static boolean endsUnit( String testName, int unitSize ) {
+        //Spread the hash, since test names often only differ in a digit
+        int hash = testName.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+
+        return Integer.remainderUnsigned( hash, unitSize ) == 0;
+    }
+
+    /**
+     * Removes a test from the suite.
+     * @param testName The name of the test, without the "test" prefix.
+     * @return Whether there was such a test.
+     */
+    public boolean removeTest( String testName ) {
+        return this.testCases.remove( "test" + testName ) != null;
+    }
+
+    /**
+     * @param testName The name of the test, without the "test" prefix.
+     * @return A hash of the test's generated source, or null if there is no
+     * such test. Tests with the same fingerprint compile to the same code.
+     */
+    public String getFingerprint( String testName ) {
+        TestCase testCase = this.testCases.get( "test" + testName );
+        return testCase == null ? null : testCase.getFingerprint();
+    }
+
+    /** @return The number of tests in the suite */
+    public int size() {
+        return this.testCases.size();
     }
 
     /**
@@ -152,27 +327,14 @@ public class TestSuiteGenerator {
     public void generateStandardTest( Class<?> clazz, String instanceName,
             String methodName, String testName, String methodArguments, String
             expectedValue, String constructorArguments ) {
-
-        //Load the proper template file
-        String template = loadTemplateFile( "StandardTestTemplate.txt" );
-
-        //Replace template tags
-        template = replaceTagWith( template, "testName", testName );
-        template = replaceTagWith( template, "className", clazz.getSimpleName() );
-        template = replaceTagWith( template, "name", testName );
-        template = replaceTagWith( template, "methodName", methodName );
-        template = replaceTagWith( template, "expected", expectedValue);
-        template = replaceTagWith( template, "cons_list", constructorArguments );
-        template = replaceTagWith( template, "m_list", methodArguments );
-
-        //Add the completed template to the test cases
-        this.testCases.put( "test" + testName, template );
+        this.generateStandardTest( clazz.getName(), instanceName, methodName,
+                testName, methodArguments, expectedValue, constructorArguments );
     }
 
 
     /**
-     * @param className The name of the lass that will be loaded by the
-     * classloader.
+     * @param className The name of the class that this test is evaluating. The
+     * class is not loaded.
      * @param instanceName The name of the instance of <tt>clazz</tt> that will
      * be created.
      * @param methodName The name of the method that is being evaluated
@@ -187,11 +349,56 @@ public class TestSuiteGenerator {
     public void generateStandardTest( String className, String instanceName,
             String methodName, String testName, String methodArguments, String
             expectedValue, String constructorArguments ) {
-        this.generateStandardTest( loadClassFromString( className ),
-                instanceName, methodName, testName, methodArguments,
-                expectedValue, constructorArguments );
+        this.generateStandardTest( className, instanceName, methodName,
+                testName, methodArguments, expectedValue, constructorArguments, null );
     }
 
+    /**
+     * Generates a standard test that compares what the method returns the
+     * way its return type calls for. The other arguments are the same as
+     * those of <tt>generateStandardTest</tt>.
+     * @param returnDescriptor The descriptor of the type that the method
+     * returns, such as <tt>D</tt>, or null if it is not known.
+     */
+    public void generateStandardTest( String className, String instanceName,
+            String methodName, String testName, String methodArguments, String
+            expectedValue, String constructorArguments, String returnDescriptor ) {
+        //A test generated under an existing name replaces it
+        TestCase testCase = standardTest( className, instanceName, methodName,
+                testName, methodArguments, expectedValue, constructorArguments,
+                returnDescriptor );
+
+        //Add the filled in template to the test cases
+        this.testCases.put( testCase.getName(), testCase );
+    }
+
+    /**
+     * Creates a standard test without adding it to a suite. The arguments are
+     * the same as those of <tt>generateStandardTest</tt>.
+     * @return The unrendered test.
+     */
+    static TestCase standardTest( String className, String instanceName,
+            String methodName, String testName, String methodArguments, String
+            expectedValue, String constructorArguments, String returnDescriptor ) {
+
+        //Load the proper template file
+        TestTemplate template = TestTemplate.load( "StandardTestTemplate.txt" );
+
+        //Fill in the template tags
+        String[] values = template.bind(
+                "testName",     testName,
+                "className",    simpleName( className ),
+                "name",         testName,
+                "methodName",   methodName,
+                "assert",       assertion( returnDescriptor, expectedValue ),
+                "expected",     expectedValue,
+                "cons_list",    constructorArguments,
+                "m_list",       methodArguments );
+
+        return new TestCase( "test" + testName, template, values );
+    }
+
+
     /**
      * @param clazz The class that this test is evaluating.
      * be created.
@@ -204,24 +411,13 @@ public class TestSuiteGenerator {
      */
     public void generateStaticTest( Class<?> clazz, String testName,
             String expectedValue, String methodName, String methodArguments ) {
-
-        String template = loadTemplateFile( "StaticTestTemplate.txt" );
-
-        //Replace template tags
-        template = replaceTagWith( template, "testName", testName );
-        template = replaceTagWith( template, "className", clazz.getSimpleName() );
-        template = replaceTagWith( template, "name", testName );
-        template = replaceTagWith( template, "methodName", methodName );
-        template = replaceTagWith( template, "expected", expectedValue);
-        template = replaceTagWith( template, "m_list", methodArguments );
-
-        //Add the completed template to the test cases
-        this.testCases.put( "test" + testName, template );
+        this.generateStaticTest( clazz.getName(), testName, expectedValue,
+                methodName, methodArguments );
     }
 
     /**
-     * @param className The name of the class that will be loaded by the
-     * class loader
+     * @param className The name of the class that this test is evaluating. The
+     * class is not loaded.
      * @param testName The test that is running
      * @param methodName The name of the method that is being evaluated
      * @param methodArguments The string of arguments that are passed to
@@ -231,52 +427,382 @@ public class TestSuiteGenerator {
      */
     public void generateStaticTest( String className, String testName,
             String expectedValue, String methodName, String methodArguments ) {
-        this.generateStaticTest( loadClassFromString( className ), testName,
-                expectedValue, methodName, methodArguments );
+        this.generateStaticTest( className, testName, expectedValue,
+                methodName, methodArguments, null );
     }
+
     /**
-     * Loads a template from a file into a string.
-     * @param templateName The name of the template to load (including file
-     * extension, but excluding parent folders).
-     * @return The contents of the file in a string.
+     * Generates a static test that compares what the method returns the way
+     * its return type calls for. The other arguments are the same as those
+     * of <tt>generateStaticTest</tt>.
+     * @param returnDescriptor The descriptor of the type that the method
+     * returns, such as <tt>D</tt>, or null if it is not known.
      */
-    private String loadTemplateFile( String templateName ) {
-        File file = new File( "generation_templates/" + templateName );
-        StringBuilder sb = new StringBuilder();
-        try( Scanner fileScan = new Scanner(file) ) {
+    public void generateStaticTest( String className, String testName,
+            String expectedValue, String methodName, String methodArguments,
+            String returnDescriptor ) {
+        //A test generated under an existing name replaces it
+        TestCase testCase = staticTest( className, testName, expectedValue,
+                methodName, methodArguments, returnDescriptor );
+
+        //Add the filled in template to the test cases
+        this.testCases.put( testCase.getName(), testCase );
+    }
 
-            //Read every line from the file and append it to the StringBuilder
-            while( fileScan.hasNextLine() ) {
-                String line = fileScan.nextLine();
+    /**
+     * Creates a static test without adding it to a suite. The arguments are
+     * the same as those of <tt>generateStaticTest</tt>.
+     * @return The unrendered test.
+     */
+    static TestCase staticTest( String className, String testName,
+            String expectedValue, String methodName, String methodArguments,
+            String returnDescriptor ) {
+
+        TestTemplate template = TestTemplate.load( "StaticTestTemplate.txt" );
+
+        //Fill in the template tags
+        String[] values = template.bind(
+                "testName",     testName,
+                "className",    simpleName( className ),
+                "name",         testName,
+                "methodName",   methodName,
+                "assert",       assertion( returnDescriptor, expectedValue ),
+                "expected",     expectedValue,
+                "m_list",       methodArguments );
+
+        return new TestCase( "test" + testName, template, values );
+    }
 
-                if( line.endsWith("\n") ) {
-                    sb.append( line );
-                }
-                else {
-                    sb.append( line + "\n" );
-                }
+    /**
+     * Generates a benchmark of a method called on an instance of a class. The
+     * instance is created once, before the method is first called, and the
+     * generated <tt>benchmark{testName}</tt> method returns how fast the
+     * method ran as a <tt>BenchmarkResult</tt>. The suite's main method prints
+     * that result.
+     * @param className The name of the class that this benchmark is
+     * evaluating. The class is not loaded.
+     * @param instanceName The name of the instance of <tt>clazz</tt> that will
+     * be created.
+     * @param methodName The name of the method that is being benchmarked.
+     * @param testName The name of the benchmark.
+     * @param methodArguments The string of arguments that are passed to
+     * <tt>methodName</tt>.
+     * @param constructorArguments The string of arguments that are passed to
+     * the object constructor.
+     */
+    public void generateStandardBenchmark( String className, String instanceName,
+            String methodName, String testName, String methodArguments,
+            String constructorArguments ) {
+        TestCase testCase = standardBenchmark( className, instanceName,
+                methodName, testName, methodArguments, constructorArguments );
+
+        this.testCases.put( testCase.getName(), testCase );
+    }
+
+    /**
+     * Creates a standard benchmark without adding it to a suite. The
+     * arguments are the same as those of <tt>generateStandardBenchmark</tt>.
+     * @return The unrendered benchmark.
+     */
+    static TestCase standardBenchmark( String className, String instanceName,
+            String methodName, String testName, String methodArguments,
+            String constructorArguments ) {
+        TestTemplate template = TestTemplate.load( "StandardBenchmarkTemplate.txt" );
+        StringBuilder state = new StringBuilder();
+
+        String[] values = template.bind(
+                "testName",     testName,
+                "className",    simpleName( className ),
+                "name",         "benchmark" + testName + "Instance",
+                "methodName",   methodName,
+                "cons_list",    constructorArguments,
+                "m_list",       hoistLiterals( methodArguments, testName, state ),
+                "state",        state.toString() );
+
+        return benchmarkCase( testName, template, values );
+    }
+
+    /**
+     * Generates a benchmark of a static method, the same way as
+     * <tt>generateStandardBenchmark</tt>.
+     * @param className The name of the class that this benchmark is
+     * evaluating. The class is not loaded.
+     * @param testName The name of the benchmark.
+     * @param methodName The name of the method that is being benchmarked.
+     * @param methodArguments The string of arguments that are passed to
+     * <tt>methodName</tt>.
+     */
+    public void generateStaticBenchmark( String className, String testName,
+            String methodName, String methodArguments ) {
+        TestCase testCase = staticBenchmark( className, testName, methodName,
+                methodArguments );
+
+        this.testCases.put( testCase.getName(), testCase );
+    }
+
+    /**
+     * Creates a static benchmark without adding it to a suite. The arguments
+     * are the same as those of <tt>generateStaticBenchmark</tt>.
+     * @return The unrendered benchmark.
+     */
+    static TestCase staticBenchmark( String className, String testName,
+            String methodName, String methodArguments ) {
+        TestTemplate template = TestTemplate.load( "StaticBenchmarkTemplate.txt" );
+        StringBuilder state = new StringBuilder();
+
+        String[] values = template.bind(
+                "testName",     testName,
+                "className",    simpleName( className ),
+                "methodName",   methodName,
+                "m_list",       hoistLiterals( methodArguments, testName, state ),
+                "state",        state.toString() );
+
+        return benchmarkCase( testName, template, values );
+    }
+
+    private static TestCase benchmarkCase( String testName, TestTemplate template,
+            String[] values ) {
+        return new TestCase( "benchmark" + testName, template, values,
+                "System.out.println( benchmark" + testName + "( new BenchmarkRunner() ) );" );
+    }
+
+    /**
+     * Moves the literal arguments of a benchmarked call into static fields
+     * declared before the benchmark, which the call reads every time it is
+     * made. The fields are not final, so neither javac nor the JIT can fold
+     * the call into a constant or hoist it out of the measured loop, as they
+     * do with a lambda that captures a local.
+     * @param methodArguments The arguments of the benchmarked call.
+     * @param testName The name of the benchmark, which the fields are named after.
+     * @param state Where the declarations of the fields are appended.
+     * @return The arguments, with every hoisted literal replaced by its field.
+     */
+    private static String hoistLiterals( String methodArguments, String testName,
+            StringBuilder state ) {
+        StringBuilder args = new StringBuilder();
+        int index = 0;
+
+        for ( String arg : LiteralParser.split( methodArguments ) ) {
+            LiteralParser.Literal literal = LiteralParser.parse( arg );
+
+            if( args.length() > 0 ) {
+                args.append( ", " );
+            }
+
+            //The null literal has no type to declare a field with
+            if( literal == null || literal.getType() == null ) {
+                args.append( arg );
+                continue;
             }
+
+            String field = "benchmark" + testName + "Arg" + index++;
+            state.append( "    private static " ).append( literal.getType().getSimpleName() )
+                .append( ' ' ).append( field ).append( " = " ).append( arg ).append( ";\n" );
+            args.append( field );
+        }
+
+        return args.toString();
+    }
+
+    /**
+     * A test that has not been rendered yet: the name of its method, a
+     * template and the values of its tags. Tests are only rendered once the
+     * suite is written.
+     */
+    static final class TestCase {
+        private final String name;
+        private final TestTemplate template;
+        private final String[] values;
+        private final String call;
+
+        //Computed the first time it is needed
+        private volatile String fingerprint;
+
+        TestCase( String name, TestTemplate template, String[] values ) {
+            this( name, template, values, name + "();" );
+        }
+
+        /**
+         * @param call The statement that runs the test from a main method.
+         */
+        TestCase( String name, TestTemplate template, String[] values, String call ) {
+            this.name       = name;
+            this.template   = template;
+            this.values     = values;
+            this.call       = call;
         }
-        catch( IOException ioe ) {
-            System.err.println( "In TestSuiteGenerator.loadTemplateFile: " );
-            ioe.printStackTrace();
+
+        /** @return The name of the test method, such as <tt>testFoo</tt> */
+        String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return The statement that runs the test, such as
+         * <tt>testFoo();</tt>
+         */
+        String getCall() {
+            return this.call;
         }
 
-        return sb.toString();
+        void render( StringBuilder sb ) {
+            long start = System.nanoTime();
+            this.template.render( this.values, sb );
+            renderTime.recordSince( start );
+        }
+
+        void render( Appendable out ) throws IOException {
+            long start = System.nanoTime();
+            this.template.render( this.values, out );
+            renderTime.recordSince( start );
+        }
 
+        int estimateLength() {
+            return this.template.estimateLength( this.values );
+        }
+
+        /** @return A hash of the rendered test */
+        String getFingerprint() {
+            if( this.fingerprint == null ) {
+                StringBuilder sb = new StringBuilder( estimateLength() );
+                render( sb );
+                this.fingerprint = CompiledSuiteCache.key( sb.toString(),
+                        Collections.<byte[]>emptyList() );
+            }
+
+            return this.fingerprint;
+        }
     }
 
     /**
-     * Replaces the specified tag with a replacement if it is found in the
-     * target string.
-     * @param target The string to search and replace within
-     * @param tag The tag that would be found inside the curly braces, to
-     * replace within the target string.
-     * @param replacement The string that replaces the tag if it is found in the
-     * target string.
-     * @return The string with the specified tag replaced
+     * A class holding a few of the tests of a suite, along with everything
+     * they need to run on their own.
      */
-    private String replaceTagWith( String target, String tag, String replacement ) {
-        return target.replaceAll( "\\{" + tag + "\\}", replacement );
+    static final class TestUnit {
+        private final String name;
+        private final List<String> imports;
+        private final List<TestCase> testCases;
+
+        //The first line of every test in the source last generated, and the line after them
+        private int[] firstLines;
+
+        TestUnit( String name, List<String> imports, List<TestCase> testCases ) {
+            this.name       = name;
+            this.imports    = imports;
+            this.testCases  = testCases;
+        }
+
+        /** @return The name of the unit's class */
+        String getName() {
+            return this.name;
+        }
+
+        /** @return The names of the test methods in the unit */
+        List<String> getTestNames() {
+            List<String> names = new ArrayList<>();
+
+            for ( TestCase testCase : this.testCases ) {
+                names.add( testCase.getName() );
+            }
+
+            return names;
+        }
+
+        /**
+         * @return A hash of the unit's source, computed from the
+         * fingerprints of its tests without rendering them again.
+         */
+        String getFingerprint() {
+            //The assertions are part of every unit, so they are part of its hash
+            StringBuilder sb = new StringBuilder( this.name ).append( '\0' ).append( SMART_ASSERT );
+
+            for ( String libraryToImport : this.imports ) {
+                sb.append( '\0' ).append( libraryToImport );
+            }
+
+            sb.append( '\0' );
+
+            for ( TestCase testCase : this.testCases ) {
+                sb.append( '\0' ).append( testCase.getFingerprint() );
+            }
+
+            return CompiledSuiteCache.key( sb.toString(), Collections.<byte[]>emptyList() );
+        }
+
+        /** @return The source of the unit's class */
+        String generateSource() {
+            StringBuilder sb = new StringBuilder();
+
+            for ( String libraryToImport : this.imports )  {
+                sb.append( "import " ).append( libraryToImport ).append( ";\n" );
+            }
+
+            sb.append( "\npublic class " ).append( this.name ).append( " {\n\n" );
+            sb.append( SMART_ASSERT );
+
+            //Remember where every test went, so that errors can be traced back to it
+            int lines = newlines( sb, 0 );
+            this.firstLines = new int[ this.testCases.size() + 1 ];
+
+            for ( int i = 0; i < this.testCases.size(); i++ ) {
+                int from = sb.length();
+                this.firstLines[i] = lines + 1;
+                this.testCases.get( i ).render( sb );
+                sb.append( "\n" );
+                lines += newlines( sb, from );
+            }
+
+            this.firstLines[ this.testCases.size() ] = lines + 1;
+
+            sb.append( "}" );
+            return sb.toString();
+        }
+
+        /**
+         * @param line A line of the source that was last generated.
+         * @return The name of the test method that the line belongs to, or
+         * null if it is outside of every test.
+         */
+        String getTestAt( long line ) {
+            if( this.firstLines == null ) {
+                return null;
+            }
+
+            for ( int i = 0; i < this.testCases.size(); i++ ) {
+                if( line >= this.firstLines[i] && line < this.firstLines[ i + 1 ] ) {
+                    return this.testCases.get( i ).getName();
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * @param testNames The names of test methods.
+         * @return A unit of the same name with every test but those.
+         */
+        TestUnit without( Set<String> testNames ) {
+            List<TestCase> remaining = new ArrayList<>();
+
+            for ( TestCase testCase : this.testCases ) {
+                if( ! testNames.contains( testCase.getName() ) ) {
+                    remaining.add( testCase );
+                }
+            }
+
+            return new TestUnit( this.name, this.imports, remaining );
+        }
+
+        private static int newlines( CharSequence cs, int from ) {
+            int count = 0;
+
+            for ( int i = from; i < cs.length(); i++ ) {
+                if( cs.charAt( i ) == '\n' ) {
+                    count++;
+                }
+            }
+
+            return count;
+        }
     }
 }
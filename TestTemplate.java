@@ -0,0 +1,205 @@
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A generation template that has been split into literal text and
+ * <tt>{tag}</tt> placeholders once, so that rendering a test is a single pass
+ * of appends. Values are inserted exactly as given, so <tt>$</tt> and
+ * <tt>\</tt> inside of arguments are not treated specially.
+ */
+public class TestTemplate {
+
+    //Every template that has been loaded, keyed by its file name
+    private static final ConcurrentMap<String, TestTemplate> templates =
+        new ConcurrentHashMap<>();
+
+    private final String[] literals;
+    private final int[] placeholders;
+    private final String[] tags;
+    private final int length;
+
+    /**
+     * @param literals The text around the placeholders, one more than there
+     * are placeholders.
+     * @param placeholders The index into <tt>tags</tt> of each placeholder.
+     * @param tags The distinct tags used by the template.
+     */
+    private TestTemplate( String[] literals, int[] placeholders, String[] tags ) {
+        this.literals       = literals;
+        this.placeholders   = placeholders;
+        this.tags           = tags;
+
+        int length = 0;
+        for ( String literal : literals ) {
+            length += literal.length();
+        }
+        this.length = length;
+    }
+
+    /**
+     * Loads a template from the generation_templates folder, parsing it the
+     * first time it is asked for.
+     * @param templateName The name of the template to load (including file
+     * extension, but excluding parent folders).
+     * @return The parsed template.
+     */
+    public static TestTemplate load( String templateName ) {
+        return templates.computeIfAbsent( templateName, name -> {
+            try {
+                String text = new String( Files.readAllBytes( Paths.get(
+                                "generation_templates", name ) ),
+                        StandardCharsets.UTF_8 );
+
+                //Every line of a template ends in a newline
+                if( ! text.endsWith( "\n" ) ) {
+                    text += "\n";
+                }
+
+                return parse( text );
+            }
+            catch( IOException ioe ) {
+                throw new IllegalArgumentException( "Could not read template " + name, ioe );
+            }
+        });
+    }
+
+    /**
+     * Splits the text of a template into literals and placeholders. A
+     * placeholder is a tag made of letters, digits and underscores surrounded
+     * by curly braces. Every other curly brace is literal text.
+     * @param text The text of the template.
+     * @return The parsed template.
+     */
+    public static TestTemplate parse( String text ) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> placeholders = new ArrayList<>();
+        List<String> tags = new ArrayList<>();
+        int literalStart = 0;
+
+        for ( int i = 0; i < text.length(); i++ ) {
+            if( text.charAt( i ) != '{' ) {
+                continue;
+            }
+
+            int end = i + 1;
+            while( end < text.length() && isTagChar( text.charAt( end ) ) ) {
+                end++;
+            }
+
+            if( end == i + 1 || end == text.length() || text.charAt( end ) != '}' ) {
+                continue;
+            }
+
+            String tag = text.substring( i + 1, end );
+            int index = tags.indexOf( tag );
+
+            if( index < 0 ) {
+                index = tags.size();
+                tags.add( tag );
+            }
+
+            literals.add( text.substring( literalStart, i ) );
+            placeholders.add( index );
+            literalStart = end + 1;
+            i = end;
+        }
+
+        literals.add( text.substring( literalStart ) );
+
+        int[] placeholderArray = new int[ placeholders.size() ];
+        for ( int i = 0; i < placeholderArray.length; i++ ) {
+            placeholderArray[i] = placeholders.get( i );
+        }
+
+        return new TestTemplate( literals.toArray( new String[0] ),
+                placeholderArray, tags.toArray( new String[0] ) );
+    }
+
+    private static boolean isTagChar( char c ) {
+        return Character.isLetterOrDigit( c ) || c == '_';
+    }
+
+    /**
+     * Pairs up tags with their values.
+     * @param tagsAndValues Alternating tag names and the values they are
+     * replaced with. Tags that the template does not use are ignored.
+     * @return The values of this template's tags, in the form taken by
+     * <tt>render</tt>.
+     */
+    public String[] bind( String... tagsAndValues ) {
+        String[] values = new String[ this.tags.length ];
+
+        for ( int i = 0; i + 1 < tagsAndValues.length; i += 2 ) {
+            for ( int j = 0; j < this.tags.length; j++ ) {
+                if( this.tags[j].equals( tagsAndValues[i] ) ) {
+                    values[j] = tagsAndValues[i + 1];
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Appends the template to <tt>out</tt>, with every placeholder replaced.
+     * Placeholders without a value are left as they are.
+     * @param values The values returned by <tt>bind</tt>.
+     * @param out Where the rendered template is written.
+     */
+    public void render( String[] values, StringBuilder out ) {
+        try {
+            render( values, (Appendable) out );
+        }
+        catch( IOException ioe ) {
+            //StringBuilders never throw
+            throw new IllegalStateException( ioe );
+        }
+    }
+
+    /**
+     * Writes the template to <tt>out</tt>, with every placeholder replaced,
+     * without building the rendered test in memory first.
+     * @param values The values returned by <tt>bind</tt>.
+     * @param out Where the rendered template is written.
+     * @throws IOException If <tt>out</tt> can not be written to.
+     */
+    public void render( String[] values, Appendable out ) throws IOException {
+        out.append( this.literals[0] );
+
+        for ( int i = 0; i < this.placeholders.length; i++ ) {
+            String value = values[ this.placeholders[i] ];
+
+            if( value == null ) {
+                out.append( '{' ).append( this.tags[ this.placeholders[i] ] ).append( '}' );
+            }
+            else {
+                out.append( value );
+            }
+
+            out.append( this.literals[i + 1] );
+        }
+    }
+
+    /**
+     * @return Roughly how many characters a rendering of this template takes,
+     * for sizing buffers.
+     */
+    public int estimateLength( String[] values ) {
+        int length = this.length;
+
+        for ( int placeholder : this.placeholders ) {
+            String value = values[placeholder];
+            length += value == null ? 0 : value.length();
+        }
+
+        return length;
+    }
+}
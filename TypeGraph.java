@@ -0,0 +1,474 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes how the parameter types of analyzed methods can be constructed:
+ * their public constructors, their static factory methods, and for enums
+ * their constants. Each type is looked up and described once, however many
+ * methods refer to it, and following the parameters of those constructors and
+ * factories in turn gives a graph of everything a test needs to build its
+ * arguments.
+ *
+ * Types are read from their class files and never loaded. A graph is safe to
+ * share between threads, and is meant to live for one analysis run.
+ */
+public class TypeGraph {
+
+    /**
+     * How a type is classified, based on what it is rather than on its name.
+     */
+    public enum Kind {
+        VOID, PRIMITIVE, BOXED, STRING, ARRAY, ENUM, INTERFACE, CLASS, UNKNOWN;
+
+        /** @return Whether values of the kind are written as plain literals */
+        public boolean isLiteral() {
+            return this == PRIMITIVE || this == BOXED || this == STRING;
+        }
+    }
+
+    /** How many levels of types are described when no depth is given */
+    public static final int DEFAULT_DEPTH = Integer.getInteger( "suitegenerator.typeDepth", 2 );
+
+    private static final Set<String> boxes = new HashSet<>( Arrays.asList(
+                "java.lang.Boolean", "java.lang.Byte", "java.lang.Character",
+                "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+                "java.lang.Float", "java.lang.Double" ) );
+
+    //Parsed class files of the platform's classes, which never change
+    private static final Map<String, ClassFileInfo> platformClasses =
+        new ConcurrentHashMap<>();
+
+    private final ClassLoader resources;
+    private final int depth;
+    private final Map<String, ClassFileInfo> parsed = new ConcurrentHashMap<>();
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+
+    //Every type described so far, by descriptor
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * @param resources Where class files are looked up, after the platform's.
+     * Only its resources are used, it never loads anything.
+     * @param depth How many levels of types <tt>reachable</tt> collects.
+     */
+    public TypeGraph( ClassLoader resources, int depth ) {
+        this.resources = resources;
+        this.depth     = depth;
+    }
+
+    public TypeGraph( ClassLoader resources ) {
+        this( resources, DEFAULT_DEPTH );
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Classifies a loaded class the same way that a graph classifies a class
+     * file.
+     */
+    public static Kind kindOf( Class<?> clazz ) {
+        if( clazz == void.class ) {
+            return Kind.VOID;
+        }
+        if( clazz.isPrimitive() ) {
+            return Kind.PRIMITIVE;
+        }
+        if( boxes.contains( clazz.getName() ) ) {
+            return Kind.BOXED;
+        }
+        if( clazz == String.class ) {
+            return Kind.STRING;
+        }
+        if( clazz.isArray() ) {
+            return Kind.ARRAY;
+        }
+        if( clazz.isEnum() ) {
+            return Kind.ENUM;
+        }
+
+        return clazz.isInterface() ? Kind.INTERFACE : Kind.CLASS;
+    }
+
+    /**
+     * Describes a type, once.
+     * @param descriptor The descriptor of the type.
+     * @return The type's node.
+     */
+    public Node node( String descriptor ) {
+        Node node = this.nodes.get( descriptor );
+
+        if( node == null ) {
+            node = build( descriptor );
+            Node raced = this.nodes.putIfAbsent( descriptor, node );
+            node = raced == null ? node : raced;
+        }
+
+        return node;
+    }
+
+    /**
+     * Describes a type the way <tt>Class.toString</tt> would, such as
+     * <tt>int</tt>, <tt>class java.lang.String</tt> or
+     * <tt>interface java.util.List</tt>.
+     * @param descriptor The descriptor of the type.
+     */
+    public String describe( String descriptor ) {
+        return node( descriptor ).toString();
+    }
+
+    /**
+     * Collects the types that are needed to construct values of some types.
+     * The starting types are the first level, and the parameters of their
+     * constructors and factories, or the components of arrays, are the next,
+     * up to the depth of the graph.
+     * @param descriptors The descriptors of the types to start from.
+     * @return The collected types by their <tt>Class.toString</tt> names, in
+     * the order they were reached.
+     */
+    public Map<String, Node> reachable( Collection<String> descriptors ) {
+        Map<String, Node> reached = new LinkedHashMap<>();
+        List<String> level = new ArrayList<>( descriptors );
+
+        for ( int i = 0; i < this.depth && ! level.isEmpty(); i++ ) {
+            List<String> next = new ArrayList<>();
+
+            for ( String descriptor : level ) {
+                Node node = node( descriptor );
+
+                if( node.getKind() == Kind.VOID || reached.containsKey( node.toString() ) ) {
+                    continue;
+                }
+
+                reached.put( node.toString(), node );
+                next.addAll( node.dependencies() );
+            }
+
+            level = next;
+        }
+
+        return reached;
+    }
+
+    private Node build( String descriptor ) {
+        String name = ClassFileInfo.binaryName( descriptor );
+
+        if( descriptor.equals( "V" ) ) {
+            return new Node( descriptor, Kind.VOID, name );
+        }
+        if( descriptor.length() == 1 ) {
+            return new Node( descriptor, Kind.PRIMITIVE, name );
+        }
+        if( descriptor.startsWith( "[" ) ) {
+            Node node = new Node( descriptor, Kind.ARRAY, "class " + name );
+            node.component = descriptor.substring( 1 );
+            return node;
+        }
+        if( boxes.contains( name ) ) {
+            return new Node( descriptor, Kind.BOXED, "class " + name );
+        }
+        if( name.equals( "java.lang.String" ) ) {
+            return new Node( descriptor, Kind.STRING, "class " + name );
+        }
+
+        ClassFileInfo info = lookup( name );
+
+        if( info == null ) {
+            return new Node( descriptor, Kind.UNKNOWN, "class " + name );
+        }
+        if( info.isInterface() ) {
+            return new Node( descriptor, Kind.INTERFACE, "interface " + name );
+        }
+
+        Node node = new Node( descriptor, info.isEnum() ? Kind.ENUM : Kind.CLASS,
+                "class " + name );
+        boolean isAbstract = (info.getAccess() & ClassFileInfo.ACC_ABSTRACT) != 0;
+
+        for ( ClassFileInfo.FieldInfo field : info.getFields() ) {
+            if( field.isEnumConstant() ) {
+                node.constants.add( field.getName() );
+            }
+        }
+
+        for ( ClassFileInfo.MethodInfo method : info.getMethods() ) {
+            if( (method.getAccess() & ClassFileInfo.ACC_PUBLIC) == 0
+                    || (method.getAccess() & ClassFileInfo.ACC_SYNTHETIC) != 0 ) {
+                continue;
+            }
+
+            if( method.isConstructor() ) {
+                node.constructors.add( new Factory( "<init>", method.getParameterDescriptors(),
+                            method.getExceptions() ) );
+            }
+            else if( (method.getAccess() & ClassFileInfo.ACC_STATIC) != 0
+                    && method.getReturnDescriptor().equals( descriptor ) ) {
+                node.factories.add( new Factory( method.getName(),
+                            method.getParameterDescriptors(), method.getExceptions() ) );
+            }
+        }
+
+        //Abstract classes can only be built through their factories
+        if( isAbstract ) {
+            node.constructors.clear();
+        }
+
+        return node;
+    }
+
+    /**
+     * Finds and parses the class file of a type, from the platform or from
+     * the resources.
+     * @param className The binary name of the type.
+     * @return The parsed class file, or null if it could not be found.
+     */
+    public ClassFileInfo lookup( String className ) {
+        ClassFileInfo info = platformClasses.get( className );
+
+        if( info == null ) {
+            info = this.parsed.get( className );
+        }
+
+        if( info != null || this.missing.contains( className ) ) {
+            return info;
+        }
+
+        try {
+            byte[] bytes = readResource( ClassLoader.getPlatformClassLoader(), className );
+
+            if( bytes != null ) {
+                info = ClassFileInfo.parse( bytes );
+                platformClasses.put( className, info );
+                return info;
+            }
+
+            bytes = readResource( this.resources, className );
+
+            if( bytes != null ) {
+                info = ClassFileInfo.parse( bytes );
+                this.parsed.put( className, info );
+                return info;
+            }
+        }
+        catch( IOException ioe ) {
+            //Treated the same as a missing class
+        }
+
+        this.missing.add( className );
+        return null;
+    }
+
+    /**
+     * Reads a class file through a class loader, without loading the class.
+     * @return The contents of the class file, or null if there is none.
+     */
+    static byte[] readResource( ClassLoader loader, String className ) throws IOException {
+        try( InputStream in = loader.getResourceAsStream(
+                    className.replace( '.', '/' ) + ".class" ) ) {
+            return in == null ? null : readFully( in );
+        }
+    }
+
+    static byte[] readFully( InputStream in ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while( (read = in.read( buffer )) != -1 ) {
+            out.write( buffer, 0, read );
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a set of types as a JSON object, keyed by their
+     * <tt>Class.toString</tt> names.
+     * @param json Where the object is written to.
+     * @param types The types, as returned by <tt>reachable</tt>.
+     */
+    public void write( JsonWriter json, Map<String, Node> types ) {
+        json.beginObject();
+
+        for ( Map.Entry<String, Node> entry : types.entrySet() ) {
+            Node node = entry.getValue();
+            json.name( entry.getKey() ).beginObject()
+                .name( "kind" ).value( node.getKind().name() );
+
+            if( node.component != null ) {
+                json.name( "component" ).value( describe( node.component ) );
+            }
+
+            if( ! node.constants.isEmpty() ) {
+                json.name( "constants" ).beginArray();
+
+                for ( String constant : node.constants ) {
+                    json.value( constant );
+                }
+
+                json.endArray();
+            }
+
+            if( ! node.constructors.isEmpty() ) {
+                json.name( "constructors" ).beginArray();
+
+                for ( Factory constructor : node.constructors ) {
+                    writeParams( json, constructor );
+                }
+
+                json.endArray();
+            }
+
+            if( ! node.factories.isEmpty() ) {
+                json.name( "factories" ).beginArray();
+
+                for ( Factory factory : node.factories ) {
+                    json.beginObject().name( "name" ).value( factory.getName() )
+                        .name( "params" );
+                    writeParams( json, factory );
+                    json.endObject();
+                }
+
+                json.endArray();
+            }
+
+            json.endObject();
+        }
+
+        json.endObject();
+    }
+
+    private void writeParams( JsonWriter json, Factory factory ) {
+        json.beginArray();
+
+        for ( String param : factory.getParams() ) {
+            json.value( describe( param ) );
+        }
+
+        json.endArray();
+    }
+
+    /**
+     * A type, and the ways of constructing it.
+     */
+    public static final class Node {
+        private final String descriptor;
+        private final Kind kind;
+        private final String display;
+
+        //Only ever added to while the node is being built
+        private String component;
+        private final List<String> constants = new ArrayList<>();
+        private final List<Factory> constructors = new ArrayList<>();
+        private final List<Factory> factories = new ArrayList<>();
+
+        Node( String descriptor, Kind kind, String display ) {
+            this.descriptor = descriptor;
+            this.kind       = kind;
+            this.display    = display;
+        }
+
+        public String getDescriptor() {
+            return this.descriptor;
+        }
+
+        public Kind getKind() {
+            return this.kind;
+        }
+
+        /** @return The binary name of the type */
+        public String getName() {
+            return ClassFileInfo.binaryName( this.descriptor );
+        }
+
+        /** @return The descriptor of the component type of an array, or null */
+        public String getComponent() {
+            return this.component;
+        }
+
+        /** @return The names of an enum's constants */
+        public List<String> getConstants() {
+            return Collections.unmodifiableList( this.constants );
+        }
+
+        /** @return The public constructors of a concrete class */
+        public List<Factory> getConstructors() {
+            return Collections.unmodifiableList( this.constructors );
+        }
+
+        /** @return The public static methods that return the type */
+        public List<Factory> getFactories() {
+            return Collections.unmodifiableList( this.factories );
+        }
+
+        /**
+         * @return The descriptors of every type that constructing this type
+         * takes.
+         */
+        List<String> dependencies() {
+            List<String> dependencies = new ArrayList<>();
+
+            if( this.component != null ) {
+                dependencies.add( this.component );
+            }
+
+            for ( Factory constructor : this.constructors ) {
+                dependencies.addAll( constructor.getParams() );
+            }
+
+            for ( Factory factory : this.factories ) {
+                dependencies.addAll( factory.getParams() );
+            }
+
+            return dependencies;
+        }
+
+        /** @return The type the way <tt>Class.toString</tt> would write it */
+        @Override
+        public String toString() {
+            return this.display;
+        }
+    }
+
+    /**
+     * A constructor or static factory method.
+     */
+    public static final class Factory {
+        private final String name;
+        private final List<String> params;
+        private final List<String> exceptions;
+
+        Factory( String name, List<String> params, List<String> exceptions ) {
+            this.name       = name;
+            this.params     = Collections.unmodifiableList( params );
+            this.exceptions = exceptions;
+        }
+
+        /** @return The name of the method, or &lt;init&gt; for a constructor */
+        public String getName() {
+            return this.name;
+        }
+
+        /** @return The descriptors of the parameters */
+        public List<String> getParams() {
+            return this.params;
+        }
+
+        /** @return The binary names of the declared exceptions */
+        public List<String> getExceptions() {
+            return this.exceptions;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.nio.file.Files;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long <tt>ClassInfoAnalyzer</tt> takes to describe classes with more
+ * and more methods, reflectively, from the class file and as JSON. The
+ * reports are printed to streams that discard them.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+public class AnalysisBenchmark {
+
+    @Param( { "10", "100", "1000" } )
+    public int methods;
+
+    private byte[] classFile;
+    private Class<?> loaded;
+    private URLClassLoader resources;
+    private PrintStream[] streams;
+
+    @Setup
+    public void setUp() throws Exception {
+        File root = Harness.compileSubmission( "Analyzed",
+                Harness.targetSource( "Analyzed", this.methods ) );
+
+        this.classFile = Files.readAllBytes( new File( root, "Analyzed.class" ).toPath() );
+        this.resources = new URLClassLoader( new URL[] { root.toURI().toURL() } );
+        this.loaded = this.resources.loadClass( "Analyzed" );
+        this.streams = Harness.silence();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Harness.restore( this.streams );
+        this.resources.close();
+    }
+
+    @Benchmark
+    public String analyzeMethods() throws Throwable {
+        return Harness.analyzeMethods( this.loaded );
+    }
+
+    @Benchmark
+    public String analyzeClassFile() throws Throwable {
+        return Harness.analyzeClassFile( this.classFile, this.resources );
+    }
+
+    @Benchmark
+    public String toJson() throws Throwable {
+        return Harness.toJson( this.classFile, this.resources );
+    }
+}
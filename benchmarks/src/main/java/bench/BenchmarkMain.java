@@ -0,0 +1,47 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with JMH, taking the usual JMH options, for example
+ * <tt>java -jar benchmarks/target/benchmarks.jar Generation -p tests=100</tt>
+ * from the top of the repository.
+ *
+ * Unless told otherwise, results are written as JSON to
+ * <tt>jmh-result.json</tt>, so they can be compared between runs, and the GC
+ * profiler is on, so that the allocation rate of every benchmark
+ * (<tt>gc.alloc.rate.norm</tt>, in bytes per operation) is reported next to
+ * its throughput and latency percentiles.
+ */
+public final class BenchmarkMain {
+
+    /** Empty Constructor */
+    private BenchmarkMain() { }
+
+    public static void main( String[] args ) throws Exception {
+        CommandLineOptions options = new CommandLineOptions( args );
+
+        if( options.shouldHelp() || options.shouldList() || options.shouldListProfilers()
+                || options.shouldListResultFormats() ) {
+            org.openjdk.jmh.Main.main( args );
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent( options );
+
+        if( ! options.getResultFormat().hasValue() ) {
+            builder.resultFormat( ResultFormatType.JSON );
+        }
+
+        if( options.getProfilers().isEmpty() ) {
+            builder.addProfiler( GCProfiler.class );
+        }
+
+        new Runner( builder.build() ).run();
+    }
+}
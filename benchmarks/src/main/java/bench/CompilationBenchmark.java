@@ -0,0 +1,80 @@
+package bench;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long javac takes to compile generated suites, both in a JVM that has
+ * never compiled anything and through a <tt>CompilationService</tt> that has
+ * been compiling for a while.
+ */
+@State( Scope.Benchmark )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( value = 2, jvmArgsAppend = {
+    "--add-exports", "jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED" } )
+public class CompilationBenchmark {
+
+    @Param( { "1", "100", "10000" } )
+    public int tests;
+
+    private Map<String, String> sources;
+    private List<File> classPath;
+    private Object warmService;
+
+    @Setup
+    public void setUp() throws Throwable {
+        this.classPath = Harness.classPath(
+                Harness.compileSubmission( "Target", Harness.targetSource( "Target", 10 ) ) );
+
+        Object generator = Harness.newGenerator( "CompiledSuite" );
+
+        for ( int i = 0; i < this.tests; i++ ) {
+            Harness.generateStaticTest( generator, "Target", "Twice" + i,
+                    Integer.toString( 2 * i ), "twice", Integer.toString( i ) );
+        }
+
+        this.sources = Collections.singletonMap( "CompiledSuite",
+                Harness.generateTestSuite( generator ) );
+        this.warmService = Harness.newCompilationService();
+    }
+
+    /**
+     * The first compilation in a fresh JVM, as a server that was just
+     * started sees it: every fork measures a single compilation, without
+     * any warmup.
+     */
+    @Benchmark
+    @BenchmarkMode( Mode.SingleShotTime )
+    @Warmup( iterations = 0 )
+    @Measurement( iterations = 1 )
+    @Fork( value = 10, jvmArgsAppend = {
+        "--add-exports", "jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED" } )
+    public Object compileCold() throws Throwable {
+        return Harness.compile( Harness.newCompilationService(), this.sources,
+                this.classPath );
+    }
+
+    /** Compilations through a service that is kept around, once javac is warm */
+    @Benchmark
+    @BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+    @Warmup( iterations = 5, time = 2 )
+    @Measurement( iterations = 5, time = 2 )
+    public Object compileWarm() throws Throwable {
+        return Harness.compile( this.warmService, this.sources, this.classPath );
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long requests take end to end through <tt>SuiteGeneratorAPI</tt>:
+ * batches of tests, with and without direct invocation, and single tests
+ * that are generated, compiled, loaded and run from scratch every time.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 2, jvmArgsAppend = { "-Dsuitegenerator.resultCache.size=0",
+    "--add-exports", "jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED" } )
+public class ExecutionBenchmark {
+
+    @Param( { "1", "100", "10000" } )
+    public int tests;
+
+    private File root;
+    private List<Object> batch;
+    private long suites;
+
+    @Setup
+    public void setUp() throws Throwable {
+        this.root = Harness.compileSubmission( "Target", Harness.targetSource( "Target", 10 ) );
+        this.batch = Harness.tests( "Target", this.tests );
+
+        //Read once the harness is first used
+        System.setProperty( "suitegenerator.root", this.root.getPath() );
+    }
+
+    /**
+     * A batch that was run before, so its literal tests are invoked directly
+     * and the rest come out of the compiled unit cache. The result cache is
+     * off in every fork, so that every test does run.
+     */
+    @Benchmark
+    public List<?> batch() throws Throwable {
+        return Harness.runTests( this.batch, "Batch", this.root );
+    }
+
+    /** The same batch with every test compiled */
+    @Benchmark
+    @Fork( value = 2, jvmArgsAppend = { "-Dsuitegenerator.direct=false",
+        "-Dsuitegenerator.resultCache.size=0", "--add-exports", "jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED" } )
+    public List<?> batchCompiled() throws Throwable {
+        return Harness.runTests( this.batch, "Batch", this.root );
+    }
+
+    /**
+     * A single test in a suite of a new name, so that it misses every cache
+     * and pays for generation, javac, class loading and execution.
+     */
+    @Benchmark
+    @Fork( value = 2, jvmArgsAppend = { "-Dsuitegenerator.direct=false",
+        "-Dsuitegenerator.resultCache.size=0", "--add-exports", "jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED" } )
+    public String compileAndRun() throws Throwable {
+        return Harness.runAStaticTest( "Target", "Twice", "8", "twice", "4",
+                "Single" + this.suites++ );
+    }
+}
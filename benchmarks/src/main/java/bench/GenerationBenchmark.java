@@ -0,0 +1,70 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long it takes to turn tests into source: adding them to a
+ * <tt>TestSuiteGenerator</tt>, rendering the whole suite, and splitting it
+ * into the units that batches are compiled in.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+public class GenerationBenchmark {
+
+    @Param( { "1", "100", "10000" } )
+    public int tests;
+
+    //A generator that already holds every test
+    private Object generator;
+
+    @Setup
+    public void setUp() throws Throwable {
+        this.generator = build();
+    }
+
+    private Object build() throws Throwable {
+        Object generator = Harness.newGenerator( "GeneratedSuite" );
+
+        for ( int i = 0; i < this.tests; i++ ) {
+            Harness.generateStaticTest( generator, "Target", "Twice" + i,
+                    Integer.toString( 2 * i ), "twice", Integer.toString( i ) );
+        }
+
+        return generator;
+    }
+
+    /** Adding every test, then rendering the suite, as a single request does */
+    @Benchmark
+    public String addAndGenerate() throws Throwable {
+        return Harness.generateTestSuite( build() );
+    }
+
+    /** Rendering a suite whose tests were already added */
+    @Benchmark
+    public String generateTestSuite() throws Throwable {
+        return Harness.generateTestSuite( this.generator );
+    }
+
+    /** Splitting a batch into the units it is compiled in */
+    @Benchmark
+    public List<?> generateTestUnits() throws Throwable {
+        return Harness.generateTestUnits( this.generator, 32 );
+    }
+}
@@ -0,0 +1,304 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Calls into the harness for the benchmarks. The harness lives in the
+ * default package, which classes in a package can not refer to, and JMH
+ * refuses benchmarks in the default package, so every entry point the
+ * benchmarks use is looked up here once, as a method handle.
+ *
+ * Benchmarks have to be run from the top of the repository, since that is
+ * where the harness reads its <tt>generation_templates</tt> from.
+ */
+final class Harness {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final MethodHandle NEW_GENERATOR;
+    private static final MethodHandle GENERATE_STATIC_TEST;
+    private static final MethodHandle GENERATE_TEST_SUITE;
+    private static final MethodHandle GENERATE_TEST_UNITS;
+    private static final MethodHandle STATIC_TEST_SPEC;
+    private static final MethodHandle RUN_TESTS;
+    private static final MethodHandle RUN_A_STATIC_TEST;
+    private static final MethodHandle NEW_COMPILATION_SERVICE;
+    private static final MethodHandle COMPILE;
+    private static final MethodHandle SUCCEEDED;
+    private static final MethodHandle ANALYZE_METHODS;
+    private static final MethodHandle ANALYZE_CLASS_FILE;
+    private static final MethodHandle TO_JSON;
+    private static final MethodHandle NEW_TYPE_GRAPH;
+
+    static {
+        try {
+            //Nothing is initialized yet, so benchmarks can still configure
+            //the harness through system properties in their setup
+            Class<?> generator = harnessClass( "TestSuiteGenerator" );
+            Class<?> api = harnessClass( "SuiteGeneratorAPI" );
+            Class<?> spec = harnessClass( "TestSpec" );
+            Class<?> service = harnessClass( "CompilationService" );
+            Class<?> compilation = harnessClass( "CompilationResult" );
+            Class<?> analyzer = harnessClass( "ClassInfoAnalyzer" );
+            Class<?> types = harnessClass( "TypeGraph" );
+
+            NEW_GENERATOR = LOOKUP.findConstructor( generator,
+                    MethodType.methodType( void.class, String.class ) );
+            GENERATE_STATIC_TEST = LOOKUP.findVirtual( generator, "generateStaticTest",
+                    MethodType.methodType( void.class, String.class, String.class,
+                        String.class, String.class, String.class ) );
+            GENERATE_TEST_SUITE = LOOKUP.findVirtual( generator, "generateTestSuite",
+                    MethodType.methodType( String.class ) );
+            GENERATE_TEST_UNITS = LOOKUP.findVirtual( generator, "generateTestUnits",
+                    MethodType.methodType( List.class, int.class ) );
+            STATIC_TEST_SPEC = LOOKUP.findStatic( spec, "staticTest",
+                    MethodType.methodType( spec, String.class, String.class,
+                        String.class, String.class, String.class ) );
+            RUN_TESTS = LOOKUP.findStatic( api, "runTests",
+                    MethodType.methodType( List.class, List.class, String.class, File.class ) );
+            RUN_A_STATIC_TEST = LOOKUP.findStatic( api, "runAStaticTest",
+                    MethodType.methodType( String.class, String.class, String.class,
+                        String.class, String.class, String.class, String.class ) );
+            NEW_COMPILATION_SERVICE = LOOKUP.findConstructor( service,
+                    MethodType.methodType( void.class, JavaCompiler.class, int.class ) );
+            COMPILE = LOOKUP.findVirtual( service, "compile",
+                    MethodType.methodType( compilation, Map.class, List.class ) );
+            SUCCEEDED = LOOKUP.findVirtual( compilation, "succeeded",
+                    MethodType.methodType( boolean.class ) );
+            ANALYZE_METHODS = LOOKUP.findStatic( analyzer, "analyzeMethods",
+                    MethodType.methodType( String.class, Class.class ) );
+            ANALYZE_CLASS_FILE = LOOKUP.findStatic( analyzer, "analyzeClassFile",
+                    MethodType.methodType( String.class, byte[].class, types ) );
+            TO_JSON = LOOKUP.findStatic( analyzer, "toJson",
+                    MethodType.methodType( String.class, byte[].class, ClassLoader.class ) );
+            NEW_TYPE_GRAPH = LOOKUP.findConstructor( types,
+                    MethodType.methodType( void.class, ClassLoader.class ) );
+        }
+        catch( ReflectiveOperationException roe ) {
+            throw new ExceptionInInitializerError( roe );
+        }
+    }
+
+    /** Empty Constructor */
+    private Harness() { }
+
+    private static Class<?> harnessClass( String name ) throws ClassNotFoundException {
+        return Class.forName( name, false, Harness.class.getClassLoader() );
+    }
+
+    /**
+     * @return A new <tt>TestSuiteGenerator</tt>.
+     */
+    static Object newGenerator( String suiteName ) throws Throwable {
+        return NEW_GENERATOR.invoke( suiteName );
+    }
+
+    static void generateStaticTest( Object generator, String className, String testName,
+            String expectedValue, String methodName, String methodArguments ) throws Throwable {
+        GENERATE_STATIC_TEST.invoke( generator, className, testName, expectedValue,
+                methodName, methodArguments );
+    }
+
+    static String generateTestSuite( Object generator ) throws Throwable {
+        return (String) GENERATE_TEST_SUITE.invoke( generator );
+    }
+
+    static List<?> generateTestUnits( Object generator, int unitSize ) throws Throwable {
+        return (List<?>) GENERATE_TEST_UNITS.invoke( generator, unitSize );
+    }
+
+    /**
+     * @return A new <tt>TestSpec</tt> of a static test.
+     */
+    static Object staticTest( String className, String testName, String expectedValue,
+            String methodName, String methodArguments ) throws Throwable {
+        return STATIC_TEST_SPEC.invoke( className, testName, expectedValue, methodName,
+                methodArguments );
+    }
+
+    /**
+     * @return The <tt>TestResult</tt> of every test.
+     */
+    static List<?> runTests( List<?> tests, String suiteName, File root ) throws Throwable {
+        return (List<?>) RUN_TESTS.invoke( tests, suiteName, root );
+    }
+
+    static String runAStaticTest( String className, String testName, String expectedValue,
+            String methodName, String methodArguments, String suiteName ) throws Throwable {
+        return (String) RUN_A_STATIC_TEST.invoke( className, testName, expectedValue,
+                methodName, methodArguments, suiteName );
+    }
+
+    /**
+     * @return A new <tt>CompilationService</tt> using the system compiler.
+     */
+    static Object newCompilationService() throws Throwable {
+        return NEW_COMPILATION_SERVICE.invoke( ToolProvider.getSystemJavaCompiler(), 1 );
+    }
+
+    /**
+     * @return The <tt>CompilationResult</tt>, which must have succeeded.
+     */
+    static Object compile( Object service, Map<String, String> sources,
+            List<File> classPath ) throws Throwable {
+        Object compilation = COMPILE.invoke( service, sources, classPath );
+
+        if( ! (boolean) SUCCEEDED.invoke( compilation ) ) {
+            throw new IllegalStateException( "Benchmark sources did not compile: " + compilation );
+        }
+
+        return compilation;
+    }
+
+    static String analyzeMethods( Class<?> classToAnalyze ) throws Throwable {
+        return (String) ANALYZE_METHODS.invoke( classToAnalyze );
+    }
+
+    static String analyzeClassFile( byte[] classFile, ClassLoader resources ) throws Throwable {
+        return (String) ANALYZE_CLASS_FILE.invoke( classFile,
+                NEW_TYPE_GRAPH.invoke( resources ) );
+    }
+
+    static String toJson( byte[] classFile, ClassLoader resources ) throws Throwable {
+        return (String) TO_JSON.invoke( classFile, resources );
+    }
+
+    /**
+     * Compiles a class under test into a new temporary directory, the way a
+     * submission is compiled before it is tested.
+     * @param className The name of the class, in the default package.
+     * @param source Its source.
+     * @return The directory it was compiled into.
+     */
+    static File compileSubmission( String className, String source ) throws IOException {
+        Path root = Files.createTempDirectory( "suitegenerator-bench" );
+        Path file = root.resolve( className + ".java" );
+        Files.write( file, source.getBytes( "UTF-8" ) );
+
+        int status = ToolProvider.getSystemJavaCompiler().run( null, null, null,
+                "-nowarn", "-d", root.toString(), file.toString() );
+
+        if( status != 0 ) {
+            throw new IllegalStateException( "Could not compile " + className );
+        }
+
+        return root.toFile();
+    }
+
+    /**
+     * @return The class path that the harness compiles suites of a
+     * submission against: the submission, then the harness itself.
+     */
+    static List<File> classPath( File root ) {
+        List<File> classPath = new ArrayList<>();
+        classPath.add( root );
+
+        for ( String entry : System.getProperty( "java.class.path" ).split( File.pathSeparator ) ) {
+            if( ! entry.isEmpty() ) {
+                classPath.add( new File( entry ) );
+            }
+        }
+
+        return classPath;
+    }
+
+    /**
+     * @return The source of a class with <tt>methods</tt> static methods that
+     * take and return a mix of primitives, strings, arrays and objects, like
+     * a large submission would.
+     */
+    static String targetSource( String className, int methods ) {
+        String[] types = { "int", "long", "double", "boolean", "String", "int[]",
+            "java.util.List<String>", "StringBuilder" };
+        StringBuilder sb = new StringBuilder( "public class " ).append( className )
+            .append( " {\n" );
+
+        for ( int i = 0; i < methods; i++ ) {
+            String returned = types[ i % types.length ];
+            sb.append( "    public static " ).append( returned ).append( " m" ).append( i )
+                .append( "(" );
+
+            for ( int p = 0; p <= i % 4; p++ ) {
+                sb.append( p == 0 ? "" : ", " ).append( types[ ( i + p ) % types.length ] )
+                    .append( " p" ).append( p );
+            }
+
+            sb.append( ") { return " ).append( defaultValue( returned ) ).append( "; }\n" );
+        }
+
+        //What the generated tests call
+        sb.append( "    public static int twice(int a) { return 2 * a; }\n" );
+        sb.append( "    public static String greet(String s) { return \"hi \" + s; }\n" );
+        sb.append( "}\n" );
+
+        return sb.toString();
+    }
+
+    private static String defaultValue( String type ) {
+        switch( type ) {
+            case "int":     return "0";
+            case "long":    return "0L";
+            case "double":  return "0.0";
+            case "boolean": return "false";
+            default:        return "null";
+        }
+    }
+
+    /**
+     * @return <tt>count</tt> static tests of <tt>Target</tt>, half of them
+     * only using literals and half of them calling a constructor, so that
+     * some can be invoked directly and the rest have to be compiled.
+     */
+    static List<Object> tests( String className, int count ) throws Throwable {
+        List<Object> tests = new ArrayList<>( count );
+
+        for ( int i = 0; i < count; i++ ) {
+            tests.add( i % 2 == 0
+                    ? staticTest( className, "Twice" + i, Integer.toString( 2 * i ), "twice",
+                        Integer.toString( i ) )
+                    : staticTest( className, "Greet" + i, "\"hi " + i + "\"", "greet",
+                        "new String( \"" + i + "\" )" ) );
+        }
+
+        return Collections.unmodifiableList( tests );
+    }
+
+    /**
+     * Silences standard out and standard error, which the report of
+     * <tt>ClassInfoAnalyzer</tt> is written to, so that printing it is
+     * measured without flooding the benchmark's own output.
+     * @return The streams to restore afterwards.
+     */
+    static PrintStream[] silence() {
+        PrintStream[] original = { System.out, System.err };
+        PrintStream none = new PrintStream( OutputStream.nullOutputStream() );
+
+        System.setOut( none );
+        System.setErr( none );
+
+        return original;
+    }
+
+    static void restore( PrintStream[] original ) {
+        System.setOut( original[0] );
+        System.setErr( original[1] );
+    }
+}
@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnalysisIndexTest {
+
+    @TempDir
+    File dir;
+
+    private static String key( int i ) {
+        return AnalysisIndex.key( new byte[] { (byte) i }, "test" );
+    }
+
+    @Test
+    void analysesSurviveReopening() throws IOException {
+        File file = new File( this.dir, "index" );
+
+        try( AnalysisIndex index = new AnalysisIndex( file ) ) {
+            for ( int i = 0; i < 100; i++ ) {
+                index.put( key( i ), "analysis " + i + " é" );
+            }
+
+            //Held back analyses are found before they are written
+            assertEquals( "analysis 7 é", index.get( key( 7 ) ) );
+        }
+
+        try( AnalysisIndex index = new AnalysisIndex( file ) ) {
+            assertEquals( 100, index.size() );
+
+            for ( int i = 0; i < 100; i++ ) {
+                assertEquals( "analysis " + i + " é", index.get( key( i ) ) );
+            }
+
+            assertNull( index.get( key( 100 ) ) );
+        }
+    }
+
+    @Test
+    void analysesAreSharedBetweenOpenIndexes() throws IOException {
+        File file = new File( this.dir, "index" );
+
+        try( AnalysisIndex writer = new AnalysisIndex( file );
+             AnalysisIndex reader = new AnalysisIndex( file ) ) {
+            assertNull( reader.get( key( 1 ) ) );
+
+            writer.put( key( 1 ), "first" );
+            writer.flush();
+
+            assertEquals( "first", reader.get( key( 1 ) ) );
+
+            //The first analysis of a class is the one that is kept
+            reader.put( key( 1 ), "second" );
+            reader.put( key( 2 ), "other" );
+            reader.flush();
+
+            assertEquals( "first", writer.get( key( 1 ) ) );
+            assertEquals( "other", writer.get( key( 2 ) ) );
+        }
+    }
+
+    @Test
+    void uncommittedRecordsAreIgnored() throws IOException {
+        File file = new File( this.dir, "index" );
+
+        try( AnalysisIndex index = new AnalysisIndex( file ) ) {
+            index.put( key( 1 ), "committed" );
+        }
+
+        //A process that died while appending leaves records past the committed length
+        Files.write( file.toPath(), new byte[ 50 ], StandardOpenOption.APPEND );
+
+        try( AnalysisIndex index = new AnalysisIndex( file ) ) {
+            assertEquals( 1, index.size() );
+            assertEquals( "committed", index.get( key( 1 ) ) );
+
+            index.put( key( 2 ), "appended" );
+        }
+
+        try( AnalysisIndex index = new AnalysisIndex( file ) ) {
+            assertEquals( 2, index.size() );
+            assertEquals( "appended", index.get( key( 2 ) ) );
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        File file = new File( this.dir, "other" );
+        Files.write( file.toPath(), "not an index at all".getBytes( StandardCharsets.UTF_8 ) );
+
+        assertThrows( IOException.class, () -> new AnalysisIndex( file ) );
+    }
+
+    @Test
+    void keysDependOnTheVariant() {
+        byte[] classFile = { 1, 2, 3 };
+
+        assertEquals( 64, AnalysisIndex.key( classFile ).length() );
+        assertEquals( AnalysisIndex.key( classFile ), AnalysisIndex.key( classFile, "" ) );
+        assertNotEquals( AnalysisIndex.key( classFile, "a" ), AnalysisIndex.key( classFile, "b" ) );
+    }
+}
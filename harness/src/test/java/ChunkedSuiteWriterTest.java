@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChunkedSuiteWriterTest {
+
+    private static final String CALC =
+        "public class Calc {\n"
+        + "    private final int base;\n"
+        + "    public Calc( int base ) { this.base = base; }\n"
+        + "    public int add( int n ) { return base + n; }\n"
+        + "    public static int twice( int n ) { return 2 * n; }\n"
+        + "}\n";
+
+    @TempDir
+    File dir;
+
+    private List<String> write( String tests, int partSize ) throws IOException {
+        return ChunkedSuiteWriter.write( new StringReader( tests ), "BigSuite",
+                ChunkedSuiteWriter.directory( this.dir ), partSize );
+    }
+
+    private Method main( List<String> classNames ) throws Exception {
+        List<File> files = new ArrayList<>();
+
+        for ( String className : classNames ) {
+            files.add( new File( this.dir, className + ".java" ) );
+        }
+
+        TestClasses.compile( this.dir, Collections.singletonMap( "Calc", CALC ) );
+        TestClasses.compile( this.dir, files );
+
+        ClassLoader loader = new URLClassLoader( new URL[] { this.dir.toURI().toURL() },
+                getClass().getClassLoader() );
+        return loader.loadClass( "BigSuite" ).getMethod( "main", String[].class );
+    }
+
+    @Test
+    void splitsLargeSuitesIntoParts() throws Exception {
+        StringBuilder tests = new StringBuilder();
+
+        for ( int i = 0; i < 1200; i++ ) {
+            tests.append( "static\tCalc\tTwice\t" + ( 2 * i ) + "\ttwice\t" + i + "\n" );
+            tests.append( "standard\tCalc\tc\tadd\tAdd\t" + i + "\t" + ( i + 5 ) + "\t5\n" );
+        }
+
+        List<String> classNames = write( tests.toString(), 500 );
+
+        //2400 tests in parts of 500, then the suite class
+        assertEquals( Arrays.asList( "BigSuitePart0", "BigSuitePart1", "BigSuitePart2",
+                    "BigSuitePart3", "BigSuitePart4", "BigSuite" ), classNames );
+
+        //Every test runs, under a name of its own
+        main( classNames ).invoke( null, (Object) new String[0] );
+    }
+
+    @Test
+    void failingTestsFailTheSuite() throws Exception {
+        List<String> classNames = write( "static\tCalc\tTwice\t4\ttwice\t2\n"
+                + "\n"
+                + "static\tCalc\tTwice\t5\ttwice\t2\n", 1 );
+
+        assertEquals( 3, classNames.size() );
+
+        InvocationTargetException thrown = assertThrows( InvocationTargetException.class,
+                () -> main( classNames ).invoke( null, (Object) new String[0] ) );
+        assertTrue( thrown.getCause() instanceof AssertionException, thrown.getCause().toString() );
+    }
+
+    @Test
+    void rejectsLinesThatAreNotTests() {
+        assertThrows( IllegalArgumentException.class,
+                () -> write( "static\tCalc\tTwice\t4\n", 10 ) );
+    }
+}
@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClassFileInfoTest {
+
+    @TempDir
+    File dir;
+
+    private ClassFileInfo parse( String className, String source ) throws IOException {
+        TestClasses.compile( this.dir, Collections.singletonMap( className, source ) );
+        return ClassFileInfo.parse( TestClasses.classFile( this.dir, className ) );
+    }
+
+    @Test
+    void readsTheShapeOfAClass() throws IOException {
+        ClassFileInfo info = parse( "Shape",
+                "import java.io.*;\n"
+                + "public abstract class Shape implements Serializable, Comparable<Shape> {\n"
+                + "    public static final long BIG = 1L << 40;\n"
+                + "    private double area = 1.5;\n"
+                + "    protected String[][] names;\n"
+                + "    public Shape( int sides ) { }\n"
+                + "    public abstract int compareTo( Shape other );\n"
+                + "    public static int sum( int... values ) { return values.length; }\n"
+                + "    void read( char c, long[] l, Object o ) throws IOException, InterruptedException { }\n"
+                + "}\n" );
+
+        assertEquals( "Shape", info.getName() );
+        assertEquals( "java.lang.Object", info.getSuperName() );
+        assertEquals( Arrays.asList( "java.io.Serializable", "java.lang.Comparable" ), info.getInterfaces() );
+        assertTrue( ( info.getAccess() & ClassFileInfo.ACC_ABSTRACT ) != 0 );
+
+        Map<String, String> fields = new HashMap<>();
+        for ( ClassFileInfo.FieldInfo field : info.getFields() ) {
+            fields.put( field.getName(), field.getDescriptor() );
+        }
+
+        assertEquals( "J", fields.get( "BIG" ) );
+        assertEquals( "D", fields.get( "area" ) );
+        assertEquals( "[[Ljava/lang/String;", fields.get( "names" ) );
+
+        Map<String, ClassFileInfo.MethodInfo> methods = new HashMap<>();
+        for ( ClassFileInfo.MethodInfo method : info.getMethods() ) {
+            methods.put( method.getName() + method.getDescriptor(), method );
+        }
+
+        assertTrue( methods.get( "<init>(I)V" ).isConstructor() );
+        assertTrue( ( methods.get( "sum([I)I" ).getAccess() & ClassFileInfo.ACC_VARARGS ) != 0 );
+        assertTrue( ( methods.get( "compareTo(Ljava/lang/Object;)I" ).getAccess() & ClassFileInfo.ACC_BRIDGE ) != 0 );
+
+        ClassFileInfo.MethodInfo read = methods.get( "read(C[JLjava/lang/Object;)V" );
+        assertEquals( Arrays.asList( "C", "[J", "Ljava/lang/Object;" ), read.getParameterDescriptors() );
+        assertEquals( "V", read.getReturnDescriptor() );
+        assertEquals( Arrays.asList( "java.io.IOException", "java.lang.InterruptedException" ),
+                read.getExceptions() );
+    }
+
+    @Test
+    void readsEnumsAndConstants() throws IOException {
+        ClassFileInfo info = parse( "Color",
+                "public enum Color {\n"
+                + "    RED, GREEN;\n"
+                + "    static final String NAME = \"color\";\n"
+                + "    static final float F = 1.5f;\n"
+                + "    static final double D = 2.5;\n"
+                + "}\n" );
+
+        assertTrue( info.isEnum() );
+        assertEquals( "java.lang.Enum", info.getSuperName() );
+
+        int constants = 0;
+        for ( ClassFileInfo.FieldInfo field : info.getFields() ) {
+            if( field.isEnumConstant() ) {
+                constants++;
+            }
+        }
+
+        assertEquals( 2, constants );
+    }
+
+    @Test
+    void convertsDescriptors() {
+        assertEquals( "java.lang.String[][]", ClassFileInfo.typeName( "[[Ljava/lang/String;" ) );
+        assertEquals( "int", ClassFileInfo.typeName( "I" ) );
+        assertEquals( "[Ljava.lang.String;", ClassFileInfo.binaryName( "[Ljava/lang/String;" ) );
+        assertEquals( "boolean", ClassFileInfo.binaryName( "Z" ) );
+        assertEquals( Collections.emptyList(), ClassFileInfo.parameterDescriptors( "()V" ) );
+        assertEquals( "[Ljava/util/List;", ClassFileInfo.returnDescriptor( "(J)[Ljava/util/List;" ) );
+    }
+
+    @Test
+    void rejectsWhatIsNotAClassFile() {
+        assertThrows( IOException.class, () -> ClassFileInfo.parse( new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 } ) );
+        assertThrows( IOException.class, () -> ClassFileInfo.parse(
+                new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52 } ) );
+    }
+}
@@ -0,0 +1,164 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import java.lang.reflect.Method;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Instruments a class that has a loop, a switch, a try and a synchronized
+ * block, and checks that it still verifies, behaves the same and reports
+ * what it ran. The tests run with <tt>-Xverify:all</tt>.
+ */
+class CoverageInstrumenterTest {
+
+    private static final String SAMPLE =
+        "public class Sample {\n"
+        + "    private static final Object lock = new Object();\n"
+        + "    private static int count;\n"
+        + "\n"
+        + "    public static int loop( int n ) {\n"
+        + "        int sum = 0;\n"
+        + "        for ( int i = 0; i < n; i++ ) {\n"
+        + "            sum += i;\n"
+        + "        }\n"
+        + "        return sum;\n"
+        + "    }\n"
+        + "\n"
+        + "    public static String kind( int n ) {\n"
+        + "        switch( n ) {\n"
+        + "            case 0: return \"zero\";\n"
+        + "            case 1: return \"one\";\n"
+        + "            case 2: return \"two\";\n"
+        + "            default: return \"many\";\n"
+        + "        }\n"
+        + "    }\n"
+        + "\n"
+        + "    public static int parse( String s ) {\n"
+        + "        try {\n"
+        + "            return Integer.parseInt( s );\n"
+        + "        }\n"
+        + "        catch( NumberFormatException e ) {\n"
+        + "            return -1;\n"
+        + "        }\n"
+        + "    }\n"
+        + "\n"
+        + "    public static int increment( boolean twice ) {\n"
+        + "        synchronized( lock ) {\n"
+        + "            count++;\n"
+        + "            if( twice ) {\n"
+        + "                count++;\n"
+        + "            }\n"
+        + "            return count;\n"
+        + "        }\n"
+        + "    }\n"
+        + "\n"
+        + "    public static int unused( int n ) {\n"
+        + "        return n > 0 ? n : -n;\n"
+        + "    }\n"
+        + "}\n";
+
+    @TempDir
+    File dir;
+
+    private static final class DefiningLoader extends ClassLoader {
+        DefiningLoader() {
+            super( CoverageInstrumenterTest.class.getClassLoader() );
+        }
+
+        Class<?> define( String name, byte[] classFile ) {
+            return defineClass( name, classFile, 0, classFile.length );
+        }
+    }
+
+    @Test
+    void instrumentedClassVerifiesAndReportsCoverage() throws Exception {
+        TestClasses.compile( this.dir, Collections.singletonMap( "Sample", SAMPLE ) );
+        byte[] classFile = TestClasses.classFile( this.dir, "Sample" );
+
+        try( Coverage coverage = new Coverage() ) {
+            byte[] instrumented = coverage.instrument( "Sample", classFile );
+            assertNotSame( classFile, instrumented );
+
+            //Initializing links the class, which verifies every method
+            Class<?> sample = new DefiningLoader().define( "Sample", instrumented );
+            Class.forName( "Sample", true, sample.getClassLoader() );
+
+            assertEquals( 3, invoke( sample, "loop", int.class, 3 ) );
+            assertEquals( "zero", invoke( sample, "kind", int.class, 0 ) );
+            assertEquals( "many", invoke( sample, "kind", int.class, 7 ) );
+            assertEquals( 12, invoke( sample, "parse", String.class, "12" ) );
+            assertEquals( 1, invoke( sample, "increment", boolean.class, false ) );
+
+            Map<String, Coverage.MethodCoverage> methods = new HashMap<>();
+            for ( Coverage.MethodCoverage method : coverage.getMethods() ) {
+                assertTrue( method.isInstrumented(), method.getName() );
+                methods.put( method.getName(), method );
+            }
+
+            Coverage.MethodCoverage loop = methods.get( "loop" );
+            assertEquals( loop.getLines(), loop.getCoveredLines() );
+            assertEquals( 2, loop.getBranches() );
+            assertEquals( 2, loop.getCoveredBranches() );
+
+            //Two of the four ways out of the switch, and none of the cases not taken
+            Coverage.MethodCoverage kind = methods.get( "kind" );
+            assertEquals( 4, kind.getBranches() );
+            assertEquals( 2, kind.getCoveredBranches() );
+            assertEquals( 2, kind.getMissedLines().size() );
+
+            //The handler never ran
+            Coverage.MethodCoverage parse = methods.get( "parse" );
+            assertEquals( 2, parse.getMissedLines().size() );
+
+            Coverage.MethodCoverage increment = methods.get( "increment" );
+            assertEquals( 2, increment.getBranches() );
+            assertEquals( 1, increment.getCoveredBranches() );
+            //The second increment, and where the lock is released when the block throws
+            assertEquals( Arrays.asList( 35, 38 ), increment.getMissedLines() );
+
+            Coverage.MethodCoverage unused = methods.get( "unused" );
+            assertEquals( 0, unused.getCoveredLines() );
+            assertEquals( 0, unused.getCoveredBranches() );
+        }
+    }
+
+    @Test
+    void instrumentedClassBehavesTheSame() throws Exception {
+        TestClasses.compile( this.dir, Collections.singletonMap( "Sample", SAMPLE ) );
+        byte[] classFile = TestClasses.classFile( this.dir, "Sample" );
+
+        try( Coverage coverage = new Coverage() ) {
+            Class<?> plain = new DefiningLoader().define( "Sample", classFile );
+            Class<?> instrumented = new DefiningLoader().define( "Sample",
+                    coverage.instrument( "Sample", classFile ) );
+
+            for ( int n = -2; n < 6; n++ ) {
+                assertEquals( invoke( plain, "loop", int.class, n ), invoke( instrumented, "loop", int.class, n ) );
+                assertEquals( invoke( plain, "kind", int.class, n ), invoke( instrumented, "kind", int.class, n ) );
+                assertEquals( invoke( plain, "unused", int.class, n ), invoke( instrumented, "unused", int.class, n ) );
+                assertEquals( invoke( plain, "increment", boolean.class, n % 2 == 0 ),
+                        invoke( instrumented, "increment", boolean.class, n % 2 == 0 ) );
+            }
+
+            for ( String s : new String[] { "1", "-40", "x", "" } ) {
+                assertEquals( invoke( plain, "parse", String.class, s ), invoke( instrumented, "parse", String.class, s ) );
+            }
+        }
+    }
+
+    private static Object invoke( Class<?> clazz, String name, Class<?> parameter,
+            Object argument ) throws Exception {
+        Method method = clazz.getMethod( name, parameter );
+        return method.invoke( null, argument );
+    }
+}
@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Keeps tests that are invoked directly in step with the same tests compiled
+ * into a suite: both have to end the same way.
+ */
+class DirectInvokerTest {
+
+    private static final String CALC =
+        "public class Calc {\n"
+        + "    private final int base;\n"
+        + "    public Calc() { this( 0 ); }\n"
+        + "    public Calc( int base ) { this.base = base; }\n"
+        + "    public int add( int a, int b ) { return base + a + b; }\n"
+        + "    public static double ninetySeven() { return 97; }\n"
+        + "    public static float half( int n ) { return n / 2f; }\n"
+        + "    public static long big( int n ) { return n * 1000000000L; }\n"
+        + "    public static char letter( int n ) { return (char) ( 'a' + n ); }\n"
+        + "    public static boolean even( int n ) { return n % 2 == 0; }\n"
+        + "    public static double tenth( int n ) { return 0.1 * n; }\n"
+        + "    public static String twice( String s ) { return s + s; }\n"
+        + "    public static int[] range( int n ) { int[] r = new int[n]; for ( int i = 0; i < n; i++ ) r[i] = i; return r; }\n"
+        + "    public static String nothing() { return null; }\n"
+        + "    public static int fail( int n ) { throw new IllegalStateException( \"no\" ); }\n"
+        + "}\n";
+
+    @TempDir
+    File root;
+
+    @Test
+    void charLiteralsAreWidenedLikeOtherIntegralOnes() {
+        DirectInvoker.check( "assertDouble", 'a', 97.0 );
+        DirectInvoker.check( "assertFloat", 'a', 97f );
+        DirectInvoker.check( "assertIntegral", 'a', 97L );
+
+        assertThrows( AssertionException.class, () -> DirectInvoker.check( "assertDouble", 'a', 98.0 ) );
+        assertThrows( AssertionException.class, () -> DirectInvoker.check( "assertFloat", 'b', 97f ) );
+    }
+
+    @Test
+    void directAndCompiledTestsAgree() throws Exception {
+        TestClasses.compile( this.root, Collections.singletonMap( "Calc", CALC ) );
+
+        List<TestSpec> tests = new ArrayList<>();
+        tests.add( TestSpec.standard( "Calc", "c", "add", "Add", "1, 2", "3", "" ) );
+        tests.add( TestSpec.standard( "Calc", "c", "add", "AddBase", "1, 2", "13", "10" ) );
+        tests.add( TestSpec.standard( "Calc", "c", "add", "AddWrong", "1, 2", "4", "" ) );
+        tests.add( TestSpec.staticTest( "Calc", "CharAsDouble", "'a'", "ninetySeven", "" ) );
+        tests.add( TestSpec.staticTest( "Calc", "CharAsFloat", "'a'", "half", "194" ) );
+        tests.add( TestSpec.staticTest( "Calc", "CharAsWrongFloat", "'b'", "half", "194" ) );
+        tests.add( TestSpec.staticTest( "Calc", "IntAsDouble", "97", "ninetySeven", "" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Big", "3000000000", "big", "3" ) );
+        tests.add( TestSpec.staticTest( "Calc", "BigAsInt", "3", "big", "3" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Letter", "'c'", "letter", "2" ) );
+        tests.add( TestSpec.staticTest( "Calc", "LetterAsInt", "99", "letter", "2" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Even", "true", "even", "4" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Odd", "true", "even", "3" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Tenth", "0.3", "tenth", "3" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Twice", "\"abab\"", "twice", "\"ab\"" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Range", "new int[] { 0, 1, 2 }", "range", "3" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Nothing", "null", "nothing", "" ) );
+        tests.add( TestSpec.staticTest( "Calc", "Fail", "1", "fail", "1" ) );
+
+        List<TestResult> direct = SuiteGeneratorAPI.runTests( tests, "DirectSuite", this.root );
+        List<TestResult> compiled;
+
+        //Tests that record coverage are always compiled
+        try( Coverage coverage = new Coverage() ) {
+            compiled = SuiteGeneratorAPI.runTests( tests, "CompiledSuite", this.root, coverage );
+        }
+
+        assertEquals( tests.size(), direct.size() );
+        assertEquals( tests.size(), compiled.size() );
+
+        for ( int i = 0; i < tests.size(); i++ ) {
+            assertEquals( compiled.get( i ).getStatus(), direct.get( i ).getStatus(),
+                    tests.get( i ).getTestName() + ": " + direct.get( i ) + " vs " + compiled.get( i ) );
+        }
+
+        assertEquals( TestResult.Status.PASS, direct.get( 3 ).getStatus() );
+        assertEquals( TestResult.Status.PASS, direct.get( 4 ).getStatus() );
+        assertEquals( TestResult.Status.FAIL, direct.get( 5 ).getStatus() );
+    }
+}
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    //Every power of two is split into 32 buckets
+    private static final double PRECISION = 1.0 / 32;
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram( "empty" );
+
+        assertEquals( 0, histogram.getCount() );
+        assertEquals( 0, histogram.getPercentileNanos( 50 ) );
+        assertEquals( 0, histogram.getPercentileNanos( 100 ) );
+        assertEquals( 0.0, histogram.getMeanNanos() );
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram( "small" );
+
+        for ( int i = 1; i <= 31; i++ ) {
+            histogram.record( i );
+        }
+
+        assertEquals( 16, histogram.getPercentileNanos( 50 ) );
+        assertEquals( 31, histogram.getPercentileNanos( 100 ) );
+        assertEquals( 1, histogram.getPercentileNanos( 0 ) );
+    }
+
+    @Test
+    void percentilesAreWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram( "uniform" );
+        int count = 100000;
+
+        for ( int i = 1; i <= count; i++ ) {
+            histogram.record( i * 10L );
+        }
+
+        assertEquals( count, histogram.getCount() );
+        assertEquals( count * 10L, histogram.getMaxNanos() );
+
+        for ( double percentile : new double[] { 1, 10, 50, 90, 99, 99.9 } ) {
+            long exact = (long) Math.ceil( percentile / 100 * count ) * 10;
+            long reported = histogram.getPercentileNanos( percentile );
+
+            assertTrue( Math.abs( reported - exact ) <= exact * PRECISION,
+                    "p" + percentile + " was " + reported + ", not about " + exact );
+        }
+    }
+
+    @Test
+    void percentilesNeverExceedTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram( "single" );
+        histogram.record( 1000 );
+
+        long reported = histogram.getPercentileNanos( 99 );
+
+        assertTrue( reported <= 1000, "p99 was " + reported );
+        assertTrue( reported >= 1000 * ( 1 - PRECISION ), "p99 was " + reported );
+        assertEquals( 1000, histogram.getMaxNanos() );
+    }
+
+    @Test
+    void extremeValuesAreRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram( "extremes" );
+        histogram.record( -5 );
+        histogram.record( Long.MAX_VALUE );
+
+        assertEquals( 2, histogram.getCount() );
+        assertEquals( 0, histogram.getPercentileNanos( 50 ) );
+        assertEquals( Long.MAX_VALUE, histogram.getMaxNanos() );
+        assertTrue( histogram.getPercentileNanos( 100 ) >= Long.MAX_VALUE * ( 1 - PRECISION ) );
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles the sources that tests run against.
+ */
+final class TestClasses {
+
+    private TestClasses() {
+    }
+
+    /**
+     * Compiles sources into a directory, with debugging information.
+     * @param root Where the sources are written and compiled to.
+     * @param sources The source of each class, by its simple name.
+     * @return <tt>root</tt>
+     */
+    static File compile( File root, Map<String, String> sources ) throws IOException {
+        List<File> files = new ArrayList<>();
+
+        for ( Map.Entry<String, String> source : sources.entrySet() ) {
+            File file = new File( root, source.getKey() + ".java" );
+            Files.write( file.toPath(), source.getValue().getBytes( StandardCharsets.UTF_8 ) );
+            files.add( file );
+        }
+
+        return compile( root, files );
+    }
+
+    /**
+     * Compiles source files into a directory, with debugging information,
+     * against the classes already there and the test class path.
+     * @return <tt>root</tt>
+     */
+    static File compile( File root, List<File> files ) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> args = new ArrayList<>( Arrays.asList( "-g", "-d", root.getPath(),
+                    "-cp", root.getPath() + File.pathSeparator + System.getProperty( "java.class.path" ) ) );
+
+        for ( File file : files ) {
+            args.add( file.getPath() );
+        }
+
+        if( compiler.run( null, null, null, args.toArray( new String[0] ) ) != 0 ) {
+            throw new IOException( "Could not compile " + args );
+        }
+
+        return root;
+    }
+
+    /**
+     * @return The contents of a class file that <tt>compile</tt> wrote.
+     */
+    static byte[] classFile( File root, String className ) throws IOException {
+        return Files.readAllBytes( new File( root, className + ".class" ).toPath() );
+    }
+}
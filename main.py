@@ -13,12 +13,234 @@ import os.path
 import sys
 import subprocess
 import inspect
+import socket
+import threading
+import concurrent.futures
 
 from tornado.options import define, options, parse_command_line
 
 # Define the port that the server will be running on
 define("port", 8080)
 
+# Define the port that the resident SuiteGeneratorServer listens on
+define("suite_port", 4815)
+
+# Define how many SuiteGeneratorAPI processes may run at once when no server
+# can be reached
+define("fallback_processes", os.cpu_count() or 1)
+
+# Define how many requests may be waiting on the SuiteGeneratorServer at once.
+# Each holds a thread until its tests are done, so this has to stay above the
+# server's suitegenerator.scheduler.maxQueued (256 by default) for the server,
+# rather than this thread pool, to decide who waits and who is turned away
+define("suite_threads", 320)
+
+# Define whether the tests users run report which lines of their class they
+# reached
+define("coverage", False)
+
+# Define the file that class analyses are kept in, so that re-uploading an
+# unchanged class does not analyze it again
+define("analysis_index", "analysis.idx")
+
+class SuiteGeneratorBusy(Exception):
+    """""
+    Raised when a request was turned away because too many are waiting.
+    """
+    def __init__(self, retry_ms, queued):
+        Exception.__init__(self, 'Busy, retry in %s ms' % retry_ms)
+        self.retry_ms = int(retry_ms)
+        self.queued = int(queued)
+
+class SuiteGeneratorClient(object):
+    """""
+    Talks to a resident SuiteGeneratorServer so that every test case does not
+    start its own JVM. Falls back to running SuiteGeneratorAPI in a new process
+    when no server can be reached, with at most fallback_processes of those
+    running at once.
+
+    Requests are made on behalf of a user, so that the server can take turns
+    between users when it is saturated. While a request waits its turn,
+    on_queued is called with its place in line. Requests are blocking, so
+    they are made on the threads of executor, which is not shared with
+    anything else.
+    """
+    fallback = None
+    executor = None
+
+    def __init__(self, port, user='', on_queued=None):
+        self.port = port
+        self.user = user
+        self.on_queued = on_queued
+        self.sock = None
+        self.reader = None
+        if SuiteGeneratorClient.fallback is None:
+            SuiteGeneratorClient.fallback = threading.BoundedSemaphore(
+                    options.fallback_processes)
+        if SuiteGeneratorClient.executor is None:
+            SuiteGeneratorClient.executor = concurrent.futures.ThreadPoolExecutor(
+                    options.suite_threads, 'suite-client')
+
+    @staticmethod
+    def encode(fields):
+        """""
+        Joins fields into a single request line, escaping tabs, newlines and
+        backslashes.
+        """
+        escaped = []
+        for field in fields:
+            field = str(field).replace('\\', '\\\\').replace('\t', '\\t')
+            escaped.append(field.replace('\n', '\\n').replace('\r', '\\r'))
+        return '\t'.join(escaped) + '\n'
+
+    @staticmethod
+    def decode(line):
+        """""
+        Splits a response line back into its fields.
+        """
+        fields, acc, i = [], '', 0
+        while i < len(line):
+            c = line[i]
+            if c == '\t':
+                fields.append(acc)
+                acc = ''
+            elif c == '\\' and i + 1 < len(line):
+                i += 1
+                acc += {'t': '\t', 'n': '\n', 'r': '\r'}.get(line[i], line[i])
+            else:
+                acc += c
+            i += 1
+        fields.append(acc)
+        return fields
+
+    def request(self, fields):
+        """""
+        Sends a request to the server and returns the fields of its response.
+        """
+        if self.sock is None:
+            self.sock = socket.create_connection(('127.0.0.1', self.port))
+            self.reader = self.sock.makefile('r', encoding='utf-8', newline='\n')
+            if self.user:
+                self.exchange(['user', self.user])
+        response = self.exchange(fields)
+        if response[0] == 'BUSY':
+            raise SuiteGeneratorBusy(response[1], response[2])
+        return response
+
+    def exchange(self, fields):
+        """""
+        Writes a request line and reads lines until its response, reporting
+        any QUEUED lines along the way.
+        """
+        self.sock.sendall(self.encode(fields).encode('utf-8'))
+        while True:
+            line = self.reader.readline()
+            if not line:
+                raise IOError('The server closed the connection')
+            response = self.decode(line.rstrip('\n'))
+            if response[0] != 'QUEUED':
+                return response
+            if self.on_queued is not None:
+                self.on_queued(int(response[1]))
+
+    def run_process(self, args):
+        """""
+        Runs a single test in a new SuiteGeneratorAPI process, unless too many
+        of those are running already.
+        """
+        if not SuiteGeneratorClient.fallback.acquire(False):
+            raise SuiteGeneratorBusy(1000, 0)
+        try:
+            return subprocess.check_output(['java', 'SuiteGeneratorAPI'] + args).decode()
+        finally:
+            SuiteGeneratorClient.fallback.release()
+
+    def run(self, args):
+        """""
+        Runs a single test, with the same arguments that SuiteGeneratorAPI
+        accepts on the command line.
+        """
+        try:
+            response = self.request(['run'] + args)
+        except (OSError, IOError):
+            self.close()
+            return self.run_process(args)
+        if response[0] != 'OK':
+            raise RuntimeError(response[1])
+        return response[1]
+
+    def batch(self, suite_name, tests):
+        """""
+        Runs many static tests out of a single compiled suite. Each test is a
+        list of the static test arguments that SuiteGeneratorAPI accepts,
+        without the suite name. Returns a list of (test name, status, detail,
+        expected, actual, nanoseconds) tuples.
+        """
+        fields = ['batch', suite_name]
+        for test in tests:
+            fields += ['static'] + test
+        try:
+            response = self.request(fields)
+        except (OSError, IOError):
+            self.close()
+            results, names = [], set()
+            for test in tests:
+                # Tests that share a name are told apart the way the server does
+                name, i = test[1], 2
+                while name in names:
+                    name, i = test[1] + '_' + str(i), i + 1
+                names.add(name)
+                try:
+                    results.append((name, 'PASS', self.run_process(test + [suite_name]), '', '', '0'))
+                except subprocess.CalledProcessError as e:
+                    results.append((name, 'FAIL', str(e), '', '', '0'))
+            return results
+        if response[0] != 'OK':
+            raise RuntimeError(response[1])
+        return [tuple(response[i:i + 6]) for i in range(1, len(response), 6)]
+
+    def coverage(self, suite_name, tests):
+        """""
+        Runs static tests like batch, while recording which lines and branches
+        of the classes under test they reach. Returns the results of batch,
+        and a list of (class, method, descriptor, covered lines, lines,
+        covered branches, branches, missed lines) tuples. Without a server
+        the tests are run without coverage, and the list is empty.
+        """
+        fields = ['coverage', suite_name]
+        for test in tests:
+            fields += ['static'] + test
+        try:
+            response = self.request(fields)
+        except (OSError, IOError):
+            self.close()
+            return self.batch(suite_name, tests), []
+        if response[0] != 'OK':
+            raise RuntimeError(response[1])
+        end = 2 + 6 * int(response[1])
+        results = [tuple(response[i:i + 6]) for i in range(2, end, 6)]
+        methods = [tuple(response[i:i + 8]) for i in range(end, len(response), 8)]
+        return results, methods
+
+    def metrics(self):
+        """""
+        Returns the server's latency histograms, counters and cache statistics
+        as lines of text.
+        """
+        response = self.request(['metrics'])
+        if response[0] != 'OK':
+            raise RuntimeError(response[1])
+        return '\n'.join(response[1:]) + '\n'
+
+    def close(self):
+        """""
+        Closes the connection to the server, if there is one.
+        """
+        if self.sock is not None:
+            self.sock.close()
+        self.sock = None
+        self.reader = None
+
 class BaseHandler(tornado.web.RequestHandler):
     """""
     Gets and decodes current userid
@@ -37,6 +259,13 @@ class JavaHandler(BaseHandler):
     """
     methods = {}
 
+    # The ways of constructing every argument type, empty when the class could
+    # not be analyzed
+    types = {}
+
+    # The method fingerprints of the last upload of every user's class
+    fingerprints = {}
+
     def get(self):
         """"
         HTTP GET requests will simply redirect back to the homepage
@@ -74,14 +303,27 @@ class JavaHandler(BaseHandler):
         try:
             # Analyze the class file using the java tool "ClassInfoAnalyzer"
             class_name = self.filepath[:-5]
-            analyze=subprocess.check_output(['java', 'ClassInfoAnalyzer', class_name]).decode()
+            analyze=subprocess.check_output(['java', 'ClassInfoAnalyzer', '--json',
+                '--index', options.analysis_index, class_name]).decode()
 
             print("Analyze:", analyze )
-            print("Analyze(Sliced):", str( analyze[:-1] ))
 
-            # Parse the data generated
+            # Parse the data generated, which maps every method to its
+            # overloads' "(argument types)" and their return types, and
+            # every argument type to the ways of constructing it
             self.methods = {}
-            [self.methods.update(i) for i in eval(analyze)]
+            self.types = {}
+            record = json.loads(analyze)
+            self.methods.update(record['methods'])
+            self.types.update(record.get('types', {}))
+
+            # Report which methods changed since the user's last upload; the
+            # server itself reruns only the tests whose fingerprint changed
+            key = (self.get_current_user(), class_name)
+            previous = JavaHandler.fingerprints.get(key, {})
+            JavaHandler.fingerprints[key] = record.get('fingerprints', {})
+            print("Changed methods:", [m for m, f in JavaHandler.fingerprints[key].items()
+                if previous.get(m) != f])
         except Exception as e:
             print(e)
             self.write("Code could not be analyzed")
@@ -89,7 +331,8 @@ class JavaHandler(BaseHandler):
         # Render HTML content
         print("Methods:", self.methods)
         self.render("java.html",json = json.dumps(self.methods),
-                methods = self.methods, uri = self.request.host)
+                methods = self.methods, types = json.dumps(self.types),
+                uri = self.request.host)
 
 
 class PythonHandler(BaseHandler):
@@ -169,6 +412,16 @@ class JavaWebsocket(tornado.websocket.WebSocketHandler):
         """
         self.filename = self.get_secure_cookie('file')
         self.uid = self.get_secure_cookie('uid')
+        self.loop = tornado.ioloop.IOLoop.current()
+        self.suites = SuiteGeneratorClient(options.suite_port,
+                self.uid.decode() if self.uid else '', self.queued)
+
+    def queued(self, position):
+        """""
+        Tells the user their place in line. Called from the thread their tests
+        are run on.
+        """
+        self.loop.add_callback(self.write_message, json.dumps({'queued': position}))
 
     def unbox_array(self, array):
         """""
@@ -178,21 +431,50 @@ class JavaWebsocket(tornado.websocket.WebSocketHandler):
         for i in array: acc += str(i)+','
         return acc
 
-    def on_message(self, message):
+    async def on_message(self, message):
         """""
-        Executes java tests using the passed values
+        Executes java tests using the passed values. The tests run on a thread
+        of the suite client's own executor, so that waiting for them does not
+        hold up other users, and the next message of this user is only read
+        once they are done.
         """
         print(str(self.uid) + " says " + str(message))
         message = json.loads(message) #Message is in format {"method":{"expected_val":["args"]}}
+        class_name = str(self.filename[:-5].decode())
+        tests = []
         for call in list(message):  #method dictionary key
             for case in list(message[call]): #expected return value
-                self.write_message(str(subprocess.check_output(['java', 'SuiteGeneratorAPI', str(self.filename[:-5].decode()), str('Test'+call), str(case), str(call), self.unbox_array(message[call][case][:-1])[:-1], call+"Tests"])))
+                tests.append([class_name, str('Test'+call), str(case), str(call), self.unbox_array(message[call][case][:-1])[:-1]])
+
+        # Compile and run every case of this message as one suite
+        try:
+            if options.coverage:
+                results, methods = await self.loop.run_in_executor(
+                        SuiteGeneratorClient.executor, self.suites.coverage,
+                        class_name + "Tests", tests)
+            else:
+                results, methods = await self.loop.run_in_executor(
+                        SuiteGeneratorClient.executor, self.suites.batch,
+                        class_name + "Tests", tests), None
+        except SuiteGeneratorBusy as busy:
+            self.write_message(json.dumps({'busy': {'retry_ms': busy.retry_ms,
+                'queued': busy.queued}}))
+            return
+        self.write_message(json.dumps({result[0]: {'status': result[1], 'detail': result[2],
+            'expected': result[3], 'actual': result[4], 'nanos': int(result[5])} for result in results}))
+        if methods is not None:
+            self.write_message(json.dumps({'coverage': [{'class': m[0], 'method': m[1],
+                'descriptor': m[2], 'lines': [int(m[3]), int(m[4])],
+                'branches': [int(m[5]), int(m[6])],
+                'missed': [int(line) for line in m[7].split(',') if line]}
+                for m in methods]}))
 
     def on_close(self):
         """""
         Prints a message to the terminal when a user exists, along with their
         user id.
         """
+        self.suites.close()
         print("Goodbye, "+str(self.uid))
 
 class PythonWebSocket(tornado.websocket.WebSocketHandler):
@@ -268,6 +550,26 @@ class PythonWebSocket(tornado.websocket.WebSocketHandler):
         """
         print("Goodbye, "+str(self.uid))
 
+class MetricsHandler(tornado.web.RequestHandler):
+    """""
+    Serves the metrics of the resident SuiteGeneratorServer as plain text, to
+    local clients only.
+    """
+    def initialize(self):
+        self.suites = SuiteGeneratorClient(options.suite_port)
+
+    def get(self):
+        if self.request.remote_ip not in ('127.0.0.1', '::1'):
+            raise tornado.web.HTTPError(403)
+        try:
+            text = self.suites.metrics()
+        except (OSError, IOError):
+            raise tornado.web.HTTPError(503)
+        finally:
+            self.suites.close()
+        self.set_header('Content-Type', 'text/plain; charset=UTF-8')
+        self.write(text)
+
 def main():
     """""
     Start up the server and register the necessary handlers and web socket
@@ -280,7 +582,8 @@ def main():
                 (r"/java/", JavaHandler),
                 (r"/python/", PythonHandler),
                 (r"/javafuntime", JavaWebsocket),
-                (r"/pythonfuntime", PythonWebSocket)
+                (r"/pythonfuntime", PythonWebSocket),
+                (r"/metrics", MetricsHandler)
             ],
             title="LaHacks Server",
             template_path=os.path.join(os.path.dirname(__file__), "templates"),
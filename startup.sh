@@ -1,2 +1,3 @@
 #/usr/bin/bash
+java -XX:-OmitStackTraceInFastThrow --add-exports jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED SuiteGeneratorServer &
 source ./Tornado/bin/activate; python main.py